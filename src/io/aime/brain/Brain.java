@@ -1,17 +1,16 @@
 package io.aime.brain;
 
+import io.aime.brain.data.BrainCall;
+import io.aime.brain.data.BrainValue;
 import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.Metadata;
-import io.aime.brain.data.SerializableData;
+import io.aime.brain.data.MetadataMethod;
+import io.aime.brain.data.MetadataStore;
 import io.aime.brain.xml.Handler;
-import io.aime.util.Timer;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.net.InetSocketAddress;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.ObjectWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.Server;
 import org.apache.log4j.Logger;
 
 /**
@@ -49,6 +48,18 @@ public class Brain implements BrainInterface
         return _INSTANCE;
     }
 
+    @Override
+    public BrainValue call(BrainCall call)
+    {
+        try {
+            return new BrainValue(MetadataStore.getInstance().call(call.getJob(), call.getMethod(), call.getParam(), Server.get() != null));
+        }
+        catch (ReflectiveOperationException | IllegalArgumentException | IOException e) {
+            LOG.error("Error.", e);
+            return new BrainValue();
+        }
+    }
+
     @Override
     public ObjectWritable execute(Text xml)
     {
@@ -60,9 +71,9 @@ public class Brain implements BrainInterface
             BrainXMLData data = Handler.newBuild().getBrainXMLData(xml.toString());
             Object response = callMethod(data);
 
-            return response == null ? new ObjectWritable() : new ObjectWritable(response);
+            return response == null ? new ObjectWritable() : new ObjectWritable(declaredClass(response), response);
         }
-        catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | InstantiationException e) {
+        catch (ReflectiveOperationException | IllegalArgumentException | IOException e) {
             LOG.error("Error.", e);
             return new ObjectWritable();
         }
@@ -71,6 +82,12 @@ public class Brain implements BrainInterface
     @Override
     public long getProtocolVersion(String protocol, long clientVersion) throws IOException
     {
+        // Hadoop RPC only connects clients that get their own version back,
+        // so older clients are answered with theirs.
+        if (clientVersion >= OLDEST_VERSION && clientVersion <= VERSION) {
+            return clientVersion;
+        }
+
         return VERSION;
     }
 
@@ -80,6 +97,37 @@ public class Brain implements BrainInterface
         return true;
     }
 
+    /**
+     * Returns the class to send a response as. ObjectWritable only writes
+     * boxed values when they're declared as primitives.
+     *
+     * @param response The response.
+     *
+     * @return The class to declare.
+     */
+    private static Class<?> declaredClass(Object response)
+    {
+        Class<?> c = response.getClass();
+
+        if (c == Integer.class) {
+            return Integer.TYPE;
+        }
+        else if (c == Long.class) {
+            return Long.TYPE;
+        }
+        else if (c == Boolean.class) {
+            return Boolean.TYPE;
+        }
+        else if (c == Float.class) {
+            return Float.TYPE;
+        }
+        else if (c == Double.class) {
+            return Double.TYPE;
+        }
+
+        return c;
+    }
+
     /**
      * Call a method from one of the meta data classes.
      *
@@ -87,78 +135,31 @@ public class Brain implements BrainInterface
      *
      * @return The response.
      */
-    private Object callMethod(BrainXMLData data) throws NoSuchMethodException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, InstantiationException
+    private Object callMethod(BrainXMLData data) throws ReflectiveOperationException, IOException
     {
-        if (SerializableData.class.isInstance(data.getClazz().newInstance())) {
-            Class enclosingClass = data.getClazz().getEnclosingClass();
-            final Object INSTANCE = enclosingClass.getMethod("getInstance").invoke(data.getClazz(), (Object[]) null); // Enclosing class Singleton instance.
-            final Object METADATA_OBJECT = enclosingClass.cast(INSTANCE).getClass().getDeclaredMethod("read").invoke(INSTANCE, (Object[]) null); // Read the data object serialized to file.
-            final Object DATA_OBJECT = enclosingClass.cast(INSTANCE).getClass().getDeclaredMethod("getData").invoke(METADATA_OBJECT, (Object[]) null); // Get the data object.
-
-            switch (data.getJob()) {
-                case BrainXMLData.JOB_REQUEST:
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Request Data: " + data.toString());
-                    }
-
-                    return data.getClazz().getDeclaredMethod("get" + data.getFunction()).invoke(DATA_OBJECT, (Object[]) null); // Execute
-                case BrainXMLData.JOB_MERGE:
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Merge Data: " + data.toString());
-                    }
-
-                    final Object UPDATED_INSTANCE = data.getClazz().getDeclaredMethod("set" + data.getFunction(), new Class<?>[]{data.getParam().getType()}).invoke(DATA_OBJECT, new Object[]{data.getParam().getData()});
-                    final Object UPDATED_METADATA_OBJECT = enclosingClass.cast(INSTANCE).getClass().getDeclaredMethod("setData", Object.class).invoke(INSTANCE, new Object[]{UPDATED_INSTANCE});
-
-                    enclosingClass.cast(INSTANCE).getClass().getDeclaredMethod("merge", Metadata.class).invoke(INSTANCE, new Object[]{UPDATED_METADATA_OBJECT}); // Execute
-            }
-        }
-        else {
-            LOG.info("Passed object is not an instance of SerializableData!");
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Call Data: " + data.toString());
         }
 
-        return null;
+        // Merges carry a parameter, requests don't.
+        Object param = (data.getJob() == BrainXMLData.JOB_MERGE) ? data.getParam().getData() : null;
+
+        // Calls over RPC get copies, the ones made in this JVM the live data.
+        return MetadataStore.getInstance().call(data.getJob(), MetadataMethod.id(data.getClazz(), data.getFunction()), param, Server.get() != null);
     }
 
     /**
-     * Obtains a client to the Start.
+     * Obtains a client to the Cerebellum.
      * <p>
-     * This method waits X seconds for the Start to respond, if it
-     * doesn't respond in a given time, then throw an exception.</p>
+     * The client is shared by the whole JVM and reconnects by itself, see
+     * {@link BrainClient}.</p>
      *
      * @param conf Configuration's object.
      *
-     * @return A Start client.
+     * @return A Cerebellum client.
      */
     public static BrainInterface getClient(Configuration conf)
     {
-        Timer t = new Timer();
-        t.starTimer(); // Start timer.
-        BrainInterface bean = null;
-        int maxtries = 30;
-        int tryCounter = 0;
-
-        while (tryCounter < maxtries) {
-            try {
-                bean = (BrainInterface) RPC.getProxy(BrainInterface.class,
-                                                     BrainInterface.VERSION,
-                                                     new InetSocketAddress(conf.get("cerebellum.host"), conf.getInt("cerebellum.port", 14999)),
-                                                     conf,
-                                                     conf.getInt("rpc.timeout", 1));
-
-                if (bean != null && bean.isAlive()) {
-                    t.endTimer(); // Stop the timer.
-                    return bean;
-                }
-            }
-            catch (IOException e) {
-                tryCounter++;
-                LOG.info("Can't connect to Cerebellum. Try (" + tryCounter + "). Trying again...");
-            }
-        }
-
-        LOG.fatal("Impossible to connect to Cerebellum. Giving up.");
-
-        return bean;
+        return BrainClient.get(conf).getInterface();
     }
 }
@@ -0,0 +1,268 @@
+package io.aime.brain;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.log4j.Logger;
+
+/**
+ * A client to the Cerebellum shared by the whole JVM.
+ *
+ * <p>
+ * There's one client per Cerebellum address, holding a single RPC proxy that
+ * all callers use. When a call fails on the connection the proxy is dropped,
+ * and the next call opens a new one and checks it with
+ * {@link BrainInterface#isAlive()}, waiting twice as long after each failed
+ * try. If the Cerebellum doesn't answer after all the tries, calls fail at
+ * once until the longest wait has passed, so tasks starting together don't
+ * all keep trying. Calls that can't reach the Cerebellum throw a
+ * {@link BrainException}.
+ * </p>
+ *
+ * <p>
+ * The client counts its calls, failures and reconnections, and the time
+ * spent in calls. It logs them every
+ * <code>cerebellum.client.stats.interval</code> milliseconds, and when its JVM
+ * exits.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public final class BrainClient implements InvocationHandler
+{
+
+    private static final Logger LOG = Logger.getLogger(BrainClient.class.getName());
+    private static final Map<String, BrainClient> CLIENTS = new HashMap<>();
+    private final InetSocketAddress address;
+    private final Configuration conf;
+    private final int retries;
+    private final long backoff;
+    private final long maxBackoff;
+    private final long statsInterval;
+    private final BrainInterface facade;
+    private volatile BrainInterface proxy = null;
+    private long downUntil = 0;
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong reconnections = new AtomicLong(0);
+    private final AtomicLong callTime = new AtomicLong(0);
+    private final AtomicLong nextStats;
+
+    private BrainClient(InetSocketAddress address, Configuration conf)
+    {
+        this.address = address;
+        this.conf = conf;
+        this.retries = Math.max(1, conf.getInt("cerebellum.client.retries", 30));
+        this.backoff = Math.max(1, conf.getLong("cerebellum.client.backoff", 100));
+        this.maxBackoff = Math.max(backoff, conf.getLong("cerebellum.client.backoff.max", 10000));
+        this.statsInterval = conf.getLong("cerebellum.client.stats.interval", 600000);
+        this.nextStats = new AtomicLong(System.currentTimeMillis() + statsInterval);
+        this.facade = (BrainInterface) Proxy.newProxyInstance(BrainInterface.class.getClassLoader(), new Class<?>[]{BrainInterface.class}, this);
+    }
+
+    /**
+     * Returns the client of the Cerebellum set in the configuration.
+     *
+     * @param conf Configuration's object.
+     *
+     * @return The shared client.
+     */
+    public static BrainClient get(Configuration conf)
+    {
+        String host = conf.get("cerebellum.host");
+        int port = conf.getInt("cerebellum.port", 14999);
+        String key = host + ":" + port;
+
+        synchronized (CLIENTS) {
+            BrainClient client = CLIENTS.get(key);
+            if (client == null) {
+                client = new BrainClient(new InetSocketAddress(host, port), conf);
+                CLIENTS.put(key, client);
+
+                final BrainClient stats = client;
+                Runtime.getRuntime().addShutdownHook(new Thread("BrainClient-Stats")
+                {
+                    @Override
+                    public void run()
+                    {
+                        stats.logStats();
+                    }
+                });
+            }
+
+            return client;
+        }
+    }
+
+    /**
+     * Returns the interface callers use. It reconnects as needed.
+     *
+     * @return The Cerebellum.
+     */
+    public BrainInterface getInterface()
+    {
+        return facade;
+    }
+
+    @Override
+    public Object invoke(Object p, Method method, Object[] args) throws Throwable
+    {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        BrainInterface bean = connect();
+        long start = System.nanoTime();
+        calls.incrementAndGet();
+        try {
+            return method.invoke(bean, args);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            failures.incrementAndGet();
+            if (cause instanceof UndeclaredThrowableException && cause.getCause() instanceof IOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                LOG.warn("Call to Cerebellum failed, reconnecting on next call. Error: " + cause.toString());
+                drop(bean);
+                throw new BrainException("Call to Cerebellum at " + address + " failed.", cause);
+            }
+
+            throw cause;
+        }
+        finally {
+            callTime.addAndGet(System.nanoTime() - start);
+
+            long next = nextStats.get();
+            if (statsInterval > 0 && System.currentTimeMillis() >= next && nextStats.compareAndSet(next, System.currentTimeMillis() + statsInterval)) {
+                logStats();
+            }
+        }
+    }
+
+    /**
+     * Logs the counters of this client, if it was used.
+     */
+    private void logStats()
+    {
+        if (calls.get() > 0 && LOG.isInfoEnabled()) {
+            LOG.info("Cerebellum client " + address + ". " + this);
+        }
+    }
+
+    /**
+     * Returns the current proxy, opening a new one if there's none. Only one
+     * thread tries at a time, and none waits between tries holding the lock.
+     */
+    private BrainInterface connect()
+    {
+        long wait = backoff;
+
+        for (int tryCounter = 1;; tryCounter++) {
+            BrainInterface bean = proxy;
+            if (bean != null) {
+                return bean;
+            }
+
+            synchronized (this) {
+                if (proxy != null) {
+                    return proxy;
+                }
+
+                if (System.currentTimeMillis() < downUntil) {
+                    throw new BrainException("Cerebellum at " + address + " is down.");
+                }
+
+                try {
+                    bean = (BrainInterface) RPC.getProxy(BrainInterface.class, BrainInterface.VERSION, address, conf, conf.getInt("rpc.timeout", 1));
+                    if (bean.isAlive()) {
+                        if (reconnections.getAndIncrement() > 0 && LOG.isInfoEnabled()) {
+                            LOG.info("Reconnected to Cerebellum at " + address + ". " + this);
+                        }
+
+                        proxy = bean;
+                        return bean;
+                    }
+                }
+                catch (IOException | UndeclaredThrowableException e) {
+                    LOG.info("Can't connect to Cerebellum. Try (" + tryCounter + "). Trying again in " + wait + "ms...");
+                }
+
+                if (bean != null) {
+                    RPC.stopProxy(bean);
+                }
+
+                if (tryCounter >= retries) {
+                    downUntil = System.currentTimeMillis() + maxBackoff;
+                    LOG.fatal("Impossible to connect to Cerebellum at " + address + ". Giving up.");
+                    throw new BrainException("Can't connect to Cerebellum at " + address);
+                }
+            }
+
+            try {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BrainException("Interrupted while connecting to Cerebellum.", e);
+            }
+            wait = Math.min(maxBackoff, wait * 2);
+        }
+    }
+
+    private synchronized void drop(BrainInterface bean)
+    {
+        if (proxy == bean) {
+            proxy = null;
+            RPC.stopProxy(bean);
+        }
+    }
+
+    public long getCalls()
+    {
+        return calls.get();
+    }
+
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * Returns how many times a new proxy was opened, not counting the first.
+     *
+     * @return The reconnections.
+     */
+    public long getReconnections()
+    {
+        return Math.max(0, reconnections.get() - 1);
+    }
+
+    /**
+     * Returns the average time of a call.
+     *
+     * @return The time in microseconds.
+     */
+    public long getAverageCallTime()
+    {
+        long count = calls.get();
+
+        return (count == 0) ? 0 : callTime.get() / count / 1000;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Calls: " + getCalls() + ", failures: " + getFailures() + ", reconnections: " + getReconnections() + ", average call time: " + getAverageCallTime() + "us";
+    }
+}
@@ -0,0 +1,24 @@
+package io.aime.brain;
+
+/**
+ * Thrown by the calls of a {@link BrainClient} when the Cerebellum can't be
+ * reached. It's unchecked because the methods of {@link BrainInterface} don't
+ * declare any exception.
+ *
+ * @author K-Zen
+ */
+public class BrainException extends RuntimeException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    public BrainException(String message)
+    {
+        super(message);
+    }
+
+    public BrainException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
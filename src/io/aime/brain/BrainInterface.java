@@ -1,5 +1,7 @@
 package io.aime.brain;
 
+import io.aime.brain.data.BrainCall;
+import io.aime.brain.data.BrainValue;
 import org.apache.hadoop.io.ObjectWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.VersionedProtocol;
@@ -12,10 +14,27 @@ import org.apache.hadoop.ipc.VersionedProtocol;
 public interface BrainInterface extends VersionedProtocol
 {
 
-    public static final long VERSION = 2L;
+    public static final long VERSION = 3L;
+    /**
+     * The oldest version the Cerebellum still serves. Clients of version 2
+     * only know {@link #execute(Text)} and {@link #isAlive()}, which are
+     * unchanged.
+     */
+    public static final long OLDEST_VERSION = 2L;
+
+    /**
+     * Method to execute a method/function in the Cerebellum.
+     *
+     * @param call The method to call and its parameter.
+     *
+     * @return Response of the function.
+     */
+    public BrainValue call(BrainCall call);
 
     /**
-     * Method to execute a method/function in the Cerebellum. The default format is XML.
+     * Method to execute a method/function in the Cerebellum, sent as XML. It's
+     * slower than {@link #call(BrainCall)} and only kept for older callers,
+     * which the Cerebellum accepts down to {@link #OLDEST_VERSION}.
      *
      * @param xml An XML file.
      *
@@ -0,0 +1,94 @@
+package io.aime.brain.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A call to one of the methods of the metadata kept by the Brain.
+ *
+ * <p>
+ * The method is sent as the id of its {@link MetadataMethod}, with the value
+ * to merge, if any.
+ * </p>
+ *
+ * @author K-Zen
+ * @see <a href="http://en.wikipedia.org/wiki/Builder_pattern">Builder Pattern</a>
+ */
+public class BrainCall implements Writable
+{
+
+    private byte job = BrainXMLData.JOB_REQUEST;
+    private int method = 0;
+    private BrainValue param = new BrainValue();
+
+    public BrainCall()
+    {
+    }
+
+    /**
+     * Creates a call that returns the value of a method.
+     *
+     * @param method The method.
+     *
+     * @return The call.
+     */
+    public static BrainCall request(MetadataMethod method)
+    {
+        BrainCall call = new BrainCall();
+        call.job = BrainXMLData.JOB_REQUEST;
+        call.method = method.getId();
+
+        return call;
+    }
+
+    /**
+     * Creates a call that merges a value through a method.
+     *
+     * @param method The method.
+     * @param value  The value.
+     *
+     * @return The call.
+     */
+    public static BrainCall merge(MetadataMethod method, Object value)
+    {
+        BrainCall call = new BrainCall();
+        call.job = BrainXMLData.JOB_MERGE;
+        call.method = method.getId();
+        call.param.set(value);
+
+        return call;
+    }
+
+    public byte getJob()
+    {
+        return job;
+    }
+
+    public int getMethod()
+    {
+        return method;
+    }
+
+    public Object getParam()
+    {
+        return param.get();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeByte(job);
+        out.writeInt(method);
+        param.write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException
+    {
+        job = in.readByte();
+        method = in.readInt();
+        param.readFields(in);
+    }
+}
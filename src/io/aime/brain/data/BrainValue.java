@@ -0,0 +1,205 @@
+package io.aime.brain.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * A value sent to or returned by the Brain.
+ *
+ * <p>
+ * Common values are written in their shortest form, Writable objects and
+ * arrays of them with their own methods, and anything else with Java
+ * serialization, as the XML requests always did.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class BrainValue implements Writable
+{
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte STRING = 4;
+    private static final byte WRITABLE = 5;
+    private static final byte WRITABLE_ARRAY = 6;
+    private static final byte SERIALIZABLE = 7;
+    private static final ConcurrentHashMap<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+    private Object value = null;
+
+    public BrainValue()
+    {
+    }
+
+    public BrainValue(Object value)
+    {
+        this.value = value;
+    }
+
+    public Object get()
+    {
+        return value;
+    }
+
+    public BrainValue set(Object value)
+    {
+        this.value = value;
+        return this;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException
+    {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            WritableUtils.writeVInt(out, (Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            WritableUtils.writeVLong(out, (Long) value);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            Text.writeString(out, (String) value);
+        }
+        else if (value instanceof Writable) {
+            out.writeByte(WRITABLE);
+            Text.writeString(out, value.getClass().getName());
+            ((Writable) value).write(out);
+        }
+        else if (value.getClass().isArray() && Writable.class.isAssignableFrom(value.getClass().getComponentType())) {
+            int length = Array.getLength(value);
+
+            out.writeByte(WRITABLE_ARRAY);
+            Text.writeString(out, value.getClass().getComponentType().getName());
+            WritableUtils.writeVInt(out, length);
+            for (int i = 0; i < length; i++) {
+                Writable element = (Writable) Array.get(value, i);
+                // An empty class name stands for a null element.
+                if (element == null) {
+                    Text.writeString(out, "");
+                    continue;
+                }
+                Text.writeString(out, element.getClass().getName());
+                element.write(out);
+            }
+        }
+        else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            }
+
+            out.writeByte(SERIALIZABLE);
+            WritableUtils.writeVInt(out, bytes.size());
+            out.write(bytes.toByteArray());
+        }
+        else {
+            throw new IOException("Can't send a value of type: " + value.getClass().getName());
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException
+    {
+        byte type = in.readByte();
+
+        switch (type) {
+            case NULL:
+                value = null;
+                break;
+            case BOOLEAN:
+                value = in.readBoolean();
+                break;
+            case INTEGER:
+                value = WritableUtils.readVInt(in);
+                break;
+            case LONG:
+                value = WritableUtils.readVLong(in);
+                break;
+            case STRING:
+                value = Text.readString(in);
+                break;
+            case WRITABLE:
+                value = readWritable(in);
+                break;
+            case WRITABLE_ARRAY:
+                Class<?> component = forName(Text.readString(in));
+                int length = WritableUtils.readVInt(in);
+                Object array = Array.newInstance(component, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readWritable(in));
+                }
+                value = array;
+                break;
+            case SERIALIZABLE:
+                byte[] bytes = new byte[WritableUtils.readVInt(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    value = objectIn.readObject();
+                }
+                catch (ClassNotFoundException e) {
+                    throw new IOException("Can't read value.", e);
+                }
+                break;
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    private static Writable readWritable(DataInput in) throws IOException
+    {
+        String name = Text.readString(in);
+        if (name.isEmpty()) {
+            return null;
+        }
+
+        Writable w = (Writable) ReflectionUtils.newInstance(forName(name), null);
+        w.readFields(in);
+
+        return w;
+    }
+
+    private static Class<?> forName(String name) throws IOException
+    {
+        Class<?> c = CLASSES.get(name);
+
+        if (c == null) {
+            try {
+                c = Class.forName(name);
+            }
+            catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class: " + name, e);
+            }
+            CLASSES.put(name, c);
+        }
+
+        return c;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(value);
+    }
+}
@@ -103,9 +103,9 @@ public class MetadataConsole extends Metadata
     public static class Data extends SerializableData
     {
 
-        public static final MetadataMethod MESSAGE = MetadataMethod.newBuild().setMethodName("Message");
-        public static final MetadataMethod DEPTH = MetadataMethod.newBuild().setMethodName("Depth");
-        public static final MetadataMethod ALL_MESSAGES = MetadataMethod.newBuild().setMethodName("AllMessages");
+        public static final MetadataMethod MESSAGE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Message");
+        public static final MetadataMethod DEPTH = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Depth");
+        public static final MetadataMethod ALL_MESSAGES = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("AllMessages");
         // ### DATA
         private Queue<ConsoleMessage> botMsgs = new ConcurrentLinkedQueue<>();
         // ### DATA
@@ -3,7 +3,6 @@ package io.aime.brain.data;
 import io.aime.aimemisc.io.FileStoring;
 import io.aime.bot.Reports;
 import io.aime.brain.Brain;
-import io.aime.brain.xml.Handler;
 import io.aime.crawl.CrawlDB;
 import io.aime.crawl.Generator;
 import io.aime.crawl.Injector;
@@ -137,20 +136,20 @@ public class MetadataCrawlJob extends Metadata
     public static class Data extends SerializableData
     {
 
-        public static final MetadataMethod FUNCTIONS_TO_EXECUTE = MetadataMethod.newBuild().setMethodName("FunctionsToExecute");
-        public static final MetadataMethod IS_CYCLE_COMPLETE = MetadataMethod.newBuild().setMethodName("IsCycleComplete");
-        public static final MetadataMethod COMPLETED_ITERATIONS = MetadataMethod.newBuild().setMethodName("CompletedIterations");
-        public static final MetadataMethod LAST_FUNCTION = MetadataMethod.newBuild().setMethodName("LastFunction");
-        public static final MetadataMethod TIME_LAST_FUNCTION = MetadataMethod.newBuild().setMethodName("TimeLastFunction");
-        public static final MetadataMethod CURRENT_DEPTH = MetadataMethod.newBuild().setMethodName("CurrentDepth");
-        public static final MetadataMethod TIMER = MetadataMethod.newBuild().setMethodName("Timer");
-        public static final MetadataMethod RUNNING = MetadataMethod.newBuild().setMethodName("Running");
-        public static final MetadataMethod STARTED = MetadataMethod.newBuild().setMethodName("Started");
-        public static final MetadataMethod CURRENT_RUNNING_FUNCTION = MetadataMethod.newBuild().setMethodName("CurrentRunningFunction");
-        public static final MetadataMethod ELAPSED_TIME = MetadataMethod.newBuild().setMethodName("ElapsedTime");
-        public static final MetadataMethod SEEDS = MetadataMethod.newBuild().setMethodName("Seeds");
-        public static final MetadataMethod PAUSE = MetadataMethod.newBuild().setMethodName("Pause");
-        public static final MetadataMethod RESUME = MetadataMethod.newBuild().setMethodName("Resume");
+        public static final MetadataMethod FUNCTIONS_TO_EXECUTE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("FunctionsToExecute");
+        public static final MetadataMethod IS_CYCLE_COMPLETE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("IsCycleComplete");
+        public static final MetadataMethod COMPLETED_ITERATIONS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("CompletedIterations");
+        public static final MetadataMethod LAST_FUNCTION = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("LastFunction");
+        public static final MetadataMethod TIME_LAST_FUNCTION = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("TimeLastFunction");
+        public static final MetadataMethod CURRENT_DEPTH = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("CurrentDepth");
+        public static final MetadataMethod TIMER = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Timer");
+        public static final MetadataMethod RUNNING = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Running");
+        public static final MetadataMethod STARTED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Started");
+        public static final MetadataMethod CURRENT_RUNNING_FUNCTION = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("CurrentRunningFunction");
+        public static final MetadataMethod ELAPSED_TIME = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("ElapsedTime");
+        public static final MetadataMethod SEEDS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Seeds");
+        public static final MetadataMethod PAUSE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Pause");
+        public static final MetadataMethod RESUME = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Resume");
         // ### DATA
         private List<String> functionsToExecute = new LinkedList<>(Arrays.asList(new String[]{
             AIMEConstants.INJECTOR_METHOD_NAME.getStringConstant(),
@@ -782,7 +781,7 @@ public class MetadataCrawlJob extends Metadata
             timer.starTimer(); // Start the overall timer.
             isCycleComplete = false; // Mark this cycle as uncompleted.
 
-            final int EXECUTION_TYPE = (int) Brain.getClient(new AIMEConfiguration().create()).execute(Handler.makeXMLRequest(BrainXMLData.newBuild().setJob(BrainXMLData.JOB_REQUEST).setClazz(MetadataGeneral.Data.class).setFunction(MetadataGeneral.Data.EXECUTION_TYPE.getMethodName()))).get();
+            final int EXECUTION_TYPE = (int) Brain.getClient(new AIMEConfiguration().create()).call(BrainCall.request(MetadataGeneral.Data.EXECUTION_TYPE)).get();
             try {
                 if (functionsToExecute.contains(AIMEConstants.INJECTOR_METHOD_NAME.getStringConstant())) {
                     runMethod(
@@ -6,6 +6,12 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.log4j.Logger;
 
 /**
@@ -18,11 +24,23 @@ public class MetadataFetcher extends Metadata
 {
 
     private static final Logger LOG = Logger.getLogger(MetadataFetcher.class.getName());
+    /** Replaces the whole data object. */
+    public static final MetadataMethod DATA = MetadataMethod.newBuild().setOwner(MetadataFetcher.class).setMethodName("Data");
+    /** Adds the stats sent by a fetch task. */
+    public static final MetadataMethod DELTA = MetadataMethod.newBuild().setOwner(MetadataFetcher.class).setMethodName("Delta");
+    /** The status codes of the last minutes. */
+    public static final MetadataMethod RECENT_STATUS_CODES = MetadataMethod.newBuild().setOwner(MetadataFetcher.class).setMethodName("RecentStatusCodes");
     private static volatile MetadataFetcher _INSTANCE = new MetadataFetcher();
     /** Mark if this instance is empty. If TRUE then we must load data from file. */
     private static volatile boolean isEmpty = true;
     /** Empty data object. */
     private Data data = new Data();
+    /** The tasks of the last fetch job, by id. */
+    private final Map<String, Task> tasks = new HashMap<>();
+    private String job = null;
+    /** Status codes per period of time, a ring of the last ones. Not stored. */
+    private final long[][] history = new long[AIMEConstants.METADATA_FETCHER_HISTORY_SIZE.getIntegerConstant()][Delta.CODES];
+    private final long[] historyPeriods = new long[history.length];
 
     public static MetadataFetcher getInstance()
     {
@@ -50,6 +68,128 @@ public class MetadataFetcher extends Metadata
         return data;
     }
 
+    /**
+     * Adds the stats sent by a fetch task.
+     *
+     * <p>
+     * Status codes and connections add up for good. Pages, errors and bytes
+     * are those of the tasks of the last fetch job, threads and queue size
+     * those of its running tasks, and the elapsed time that of its longest
+     * running task, so pages and bytes over the elapsed time are the speed of
+     * the whole cluster.
+     * </p>
+     *
+     * <p>
+     * A task that sent no delta for the last
+     * {@link AIMEConstants#METADATA_FETCHER_TASK_EXPIRY} milliseconds, by the
+     * time of the newest one, is taken as gone: a failed or killed attempt
+     * that never sent its last delta. Its threads and queue size no longer
+     * count, until it sends a delta again.
+     * </p>
+     *
+     * @param delta What changed in the task since its last delta.
+     *
+     * @return This instance.
+     */
+    public MetadataFetcher setDelta(Delta delta)
+    {
+        long[] codes = delta.codes;
+        data.success += codes[Delta.SUCCESS];
+        data.failed += codes[Delta.FAILED];
+        data.gone += codes[Delta.GONE];
+        data.moved += codes[Delta.MOVED];
+        data.tempMoved += codes[Delta.TEMP_MOVED];
+        data.notFound += codes[Delta.NOT_FOUND];
+        data.retry += codes[Delta.RETRY];
+        data.exception += codes[Delta.EXCEPTION];
+        data.accessDenied += codes[Delta.ACCESS_DENIED];
+        data.robotsDenied += codes[Delta.ROBOTS_DENIED];
+        data.redirExceeded += codes[Delta.REDIR_EXCEEDED];
+        data.notModified += codes[Delta.NOT_MODIFIED];
+        data.wouldBlock += codes[Delta.WOULD_BLOCK];
+        data.blocked += codes[Delta.BLOCKED];
+        data.unknown += codes[Delta.UNKNOWN];
+        data.connectionsReused += delta.connectionsReused;
+        data.connectionsOpened += delta.connectionsOpened;
+
+        // History, by the time of the task.
+        long period = delta.time / AIMEConstants.METADATA_FETCHER_HISTORY_PERIOD.getLongConstant();
+        int k = (int) (period % history.length);
+        if (historyPeriods[k] != period) {
+            historyPeriods[k] = period;
+            Arrays.fill(history[k], 0L);
+        }
+        for (int i = 0; i < Delta.CODES; i++) {
+            history[k][i] += codes[i];
+        }
+
+        // Fetch jobs run one at a time, a new one replaces the tasks of the last.
+        if (!delta.job.equals(job)) {
+            job = delta.job;
+            tasks.clear();
+        }
+        Task task = tasks.get(delta.task);
+        if (task == null) {
+            task = new Task();
+            tasks.put(delta.task, task);
+        }
+        task.pages += delta.pages;
+        task.errors += delta.errors;
+        task.bytes += delta.bytes;
+        task.activeThreads = delta.last ? 0L : delta.activeThreads;
+        task.waitingThreads = delta.last ? 0L : delta.waitingThreads;
+        task.queueSize = delta.last ? 0L : delta.queueSize;
+        task.elapsed = delta.elapsed;
+        task.time = Math.max(task.time, delta.time);
+
+        long expired = delta.time - AIMEConstants.METADATA_FETCHER_TASK_EXPIRY.getLongConstant();
+        long pages = 0L, errors = 0L, bytes = 0L, active = 0L, waiting = 0L, queue = 0L, elapsed = 0L;
+        for (Task t : tasks.values()) {
+            if (t.time < expired) {
+                t.activeThreads = 0L;
+                t.waitingThreads = 0L;
+                t.queueSize = 0L;
+            }
+            pages += t.pages;
+            errors += t.errors;
+            bytes += t.bytes;
+            active += t.activeThreads;
+            waiting += t.waitingThreads;
+            queue += t.queueSize;
+            elapsed = Math.max(elapsed, t.elapsed);
+        }
+        data.pages = pages;
+        data.errors = errors;
+        data.bytes = bytes;
+        data.activeThreads = active;
+        data.waitingThreads = waiting;
+        data.queueSize = queue;
+        data.elapsed = elapsed;
+
+        return this;
+    }
+
+    /**
+     * Returns the status codes of the last periods kept, indexed as in
+     * {@link Delta}.
+     *
+     * @return The count of every status code.
+     */
+    public long[] getRecentStatusCodes()
+    {
+        long now = System.currentTimeMillis() / AIMEConstants.METADATA_FETCHER_HISTORY_PERIOD.getLongConstant();
+        long[] codes = new long[Delta.CODES];
+        for (int k = 0; k < history.length; k++) {
+            if (historyPeriods[k] > now - history.length) {
+                for (int i = 0; i < Delta.CODES; i++) {
+                    codes[i] += history[k][i];
+                }
+            }
+        }
+
+        return codes;
+    }
+
     @Override
     public Object getEmptyData()
     {
@@ -60,6 +200,13 @@ public class MetadataFetcher extends Metadata
     public void internalWrite(DataOutput out) throws IOException
     {
         data.write(out);
+        // The deltas replayed after a restart add to the tasks.
+        Text.writeString(out, (job != null) ? job : "");
+        WritableUtils.writeVInt(out, tasks.size());
+        for (Map.Entry<String, Task> e : tasks.entrySet()) {
+            Text.writeString(out, e.getKey());
+            e.getValue().write(out);
+        }
     }
 
     @Override
@@ -68,6 +215,21 @@ public class MetadataFetcher extends Metadata
         Data d = new Data();
         d.internalRead(in);
         data = d;
+
+        // Data older than versions came without the tasks.
+        tasks.clear();
+        job = null;
+        if (d.getVersion() >= 1) {
+            String j = Text.readString(in);
+            job = j.isEmpty() ? null : j;
+            int count = WritableUtils.readVInt(in);
+            for (int i = 0; i < count; i++) {
+                String id = Text.readString(in);
+                Task task = new Task();
+                task.readFields(in);
+                tasks.put(id, task);
+            }
+        }
     }
 
     @Override
@@ -100,28 +262,34 @@ public class MetadataFetcher extends Metadata
     public static class Data extends SerializableData
     {
 
-        public static final MetadataMethod SUCCESS = MetadataMethod.newBuild().setMethodName("Success");
-        public static final MetadataMethod FAILED = MetadataMethod.newBuild().setMethodName("Failed");
-        public static final MetadataMethod GONE = MetadataMethod.newBuild().setMethodName("Gone");
-        public static final MetadataMethod MOVED = MetadataMethod.newBuild().setMethodName("Moved");
-        public static final MetadataMethod TEMP_MOVED = MetadataMethod.newBuild().setMethodName("TempMoved");
-        public static final MetadataMethod NOT_FOUND = MetadataMethod.newBuild().setMethodName("NotFound");
-        public static final MetadataMethod RETRY = MetadataMethod.newBuild().setMethodName("Retry");
-        public static final MetadataMethod EXCEPTION = MetadataMethod.newBuild().setMethodName("Exception");
-        public static final MetadataMethod ACCESS_DENIED = MetadataMethod.newBuild().setMethodName("AccessDenied");
-        public static final MetadataMethod ROBOTS_DENIED = MetadataMethod.newBuild().setMethodName("RobotsDenied");
-        public static final MetadataMethod REDIR_EXCEEDED = MetadataMethod.newBuild().setMethodName("RedirExceeded");
-        public static final MetadataMethod NOT_MODIFIED = MetadataMethod.newBuild().setMethodName("NotModified");
-        public static final MetadataMethod WOULD_BLOCK = MetadataMethod.newBuild().setMethodName("WouldBlock");
-        public static final MetadataMethod BLOCKED = MetadataMethod.newBuild().setMethodName("Blocked");
-        public static final MetadataMethod UNKNOWN = MetadataMethod.newBuild().setMethodName("Unknown");
-        public static final MetadataMethod ACTIVE_THREADS = MetadataMethod.newBuild().setMethodName("ActiveThreads");
-        public static final MetadataMethod WAITING_THREADS = MetadataMethod.newBuild().setMethodName("WaitingThreads");
-        public static final MetadataMethod QUEUE_SIZE = MetadataMethod.newBuild().setMethodName("QueueSize");
-        public static final MetadataMethod PAGES = MetadataMethod.newBuild().setMethodName("Pages");
-        public static final MetadataMethod ERRORS = MetadataMethod.newBuild().setMethodName("Errors");
-        public static final MetadataMethod ELAPSED = MetadataMethod.newBuild().setMethodName("Elapsed");
-        public static final MetadataMethod BYTES = MetadataMethod.newBuild().setMethodName("Bytes");
+        public static final MetadataMethod SUCCESS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Success");
+        public static final MetadataMethod FAILED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Failed");
+        public static final MetadataMethod GONE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Gone");
+        public static final MetadataMethod MOVED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Moved");
+        public static final MetadataMethod TEMP_MOVED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("TempMoved");
+        public static final MetadataMethod NOT_FOUND = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("NotFound");
+        public static final MetadataMethod RETRY = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Retry");
+        public static final MetadataMethod EXCEPTION = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Exception");
+        public static final MetadataMethod ACCESS_DENIED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("AccessDenied");
+        public static final MetadataMethod ROBOTS_DENIED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("RobotsDenied");
+        public static final MetadataMethod REDIR_EXCEEDED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("RedirExceeded");
+        public static final MetadataMethod NOT_MODIFIED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("NotModified");
+        public static final MetadataMethod WOULD_BLOCK = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("WouldBlock");
+        public static final MetadataMethod BLOCKED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Blocked");
+        public static final MetadataMethod UNKNOWN = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Unknown");
+        public static final MetadataMethod ACTIVE_THREADS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("ActiveThreads");
+        public static final MetadataMethod WAITING_THREADS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("WaitingThreads");
+        public static final MetadataMethod QUEUE_SIZE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("QueueSize");
+        public static final MetadataMethod PAGES = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Pages");
+        public static final MetadataMethod ERRORS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Errors");
+        public static final MetadataMethod ELAPSED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Elapsed");
+        public static final MetadataMethod BYTES = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Bytes");
+        public static final MetadataMethod CONNECTIONS_REUSED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("ConnectionsReused");
+        public static final MetadataMethod CONNECTIONS_OPENED = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("ConnectionsOpened");
+        /** Version 1 added the connections. */
+        private static final int VERSION = 1;
+        /** The version it was read with, 0 for data older than versions. */
+        private int version = VERSION;
         // ### DATA
         // Status Table
         private int success = 0;
@@ -147,6 +315,8 @@ public class MetadataFetcher extends Metadata
         private long errors = 0L;
         private long elapsed = 0L;
         private long bytes = 0L;
+        private long connectionsReused = 0L;
+        private long connectionsOpened = 0L;
         // ### DATA
 
         public static Data newBuild()
@@ -402,12 +572,41 @@ public class MetadataFetcher extends Metadata
         {
             return bytes;
         }
+
+        public Data setConnectionsReused(long connectionsReused)
+        {
+            this.connectionsReused = connectionsReused;
+            return this;
+        }
+
+        public long getConnectionsReused()
+        {
+            return connectionsReused;
+        }
+
+        public Data setConnectionsOpened(long connectionsOpened)
+        {
+            this.connectionsOpened = connectionsOpened;
+            return this;
+        }
+
+        public long getConnectionsOpened()
+        {
+            return connectionsOpened;
+        }
+        int getVersion()
+        {
+            return version;
+        }
         // ### DATA FUNCTIONS
 
         // ### SERIALIZATION FUNCTIONS
         @Override
         protected void internalWrite(DataOutput out) throws IOException
         {
+            // Data older than versions starts with the successes, which are
+            // never negative.
+            out.writeInt(-1 - VERSION);
             // Integer variables
             out.writeInt(success);
             out.writeInt(failed);
@@ -432,13 +631,20 @@ public class MetadataFetcher extends Metadata
             out.writeLong(errors);
             out.writeLong(elapsed);
             out.writeLong(bytes);
+            out.writeLong(connectionsReused);
+            out.writeLong(connectionsOpened);
         }
 
         @Override
         protected void internalRead(DataInput in) throws IOException
         {
+            int first = in.readInt();
+            version = (first < 0) ? -1 - first : 0;
+            if (version > VERSION) {
+                throw new IOException("Unknown fetcher metadata version: " + version);
+            }
             // Integer variables
-            success = in.readInt();
+            success = (version > 0) ? in.readInt() : first;
             failed = in.readInt();
             gone = in.readInt();
             moved = in.readInt();
@@ -461,7 +667,194 @@ public class MetadataFetcher extends Metadata
             errors = in.readLong();
             elapsed = in.readLong();
             bytes = in.readLong();
+            if (version >= 1) {
+                connectionsReused = in.readLong();
+                connectionsOpened = in.readLong();
+            }
+            else {
+                connectionsReused = 0L;
+                connectionsOpened = 0L;
+            }
         }
     }
     // ### SERIALIZATION FUNCTIONS
+
+    /**
+     * The stats of a fetch task.
+     */
+    private static class Task
+    {
+
+        long pages = 0L;
+        long errors = 0L;
+        long bytes = 0L;
+        long activeThreads = 0L;
+        long waitingThreads = 0L;
+        long queueSize = 0L;
+        long elapsed = 0L;
+        // The time of the newest delta. Not stored, after a restart the tasks
+        // still running send theirs again.
+        long time = 0L;
+
+        void write(DataOutput out) throws IOException
+        {
+            WritableUtils.writeVLong(out, pages);
+            WritableUtils.writeVLong(out, errors);
+            WritableUtils.writeVLong(out, bytes);
+            WritableUtils.writeVLong(out, activeThreads);
+            WritableUtils.writeVLong(out, waitingThreads);
+            WritableUtils.writeVLong(out, queueSize);
+            WritableUtils.writeVLong(out, elapsed);
+        }
+
+        void readFields(DataInput in) throws IOException
+        {
+            pages = WritableUtils.readVLong(in);
+            errors = WritableUtils.readVLong(in);
+            bytes = WritableUtils.readVLong(in);
+            activeThreads = WritableUtils.readVLong(in);
+            waitingThreads = WritableUtils.readVLong(in);
+            queueSize = WritableUtils.readVLong(in);
+            elapsed = WritableUtils.readVLong(in);
+        }
+    }
+
+    /**
+     * What changed in a fetch task since its last delta: how many status
+     * codes, pages, errors, bytes and connections it added, and the threads,
+     * queue size and elapsed time it has now.
+     */
+    public static class Delta implements Writable
+    {
+
+        public static final int SUCCESS = 0;
+        public static final int FAILED = 1;
+        public static final int GONE = 2;
+        public static final int MOVED = 3;
+        public static final int TEMP_MOVED = 4;
+        public static final int NOT_FOUND = 5;
+        public static final int RETRY = 6;
+        public static final int EXCEPTION = 7;
+        public static final int ACCESS_DENIED = 8;
+        public static final int ROBOTS_DENIED = 9;
+        public static final int REDIR_EXCEEDED = 10;
+        public static final int NOT_MODIFIED = 11;
+        public static final int WOULD_BLOCK = 12;
+        public static final int BLOCKED = 13;
+        public static final int UNKNOWN = 14;
+        /** How many status codes there are. */
+        public static final int CODES = 15;
+        private String job = "";
+        private String task = "";
+        private long time = 0L;
+        private boolean last = false;
+        private long[] codes = new long[CODES];
+        private long pages = 0L;
+        private long errors = 0L;
+        private long bytes = 0L;
+        private long connectionsReused = 0L;
+        private long connectionsOpened = 0L;
+        private long activeThreads = 0L;
+        private long waitingThreads = 0L;
+        private long queueSize = 0L;
+        private long elapsed = 0L;
+
+        public static Delta newBuild()
+        {
+            return new Delta();
+        }
+
+        public Delta setTask(String job, String task)
+        {
+            this.job = job;
+            this.task = task;
+            return this;
+        }
+
+        public Delta setTime(long time)
+        {
+            this.time = time;
+            return this;
+        }
+
+        /**
+         * Marks the last delta of the task.
+         *
+         * @param last TRUE if the task is done.
+         *
+         * @return This instance.
+         */
+        public Delta setLast(boolean last)
+        {
+            this.last = last;
+            return this;
+        }
+
+        public Delta setStatusCode(int code, long count)
+        {
+            codes[code] = count;
+            return this;
+        }
+
+        public Delta setCounters(long pages, long errors, long bytes, long connectionsReused, long connectionsOpened)
+        {
+            this.pages = pages;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.connectionsReused = connectionsReused;
+            this.connectionsOpened = connectionsOpened;
+            return this;
+        }
+
+        public Delta setStatus(long activeThreads, long waitingThreads, long queueSize, long elapsed)
+        {
+            this.activeThreads = activeThreads;
+            this.waitingThreads = waitingThreads;
+            this.queueSize = queueSize;
+            this.elapsed = elapsed;
+            return this;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException
+        {
+            Text.writeString(out, job);
+            Text.writeString(out, task);
+            WritableUtils.writeVLong(out, time);
+            out.writeBoolean(last);
+            for (long c : codes) {
+                WritableUtils.writeVLong(out, c);
+            }
+            WritableUtils.writeVLong(out, pages);
+            WritableUtils.writeVLong(out, errors);
+            WritableUtils.writeVLong(out, bytes);
+            WritableUtils.writeVLong(out, connectionsReused);
+            WritableUtils.writeVLong(out, connectionsOpened);
+            WritableUtils.writeVLong(out, activeThreads);
+            WritableUtils.writeVLong(out, waitingThreads);
+            WritableUtils.writeVLong(out, queueSize);
+            WritableUtils.writeVLong(out, elapsed);
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException
+        {
+            job = Text.readString(in);
+            task = Text.readString(in);
+            time = WritableUtils.readVLong(in);
+            last = in.readBoolean();
+            for (int i = 0; i < CODES; i++) {
+                codes[i] = WritableUtils.readVLong(in);
+            }
+            pages = WritableUtils.readVLong(in);
+            errors = WritableUtils.readVLong(in);
+            bytes = WritableUtils.readVLong(in);
+            connectionsReused = WritableUtils.readVLong(in);
+            connectionsOpened = WritableUtils.readVLong(in);
+            activeThreads = WritableUtils.readVLong(in);
+            waitingThreads = WritableUtils.readVLong(in);
+            queueSize = WritableUtils.readVLong(in);
+            elapsed = WritableUtils.readVLong(in);
+        }
+    }
 }
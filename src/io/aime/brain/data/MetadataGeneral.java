@@ -120,16 +120,16 @@ public class MetadataGeneral extends Metadata
     public static class Data extends SerializableData
     {
 
-        public static final MetadataMethod AIME_LOCALITY = MetadataMethod.newBuild().setMethodName("AIMELocality");
-        public static final MetadataMethod EXECUTION_TYPE = MetadataMethod.newBuild().setMethodName("ExecutionType");
-        public static final MetadataMethod HEAP_SIZE = MetadataMethod.newBuild().setMethodName("HeapSize");
-        public static final MetadataMethod FILTERS = MetadataMethod.newBuild().setMethodName("Filters");
-        public static final MetadataMethod DEFAULT_URL_RULE = MetadataMethod.newBuild().setMethodName("DefaultURLRule");
-        public static final MetadataMethod URL_RULE = MetadataMethod.newBuild().setMethodName("URLRule");
-        public static final MetadataMethod SEED_SITE_RULE = MetadataMethod.newBuild().setMethodName("SeedSiteRule");
-        public static final MetadataMethod SITE_RULE = MetadataMethod.newBuild().setMethodName("SiteRule");
-        public static final MetadataMethod SUM_CONN_TIME = MetadataMethod.newBuild().setMethodName("SumConnTime");
-        public static final MetadataMethod COU_CONN_TIME = MetadataMethod.newBuild().setMethodName("CouConnTime");
+        public static final MetadataMethod AIME_LOCALITY = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("AIMELocality");
+        public static final MetadataMethod EXECUTION_TYPE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("ExecutionType");
+        public static final MetadataMethod HEAP_SIZE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("HeapSize");
+        public static final MetadataMethod FILTERS = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("Filters");
+        public static final MetadataMethod DEFAULT_URL_RULE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("DefaultURLRule");
+        public static final MetadataMethod URL_RULE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("URLRule");
+        public static final MetadataMethod SEED_SITE_RULE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("SeedSiteRule");
+        public static final MetadataMethod SITE_RULE = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("SiteRule");
+        public static final MetadataMethod SUM_CONN_TIME = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("SumConnTime");
+        public static final MetadataMethod COU_CONN_TIME = MetadataMethod.newBuild().setOwner(Data.class).setMethodName("CouConnTime");
         // ### DATA
         /**
          * States if this is AIME's Central or not. AIME Central is where the
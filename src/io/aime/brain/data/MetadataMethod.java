@@ -13,6 +13,8 @@ import java.io.IOException;
 public class MetadataMethod extends Metadata
 {
 
+    /** The class the method belongs to. */
+    private Class<?> owner = Object.class;
     /** The name of the method. */
     private String methodName = "";
 
@@ -25,11 +27,49 @@ public class MetadataMethod extends Metadata
         return new MetadataMethod();
     }
 
+    /**
+     * Returns the id of a method, which is the same in every JVM.
+     *
+     * @param owner      The class the method belongs to.
+     * @param methodName The name of the method.
+     *
+     * @return The id.
+     */
+    public static int id(Class<?> owner, String methodName)
+    {
+        return (owner.getName() + "#" + methodName).hashCode();
+    }
+
+    public Class<?> getOwner()
+    {
+        return owner;
+    }
+
+    public MetadataMethod setOwner(Class<?> owner)
+    {
+        if (owner != null)
+        {
+            this.owner = owner;
+        }
+
+        return this;
+    }
+
     public String getMethodName()
     {
         return methodName;
     }
 
+    /**
+     * Returns the id the method is called by through the Brain.
+     *
+     * @return The id.
+     */
+    public int getId()
+    {
+        return id(owner, methodName);
+    }
+
     public MetadataMethod setMethodName(String methodName)
     {
         if (methodName != null && !methodName.isEmpty())
@@ -0,0 +1,747 @@
+package io.aime.brain.data;
+
+import io.aime.aimemisc.utils.Encryption;
+import io.aime.util.AIMEConstants;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.crypto.Cipher;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the metadata of the Brain in memory and writes its changes behind.
+ *
+ * <p>
+ * Requests and merges work on the live metadata objects, through a table of
+ * method handles built on start with an entry for every {@link MetadataMethod}
+ * of the metadata classes. Requests on the same metadata run at the same time,
+ * merges one at a time. Requests made in this JVM get the live objects, so
+ * they can change them in place, while requests that are sent over RPC get a
+ * copy of what they read, so the merges that follow don't change it while
+ * it's sent. Every merge is also
+ * queued for a single writer thread, which appends all the merges waiting at
+ * once to a journal, with one sync to disk for all of them. Every so often it
+ * writes all the metadata to a checkpoint and starts a new journal.
+ * </p>
+ *
+ * <p>
+ * On start the last checkpoint is loaded and the journal replayed on top of
+ * it. Metadata that was never checkpointed is first read from its own file,
+ * as it was before. Changes made by requests, like taking the messages of the
+ * console or editing the rules of the URL filters, are not journaled, so they
+ * are only kept from the next checkpoint on.
+ * </p>
+ *
+ * @author K-Zen
+ * @see <a href="http://en.wikipedia.org/wiki/Singleton_pattern">Singleton Pattern</a>
+ */
+public final class MetadataStore
+{
+
+    private static final Logger LOG = Logger.getLogger(MetadataStore.class.getName());
+    private static final String CIPHER = "AES/ECB/PKCS5Padding";
+    private static final Record STOP = new Record(-1, 0, null);
+    private static final Class<?>[] METADATA = {MetadataCrawlJob.class, MetadataGeneral.class, MetadataFetcher.class, MetadataConsole.class};
+    private static final MethodType GETTER = MethodType.genericMethodType(1);
+    private static final MethodType SETTER = MethodType.genericMethodType(2);
+    private static MetadataStore _INSTANCE = null;
+    private final File checkpointFile;
+    private final File journalFile;
+    private final Map<Class<?>, Slot> slots = new HashMap<>();
+    private final Map<Integer, Handle> handles = new HashMap<>();
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final Thread writer;
+    private volatile boolean changed = false;
+    private FileOutputStream journalFileOut;
+    private DataOutputStream journalOut;
+    private int journalRecords = 0;
+    private boolean journalTorn = false;
+
+    private MetadataStore(File folder) throws IOException
+    {
+        folder.mkdirs();
+        checkpointFile = new File(folder, AIMEConstants.METADATA_CHECKPOINT_FILENAME.getStringConstant());
+        journalFile = new File(folder, AIMEConstants.METADATA_JOURNAL_FILENAME.getStringConstant());
+
+        try {
+            for (Class<?> metadataClass : METADATA) {
+                link(new Slot(metadataClass));
+            }
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IOException("Error linking metadata methods.", e);
+        }
+
+        recover();
+        // Start clean, the journal may end in a half written record.
+        checkpoint();
+
+        writer = new Thread(new Writer(), "MetadataStore-Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the store of this JVM, recovering the metadata the first time.
+     *
+     * @return The store.
+     *
+     * @throws IOException If the metadata can't be recovered.
+     */
+    public static synchronized MetadataStore getInstance() throws IOException
+    {
+        if (_INSTANCE == null) {
+            _INSTANCE = new MetadataStore(new File(AIMEConstants.DEFAULT_JOB_DATA_FOLDER.getStringConstant()));
+
+            Runtime.getRuntime().addShutdownHook(new Thread("MetadataStore-Shutdown")
+            {
+                @Override
+                public void run()
+                {
+                    _INSTANCE.close();
+                }
+            });
+        }
+
+        return _INSTANCE;
+    }
+
+    /**
+     * Calls a method of the metadata.
+     *
+     * @param job    {@link BrainXMLData#JOB_REQUEST} to call the getter of
+     *               the method, {@link BrainXMLData#JOB_MERGE} to call its
+     *               setter and journal the change.
+     * @param method The id of the {@link MetadataMethod}.
+     * @param param  The value passed to the setter.
+     *
+     * @return What the getter returned, or null for merges.
+     *
+     * @throws ReflectiveOperationException If the method doesn't exist or
+     *                                      fails.
+     */
+    public Object call(byte job, int method, Object param) throws ReflectiveOperationException
+    {
+        return call(job, method, param, false);
+    }
+
+    /**
+     * Calls a method of the metadata.
+     *
+     * @param job    {@link BrainXMLData#JOB_REQUEST} to call the getter of
+     *               the method, {@link BrainXMLData#JOB_MERGE} to call its
+     *               setter and journal the change.
+     * @param method The id of the {@link MetadataMethod}.
+     * @param param  The value passed to the setter.
+     * @param copy   Return a copy of what a request reads instead of the live
+     *               object, for responses that are serialized after the call.
+     *
+     * @return What the getter returned, or null for merges.
+     *
+     * @throws ReflectiveOperationException If the method doesn't exist or
+     *                                      fails.
+     */
+    public Object call(byte job, int method, Object param, boolean copy) throws ReflectiveOperationException
+    {
+        Handle handle = handles.get(method);
+        if (handle == null) {
+            throw new NoSuchMethodException("Unknown metadata method: " + method);
+        }
+
+        switch (job) {
+            case BrainXMLData.JOB_REQUEST:
+                return request(handle, copy);
+            case BrainXMLData.JOB_MERGE:
+                apply(handle, method, param, true);
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown job: " + job);
+        }
+    }
+
+    private Object request(Handle handle, boolean copy) throws ReflectiveOperationException
+    {
+        if (handle.getter == null) {
+            throw new NoSuchMethodException("No getter: " + handle.name);
+        }
+
+        handle.slot.lock.readLock().lock();
+        try {
+            Object value = (Object) handle.getter.invokeExact(handle.slot.target(handle.onMetadata));
+
+            if (copy) {
+                return copy(value);
+            }
+
+            // Callers in this JVM may change what they get, have it in the
+            // next checkpoint.
+            if (!isScalar(value)) {
+                changed = true;
+            }
+
+            return value;
+        }
+        catch (Error | ReflectiveOperationException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+        finally {
+            handle.slot.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of a value, made by serializing it as it's sent.
+     */
+    private static Object copy(Object value) throws IOException
+    {
+        if (isScalar(value)) {
+            return value;
+        }
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new BrainValue(value).write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        BrainValue copy = new BrainValue();
+        copy.readFields(in);
+
+        return copy.get();
+    }
+
+    private static boolean isScalar(Object value)
+    {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    private void apply(Handle handle, int method, Object param, boolean journal) throws ReflectiveOperationException
+    {
+        if (handle.setter == null) {
+            throw new NoSuchMethodException("No setter: " + handle.name);
+        }
+
+        handle.slot.lock.writeLock().lock();
+        try {
+            Metadata metadata = handle.slot.metadata();
+            Object target = handle.slot.target(handle.onMetadata);
+            Object updated = (Object) handle.setter.invokeExact(target, param);
+            if (!handle.onMetadata) {
+                metadata.setData(updated);
+            }
+            changed = true;
+
+            // Numbered while locked, so a checkpoint knows which merges it
+            // holds, and queued in the same order.
+            if (journal) {
+                synchronized (queue) {
+                    queue.add(new Record(sequence.incrementAndGet(), method, param));
+                }
+            }
+        }
+        catch (Error | ReflectiveOperationException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+        finally {
+            handle.slot.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes what's left of the journal and a last checkpoint.
+     */
+    public void close()
+    {
+        queue.add(STOP);
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds the methods of a metadata class and of its data to the table: the
+     * getter and setter of every {@link MetadataMethod} they declare, and of
+     * the data as a whole.
+     */
+    private void link(Slot slot) throws ReflectiveOperationException
+    {
+        Class<?> dataClass = Class.forName(slot.metadataClass.getName() + "$Data");
+
+        slots.put(slot.metadataClass, slot);
+        link(slot, slot.metadataClass, "Data");
+        link(slot, dataClass, "Data");
+        for (Class<?> c : new Class<?>[]{slot.metadataClass, dataClass}) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) && f.getType() == MetadataMethod.class) {
+                    MetadataMethod m = (MetadataMethod) f.get(null);
+                    link(slot, m.getOwner(), m.getMethodName());
+                }
+            }
+        }
+    }
+
+    private void link(Slot slot, Class<?> owner, String name) throws IllegalAccessException
+    {
+        Handle handle = new Handle(slot, owner == slot.metadataClass, find(owner, "get" + name, 0), find(owner, "set" + name, 1), owner.getName() + "." + name);
+        Handle other = handles.put(MetadataMethod.id(owner, name), handle);
+
+        if (other != null && !other.name.equals(handle.name)) {
+            throw new IllegalStateException("Metadata methods with the same id: " + other.name + ", " + handle.name);
+        }
+    }
+
+    /**
+     * Returns a handle to a public method taking the given number of
+     * parameters, that takes and returns objects, or null if there's none.
+     */
+    private static MethodHandle find(Class<?> clazz, String name, int parameters) throws IllegalAccessException
+    {
+        for (Method m : clazz.getMethods()) {
+            if (m.getName().equals(name) && m.getParameterTypes().length == parameters && !Modifier.isStatic(m.getModifiers())) {
+                return MethodHandles.publicLookup().unreflect(m).asType((parameters == 0) ? GETTER : SETTER);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Loads the checkpoint and replays the journal after it.
+     */
+    private void recover() throws IOException
+    {
+        long checkpointSequence = 0;
+
+        if (checkpointFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+                checkpointSequence = in.readLong();
+                int count = in.readInt();
+                DataInputBuffer buffer = new DataInputBuffer();
+
+                for (int i = 0; i < count; i++) {
+                    String name = Text.readString(in);
+                    byte[] bytes = unseal(readBytes(in));
+                    Slot slot = slots.get(Class.forName(name));
+
+                    buffer.reset(bytes, bytes.length);
+                    slot.metadata().readFields(buffer);
+                    slot.loaded = true;
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IOException("Error loading checkpoint: " + checkpointFile, e);
+            }
+        }
+
+        // Never checkpointed, so they're in their own files, if anywhere.
+        for (Slot slot : slots.values()) {
+            if (!slot.loaded) {
+                try {
+                    slot.metadata().read();
+                }
+                catch (ReflectiveOperationException e) {
+                    throw new IOException("Error loading metadata: " + slot.metadataClass.getName(), e);
+                }
+                slot.loaded = true;
+            }
+        }
+
+        long last = checkpointSequence;
+        int replayed = 0;
+        if (journalFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (true) {
+                    Record record;
+                    try {
+                        record = Record.read(in);
+                    }
+                    catch (EOFException e) {
+                        break;
+                    }
+
+                    // Older records are in the checkpoint, or were written twice.
+                    if (record.sequence > last) {
+                        Handle handle = handles.get(record.method);
+                        if (handle == null) {
+                            throw new NoSuchMethodException("Unknown metadata method: " + record.method);
+                        }
+
+                        apply(handle, record.method, record.param, false);
+                        last = Math.max(last, record.sequence);
+                        replayed++;
+                    }
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IOException("Error replaying journal: " + journalFile, e);
+            }
+        }
+
+        sequence.set(last);
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Metadata recovered. Checkpoint: " + checkpointSequence + ", journal records replayed: " + replayed);
+        }
+    }
+
+    /**
+     * Appends records to the journal and syncs it once for all of them. If
+     * that fails the journal is cut back to where the records started, so
+     * they can be appended again after the last good record.
+     */
+    private void append(List<Record> records) throws IOException
+    {
+        // A journal that couldn't be cut back is replaced by a checkpoint,
+        // which holds the records too.
+        if (journalTorn) {
+            checkpoint();
+            journalTorn = false;
+        }
+
+        long start = journalFileOut.getChannel().position();
+        try {
+            for (Record record : records) {
+                record.write(journalOut);
+            }
+
+            journalOut.flush();
+            journalFileOut.getChannel().force(false);
+        }
+        catch (IOException e) {
+            // Drop what's still buffered along with what was written.
+            journalOut = new DataOutputStream(new BufferedOutputStream(journalFileOut));
+            try {
+                journalFileOut.getChannel().truncate(start);
+                journalFileOut.getChannel().position(start);
+            }
+            catch (IOException te) {
+                journalTorn = true;
+                LOG.error("Error cutting back metadata journal. Error: " + te.toString());
+            }
+
+            throw e;
+        }
+
+        journalRecords += records.size();
+    }
+
+    /**
+     * Writes all the metadata to a new checkpoint and starts a new journal.
+     */
+    private void checkpoint() throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        DataOutputBuffer metadataOut = new DataOutputBuffer();
+        long checkpointSequence;
+        List<Slot> all = new ArrayList<>(slots.values());
+        // Always lock in the same order.
+        Collections.sort(all, new Comparator<Slot>()
+        {
+            @Override
+            public int compare(Slot a, Slot b)
+            {
+                return a.metadataClass.getName().compareTo(b.metadataClass.getName());
+            }
+        });
+
+        for (Slot slot : all) {
+            slot.lock.writeLock().lock();
+        }
+        try {
+            checkpointSequence = sequence.get();
+            changed = false;
+            out.writeLong(checkpointSequence);
+            out.writeInt(all.size());
+            for (Slot slot : all) {
+                metadataOut.reset();
+                slot.metadata().write(metadataOut);
+                Text.writeString(out, slot.metadataClass.getName());
+                writeBytes(out, seal(metadataOut.getData(), metadataOut.getLength()));
+            }
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IOException("Error writing checkpoint.", e);
+        }
+        finally {
+            for (int i = all.size() - 1; i >= 0; i--) {
+                all.get(i).lock.writeLock().unlock();
+            }
+        }
+
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            fileOut.write(out.getData(), 0, out.getLength());
+            fileOut.getChannel().force(true);
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Records still queued are in the checkpoint, they're skipped on replay.
+        if (journalOut != null) {
+            journalOut.close();
+        }
+        journalFileOut = new FileOutputStream(journalFile, false);
+        journalOut = new DataOutputStream(new BufferedOutputStream(journalFileOut));
+        journalRecords = 0;
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Metadata checkpoint written. Sequence: " + checkpointSequence);
+        }
+    }
+
+    private static byte[] seal(byte[] bytes, int length) throws IOException
+    {
+        if (!AIMEConstants.METADATA_ENCRYPT.getBooleanConstant()) {
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, 0, copy, 0, length);
+
+            return copy;
+        }
+
+        return crypt(bytes, length, Cipher.ENCRYPT_MODE);
+    }
+
+    private static byte[] unseal(byte[] bytes) throws IOException
+    {
+        return AIMEConstants.METADATA_ENCRYPT.getBooleanConstant() ? crypt(bytes, bytes.length, Cipher.DECRYPT_MODE) : bytes;
+    }
+
+    private static byte[] crypt(byte[] bytes, int length, int mode) throws IOException
+    {
+        try {
+            return Encryption.getCipher(CIPHER, AIMEConstants.METADATA_KEY.getStringConstant(), AIMEConstants.METADATA_ENCODING.getStringConstant(), mode).doFinal(bytes, 0, length);
+        }
+        catch (GeneralSecurityException e) {
+            throw new IOException("Error encrypting metadata.", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException
+    {
+        WritableUtils.writeVInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * A metadata class and the lock of its data.
+     */
+    private static class Slot
+    {
+
+        final Class<?> metadataClass;
+        final Method getInstance;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        boolean loaded = false;
+
+        Slot(Class<?> metadataClass) throws NoSuchMethodException
+        {
+            this.metadataClass = metadataClass;
+            this.getInstance = metadataClass.getMethod("getInstance");
+        }
+
+        /**
+         * The singleton is replaced when its file is read, so it's always
+         * looked up.
+         */
+        Metadata metadata() throws ReflectiveOperationException
+        {
+            return (Metadata) getInstance.invoke(null);
+        }
+
+        /**
+         * The object methods are called on, the metadata itself or its data.
+         */
+        Object target(boolean onMetadata) throws ReflectiveOperationException
+        {
+            Metadata metadata = metadata();
+
+            return onMetadata ? metadata : metadata.getData();
+        }
+    }
+
+    /**
+     * The getter and setter of a {@link MetadataMethod}.
+     */
+    private static class Handle
+    {
+
+        final Slot slot;
+        final boolean onMetadata;
+        final MethodHandle getter;
+        final MethodHandle setter;
+        final String name;
+
+        Handle(Slot slot, boolean onMetadata, MethodHandle getter, MethodHandle setter, String name)
+        {
+            this.slot = slot;
+            this.onMetadata = onMetadata;
+            this.getter = getter;
+            this.setter = setter;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A merge, as it's written to the journal.
+     */
+    private static class Record
+    {
+
+        final long sequence;
+        final int method;
+        final Object param;
+
+        Record(long sequence, int method, Object param)
+        {
+            this.sequence = sequence;
+            this.method = method;
+            this.param = param;
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            DataOutputBuffer param = new DataOutputBuffer();
+            new BrainValue(this.param).write(param);
+
+            out.writeLong(sequence);
+            out.writeInt(method);
+            writeBytes(out, seal(param.getData(), param.getLength()));
+        }
+
+        /**
+         * Reads the next record. A record cut short by a crash is taken as
+         * the end of the journal.
+         */
+        static Record read(DataInputStream in) throws IOException
+        {
+            long sequence = in.readLong();
+            int method = in.readInt();
+            BrainValue param = new BrainValue();
+            try {
+                byte[] bytes = unseal(readBytes(in));
+                DataInputBuffer buffer = new DataInputBuffer();
+                buffer.reset(bytes, bytes.length);
+                param.readFields(buffer);
+            }
+            catch (IOException e) {
+                throw new EOFException("Truncated record: " + sequence);
+            }
+
+            return new Record(sequence, method, param.get());
+        }
+    }
+
+    /**
+     * Writes the queued merges to the journal, a batch at a time, and takes
+     * the checkpoints.
+     */
+    private class Writer implements Runnable
+    {
+
+        @Override
+        public void run()
+        {
+            long interval = AIMEConstants.METADATA_CHECKPOINT_INTERVAL.getLongConstant();
+            int maxRecords = AIMEConstants.METADATA_JOURNAL_MAX_RECORDS.getIntegerConstant();
+            long nextCheckpoint = System.currentTimeMillis() + interval;
+            List<Record> batch = new ArrayList<>();
+            boolean stop = false;
+
+            try {
+                while (!stop) {
+                    try {
+                        Record first = queue.poll(Math.max(1, nextCheckpoint - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        if (first != null) {
+                            batch.add(first);
+                            queue.drainTo(batch);
+                            stop = batch.remove(STOP);
+                            append(batch);
+                            batch.clear();
+                        }
+
+                        long now = System.currentTimeMillis();
+                        if (!stop && (now >= nextCheckpoint || journalRecords >= maxRecords)) {
+                            if (changed) {
+                                checkpoint();
+                            }
+                            nextCheckpoint = now + interval;
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        stop = true;
+                    }
+                    catch (IOException e) {
+                        // Keep the records, they're retried with the next batch.
+                        LOG.error("Error writing metadata. Error: " + e.toString(), e);
+                        try {
+                            Thread.sleep(1000);
+                        }
+                        catch (InterruptedException ie) {
+                            stop = true;
+                        }
+                    }
+                }
+            }
+            finally {
+                // The last checkpoint holds whatever the journal missed.
+                try {
+                    checkpoint();
+                }
+                catch (IOException e) {
+                    LOG.error("Error writing last metadata checkpoint. Error: " + e.toString(), e);
+                }
+
+                try {
+                    journalOut.close();
+                }
+                catch (IOException e) {
+                    LOG.warn("Error closing metadata journal. Error: " + e.toString());
+                }
+            }
+        }
+    }
+}
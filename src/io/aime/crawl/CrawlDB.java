@@ -1,5 +1,6 @@
 package io.aime.crawl;
 
+import io.aime.net.URLFilterSnapshot;
 import io.aime.util.AIMEConfiguration;
 import io.aime.util.AIMEConstants;
 import io.aime.util.AIMEJob;
@@ -73,6 +74,12 @@ public class CrawlDB extends Configured implements Tool
         job.setBoolean(CRAWLDB_ADDITIONS_ALLOWED, additionsAllowed);
         job.setBoolean(CrawlDBFilter.URL_FILTERING, filter);
         job.setBoolean(CrawlDBFilter.URL_NORMALIZING, normalize);
+        if (filter)
+        {
+            URLFilterSnapshot.publish(job);
+        }
+        // The URLs generated since the last update get marked in the DBase.
+        Path[] generated = GeneratedSet.configure(job, crawlDb);
 
         for (Path segment : segments)
         {
@@ -115,6 +122,7 @@ public class CrawlDB extends Configured implements Tool
         }
 
         CrawlDB.install(job, crawlDb);
+        GeneratedSet.delete(getConf(), generated);
     }
 
     public static JobConf createJob(Configuration config, Path crawlDb) throws IOException
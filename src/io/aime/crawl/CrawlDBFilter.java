@@ -1,13 +1,12 @@
 package io.aime.crawl;
 
-import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.MetadataGeneral;
-import io.aime.brain.xml.Handler;
 import io.aime.net.URLFilter;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.net.URLFilters;
 import io.aime.net.URLNormalizers;
+import io.aime.util.AIMEConstants;
 import java.io.IOException;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
@@ -19,6 +18,11 @@ import org.apache.log4j.Logger;
  * This class provides a way to separate the URL normalization and filtering
  * steps from the rest of CrawlDb manipulation code.
  *
+ * <p>
+ * It also marks the entries of the DBase which the Generator left in the
+ * generated sets of the job, as the Generator used to do itself.
+ * </p>
+ *
  * @author Andreas P. Koenzen <akc at apkc.net>
  * @version 0.2
  */
@@ -35,6 +39,7 @@ public class CrawlDBFilter implements Mapper<Text, CrawlDatum, Text, CrawlDatum>
     private URLNormalizers normalizers;
     private String scope;
     private Text newKey = new Text();
+    private GeneratedSet[] generated;
 
     @Override
     public void configure(JobConf job)
@@ -43,30 +48,35 @@ public class CrawlDBFilter implements Mapper<Text, CrawlDatum, Text, CrawlDatum>
         urlNormalizers = job.getBoolean(URL_NORMALIZING, false);
 
         if (urlFiltering) {
-            filters = (URLFilter[]) Brain
-                    .getClient(job)
-                    .execute(Handler
-                            .makeXMLRequest(BrainXMLData
-                                    .newBuild()
-                                    .setJob(BrainXMLData.JOB_REQUEST)
-                                    .setClazz(MetadataGeneral.Data.class)
-                                    .setFunction(MetadataGeneral.Data.FILTERS.getMethodName()))).get();
+            filters = URLFilterSnapshot.get(job);
         }
 
         if (urlNormalizers) {
             scope = job.get(URL_NORMALIZING_SCOPE, URLNormalizers.SCOPE_CRAWLDB);
             normalizers = new URLNormalizers(job, scope);
         }
+
+        try {
+            generated = GeneratedSet.open(job);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Can't open generated sets. Error: " + e.toString(), e);
+        }
     }
 
     @Override
     public void close()
     {
+        GeneratedSet.close(generated);
     }
 
     @Override
     public void map(Text key, CrawlDatum value, OutputCollector<Text, CrawlDatum> output, Reporter reporter) throws IOException
     {
+        if (generated.length > 0 && CrawlDatum.hasDBStatus(value)) {
+            mark(key, value);
+        }
+
         String url = key.toString();
 
         if (urlNormalizers) {
@@ -94,4 +104,21 @@ public class CrawlDBFilter implements Mapper<Text, CrawlDatum, Text, CrawlDatum>
             output.collect(newKey, value);
         }
     }
+
+    /**
+     * Marks an entry of the DBase with the time it was last generated, if a
+     * generated set has it.
+     */
+    private void mark(Text key, CrawlDatum value) throws IOException
+    {
+        long time = GeneratedSet.getGenerateTime(generated, key);
+        if (time <= 0L) {
+            return;
+        }
+
+        LongWritable old = (LongWritable) value.getMetadata().get(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant());
+        if (old == null || old.get() < time) {
+            value.getMetadata().put(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant(), new LongWritable(time));
+        }
+    }
 }
@@ -8,10 +8,8 @@ import io.aime.util.AIMEConstants;
 import io.aime.util.GeneralUtilities;
 import io.aime.util.SeedTools;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map.Entry;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -22,10 +20,18 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
-import org.apache.hadoop.util.PriorityQueue;
 import org.apache.log4j.Logger;
 
 /**
+ * Merges the entries of a URL, from the DBase and from the segments, into its
+ * new entry in the DBase.
+ *
+ * <p>
+ * The values of a URL are merged in a single pass. The ones kept until the
+ * end are copied into buffers of the reducer, so the memory used per URL stays
+ * the same no matter how many links point to it.
+ * </p>
+ *
  * @author Andreas P. Koenzen <akc at apkc.net>
  * @version 0.2
  */
@@ -35,7 +41,11 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
     private static final Logger LOG = Logger.getLogger(CrawlDBReducer.class.getName());
     private int retryMax;
     private CrawlDatum result = new CrawlDatum();
-    private InlinkPriorityQueue linked = null;
+    // Buffers for the values kept, reused for every URL.
+    private final CrawlDatum oldBuffer = new CrawlDatum();
+    private final CrawlDatum fetchBuffer = new CrawlDatum();
+    private final CrawlDatum parseMetaBuffer = new CrawlDatum();
+    private final InlinkAggregator linked = new InlinkAggregator();
     private boolean additionsAllowed;
     private int maxInterval;
     private FetchSchedule schedule;
@@ -53,8 +63,6 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
         int oldMaxInterval = job.getInt("db.max.fetch.interval", 0);
         maxInterval = (oldMaxInterval > 0 && job.getInt("db.fetch.interval.max", 0) == 0) ? oldMaxInterval * FetchSchedule.SECONDS_PER_DAY : job.getInt("db.fetch.interval.max", 0);
         schedule = FetchScheduleFactory.getFetchSchedule(job);
-        int maxLinks = job.getInt("db.update.max.inlinks", 10000);
-        linked = new InlinkPriorityQueue(maxLinks);
         newlyDiscoveredPagesScore = job.getFloat("db.score.newlydiscoveredlinks", 0.0f);
         seedRefreshRate = job.getInt("seed.refresh.rate", 900);
     }
@@ -67,14 +75,12 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
     @Override
     public void reduce(Text key, Iterator<CrawlDatum> values, OutputCollector<Text, CrawlDatum> output, Reporter reporter) throws IOException
     {
-        CrawlDatum newEntry = new CrawlDatum();
-        CrawlDatum oldEntry = new CrawlDatum();
-        boolean fetchSet = false;
-        boolean oldSet = false;
+        CrawlDatum oldEntry = null;
+        CrawlDatum newEntry = null;
+        CrawlDatum parseMeta = null;
         long signature = 0L;
         boolean multiple = false; // avoid deep copy when only single value exists
         linked.clear();
-        org.apache.hadoop.io.MapWritable metaFromParse = null;
 
         while (values.hasNext())
         {
@@ -87,25 +93,9 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
 
             if (CrawlDatum.hasDBStatus(datum))
             {
-                if (!oldSet)
-                {
-                    if (multiple)
-                    {
-                        oldEntry.set(datum);
-                    }
-                    else
-                    {
-                        oldEntry = datum; // no need for a deep copy - this is the only value
-                    }
-
-                    oldSet = true;
-                }
-                else
-                {
-                    if (oldEntry.getFetchTime() < datum.getFetchTime())
-                    { // always take the latest version
-                        oldEntry.set(datum);
-                    }
+                if (oldEntry == null || oldEntry.getFetchTime() < datum.getFetchTime())
+                { // always take the latest version
+                    oldEntry = CrawlDBReducer.keep(datum, oldBuffer, multiple);
                 }
 
                 continue;
@@ -113,25 +103,9 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
 
             if (CrawlDatum.hasFetchStatus(datum))
             {
-                if (!fetchSet)
-                {
-                    if (multiple)
-                    {
-                        newEntry.set(datum);
-                    }
-                    else
-                    {
-                        newEntry = datum;
-                    }
-
-                    fetchSet = true;
-                }
-                else
-                {
-                    if (newEntry.getFetchTime() < datum.getFetchTime())
-                    { // always take the latest version
-                        newEntry.set(datum);
-                    }
+                if (newEntry == null || newEntry.getFetchTime() < datum.getFetchTime())
+                { // always take the latest version
+                    newEntry = CrawlDBReducer.keep(datum, fetchBuffer, multiple);
                 }
 
                 continue;
@@ -140,38 +114,20 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
             switch (datum.getStatus())
             { // collect other info
                 case CrawlDatum.STATUS_LINKED:
-                    CrawlDatum link;
-
-                    if (multiple)
-                    {
-                        link = new CrawlDatum();
-                        link.set(datum);
-                    }
-                    else
-                    {
-                        link = datum;
-                    }
-
-                    linked.insert(link);
+                    linked.add(datum, multiple);
                     break;
                 case CrawlDatum.STATUS_SIGNATURE:
                     signature = datum.getSignature();
                     break;
                 case CrawlDatum.STATUS_PARSE_META:
-                    metaFromParse = datum.getMetadata();
+                    parseMeta = CrawlDBReducer.keep(datum, parseMetaBuffer, multiple);
                     break;
                 default:
                     LOG.warn("Unknown state. Key: " + key + ", Datum: " + datum);
             }
         }
 
-        // Copy the content of the queue into a List in reversed order.
-        int numLinks = linked.size();
-        List<CrawlDatum> linkList = new ArrayList<>(numLinks);
-        for (int i = numLinks - 1; i >= 0; i--)
-        {
-            linkList.add(linked.pop());
-        }
+        boolean oldSet = (oldEntry != null);
 
         // If it doesn't already exist, skip it.
         if (!oldSet && !additionsAllowed)
@@ -180,14 +136,13 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
         }
 
         // If there is no fetched datum, perhaps there is a link.
-        if (!fetchSet && linkList.size() > 0)
+        if (newEntry == null)
         {
-            newEntry = linkList.get(0);
-            fetchSet = true;
+            newEntry = linked.getBest();
         }
 
         // Still no new data - record only unchanged oldEntry data, if exists, and return.
-        if (!fetchSet)
+        if (newEntry == null)
         {
             if (oldSet)
             { // at this point at least "oldEntry" should be present
@@ -213,11 +168,11 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
         result.set(newEntry);
         if (oldSet)
         {
-            if (oldEntry.getMetadata().size() > 0)
+            if (oldEntry.hasMetadata())
             { // Copy metadata from oldEntry, if exists.
                 result.putAllMetadata(oldEntry);
 
-                if (newEntry.getMetadata().size() > 0)
+                if (newEntry.hasMetadata())
                 { // overlay with new, if any
                     result.putAllMetadata(newEntry);
                 }
@@ -356,9 +311,9 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
 
                     result.setSignature(signature);
 
-                    if (metaFromParse != null)
+                    if (parseMeta != null && parseMeta.hasMetadata())
                     {
-                        for (Entry<Writable, Writable> e : metaFromParse.entrySet())
+                        for (Entry<Writable, Writable> e : parseMeta.getMetadata().entrySet())
                         {
                             result.getMetadata().put(e.getKey(), e.getValue());
                         }
@@ -410,27 +365,71 @@ public class CrawlDBReducer implements Reducer<Text, CrawlDatum, Text, CrawlDatu
         }
 
         // Remove generation time, if any.
-        result.getMetadata().remove(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant());
+        if (result.hasMetadata())
+        {
+            result.getMetadata().remove(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant());
+        }
 
         // Collect the result.
         output.collect(key, result);
     }
+
+    /**
+     * Returns a value that will still be valid after the iterator moves on. The
+     * iterator reuses its values, so if there are more to come the value is
+     * copied into a buffer.
+     *
+     * @param datum    The value.
+     * @param buffer   The buffer to copy it into.
+     * @param multiple TRUE if there may be more values.
+     *
+     * @return The value, or the buffer.
+     */
+    static CrawlDatum keep(CrawlDatum datum, CrawlDatum buffer, boolean multiple)
+    {
+        if (!multiple)
+        {
+            return datum; // no need for a deep copy - this is the only value
+        }
+
+        buffer.set(datum);
+
+        return buffer;
+    }
 }
 
-class InlinkPriorityQueue extends PriorityQueue<CrawlDatum>
+/**
+ * Keeps the best scoring link to a URL, copying it only when a better one
+ * comes.
+ */
+class InlinkAggregator
 {
 
-    public InlinkPriorityQueue(int maxSize)
+    private final CrawlDatum buffer = new CrawlDatum();
+    private CrawlDatum best;
+
+    void clear()
     {
-        initialize(maxSize);
+        best = null;
     }
 
-    @Override
-    protected boolean lessThan(Object arg0, Object arg1)
+    /**
+     * @param link     The link.
+     * @param multiple TRUE if the link may be reused once this returns.
+     */
+    void add(CrawlDatum link, boolean multiple)
     {
-        CrawlDatum candidate = (CrawlDatum) arg0;
-        CrawlDatum least = (CrawlDatum) arg1;
+        if (best == null || link.getScore() > best.getScore())
+        {
+            best = CrawlDBReducer.keep(link, buffer, multiple);
+        }
+    }
 
-        return candidate.getScore() > least.getScore();
+    /**
+     * @return The best scoring link, or null if there were none.
+     */
+    CrawlDatum getBest()
+    {
+        return best;
     }
 }
@@ -1,6 +1,5 @@
 package io.aime.crawl;
 
-import io.aime.aimemisc.digest.SignatureComparator;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -8,15 +7,26 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.VersionMismatchException;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
  * The crawl state of a document.
  *
+ * <p>
+ * Since version 8 the fixed fields come first, with times and intervals as
+ * variable length numbers, followed by the metadata as a block of bytes with
+ * its length in front. The block is only decoded the first time the metadata
+ * is asked for, so jobs that only look at status, times and scores, as most
+ * scans of the DBase do, never decode it, and pass it through as it was read.
+ * </p>
+ *
  * @author Andreas P. Koenzen <akc at apkc.net>
  * @version 0.2
  */
@@ -45,11 +55,13 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
     public static final byte STATUS_LINKED = 0x43; // Page discovered through a link.
     public static final byte STATUS_PARSE_META = 0x44; // Page got metadata from a parser.
     public static final HashMap<Byte, String> statNames = new HashMap<>();
-    private static final byte CUR_VERSION = 7;
-    private static final int SCORE_OFFSET = 1 + 1 + 8 + 1 + 4;
-    private static final int SCORE_GRAVITY_OFFSET = CrawlDatum.SCORE_OFFSET + 4;
-    private static final int SIGNATURE_OFFSET = SCORE_GRAVITY_OFFSET + 4 + 8 + 8;
-    private static final byte SIGNATURE_LENGTH = 8;
+    private static final byte CUR_VERSION = 8;
+    // Offsets of the fixed fields since version 8.
+    private static final int STATUS_OFFSET = 1;
+    private static final int SCORE_OFFSET = STATUS_OFFSET + 1;
+    private static final int SCORE_GRAVITY_OFFSET = SCORE_OFFSET + 4;
+    private static final int RETRIES_OFFSET = SCORE_GRAVITY_OFFSET + 4;
+    private static final int FETCH_TIME_OFFSET = RETRIES_OFFSET + 1;
     // Properties of a particular CrawlDatum. All this fields should be serializable.
     private byte status;
     private long fetchTime = System.currentTimeMillis();
@@ -61,6 +73,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
     private float scoreGravity = 10.0f;
     private long signature;
     private MapWritable metadata;
+    // The metadata as it was read, until it's decoded.
+    private byte[] metadataBytes;
+    private int metadataLength;
 
     static
     {
@@ -218,6 +233,17 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
     public void setMetadata(MapWritable mapWritable)
     {
         this.metadata = new MapWritable(mapWritable);
+        this.metadataLength = 0;
+    }
+
+    /**
+     * Tells if there is metadata, without decoding it.
+     *
+     * @return TRUE if there is metadata.
+     */
+    public boolean hasMetadata()
+    {
+        return metadataLength > 0 || (metadata != null && !metadata.isEmpty());
     }
 
     public void putAllMetadata(CrawlDatum other)
@@ -230,6 +256,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
 
     public MapWritable getMetadata()
     {
+        decodeMetadata();
         if (metadata == null)
         {
             metadata = new org.apache.hadoop.io.MapWritable();
@@ -238,6 +265,31 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         return metadata;
     }
 
+    /**
+     * Decodes the metadata read, if it wasn't yet.
+     */
+    private void decodeMetadata()
+    {
+        if (metadataLength == 0)
+        {
+            return;
+        }
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(metadataBytes, metadataLength);
+        metadata = new org.apache.hadoop.io.MapWritable();
+        metadataLength = 0;
+
+        try
+        {
+            metadata.readFields(in);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Can't decode metadata. Error: " + e.toString(), e);
+        }
+    }
+
     public static CrawlDatum read(DataInput in) throws IOException
     {
         CrawlDatum result = new CrawlDatum();
@@ -255,6 +307,15 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
             throw new VersionMismatchException(CUR_VERSION, version);
         }
 
+        metadata = null;
+        metadataLength = 0;
+
+        if (version > 7)
+        {
+            readFieldsCompact(in);
+            return;
+        }
+
         status = in.readByte();
         fetchTime = in.readLong();
         retries = in.readByte();
@@ -315,28 +376,62 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         }
     }
 
+    /**
+     * Reads the fields of version 8 and later. The metadata is kept as read.
+     */
+    private void readFieldsCompact(DataInput in) throws IOException
+    {
+        status = in.readByte();
+        score = in.readFloat();
+        scoreGravity = in.readFloat();
+        retries = in.readByte();
+        fetchTime = WritableUtils.readVLong(in);
+        fetchInterval = WritableUtils.readVInt(in);
+        modifiedTime = WritableUtils.readVLong(in);
+        discoveryTime = WritableUtils.readVLong(in);
+        signature = in.readLong();
+
+        int length = WritableUtils.readVInt(in);
+        if (length > 0)
+        {
+            if (metadataBytes == null || metadataBytes.length < length)
+            {
+                metadataBytes = new byte[length];
+            }
+            in.readFully(metadataBytes, 0, length);
+            metadataLength = length;
+        }
+    }
+
     @Override
     public void write(DataOutput out) throws IOException
     {
         out.writeByte(CUR_VERSION); // store current version
         out.writeByte(status);
-        out.writeLong(fetchTime);
-        out.writeByte(retries);
-        out.writeInt(fetchInterval);
         out.writeFloat(score);
         out.writeFloat(scoreGravity);
-        out.writeLong(modifiedTime);
-        out.writeLong(discoveryTime);
+        out.writeByte(retries);
+        WritableUtils.writeVLong(out, fetchTime);
+        WritableUtils.writeVInt(out, fetchInterval);
+        WritableUtils.writeVLong(out, modifiedTime);
+        WritableUtils.writeVLong(out, discoveryTime);
         out.writeLong(signature);
 
-        if (metadata != null && metadata.size() > 0)
+        if (metadataLength > 0)
+        { // never decoded, goes out as it came in
+            WritableUtils.writeVInt(out, metadataLength);
+            out.write(metadataBytes, 0, metadataLength);
+        }
+        else if (metadata != null && metadata.size() > 0)
         {
-            out.writeBoolean(true);
-            metadata.write(out);
+            DataOutputBuffer buffer = new DataOutputBuffer();
+            metadata.write(buffer);
+            WritableUtils.writeVInt(out, buffer.getLength());
+            out.write(buffer.getData(), 0, buffer.getLength());
         }
         else
         {
-            out.writeBoolean(false);
+            WritableUtils.writeVInt(out, 0);
         }
     }
 
@@ -356,8 +451,19 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         modifiedTime = old.modifiedTime;
         discoveryTime = old.discoveryTime;
         signature = old.signature;
+        metadataLength = 0;
 
-        if (old.metadata != null)
+        if (old.metadataLength > 0)
+        { // copy the bytes, still no need to decode them
+            metadata = null;
+            if (metadataBytes == null || metadataBytes.length < old.metadataLength)
+            {
+                metadataBytes = new byte[old.metadataLength];
+            }
+            System.arraycopy(old.metadataBytes, 0, metadataBytes, 0, old.metadataLength);
+            metadataLength = old.metadataLength;
+        }
+        else if (old.metadata != null)
         {
             metadata = new org.apache.hadoop.io.MapWritable(old.metadata); // make a deep copy
         }
@@ -413,7 +519,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
             return (that.discoveryTime - discoveryTime) > 0 ? 1 : -1;
         }
 
-        return SignatureComparator._compare(this, that);
+        return Long.compare(signature, that.signature);
     }
 
     public static class Comparator extends WritableComparator
@@ -421,12 +527,21 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
 
         public Comparator()
         {
-            super(CrawlDatum.class);
+            super(CrawlDatum.class, true);
         }
 
+        /**
+         * Compares as {@link CrawlDatum#compareTo(CrawlDatum)} does, reading
+         * the fields straight from the bytes. Older versions are read in full.
+         */
         @Override
         public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
         {
+            if (b1[s1] < 8 || b2[s2] < 8)
+            {
+                return super.compare(b1, s1, l1, b2, s2, l2);
+            }
+
             float score1 = Comparator.readFloat(b1, s1 + SCORE_OFFSET);
             float score2 = Comparator.readFloat(b2, s2 + SCORE_OFFSET);
             if (score2 != score1)
@@ -441,42 +556,68 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
                 return (scoreGravity2 - scoreGravity1) > 0 ? 1 : -1;
             }
 
-            int status1 = b1[s1 + 1];
-            int status2 = b2[s2 + 1];
+            int status1 = b1[s1 + STATUS_OFFSET];
+            int status2 = b2[s2 + STATUS_OFFSET];
             if (status2 != status1)
             {
-                return status2 - status1;
+                return status1 - status2;
             }
 
-            long fetchTime1 = Comparator.readLong(b1, s1 + 1 + 1);
-            long fetchTime2 = Comparator.readLong(b2, s2 + 1 + 1);
-            if (fetchTime2 != fetchTime1)
+            try
             {
-                return (fetchTime2 - fetchTime1) > 0 ? 1 : -1;
-            }
+                // fetchTime, fetchInterval, modifiedTime, discoveryTime
+                int i1 = s1 + FETCH_TIME_OFFSET;
+                int i2 = s2 + FETCH_TIME_OFFSET;
+                long fetchTime1 = Comparator.readVLong(b1, i1);
+                long fetchTime2 = Comparator.readVLong(b2, i2);
+                if (fetchTime2 != fetchTime1)
+                {
+                    return (fetchTime2 - fetchTime1) > 0 ? 1 : -1;
+                }
 
-            int retries1 = b1[s1 + 1 + 1 + 8];
-            int retries2 = b2[s2 + 1 + 1 + 8];
-            if (retries2 != retries1)
-            {
-                return retries2 - retries1;
-            }
+                int retries1 = b1[s1 + RETRIES_OFFSET];
+                int retries2 = b2[s2 + RETRIES_OFFSET];
+                if (retries2 != retries1)
+                {
+                    return retries2 - retries1;
+                }
 
-            int fetchInterval1 = Comparator.readInt(b1, s1 + 1 + 1 + 8 + 1);
-            int fetchInterval2 = Comparator.readInt(b2, s2 + 1 + 1 + 8 + 1);
-            if (fetchInterval2 != fetchInterval1)
-            {
-                return (fetchInterval2 - fetchInterval1) > 0 ? 1 : -1;
-            }
+                i1 += WritableUtils.decodeVIntSize(b1[i1]);
+                i2 += WritableUtils.decodeVIntSize(b2[i2]);
+                long fetchInterval1 = Comparator.readVLong(b1, i1);
+                long fetchInterval2 = Comparator.readVLong(b2, i2);
+                if (fetchInterval2 != fetchInterval1)
+                {
+                    return (fetchInterval2 - fetchInterval1) > 0 ? 1 : -1;
+                }
+
+                i1 += WritableUtils.decodeVIntSize(b1[i1]);
+                i2 += WritableUtils.decodeVIntSize(b2[i2]);
+                long modifiedTime1 = Comparator.readVLong(b1, i1);
+                long modifiedTime2 = Comparator.readVLong(b2, i2);
+                if (modifiedTime2 != modifiedTime1)
+                {
+                    return (modifiedTime2 - modifiedTime1) > 0 ? 1 : -1;
+                }
 
-            long modifiedTime1 = Comparator.readLong(b1, s1 + SCORE_OFFSET + 4 + 4);
-            long modifiedTime2 = Comparator.readLong(b2, s2 + SCORE_OFFSET + 4 + 4);
-            if (modifiedTime2 != modifiedTime1)
+                i1 += WritableUtils.decodeVIntSize(b1[i1]);
+                i2 += WritableUtils.decodeVIntSize(b2[i2]);
+                long discoveryTime1 = Comparator.readVLong(b1, i1);
+                long discoveryTime2 = Comparator.readVLong(b2, i2);
+                if (discoveryTime2 != discoveryTime1)
+                {
+                    return (discoveryTime2 - discoveryTime1) > 0 ? 1 : -1;
+                }
+
+                i1 += WritableUtils.decodeVIntSize(b1[i1]);
+                i2 += WritableUtils.decodeVIntSize(b2[i2]);
+
+                return Long.compare(Comparator.readLong(b1, i1), Comparator.readLong(b2, i2));
+            }
+            catch (IOException e)
             {
-                return (modifiedTime2 - modifiedTime1) > 0 ? 1 : -1;
+                throw new IllegalArgumentException(e);
             }
-
-            return SignatureComparator._compare(b1, SIGNATURE_OFFSET, SIGNATURE_LENGTH, b2, SIGNATURE_OFFSET, SIGNATURE_LENGTH);
         }
     }
 
@@ -501,6 +642,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         buf.append("Signature: ").append(getSignature()).append("\n");
         buf.append("Metadata: ");
 
+        decodeMetadata();
         if (metadata != null)
         {
             for (Entry<Writable, Writable> e : metadata.entrySet())
@@ -531,6 +673,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         buf.append("<li><span class=\"subtitle\">Signature:</span> ").append(getSignature()).append("</li>");
         buf.append("<li><span class=\"subtitle\">Metadata:</span> ");
 
+        decodeMetadata();
         if (metadata != null)
         {
             for (Entry<Writable, Writable> e : metadata.entrySet())
@@ -573,6 +716,8 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
         }
 
         CrawlDatum other = (CrawlDatum) o;
+        decodeMetadata();
+        other.decodeMetadata();
         boolean res
                 = (status == other.status)
                 && (fetchTime == other.fetchTime)
@@ -597,6 +742,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
     {
         int res = 0;
 
+        decodeMetadata();
         if (metadata != null)
         {
             res ^= metadata.entrySet().hashCode();
@@ -620,7 +766,13 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable
     {
         try
         {
-            return super.clone();
+            CrawlDatum result = (CrawlDatum) super.clone();
+            if (metadataBytes != null)
+            { // the buffer is reused by readFields()
+                result.metadataBytes = metadataBytes.clone();
+            }
+
+            return result;
         }
         catch (CloneNotSupportedException e)
         {
@@ -0,0 +1,286 @@
+package io.aime.crawl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.log4j.Logger;
+
+/**
+ * The URLs of a generated segment, kept beside the DBase until the next
+ * update.
+ *
+ * <p>
+ * Instead of rewriting the whole DBase to mark the URLs it generated, the
+ * Generator writes one set per segment, a sorted MapFile of its URLs with a
+ * Bloom filter in front of it, so it won't generate them again for a while.
+ * The next update of the DBase marks those URLs as the Generator did, and
+ * deletes the sets.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class GeneratedSet
+{
+
+    private static final Logger LOG = Logger.getLogger(GeneratedSet.class.getName());
+    public static final String DIR_NAME = "generated";
+    /** The sets a job reads. */
+    public static final String SETS = "crawldb.generated.sets";
+    private static final String URLS = "urls";
+    private static final String BLOOM = "bloom";
+    private final long generateTime;
+    private final BloomFilter bloom;
+    private final MapFile.Reader urls;
+
+    private GeneratedSet(long generateTime, BloomFilter bloom, MapFile.Reader urls)
+    {
+        this.generateTime = generateTime;
+        this.bloom = bloom;
+        this.urls = urls;
+    }
+
+    /**
+     * Writes the set of a segment.
+     *
+     * @param conf         Configuration's object.
+     * @param crawlDb      The DBase.
+     * @param segment      The segment.
+     * @param generateTime The time it was generated.
+     *
+     * @throws IOException If the set can't be written.
+     */
+    public static void write(Configuration conf, Path crawlDb, Path segment, long generateTime) throws IOException
+    {
+        FileSystem fs = FileSystem.get(conf);
+        Path set = new Path(new Path(crawlDb, DIR_NAME), segment.getName());
+        Path unsorted = new Path(set, "unsorted");
+        Path urls = new Path(set, URLS);
+        Text url = new Text();
+        CrawlDatum datum = new CrawlDatum();
+        long count = 0;
+
+        // The URLs, as they come in the fetch list.
+        SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, unsorted, Text.class, NullWritable.class);
+        try {
+            for (FileStatus part : fs.listStatus(new Path(segment, CrawlDatum.GENERATE_DIR_NAME))) {
+                if (!part.getPath().getName().startsWith("part-")) {
+                    continue;
+                }
+
+                SequenceFile.Reader reader = new SequenceFile.Reader(fs, part.getPath(), conf);
+                try {
+                    while (reader.next(url, datum)) {
+                        writer.append(url, NullWritable.get());
+                        count++;
+                    }
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+
+        // Sorted on disk, and indexed.
+        fs.mkdirs(urls);
+        new SequenceFile.Sorter(fs, Text.class, NullWritable.class, conf).sort(new Path[]{unsorted}, new Path(urls, MapFile.DATA_FILE_NAME), true);
+        try {
+            MapFile.fix(fs, urls, Text.class, NullWritable.class, false, conf);
+        }
+        catch (Exception e) {
+            throw new IOException("Can't index generated set: " + urls, e);
+        }
+
+        // About 1% of false positives, which the MapFile weeds out.
+        int bits = (int) Math.min(Integer.MAX_VALUE, Math.max(64, count * 10));
+        BloomFilter bloom = new BloomFilter(bits, 7, Hash.MURMUR_HASH);
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(urls, MapFile.DATA_FILE_NAME), conf);
+        try {
+            while (reader.next(url)) {
+                bloom.add(key(url));
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        FSDataOutputStream out = fs.create(new Path(set, BLOOM));
+        try {
+            out.writeLong(generateTime);
+            bloom.write(out);
+        }
+        finally {
+            out.close();
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Generated set: " + set + " (" + count + " URLs)");
+        }
+    }
+
+    /**
+     * Names in a job the sets a DBase has now, so later ones are left alone.
+     *
+     * @param job     The job.
+     * @param crawlDb The DBase.
+     *
+     * @return The sets.
+     *
+     * @throws IOException If the sets can't be listed.
+     */
+    public static Path[] configure(Configuration job, Path crawlDb) throws IOException
+    {
+        FileSystem fs = FileSystem.get(job);
+        Path dir = new Path(crawlDb, DIR_NAME);
+        List<Path> sets = new ArrayList<>();
+
+        if (fs.exists(dir)) {
+            for (FileStatus set : fs.listStatus(dir)) {
+                // Sets being written have no filter yet.
+                if (set.isDir() && fs.exists(new Path(set.getPath(), BLOOM))) {
+                    sets.add(fs.makeQualified(set.getPath()));
+                }
+            }
+        }
+
+        job.set(SETS, StringUtils.arrayToString(toStrings(sets)));
+
+        return sets.toArray(new Path[sets.size()]);
+    }
+
+    /**
+     * Opens the sets named in a job.
+     *
+     * @param job The job.
+     *
+     * @return The sets.
+     *
+     * @throws IOException If a set can't be read.
+     */
+    public static GeneratedSet[] open(Configuration job) throws IOException
+    {
+        String[] names = job.getStrings(SETS);
+        if (names == null) {
+            return new GeneratedSet[0];
+        }
+
+        GeneratedSet[] sets = new GeneratedSet[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            Path set = new Path(names[i]);
+            FileSystem fs = set.getFileSystem(job);
+            FSDataInputStream in = fs.open(new Path(set, BLOOM));
+            try {
+                long generateTime = in.readLong();
+                BloomFilter bloom = new BloomFilter();
+                bloom.readFields(in);
+                sets[i] = new GeneratedSet(generateTime, bloom, new MapFile.Reader(fs, new Path(set, URLS).toString(), job));
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        return sets;
+    }
+
+    /**
+     * Returns when the newest of some sets generated a URL.
+     *
+     * @param sets The sets.
+     * @param url  The URL.
+     *
+     * @return The generate time, or 0 if none of them has it.
+     *
+     * @throws IOException If a set can't be read.
+     */
+    public static long getGenerateTime(GeneratedSet[] sets, Text url) throws IOException
+    {
+        long time = 0L;
+        Key key = null;
+
+        for (GeneratedSet set : sets) {
+            if (set.generateTime <= time) {
+                continue;
+            }
+
+            if (key == null) {
+                key = key(url);
+            }
+
+            if (set.bloom.membershipTest(key) && set.urls.get(url, NullWritable.get()) != null) {
+                time = set.generateTime;
+            }
+        }
+
+        return time;
+    }
+
+    /**
+     * Closes some sets.
+     *
+     * @param sets The sets, or null.
+     */
+    public static void close(GeneratedSet[] sets)
+    {
+        if (sets == null) {
+            return;
+        }
+
+        for (GeneratedSet set : sets) {
+            try {
+                set.urls.close();
+            }
+            catch (IOException e) {
+                LOG.warn("Error closing generated set. Error: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Deletes some sets.
+     *
+     * @param conf Configuration's object.
+     * @param sets The sets.
+     *
+     * @throws IOException If a set can't be deleted.
+     */
+    public static void delete(Configuration conf, Path[] sets) throws IOException
+    {
+        for (Path set : sets) {
+            set.getFileSystem(conf).delete(set, true);
+        }
+    }
+
+    private static Key key(Text url)
+    {
+        return new Key(Arrays.copyOf(url.getBytes(), url.getLength()));
+    }
+
+    private static String[] toStrings(List<Path> paths)
+    {
+        String[] strings = new String[paths.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = paths.get(i).toString();
+        }
+
+        return strings;
+    }
+}
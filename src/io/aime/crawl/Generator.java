@@ -1,13 +1,11 @@
 package io.aime.crawl;
 
-import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.MetadataGeneral;
-import io.aime.brain.xml.Handler;
 import io.aime.net.URLFilter;
 import io.aime.net.URLFilterException;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.net.URLFilters;
 import io.aime.net.URLNormalizers;
+import io.aime.segment.SegmentLocator;
 import io.aime.util.AIMEConfiguration;
 import io.aime.util.AIMEConstants;
 import io.aime.util.AIMEJob;
@@ -20,6 +18,8 @@ import java.io.IOException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -42,7 +42,6 @@ import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
-import org.apache.hadoop.mapred.MapFileOutputFormat;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
@@ -91,6 +90,7 @@ public class Generator extends Configured implements Tool
     private static final String GENERATOR_MAX_NUM_SEGMENTS = "generate.max.num.segments";
     private static final String GENERATE_MAX_PER_HOST_BY_IP = "generate.max.per.host.by.ip";
     private static final String GENERATE_MAX_PER_HOST = "generate.max.per.host";
+    private static final String GENERATE_MAP_BUFFER = "generate.map.buffer";
     private static SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
 
     public Generator()
@@ -144,6 +144,17 @@ public class Generator extends Configured implements Tool
 
     /**
      * Selects entries due for fetch.
+     *
+     * <p>
+     * A reducer keeps at most {@link #entryLimit(JobConf)} entries, and
+     * {@link #hostLimit(JobConf)} of a host or domain, taking them by
+     * decreasing score. Whatever falls out of those limits among the entries
+     * of a single map task, or of a spill, would fall out of them among all
+     * the entries of the reducer too. So the mappers keep only the best
+     * entries of every partition, and {@link SelectorCombiner} prunes every
+     * spill, and what's shuffled grows with topN instead of with the
+     * DBase.
+     * </p>
      */
     public static class Selector implements Mapper<Text, CrawlDatum, FloatWritable, SelectorEntry>, Partitioner<FloatWritable, Writable>, Reducer<FloatWritable, SelectorEntry, FloatWritable, SelectorEntry>
     {
@@ -167,6 +178,15 @@ public class Generator extends Configured implements Tool
         private float scoreThreshold = 0.0f;
         private int maxNumSegments = 1;
         int currentsegmentnum = 1;
+        // Map side selection, NULL when there are no limits.
+        private List<List<Candidate>> buckets;
+        private long entryLimit;
+        private int hostLimit;
+        private int bufferLimit;
+        private int partitions;
+        private OutputCollector<FloatWritable, SelectorEntry> output;
+        // What earlier generates left beside the DBase.
+        private GeneratedSet[] generated;
 
         @Override
         public void configure(JobConf job)
@@ -187,14 +207,7 @@ public class Generator extends Configured implements Tool
                 byDomain = true;
             }
 
-            filters = (URLFilter[]) Brain
-                    .getClient(job)
-                    .execute(Handler
-                            .makeXMLRequest(BrainXMLData
-                                    .newBuild()
-                                    .setJob(BrainXMLData.JOB_REQUEST)
-                                    .setClazz(MetadataGeneral.Data.class)
-                                    .setFunction(MetadataGeneral.Data.FILTERS.getMethodName()))).get();
+            filters = URLFilterSnapshot.get(job);
             normalize = job.getBoolean(GENERATOR_NORMALISE, true);
 
             if (normalize) {
@@ -213,11 +226,155 @@ public class Generator extends Configured implements Tool
             schedule = FetchScheduleFactory.getFetchSchedule(job);
             scoreThreshold = job.getFloat(GENERATOR_MIN_SCORE, Float.NaN);
             maxNumSegments = job.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
+
+            try {
+                generated = GeneratedSet.open(job);
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Can't open generated sets. Error: " + e.toString(), e);
+            }
+
+            entryLimit = entryLimit(job);
+            hostLimit = hostLimit(job);
+            if (entryLimit >= 0 || hostLimit > 0) {
+                partitions = job.getNumReduceTasks();
+                // The buffer is shared by the partitions of the task, and a
+                // partition never holds more than a reducer keeps.
+                bufferLimit = Math.max(1, job.getInt(GENERATE_MAP_BUFFER, 100000) / partitions);
+                if (entryLimit >= 0) {
+                    bufferLimit = (int) Math.max(1, Math.min(bufferLimit, entryLimit));
+                }
+                buckets = new ArrayList<>(partitions);
+                for (int i = 0; i < partitions; i++) {
+                    buckets.add(new ArrayList<Candidate>());
+                }
+            }
+        }
+
+        /**
+         * Returns how many entries a reducer keeps at most, or -1 if there's
+         * no limit.
+         *
+         * @param job The job.
+         *
+         * @return The limit.
+         */
+        static long entryLimit(JobConf job)
+        {
+            long topN = job.getLong(GENERATOR_TOP_N, Long.MAX_VALUE);
+
+            return (topN == Long.MAX_VALUE) ? -1 : (topN / job.getNumReduceTasks()) * job.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
+        }
+
+        /**
+         * Returns how many entries of a host or domain a reducer keeps at
+         * most, or 0 if there's no limit.
+         *
+         * @param job The job.
+         *
+         * @return The limit.
+         */
+        static int hostLimit(JobConf job)
+        {
+            int maxCount = job.getInt(GENERATOR_MAX_COUNT, -1);
+            if (maxCount == -1) {
+                maxCount = job.getInt(GENERATE_MAX_PER_HOST, -1);
+            }
+            int segments = job.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
+
+            // Every segment after the first takes one more, see reduce().
+            return (maxCount > 0) ? maxCount * segments + segments - 1 : 0;
+        }
+
+        /**
+         * Returns the host or the domain by which a URL is counted, or null if
+         * the URL is malformed.
+         *
+         * @param url         The URL.
+         * @param normalizers The normalizers, or null.
+         * @param byDomain    TRUE to count by domain.
+         *
+         * @return The lowercase host or domain.
+         */
+        static String hostOrDomain(String url, URLNormalizers normalizers, boolean byDomain)
+        {
+            try {
+                if (normalizers != null) {
+                    url = normalizers.normalize(url, URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
+                }
+
+                URL u = new URL(url);
+
+                return (byDomain ? URLUtil.getDomainName(u) : u.getHost()).toLowerCase();
+            }
+            catch (Exception e) {
+                LOG.warn("Malformed URL: '" + url + "', skipping [" + StringUtils.stringifyException(e) + "]");
+                return null;
+            }
         }
 
         @Override
-        public void close()
+        public void close() throws IOException
         {
+            GeneratedSet.close(generated);
+
+            if (buckets == null || output == null) {
+                return;
+            }
+
+            for (List<Candidate> bucket : buckets) {
+                emit(select(bucket));
+            }
+        }
+
+        /**
+         * Sorts the candidates of a partition by decreasing score, and keeps
+         * those the reducer could keep.
+         */
+        private List<Candidate> select(List<Candidate> bucket)
+        {
+            Collections.sort(bucket, new Comparator<Candidate>()
+            {
+                @Override
+                public int compare(Candidate a, Candidate b)
+                {
+                    return Float.compare(b.score, a.score);
+                }
+            });
+
+            List<Candidate> selected = new ArrayList<>();
+            HashMap<String, int[]> hosts = new HashMap<>();
+            for (Candidate c : bucket) {
+                if (entryLimit >= 0 && selected.size() >= entryLimit) {
+                    break;
+                }
+
+                if (hostLimit > 0) {
+                    int[] hostCount = hosts.get(c.host);
+                    if (hostCount == null) {
+                        hostCount = new int[1];
+                        hosts.put(c.host, hostCount);
+                    }
+                    if (hostCount[0]++ >= hostLimit) {
+                        continue;
+                    }
+                }
+
+                selected.add(c);
+            }
+            bucket.clear();
+
+            return selected;
+        }
+
+        private void emit(List<Candidate> candidates) throws IOException
+        {
+            for (Candidate c : candidates) {
+                sortValue.set(c.score);
+                entry.url = c.url;
+                entry.datum = c.datum;
+                output.collect(sortValue, entry);
+            }
         }
 
         @Override
@@ -249,10 +406,12 @@ public class Generator extends Configured implements Tool
                 return;
             }
 
-            LongWritable oldGenTime = (LongWritable) crawlDatum.getMetadata().get(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant());
+            // Most entries have no metadata, so don't decode an empty one.
+            LongWritable oldGenTime = crawlDatum.hasMetadata() ? (LongWritable) crawlDatum.getMetadata().get(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant()) : null;
+            long lastGenTime = Math.max(oldGenTime != null ? oldGenTime.get() : 0L, GeneratedSet.getGenerateTime(generated, key));
 
-            if (oldGenTime != null) { // awaiting fetch & update
-                if (oldGenTime.get() + genDelay > curTime) { // still wait for
+            if (lastGenTime > 0L) { // awaiting fetch & update
+                if (lastGenTime + genDelay > curTime) { // still wait for
                     // update
                     return;
                 }
@@ -265,13 +424,44 @@ public class Generator extends Configured implements Tool
                 return;
             }
 
-            // sort by decreasing score, using DecreasingFloatComparator
-            sortValue.set(sort);
             // record generation time
             crawlDatum.getMetadata().put(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant(), genTime);
-            entry.datum = crawlDatum;
-            entry.url = key;
-            output.collect(sortValue, entry); // invert for sort by score
+
+            if (buckets == null) {
+                // sort by decreasing score, using DecreasingFloatComparator
+                sortValue.set(sort);
+                entry.datum = crawlDatum;
+                entry.url = key;
+                output.collect(sortValue, entry); // invert for sort by score
+                return;
+            }
+
+            // Keep it with the others of its partition, until close().
+            String hostordomain = hostOrDomain(url.toString(), normalizers, byDomain);
+            if (hostordomain == null) {
+                return; // the reducer would skip it
+            }
+
+            this.output = output;
+            Candidate c = new Candidate();
+            c.score = sort;
+            c.url = new Text(url);
+            c.datum = new CrawlDatum();
+            c.datum.set(crawlDatum);
+            c.host = hostordomain;
+            List<Candidate> bucket = buckets.get(partitioner.getPartition(c.url, null, partitions));
+            bucket.add(c);
+
+            if (bucket.size() >= 2 * bufferLimit) {
+                List<Candidate> selected = select(bucket);
+                if (selected.size() > bufferLimit) {
+                    // Too many to hold, let the combiner and the reducer choose.
+                    emit(selected);
+                }
+                else {
+                    bucket.addAll(selected);
+                }
+            }
         }
 
         /**
@@ -315,32 +505,11 @@ public class Generator extends Configured implements Tool
                 }
 
                 SelectorEntry etr = values.next();
-                Text url = etr.url;
-                String urlString = url.toString();
-                URL u;
-                String hostordomain;
-
-                try {
-                    if (normalize && normalizers != null) {
-                        urlString = normalizers.normalize(urlString, URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
-                    }
-
-                    u = new URL(urlString);
-
-                    if (byDomain) {
-                        hostordomain = URLUtil.getDomainName(u);
-                    }
-                    else {
-                        hostordomain = new URL(urlString).getHost();
-                    }
-                }
-                catch (Exception e) {
-                    LOG.warn("Malformed URL: '" + urlString + "', skipping [" + StringUtils.stringifyException(e) + "]");
+                String hostordomain = hostOrDomain(etr.url.toString(), normalizers, byDomain);
+                if (hostordomain == null) {
                     continue;
                 }
 
-                hostordomain = hostordomain.toLowerCase();
-
                 // only filter if we are counting hosts or domains
                 if (maxCount > 0) {
                     int[] hostCount = hostCounts.get(hostordomain);
@@ -385,6 +554,74 @@ public class Generator extends Configured implements Tool
         }
     }
 
+    /**
+     * What a mapper keeps of an entry until it's selected.
+     */
+    private static class Candidate
+    {
+
+        float score;
+        Text url;
+        CrawlDatum datum;
+        String host;
+    }
+
+    /**
+     * Drops from the entries of a spill, which are all of a single partition
+     * and come by decreasing score, those the reducer would drop anyway.
+     */
+    public static class SelectorCombiner extends MapReduceBase implements Reducer<FloatWritable, SelectorEntry, FloatWritable, SelectorEntry>
+    {
+
+        private long entryLimit;
+        private int hostLimit;
+        private boolean byDomain;
+        private URLNormalizers normalizers;
+        private long count = 0;
+        private HashMap<String, int[]> hostCounts = new HashMap<>();
+
+        @Override
+        public void configure(JobConf job)
+        {
+            entryLimit = Selector.entryLimit(job);
+            hostLimit = Selector.hostLimit(job);
+            byDomain = GENERATOR_COUNT_VALUE_DOMAIN.equals(job.get(GENERATOR_COUNT_MODE));
+            if (hostLimit > 0 && job.getBoolean(GENERATOR_NORMALISE, true)) {
+                normalizers = new URLNormalizers(job, URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
+            }
+        }
+
+        @Override
+        public void reduce(FloatWritable key, Iterator<SelectorEntry> values, OutputCollector<FloatWritable, SelectorEntry> output, Reporter reporter) throws IOException
+        {
+            while (values.hasNext()) {
+                if (entryLimit >= 0 && count >= entryLimit) {
+                    return;
+                }
+
+                SelectorEntry etr = values.next();
+                if (hostLimit > 0) {
+                    String hostordomain = Selector.hostOrDomain(etr.url.toString(), normalizers, byDomain);
+                    if (hostordomain == null) {
+                        continue;
+                    }
+
+                    int[] hostCount = hostCounts.get(hostordomain);
+                    if (hostCount == null) {
+                        hostCount = new int[1];
+                        hostCounts.put(hostordomain, hostCount);
+                    }
+                    if (hostCount[0]++ >= hostLimit) {
+                        continue;
+                    }
+                }
+
+                output.collect(key, etr);
+                count++;
+            }
+        }
+    }
+
     public static class GeneratorOutputFormat extends MultipleSequenceFileOutputFormat<FloatWritable, SelectorEntry>
     {
 
@@ -475,56 +712,6 @@ public class Generator extends Configured implements Tool
         }
     }
 
-    /**
-     * Update the CrawlDB so that the next generate won't include the same URLs.
-     */
-    public static class CrawlDbUpdater extends MapReduceBase implements Mapper<Text, CrawlDatum, Text, CrawlDatum>, Reducer<Text, CrawlDatum, Text, CrawlDatum>
-    {
-
-        private CrawlDatum orig = new CrawlDatum();
-        private LongWritable genTime = new LongWritable(0L);
-        long generateTime;
-
-        @Override
-        public void configure(JobConf job)
-        {
-            generateTime = job.getLong(AIMEConstants.GENERATE_TIME_KEY.getStringConstant(), 0L);
-        }
-
-        @Override
-        public void map(Text key, CrawlDatum value, OutputCollector<Text, CrawlDatum> output, Reporter reporter) throws IOException
-        {
-            output.collect(key, value);
-        }
-
-        @Override
-        public void reduce(Text key, Iterator<CrawlDatum> values, OutputCollector<Text, CrawlDatum> output, Reporter reporter) throws IOException
-        {
-            genTime.set(0L);
-
-            while (values.hasNext()) {
-                CrawlDatum val = values.next();
-                if (val.getMetadata().containsKey(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant())) {
-                    LongWritable gt = (LongWritable) val.getMetadata().get(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant());
-                    genTime.set(gt.get());
-                    if (genTime.get() != generateTime) {
-                        orig.set(val);
-                        genTime.set(0L);
-                    }
-                }
-                else {
-                    orig.set(val);
-                }
-            }
-
-            if (genTime.get() != 0L) {
-                orig.getMetadata().put(AIMEConstants.WRITABLE_GENERATE_TIME_KEY.getTextConstant(), genTime);
-            }
-
-            output.collect(key, orig);
-        }
-    }
-
     /**
      * Generate fetch lists in one or more segments. Whether to filter URLs or
      * not is read from the crawl.generate.filter property in the configuration
@@ -548,7 +735,6 @@ public class Generator extends Configured implements Tool
     public int generate(Path dbDir, Path segments, int numLists, long topN, long curTime, boolean filter, boolean norm, boolean force, int maxNumSegments) throws IOException
     {
         Path tempDir1 = new Path(getConf().get("mapred.temp.dir", ".") + "/generate-temp1-" + System.currentTimeMillis());
-        Path tempDir2 = new Path(getConf().get("mapred.temp.dir", ".") + "/generate-temp2-" + System.currentTimeMillis()); // Update DB from tempDir
         Path lock = new Path(dbDir, CrawlDB.LOCK_NAME);
         FileSystem fs = FileSystem.get(getConf());
         LockUtil.createLockFile(fs, lock, force);
@@ -592,6 +778,7 @@ public class Generator extends Configured implements Tool
             job.setInputFormat(SequenceFileInputFormat.class);
             job.setMapperClass(Selector.class);
             job.setPartitionerClass(Selector.class);
+            job.setCombinerClass(SelectorCombiner.class);
             job.setReducerClass(Selector.class);
             job.setOutputFormat(SequenceFileOutputFormat.class);
             job.setOutputKeyClass(FloatWritable.class);
@@ -601,6 +788,8 @@ public class Generator extends Configured implements Tool
             // IO paths
             FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDB.CURRENT_NAME));
             FileOutputFormat.setOutputPath(job, tempDir1);
+            URLFilterSnapshot.publish(job);
+            GeneratedSet.configure(job, dbDir);
             // Run
             JobClient.runJob(job);
 
@@ -629,28 +818,16 @@ public class Generator extends Configured implements Tool
                 res += 1;
             }
 
+            // So lookups of a URL open only the segments that may have it.
+            for (Path segment : generatedSegments) {
+                SegmentLocator.write(getConf(), segment);
+            }
+
             if (getConf().getBoolean(GENERATE_UPDATE_CRAWLDB, false)) {
-                // Create job
-                job = new AIMEJob(getConf());
-                // Configure
-                job.setJobName(AIMEConstants.GENERATOR_JOB_NAME.getStringConstant() + "#2");
-                job.setLong(AIMEConstants.GENERATE_TIME_KEY.getStringConstant(), generateTime);
-                job.setInputFormat(SequenceFileInputFormat.class);
-                job.setMapperClass(CrawlDbUpdater.class);
-                job.setReducerClass(CrawlDbUpdater.class);
-                job.setOutputFormat(MapFileOutputFormat.class);
-                job.setOutputKeyClass(Text.class);
-                job.setOutputValueClass(CrawlDatum.class);
-                // IO paths
-                for (Path segmpaths : generatedSegments) {
-                    Path subGenDir = new Path(segmpaths, CrawlDatum.GENERATE_DIR_NAME);
-                    FileInputFormat.addInputPath(job, subGenDir);
+                // Keep the URLs beside the DBase, the next update marks them.
+                for (Path segment : generatedSegments) {
+                    GeneratedSet.write(getConf(), dbDir, segment, generateTime);
                 }
-                FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDB.CURRENT_NAME));
-                FileOutputFormat.setOutputPath(job, tempDir2);
-                // Run & Install
-                JobClient.runJob(job);
-                CrawlDB.install(job, dbDir);
             }
         }
         catch (Exception e) {
@@ -663,7 +840,6 @@ public class Generator extends Configured implements Tool
             }
             LockUtil.removeLockFile(fs, lock);
             fs.delete(tempDir1, true);
-            fs.delete(tempDir2, true);
 
             return res;
         }
@@ -2,13 +2,12 @@ package io.aime.crawl;
 
 import io.aime.bot.ConsoleMessage;
 import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.BrainXMLData.Parameter;
+import io.aime.brain.data.BrainCall;
 import io.aime.brain.data.MetadataConsole;
 import io.aime.brain.data.MetadataGeneral;
-import io.aime.brain.xml.Handler;
 import io.aime.net.URLFilter;
 import io.aime.net.URLFilterException;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.net.URLFilters;
 import io.aime.net.URLNormalizers;
 import io.aime.util.AIMEConfiguration;
@@ -103,14 +102,7 @@ public class Injector extends Configured implements Tool
         {
             urlNormalizers = new URLNormalizers(job, URLNormalizers.SCOPE_INJECT); // Crea un nuevo normalizador de URLs para el alcance "Inject".
             interval = job.getInt("db.fetch.interval.default", 864000); // Busca el valor del intervalo de tiempo entre busquedas.
-            filters = (URLFilter[]) Brain
-                    .getClient(job)
-                    .execute(Handler
-                            .makeXMLRequest(BrainXMLData
-                                    .newBuild()
-                                    .setJob(BrainXMLData.JOB_REQUEST)
-                                    .setClazz(MetadataGeneral.Data.class)
-                                    .setFunction(MetadataGeneral.Data.FILTERS.getMethodName()))).get();
+            filters = URLFilterSnapshot.get(job);
             scoreInjected = job.getFloat("db.score.injected", 1.0f); // Busca el valor de puntaje para URLs nuevas añadidas.
             curTime = job.getLong("injector.current.time", System.currentTimeMillis()); // Busca el valor de comienzo del proceso.
         }
@@ -293,12 +285,8 @@ public class Injector extends Configured implements Tool
     {
         final int EXECUTION_TYPE = (int) Brain
                 .getClient(getConf())
-                .execute(Handler
-                        .makeXMLRequest(BrainXMLData
-                                .newBuild()
-                                .setJob(BrainXMLData.JOB_REQUEST)
-                                .setClazz(MetadataGeneral.Data.class)
-                                .setFunction(MetadataGeneral.Data.EXECUTION_TYPE.getMethodName()))).get();
+                .call(BrainCall.request(MetadataGeneral.Data.EXECUTION_TYPE))
+                .get();
 
         if (LOG.isInfoEnabled()) {
             LOG.info("DBase: " + crawlDb.toString());
@@ -312,17 +300,7 @@ public class Injector extends Configured implements Tool
         // Notify the console.
         Brain
                 .getClient(getConf())
-                .execute(Handler
-                        .makeXMLRequest(
-                                BrainXMLData
-                                .newBuild()
-                                .setJob(BrainXMLData.JOB_MERGE)
-                                .setClazz(MetadataConsole.Data.class)
-                                .setFunction(MetadataConsole.Data.MESSAGE.getMethodName())
-                                .setParam(Parameter
-                                        .newBuild()
-                                        .setType(ConsoleMessage.class)
-                                        .setData(ConsoleMessage.newBuild().setSeverity(ConsoleMessage.INFO).setMessage("Exporting seeds to file for Injector's input format!")))));
+                .call(BrainCall.merge(MetadataConsole.Data.MESSAGE, ConsoleMessage.newBuild().setSeverity(ConsoleMessage.INFO).setMessage("Exporting seeds to file for Injector's input format!")));
 
         // Create a temporary DBase in a temporary location.
         Path tempDir = new Path(getConf().get("hadoop.tmp.dir", ".") + "/inject-temp-" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
@@ -342,6 +320,7 @@ public class Injector extends Configured implements Tool
             sortJob.setOutputKeyClass(Text.class);
             sortJob.setOutputValueClass(CrawlDatum.class);
             sortJob.setLong("injector.current.time", System.currentTimeMillis());
+            URLFilterSnapshot.publish(sortJob);
             JobClient.runJob(sortJob); // RUN
         }
         catch (IOException e) {
@@ -1,5 +1,6 @@
 package io.aime.crawl;
 
+import io.aime.net.DNSCache;
 import io.aime.net.URLNormalizers;
 import io.aime.util.URLUtil;
 import java.net.InetAddress;
@@ -32,6 +33,7 @@ public class URLPartitioner implements Partitioner<Text, Writable>
     private int seed;
     private URLNormalizers normalizers;
     private String mode = PARTITION_MODE_HOST;
+    private DNSCache dns;
 
     @Override
     public void configure(JobConf job)
@@ -47,6 +49,7 @@ public class URLPartitioner implements Partitioner<Text, Writable>
         }
 
         normalizers = new URLNormalizers(job, URLNormalizers.SCOPE_PARTITION);
+        dns = DNSCache.get(job);
     }
 
     public void close()
@@ -74,7 +77,7 @@ public class URLPartitioner implements Partitioner<Text, Writable>
                 case PARTITION_MODE_IP:
                     try
                     {
-                        InetAddress address = InetAddress.getByName(url.getHost());
+                        InetAddress address = dns.resolve(url.getHost());
                         hashCode = address.getHostAddress().hashCode();
                     }
                     catch (UnknownHostException e)
@@ -1,16 +1,14 @@
 package io.aime.fetcher;
 
 import io.aime.aimemisc.digest.SignatureFactory;
-import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.MetadataGeneral;
-import io.aime.brain.xml.Handler;
 import io.aime.crawl.AIMEWritable;
 import io.aime.crawl.CrawlDatum;
 import io.aime.fetcher.StatsAgent.Tools;
 import io.aime.metadata.DocMetadata;
+import io.aime.net.DNSCache;
 import io.aime.net.URLFilter;
 import io.aime.net.URLFilterException;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.net.URLFilters;
 import io.aime.net.URLNormalizers;
 import io.aime.parse.Parse;
@@ -20,6 +18,7 @@ import io.aime.parse.ParseResult;
 import io.aime.parse.ParseStatus;
 import io.aime.parse.ParseText;
 import io.aime.parse.ParserRun;
+import io.aime.protocol.AsyncProtocol;
 import io.aime.protocol.Content;
 import io.aime.protocol.Protocol;
 import io.aime.protocol.ProtocolFactory;
@@ -27,6 +26,8 @@ import io.aime.protocol.ProtocolNotFound;
 import io.aime.protocol.ProtocolOutput;
 import io.aime.protocol.ProtocolStatus;
 import io.aime.protocol.RobotRules;
+import io.aime.protocol.RobotRulesCache;
+import io.aime.segment.SegmentLocator;
 import io.aime.util.AIMEConfiguration;
 import io.aime.util.AIMEConstants;
 import io.aime.util.AIMEJob;
@@ -39,14 +40,18 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.SwingWorker;
@@ -54,6 +59,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
@@ -101,10 +107,12 @@ import org.apache.log4j.Logger;
  * ready.</p>
  *
  * <p>
- * If there are still un-fetched items in the queues, but none of the items
- * are ready, FetcherThread-s will spin-wait until either some items become
- * available, or a timeout is reached (at which point the Fetcher will abort,
- * assuming the task is hung).</p>
+ * Queues that can hand out an item are kept in a ready queue ordered by the
+ * time their politeness delay expires. If there are still un-fetched items in
+ * the queues, but none of the items are ready, FetcherThread-s block on the
+ * ready queue until either some items become available, or a timeout is
+ * reached (at which point the Fetcher will abort, assuming the task is
+ * hung).</p>
  *
  * @author Andrzej Bialecki
  * @author Andreas P. Koenzen <akc at apkc.net>
@@ -117,6 +125,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
     private static final String CONTENT_REDIR = "content";
     private static final String PROTOCOL_REDIR = "protocol";
     public static final int PERM_REFRESH_TIME = 5;
+    private static final long QUEUE_POLL_TIMEOUT = 1000;
     private OutputCollector<Text, AIMEWritable> output;
     private Reporter reporter;
     private String segmentName;
@@ -131,6 +140,10 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
     private boolean parsing;
     private FetchItemQueues fetchQueues;
     private QueueFeeder feeder;
+    private boolean async;
+    private AtomicInteger dispatching = new AtomicInteger(0); // threads still taking items from the queues
+    private AtomicInteger inFlight = new AtomicInteger(0); // asynchronous requests not yet processed
+    private LinkedBlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
 
     public static class InputFormat extends SequenceFileInputFormat<Text, CrawlDatum>
     {
@@ -182,9 +195,9 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         /**
          * Create an item. Queue id will be created based on
          * <code>byIP</code> argument, either as a protocol + hostname pair, or
-         * protocol + IP address pair.
+         * protocol + IP address pair, the address coming from the DNS cache.
          */
-        public static FetchItem create(Text url, CrawlDatum datum, boolean byIP)
+        public static FetchItem create(Text url, CrawlDatum datum, boolean byIP, DNSCache dns)
         {
             String queueID;
             URL u;
@@ -204,7 +217,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             {
                 try
                 {
-                    InetAddress addr = InetAddress.getByName(u.getHost());
+                    InetAddress addr = dns.resolve(u.getHost());
                     host = addr.getHostAddress();
                 }
                 catch (UnknownHostException e)
@@ -255,22 +268,36 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
      * This class handles FetchItems which come from the same host ID (be it a
      * proto/hostname or proto/IP pair). It also keeps track of requests in
      * progress and elapsed time between requests.
+     *
+     * <p>
+     * The queue itself holds no locks. A queue that has items waiting and a
+     * free slot is placed exactly once in the ready queue of
+     * {@link FetchItemQueues}, keyed on the time at which it may be fetched
+     * from again. The <code>scheduled</code> flag guards that invariant: it is
+     * always cleared before the state of the queue is inspected by a consumer,
+     * and always set after the state has been changed by a producer, so no
+     * wake up can be lost.</p>
      */
     private static class FetchItemQueue
     {
 
-        List<FetchItem> queue = Collections.synchronizedList(new LinkedList<FetchItem>());
-        Set<FetchItem> inProgress = Collections.synchronizedSet(new HashSet<FetchItem>());
+        Deque<FetchItem> queue = new ConcurrentLinkedDeque<>();
+        Set<FetchItem> inProgress = Collections.newSetFromMap(new ConcurrentHashMap<FetchItem, Boolean>());
+        AtomicInteger queueSize = new AtomicInteger();
         AtomicLong nextFetchTime = new AtomicLong();
         AtomicInteger exceptionCounter = new AtomicInteger();
-        long crawlDelay;
+        AtomicBoolean scheduled = new AtomicBoolean(false);
+        boolean retired = false; // guarded by this, set once removed from the queues
+        String id;
+        volatile long crawlDelay;
         long minCrawlDelay;
         int maxThreads;
         Configuration conf;
 
-        public FetchItemQueue(Configuration conf, int maxThreads, long crawlDelay, long minCrawlDelay)
+        public FetchItemQueue(Configuration conf, String id, int maxThreads, long crawlDelay, long minCrawlDelay)
         {
             this.conf = conf;
+            this.id = id;
             this.maxThreads = maxThreads;
             this.crawlDelay = crawlDelay;
             this.minCrawlDelay = minCrawlDelay;
@@ -280,15 +307,20 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
         public synchronized int emptyQueue()
         {
-            int presize = queue.size();
-            queue.clear();
+            int deleted = 0;
+
+            while (queue.pollFirst() != null)
+            {
+                queueSize.decrementAndGet();
+                deleted++;
+            }
 
-            return presize;
+            return deleted;
         }
 
         public int getQueueSize()
         {
-            return queue.size();
+            return queueSize.get();
         }
 
         public int getInProgressSize()
@@ -301,68 +333,143 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             return exceptionCounter.incrementAndGet();
         }
 
-        public void finishFetchItem(FetchItem it, boolean asap)
+        /**
+         * Tells if an item could be handed out right now, ignoring the crawl
+         * delay.
+         *
+         * @return TRUE if there are items waiting and a free slot.
+         */
+        public boolean isReady()
         {
-            if (it != null)
+            return queueSize.get() > 0 && inProgress.size() < maxThreads;
+        }
+
+        /**
+         * Tells if this queue has nothing waiting and nothing being fetched.
+         *
+         * @return TRUE if the queue is idle.
+         */
+        public boolean isIdle()
+        {
+            return queueSize.get() == 0 && inProgress.isEmpty();
+        }
+
+        /**
+         * Marks this queue as retired if it's idle and its crawl delay has
+         * expired, so a new queue for the same host starts in the same state.
+         * A retired queue takes no more items.
+         *
+         * @param keepFailed Don't retire the queue if any of its items failed,
+         *                   to keep its exception count.
+         *
+         * @return TRUE if the queue was retired.
+         */
+        public synchronized boolean retire(boolean keepFailed)
+        {
+            if (!isIdle() || nextFetchTime.get() > System.currentTimeMillis())
             {
-                inProgress.remove(it);
-                setEndTime(System.currentTimeMillis(), asap);
+                return false;
+            }
+
+            if (keepFailed && exceptionCounter.get() > 0)
+            {
+                return false;
             }
+
+            retired = true;
+
+            return true;
         }
 
-        public void addFetchItem(FetchItem it)
+        public synchronized boolean finishFetchItem(FetchItem it, boolean asap)
         {
-            if (it == null)
+            if (it != null && inProgress.remove(it))
             {
-                return;
+                setEndTime(System.currentTimeMillis(), asap);
+
+                return true;
             }
 
-            queue.add(it);
+            return false;
         }
 
-        public void addInProgressFetchItem(FetchItem it)
+        /**
+         * Adds an item to this queue.
+         *
+         * @param it The item.
+         *
+         * @return FALSE if the queue was retired and took nothing.
+         */
+        public synchronized boolean addFetchItem(FetchItem it)
         {
-            if (it == null)
+            if (retired)
             {
-                return;
+                return false;
             }
 
-            inProgress.add(it);
+            if (it != null)
+            {
+                queue.addLast(it);
+                queueSize.incrementAndGet();
+            }
+
+            return true;
         }
 
-        public FetchItem getFetchItem()
+        /**
+         * Adds an item that is already being fetched to this queue.
+         *
+         * @param it The item.
+         *
+         * @return FALSE if the queue was retired and took nothing.
+         */
+        public synchronized boolean addInProgressFetchItem(FetchItem it)
         {
-            if (inProgress.size() >= maxThreads)
+            if (retired)
             {
-                return null;
+                return false;
             }
 
-            if (nextFetchTime.get() > System.currentTimeMillis())
+            if (it != null)
             {
-                return null;
+                inProgress.add(it);
             }
 
-            FetchItem it = null;
+            return true;
+        }
 
-            if (queue.isEmpty())
+        /**
+         * Hands out the next item of this queue. Must only be called by the
+         * consumer that took this queue out of the ready queue. The slot is
+         * checked and taken under the lock of the queue, so redirects added
+         * in progress can't push it over maxThreads.
+         *
+         * @return The item, or null if the queue is empty, busy or must still
+         *         wait for its crawl delay.
+         */
+        public synchronized FetchItem getFetchItem()
+        {
+            if (inProgress.size() >= maxThreads)
             {
                 return null;
             }
 
-            try
+            if (nextFetchTime.get() > System.currentTimeMillis())
             {
-                it = queue.remove(0);
-                inProgress.add(it);
+                return null;
             }
-            catch (Exception e)
+
+            FetchItem it = queue.pollFirst();
+            if (it != null)
             {
-                LOG.error("Impossible to remove FetchItem from queue or impossible to add it to queue InProgress. Error: " + e.toString(), e);
+                queueSize.decrementAndGet();
+                inProgress.add(it);
             }
 
             return it;
         }
 
-        public synchronized void dump()
+        public void dump()
         {
             if (LOG.isInfoEnabled())
             {
@@ -375,13 +482,12 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                 LOG.info("  [now]: " + System.currentTimeMillis());
             }
 
-            for (int i = 0; i < queue.size(); i++)
+            int i = 0;
+            for (FetchItem it : queue)
             {
-                FetchItem it = queue.get(i);
-
                 if (LOG.isInfoEnabled())
                 {
-                    LOG.info(i + ": " + it.url);
+                    LOG.info(i++ + ": " + it.url);
                 }
             }
         }
@@ -404,18 +510,56 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         }
     }
 
+    /**
+     * An entry of the ready queue. The time is fixed when the entry is
+     * created, because a {@link DelayQueue} can't cope with keys that change
+     * while the element is inside of it.
+     */
+    private static class ReadyQueue implements Delayed
+    {
+
+        final FetchItemQueue fiq;
+        final long time;
+
+        ReadyQueue(FetchItemQueue fiq, long time)
+        {
+            this.fiq = fiq;
+            this.time = time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o)
+        {
+            return Long.compare(time, ((ReadyQueue) o).time);
+        }
+    }
+
     /**
      * Convenience class - a collection of queues that keeps track of the total
      * number of items, and provides items eligible for fetching from any queue.
+     *
+     * <p>
+     * Queues that can hand out an item are kept in a ready queue ordered by
+     * the time at which their politeness delay expires, so getting the next
+     * eligible item costs O(log hosts) and threads block until a host becomes
+     * eligible, instead of scanning every queue under a global lock.</p>
      */
     private static class FetchItemQueues
     {
 
         public static final String DEFAULT_ID = "default";
-        Map<String, FetchItemQueue> queues = new HashMap<>();
+        ConcurrentMap<String, FetchItemQueue> queues = new ConcurrentHashMap<>();
+        DelayQueue<ReadyQueue> ready = new DelayQueue<>();
         AtomicInteger totalSize = new AtomicInteger(0);
         int maxThreads;
         boolean byIP;
+        DNSCache dns;
         long crawlDelay;
         long minCrawlDelay;
         long timelimit = -1;
@@ -428,6 +572,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             maxThreads = conf.getInt("fetcher.threads.per.host", 1);
             // backward-compatible default setting
             byIP = conf.getBoolean("fetcher.threads.per.host.by.ip", false);
+            dns = DNSCache.get(conf);
             crawlDelay = (long) (conf.getFloat("fetcher.server.delay", 1.0f) * 1000);
             minCrawlDelay = (long) (conf.getFloat("fetcher.server.min.delay", 0.0f) * 1000);
             timelimit = conf.getLong("fetcher.timelimit.mins", -1);
@@ -446,18 +591,39 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
         public void addFetchItem(Text url, CrawlDatum datum)
         {
-            FetchItem it = FetchItem.create(url, datum, byIP);
+            FetchItem it = FetchItem.create(url, datum, byIP, dns);
             if (it != null)
             {
                 addFetchItem(it);
             }
         }
 
-        public synchronized void addFetchItem(FetchItem it)
+        public void addFetchItem(FetchItem it)
         {
             FetchItemQueue fiq = getFetchItemQueue(it.queueID);
-            fiq.addFetchItem(it);
             totalSize.incrementAndGet();
+            while (!fiq.addFetchItem(it))
+            {
+                queues.remove(it.queueID, fiq);
+                fiq = getFetchItemQueue(it.queueID);
+            }
+            schedule(fiq);
+        }
+
+        /**
+         * Adds an item that is already being fetched, e.g. a redirect, to the
+         * queue of its host.
+         *
+         * @param it The item.
+         */
+        public void addInProgressFetchItem(FetchItem it)
+        {
+            FetchItemQueue fiq = getFetchItemQueue(it.queueID);
+            while (!fiq.addInProgressFetchItem(it))
+            {
+                queues.remove(it.queueID, fiq);
+                fiq = getFetchItemQueue(it.queueID);
+            }
         }
 
         public void finishFetchItem(FetchItem it)
@@ -473,57 +639,120 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                 LOG.warn("Attempting to finalize an item from unknown queue: " + it);
                 return;
             }
-            fiq.finishFetchItem(it, asap);
+
+            if (fiq.finishFetchItem(it, asap))
+            {
+                schedule(fiq);
+            }
         }
 
-        public synchronized FetchItemQueue getFetchItemQueue(String id)
+        /**
+         * Removes a queue from the queues if it's idle and its crawl delay has
+         * expired.
+         *
+         * @param fiq The queue.
+         *
+         * @return TRUE if the queue was removed.
+         */
+        private boolean retire(FetchItemQueue fiq)
+        {
+            if (!fiq.retire(maxExceptionsPerQueue != -1))
+            {
+                return false;
+            }
+
+            queues.remove(fiq.id, fiq);
+
+            return true;
+        }
+
+        public FetchItemQueue getFetchItemQueue(String id)
         {
             FetchItemQueue fiq = queues.get(id);
             if (fiq == null)
             {
                 // initialize queue
-                fiq = new FetchItemQueue(conf, maxThreads, crawlDelay, minCrawlDelay);
-                queues.put(id, fiq);
+                FetchItemQueue newQueue = new FetchItemQueue(conf, id, maxThreads, crawlDelay, minCrawlDelay);
+                fiq = queues.putIfAbsent(id, newQueue);
+
+                if (fiq == null)
+                {
+                    fiq = newQueue;
+                }
             }
 
             return fiq;
         }
 
-        public synchronized FetchItem getFetchItem()
+        /**
+         * Waits for an item eligible for fetching.
+         *
+         * @param timeout The maximum time to wait, in milliseconds.
+         *
+         * @return The item, or null if none became eligible in time.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public FetchItem getFetchItem(long timeout) throws InterruptedException
         {
-            Iterator<Map.Entry<String, FetchItemQueue>> it = queues.entrySet().iterator();
-            while (it.hasNext())
+            long deadline = System.currentTimeMillis() + timeout;
+
+            while (true)
             {
-                FetchItemQueue fiq = it.next().getValue();
-                // reap empty queues
-                if (fiq.getQueueSize() == 0 && fiq.getInProgressSize() == 0)
+                long wait = deadline - System.currentTimeMillis();
+                ReadyQueue entry = (wait > 0) ? ready.poll(wait, TimeUnit.MILLISECONDS) : ready.poll();
+                if (entry == null)
                 {
-                    it.remove();
-                    continue;
+                    return null;
                 }
 
+                FetchItemQueue fiq = entry.fiq;
+                fiq.scheduled.set(false);
+
                 FetchItem fit = fiq.getFetchItem();
+                if (fit == null && retire(fiq))
+                {
+                    continue;
+                }
+
+                // Put the queue back if it still can hand out items, either
+                // right away (more threads per host) or once its delay expires.
+                // Idle queues are put back too, to be removed once it expires.
+                schedule(fiq);
+
                 if (fit != null)
                 {
                     totalSize.decrementAndGet();
                     return fit;
                 }
             }
+        }
 
-            return null;
+        /**
+         * Puts a queue in the ready queue, if it isn't already there and it
+         * has something to hand out, or is idle and must be removed.
+         *
+         * @param fiq The queue.
+         */
+        private void schedule(FetchItemQueue fiq)
+        {
+            boolean retirable = fiq.isIdle() && (maxExceptionsPerQueue == -1 || fiq.exceptionCounter.get() == 0);
+            if ((fiq.isReady() || retirable) && fiq.scheduled.compareAndSet(false, true))
+            {
+                ready.offer(new ReadyQueue(fiq, fiq.nextFetchTime.get()));
+            }
         }
 
         // called only once the feeder has stopped
-        public synchronized int checkTimelimit()
+        public int checkTimelimit()
         {
             int count = 0;
 
             if (System.currentTimeMillis() >= timelimit && timelimit != -1)
             {
                 // emptying the queues
-                for (String id : queues.keySet())
+                for (FetchItemQueue fiq : queues.values())
                 {
-                    FetchItemQueue fiq = queues.get(id);
                     if (fiq.getQueueSize() == 0)
                     {
                         continue;
@@ -531,16 +760,11 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
                     if (LOG.isInfoEnabled())
                     {
-                        LOG.info("Queue: " + id + ", time limit!");
+                        LOG.info("Queue: " + fiq.id + ", time limit!");
                     }
 
                     int deleted = fiq.emptyQueue();
-
-                    for (int i = 0; i < deleted; i++)
-                    {
-                        totalSize.decrementAndGet();
-                    }
-
+                    totalSize.addAndGet(-deleted);
                     count += deleted;
                 }
 
@@ -565,7 +789,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
          *
          * @return Number of purged items.
          */
-        public synchronized int checkExceptionThreshold(String queueid)
+        public int checkExceptionThreshold(String queueid)
         {
             FetchItemQueue fiq = queues.get(queueid);
 
@@ -590,10 +814,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                     LOG.info("Queue: " + queueid + ". Removed [" + deleted + "] URLs from queue due to [" + excCount + "] ocurred exceptions.");
                 }
 
-                for (int i = 0; i < deleted; i++)
-                {
-                    totalSize.decrementAndGet();
-                }
+                totalSize.addAndGet(-deleted);
 
                 return deleted;
             }
@@ -601,11 +822,10 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             return 0;
         }
 
-        public synchronized void dump()
+        public void dump()
         {
-            for (String id : queues.keySet())
+            for (FetchItemQueue fiq : queues.values())
             {
-                FetchItemQueue fiq = queues.get(id);
                 if (fiq.getQueueSize() == 0)
                 {
                     continue;
@@ -613,7 +833,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
                 if (LOG.isInfoEnabled())
                 {
-                    LOG.info("Queue: " + id);
+                    LOG.info("Queue: " + fiq.id);
                 }
 
                 fiq.dump();
@@ -632,6 +852,9 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         private FetchItemQueues queues;
         private int size;
         private long timelimit = -1;
+        private RobotRulesDB.Reader robots;
+        private RobotRulesCache robotsCache;
+        private Set<String> hosts = new HashSet<>();
 
         public QueueFeeder(RecordReader<Text, CrawlDatum> reader, FetchItemQueues queues, int size)
         {
@@ -642,6 +865,16 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             setName("QueueFeeder");
         }
 
+        /**
+         * Makes the feeder preload the stored robots.txt rules of each host
+         * before its first item is queued.
+         */
+        public void setRobots(RobotRulesDB.Reader robots, RobotRulesCache robotsCache)
+        {
+            this.robots = robots;
+            this.robotsCache = robotsCache;
+        }
+
         public void setTimeLimit(long tl)
         {
             timelimit = tl;
@@ -698,6 +931,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                             hasMore = reader.next(url, datum);
                             if (hasMore)
                             {
+                                preloadRobots(url);
                                 queues.addFetchItem(url, datum);
                                 cnt++;
                                 feed--;
@@ -717,6 +951,53 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                 LOG.info("QueueFeeder finalizing: Total [" + cnt + "] records + [hit by time] limit: " + timelimitcount);
             }
         }
+
+        private void preloadRobots(Text url)
+        {
+            if (robots == null)
+            {
+                return;
+            }
+
+            try
+            {
+                String host = new URL(url.toString()).getHost().toLowerCase();
+                if (hosts.add(host) && robotsCache.get(host) == null)
+                {
+                    RobotRules rules = robots.get(host);
+                    if (rules != null)
+                    {
+                        robotsCache.preload(host, rules);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // The rules will be downloaded instead.
+                LOG.warn("Impossible to read the stored robots.txt rules for: " + url + ". Error: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * The outcome of an asynchronous request, along with the redirect state
+     * of the item when it was sent.
+     */
+    private static class Completion
+    {
+
+        private final FetchItem fit;
+        private final ProtocolOutput output;
+        private final String reprUrl;
+        private final int redirectCount;
+
+        Completion(FetchItem fit, ProtocolOutput output, String reprUrl, int redirectCount)
+        {
+            this.fit = fit;
+            this.output = output;
+            this.reprUrl = reprUrl;
+            this.redirectCount = redirectCount;
+        }
     }
 
     /**
@@ -732,6 +1013,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         private ProtocolFactory protocolFactory;
         private long maxCrawlDelay;
         private boolean byIP;
+        private DNSCache dns;
         private int maxRedirect;
         private String reprUrl;
         private boolean redirecting;
@@ -743,13 +1025,14 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             setDaemon(true); // don't hang JVM on exit
             setName("FetcherThread"); // use an informative name
             this.conf = conf;
-            urlFilters = (URLFilter[]) Brain.getClient(conf).execute(Handler.makeXMLRequest(BrainXMLData.newBuild().setJob(BrainXMLData.JOB_REQUEST).setClazz(MetadataGeneral.Data.class).setFunction(MetadataGeneral.Data.FILTERS.getMethodName()))).get();
+            urlFilters = URLFilterSnapshot.get(conf);
             parseUtil = new ParserRun(conf);
             protocolFactory = new ProtocolFactory(conf);
             normalizers = new URLNormalizers(conf, URLNormalizers.SCOPE_FETCHER);
             maxCrawlDelay = conf.getInt("fetcher.max.crawl.delay", 30) * 1000;
             // backward-compatible default setting
             byIP = conf.getBoolean("fetcher.threads.per.host.by.ip", true);
+            dns = DNSCache.get(conf);
             maxRedirect = conf.getInt("http.redirect.max", 3);
             ignoreExternalLinks = conf.getBoolean("db.ignore.external.links", false);
         }
@@ -764,7 +1047,23 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
             {
                 while (true)
                 {
-                    fit = fetchQueues.getFetchItem();
+                    // Block until a host becomes eligible, checking every
+                    // now and then if there is still something left to fetch.
+                    spinWaiting.incrementAndGet();
+                    try
+                    {
+                        fit = fetchQueues.getFetchItem(QUEUE_POLL_TIMEOUT);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // The task is being shut down.
+                        return;
+                    }
+                    finally
+                    {
+                        spinWaiting.decrementAndGet();
+                    }
+
                     if (fit == null)
                     {
                         if (feeder.isAlive() || fetchQueues.getTotalSize() > 0)
@@ -774,18 +1073,6 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                                 LOG.debug(getName() + ": Waiting ...");
                             }
 
-                            // spin-wait.
-                            spinWaiting.incrementAndGet();
-
-                            try
-                            {
-                                Thread.sleep(500);
-                            }
-                            catch (Exception e)
-                            {
-                            }
-
-                            spinWaiting.decrementAndGet();
                             continue;
                         }
                         else
@@ -807,216 +1094,321 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                         reprUrl = reprUrlWritable.toString();
                     }
 
-                    try
-                    {
-                        LOG.info("Fetching: " + GeneralUtilities.trimURL(fit.url.toString(), 120));
+                    LOG.info("Fetching: " + GeneralUtilities.trimURL(fit.url.toString(), 120));
 
-                        // fetch the page
-                        redirecting = false;
-                        redirectCount = 0;
-                        do
-                        {
-                            if (LOG.isDebugEnabled())
-                            {
-                                LOG.debug("[redirectCount]: " + redirectCount);
-                            }
+                    redirecting = false;
+                    redirectCount = 0;
+                    fit = fetch(fit);
+                }
+            }
+            catch (Throwable t)
+            {
+                // Log as failed.
+                logError(fit.url, t.toString());
+            }
+            finally
+            {
+                if (fit != null)
+                {
+                    fetchQueues.finishFetchItem(fit);
+                }
 
-                            redirecting = false;
-                            Protocol protocol = protocolFactory.getProtocol(fit.url.toString());
-                            RobotRules rules = protocol.getRobotRules(fit.url, fit.datum);
+                dispatching.decrementAndGet();
+                activeThreads.decrementAndGet(); // count_sent threads
 
-                            // ### Si AIME es denegado por el archivo robots.txt.
-                            if (!rules.isAllowed(fit.u))
-                            {
-                                // Denegado por archivo "robots.txt".
-                                fetchQueues.finishFetchItem(fit, true);
+                if (LOG.isInfoEnabled())
+                {
+                    LOG.info("Finishing thread: " + getName() + ". Active threads: " + activeThreads);
+                }
+            }
+        }
+
+        /**
+         * Fetches an item and follows its redirects, as long as they don't
+         * exceed the limit.
+         *
+         * <p>
+         * In asynchronous mode the request is handed over to the protocol and
+         * the rest of the work is done by a {@link CompletionThread} once the
+         * response arrives.
+         * </p>
+         *
+         * @param fit The item to fetch.
+         *
+         * @return The last item fetched, or null if it was handed over.
+         */
+        protected FetchItem fetch(FetchItem fit)
+        {
+            try
+            {
+                do
+                {
+                    if (LOG.isDebugEnabled())
+                    {
+                        LOG.debug("[redirectCount]: " + redirectCount);
+                    }
 
-                                if (LOG.isDebugEnabled())
-                                {
-                                    LOG.debug("Denied by robots.txt: " + fit.url);
-                                }
+                    redirecting = false;
+                    Protocol protocol = protocolFactory.getProtocol(fit.url.toString());
+                    RobotRules rules = protocol.getRobotRules(fit.url, fit.datum);
 
-                                Tools.incrementStatusCodes(ProtocolStatus.ROBOTS_DENIED);
-                                output(fit.url, fit.datum, null, ProtocolStatus.STATUS_ROBOTS_DENIED, CrawlDatum.STATUS_FETCH_GONE);
+                    // ### Si AIME es denegado por el archivo robots.txt.
+                    if (!rules.isAllowed(fit.u))
+                    {
+                        // Denegado por archivo "robots.txt".
+                        fetchQueues.finishFetchItem(fit, true);
 
-                                continue; // Saltar este ciclo del bucle.
-                            }
+                        if (LOG.isDebugEnabled())
+                        {
+                            LOG.debug("Denied by robots.txt: " + fit.url);
+                        }
 
-                            if (rules.getCrawlDelay() > 0)
-                            {
-                                if (rules.getCrawlDelay() > maxCrawlDelay)
-                                {
-                                    // Unblock.
-                                    fetchQueues.finishFetchItem(fit, true);
-
-                                    if (LOG.isDebugEnabled())
-                                    {
-                                        LOG.debug("Crawl-Delay for: " + fit.url + " too high (" + rules.getCrawlDelay() + "), skipping ...");
-                                    }
-
-                                    Tools.incrementStatusCodes(ProtocolStatus.ROBOTS_DENIED);
-                                    output(fit.url, fit.datum, null, ProtocolStatus.STATUS_ROBOTS_DENIED, CrawlDatum.STATUS_FETCH_GONE);
-
-                                    continue; // Saltar este ciclo del bucle.
-                                }
-                                else
-                                {
-                                    FetchItemQueue fiq = fetchQueues.getFetchItemQueue(fit.queueID);
-                                    fiq.crawlDelay = rules.getCrawlDelay();
-                                }
-                            }
+                        Tools.incrementStatusCodes(ProtocolStatus.ROBOTS_DENIED);
+                        output(fit.url, fit.datum, null, ProtocolStatus.STATUS_ROBOTS_DENIED, CrawlDatum.STATUS_FETCH_GONE);
 
-                            ProtocolOutput output = protocol.getProtocolOutput(fit.url, fit.datum);
-                            ProtocolStatus status = output.getStatus();
-                            Content content = output.getContent();
-                            ParseStatus pstatus;
-                            // Unblock Queue.
-                            fetchQueues.finishFetchItem(fit);
-                            String urlString = fit.url.toString();
+                        continue; // Saltar este ciclo del bucle.
+                    }
+
+                    if (rules.getCrawlDelay() > 0)
+                    {
+                        if (rules.getCrawlDelay() > maxCrawlDelay)
+                        {
+                            // Unblock.
+                            fetchQueues.finishFetchItem(fit, true);
 
                             if (LOG.isDebugEnabled())
                             {
-                                LOG.debug("Status Code for: " + urlString + " is: " + status.getCode());
+                                LOG.debug("Crawl-Delay for: " + fit.url + " too high (" + rules.getCrawlDelay() + "), skipping ...");
                             }
 
-                            switch (status.getCode())
-                            {
-                                case ProtocolStatus.WOULDBLOCK:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    // Retry...?
-                                    fetchQueues.addFetchItem(fit);
-                                    break;
-                                case ProtocolStatus.SUCCESS: // Got a page.
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    pstatus = output(fit.url, fit.datum, content, status, CrawlDatum.STATUS_FETCH_SUCCESS);
-                                    updateStatus(content.getContent().length);
-
-                                    if (pstatus != null && pstatus.isSuccess() && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT)
-                                    {
-                                        String newUrl = pstatus.getMessage();
-                                        int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
-                                        Text redirUrl = handleRedirect(fit.url, fit.datum, urlString, newUrl, refreshTime < Fetcher.PERM_REFRESH_TIME, Fetcher.CONTENT_REDIR);
-
-                                        if (redirUrl != null)
-                                        {
-                                            CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, fit.datum.getFetchInterval(), fit.datum.getScore());
-
-                                            if (reprUrl != null)
-                                            {
-                                                newDatum.getMetadata().put(AIMEConstants.WRITABLE_REPR_URL_KEY.getTextConstant(), new Text(reprUrl));
-                                            }
-
-                                            fit = FetchItem.create(redirUrl, newDatum, byIP);
-
-                                            if (fit != null)
-                                            {
-                                                FetchItemQueue fiq = fetchQueues.getFetchItemQueue(fit.queueID);
-                                                fiq.addInProgressFetchItem(fit);
-                                            }
-                                            else
-                                            {
-                                                // stop redirecting
-                                                redirecting = false;
-                                            }
-                                        }
-                                    }
-                                    break;
-                                case ProtocolStatus.MOVED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    fit = handleMoved(status, fit, content, urlString);
-                                    break;
-                                case ProtocolStatus.TEMP_MOVED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    fit = handleMoved(status, fit, content, urlString);
-                                    break;
-                                case ProtocolStatus.EXCEPTION:
-                                    // Generic exception.
-                                    logError(fit.url, status.getMessage());
-                                    int killedURLs = fetchQueues.checkExceptionThreshold(fit.getQueueID());
-                                    if (killedURLs != 0 && LOG.isInfoEnabled())
-                                    {
-                                        LOG.info("The exceptions threshold for a queue has been reached. Emptying the queue ...");
-                                    }
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
-                                    break;
-                                case ProtocolStatus.RETRY: // Retry.
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
-                                    break;
-                                case ProtocolStatus.BLOCKED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
-                                    break;
-                                case ProtocolStatus.GONE: // Gone.
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
-                                    break;
-                                case ProtocolStatus.NOTFOUND:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
-                                    break;
-                                case ProtocolStatus.ACCESS_DENIED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
-                                    break;
-                                case ProtocolStatus.ROBOTS_DENIED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
-                                    break;
-                                case ProtocolStatus.NOTMODIFIED:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_NOTMODIFIED);
-                                    break;
-                                default:
-                                    Tools.incrementStatusCodes(status.getCode());
-                                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
-                                    LOG.warn("ProtocolStatus unknown: " + status.getCode());
-                            }
+                            Tools.incrementStatusCodes(ProtocolStatus.ROBOTS_DENIED);
+                            output(fit.url, fit.datum, null, ProtocolStatus.STATUS_ROBOTS_DENIED, CrawlDatum.STATUS_FETCH_GONE);
 
-                            if (redirecting && (redirectCount > maxRedirect))
-                            {
-                                fetchQueues.finishFetchItem(fit);
+                            continue; // Saltar este ciclo del bucle.
+                        }
+                        else
+                        {
+                            FetchItemQueue fiq = fetchQueues.getFetchItemQueue(fit.queueID);
+                            fiq.crawlDelay = rules.getCrawlDelay();
+                        }
+                    }
 
-                                if (LOG.isInfoEnabled())
-                                {
-                                    LOG.info("Redirections exceeded: " + fit.url);
-                                }
+                    if (async && protocol instanceof AsyncProtocol)
+                    {
+                        submit(fit, (AsyncProtocol) protocol);
 
-                                Tools.incrementStatusCodes(ProtocolStatus.REDIR_EXCEEDED);
-                                output(fit.url, fit.datum, null, ProtocolStatus.STATUS_REDIR_EXCEEDED, CrawlDatum.STATUS_FETCH_GONE);
-                            }
-                        } while (redirecting && (redirectCount <= maxRedirect));
-                    }
-                    catch (ProtocolNotFound | NumberFormatException | MalformedURLException | URLFilterException t)
-                    { // Unexpected exception.
-                        // Unblock
-                        fetchQueues.finishFetchItem(fit);
-                        // Log as failed.
-                        logError(fit.url, t.toString());
-                        // Collect
-                        output(fit.url, fit.datum, null, ProtocolStatus.STATUS_FAILED, CrawlDatum.STATUS_FETCH_RETRY);
+                        return null;
                     }
-                }
+
+                    ProtocolOutput output = protocol.getProtocolOutput(fit.url, fit.datum);
+                    // Unblock Queue.
+                    fetchQueues.finishFetchItem(fit);
+                    fit = handleOutput(fit, output);
+                } while (redirecting && (redirectCount <= maxRedirect));
             }
-            catch (Throwable t)
-            {
+            catch (ProtocolNotFound | NumberFormatException | MalformedURLException | URLFilterException t)
+            { // Unexpected exception.
+                // Unblock
+                fetchQueues.finishFetchItem(fit);
                 // Log as failed.
                 logError(fit.url, t.toString());
+                // Collect
+                output(fit.url, fit.datum, null, ProtocolStatus.STATUS_FAILED, CrawlDatum.STATUS_FETCH_RETRY);
             }
-            finally
+
+            return fit;
+        }
+
+        /**
+         * Hands an item over to an asynchronous protocol. The item holds its
+         * queue until the response arrives, so politeness is kept.
+         *
+         * @param fit      The item to fetch.
+         * @param protocol The protocol to fetch it with.
+         */
+        private void submit(final FetchItem fit, AsyncProtocol protocol)
+        {
+            final String chainReprUrl = reprUrl;
+            final int chainRedirectCount = redirectCount;
+
+            inFlight.incrementAndGet();
+            protocol.getProtocolOutput(fit.url, fit.datum, new AsyncProtocol.Callback()
             {
-                if (fit != null)
+                @Override
+                public void completed(ProtocolOutput output)
                 {
+                    // Unblock Queue.
                     fetchQueues.finishFetchItem(fit);
+                    completions.add(new Completion(fit, output, chainReprUrl, chainRedirectCount));
                 }
+            });
+        }
 
-                activeThreads.decrementAndGet(); // count_sent threads
+        /**
+         * Processes the outcome of an asynchronous request, sending the
+         * request for its redirect if there is one.
+         *
+         * @param completion The outcome of the request.
+         */
+        protected void complete(Completion completion)
+        {
+            FetchItem fit = completion.fit;
+            reprUrl = completion.reprUrl;
+            redirectCount = completion.redirectCount;
+            redirecting = false;
+
+            try
+            {
+                fit = handleOutput(fit, completion.output);
+            }
+            catch (MalformedURLException | URLFilterException t)
+            { // Unexpected exception.
+                // Log as failed.
+                logError(fit.url, t.toString());
+                // Collect
+                output(fit.url, fit.datum, null, ProtocolStatus.STATUS_FAILED, CrawlDatum.STATUS_FETCH_RETRY);
+
+                return;
+            }
+
+            if (redirecting && (redirectCount <= maxRedirect))
+            {
+                lastRequestStart.set(System.currentTimeMillis());
+                fetch(fit);
+            }
+        }
+
+        /**
+         * Records the outcome of a fetch.
+         *
+         * @param fit    The item fetched.
+         * @param output The output of the protocol.
+         *
+         * @return The item to fetch next if the page redirects, or the same
+         *         item otherwise.
+         *
+         * @throws MalformedURLException
+         * @throws URLFilterException
+         */
+        protected FetchItem handleOutput(FetchItem fit, ProtocolOutput output) throws MalformedURLException, URLFilterException
+        {
+            ProtocolStatus status = output.getStatus();
+            Content content = output.getContent();
+            ParseStatus pstatus;
+            String urlString = fit.url.toString();
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Status Code for: " + urlString + " is: " + status.getCode());
+            }
+
+            switch (status.getCode())
+            {
+                case ProtocolStatus.WOULDBLOCK:
+                    Tools.incrementStatusCodes(status.getCode());
+                    // Retry...?
+                    fetchQueues.addFetchItem(fit);
+                    break;
+                case ProtocolStatus.SUCCESS: // Got a page.
+                    Tools.incrementStatusCodes(status.getCode());
+                    pstatus = output(fit.url, fit.datum, content, status, CrawlDatum.STATUS_FETCH_SUCCESS);
+                    updateStatus(content.getContent().length);
+
+                    if (pstatus != null && pstatus.isSuccess() && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT)
+                    {
+                        String newUrl = pstatus.getMessage();
+                        int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
+                        Text redirUrl = handleRedirect(fit.url, fit.datum, urlString, newUrl, refreshTime < Fetcher.PERM_REFRESH_TIME, Fetcher.CONTENT_REDIR);
+
+                        if (redirUrl != null)
+                        {
+                            CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, fit.datum.getFetchInterval(), fit.datum.getScore());
+
+                            if (reprUrl != null)
+                            {
+                                newDatum.getMetadata().put(AIMEConstants.WRITABLE_REPR_URL_KEY.getTextConstant(), new Text(reprUrl));
+                            }
+
+                            fit = FetchItem.create(redirUrl, newDatum, byIP, dns);
+
+                            if (fit != null)
+                            {
+                                fetchQueues.addInProgressFetchItem(fit);
+                            }
+                            else
+                            {
+                                // stop redirecting
+                                redirecting = false;
+                            }
+                        }
+                    }
+                    break;
+                case ProtocolStatus.MOVED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    fit = handleMoved(status, fit, content, urlString);
+                    break;
+                case ProtocolStatus.TEMP_MOVED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    fit = handleMoved(status, fit, content, urlString);
+                    break;
+                case ProtocolStatus.EXCEPTION:
+                    // Generic exception.
+                    logError(fit.url, status.getMessage());
+                    int killedURLs = fetchQueues.checkExceptionThreshold(fit.getQueueID());
+                    if (killedURLs != 0 && LOG.isInfoEnabled())
+                    {
+                        LOG.info("The exceptions threshold for a queue has been reached. Emptying the queue ...");
+                    }
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
+                    break;
+                case ProtocolStatus.RETRY: // Retry.
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
+                    break;
+                case ProtocolStatus.BLOCKED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
+                    break;
+                case ProtocolStatus.GONE: // Gone.
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
+                    break;
+                case ProtocolStatus.NOTFOUND:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
+                    break;
+                case ProtocolStatus.ACCESS_DENIED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
+                    break;
+                case ProtocolStatus.ROBOTS_DENIED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_GONE);
+                    break;
+                case ProtocolStatus.NOTMODIFIED:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_NOTMODIFIED);
+                    break;
+                default:
+                    Tools.incrementStatusCodes(status.getCode());
+                    output(fit.url, fit.datum, null, status, CrawlDatum.STATUS_FETCH_RETRY);
+                    LOG.warn("ProtocolStatus unknown: " + status.getCode());
+            }
+
+            if (redirecting && (redirectCount > maxRedirect))
+            {
+                fetchQueues.finishFetchItem(fit);
 
                 if (LOG.isInfoEnabled())
                 {
-                    LOG.info("Finishing thread: " + getName() + ". Active threads: " + activeThreads);
+                    LOG.info("Redirections exceeded: " + fit.url);
                 }
+
+                Tools.incrementStatusCodes(ProtocolStatus.REDIR_EXCEEDED);
+                output(fit.url, fit.datum, null, ProtocolStatus.STATUS_REDIR_EXCEEDED, CrawlDatum.STATUS_FETCH_GONE);
             }
+
+            return fit;
         }
 
         private Text handleRedirect(Text url, CrawlDatum datum, String urlString, String newUrl, boolean temp, String redirType) throws MalformedURLException, URLFilterException
@@ -1132,12 +1524,11 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
                     newDatum.getMetadata().put(AIMEConstants.WRITABLE_REPR_URL_KEY.getTextConstant(), new Text(reprUrl));
                 }
 
-                fit = FetchItem.create(redirUrl, newDatum, byIP);
+                fit = FetchItem.create(redirUrl, newDatum, byIP, dns);
 
                 if (fit != null)
                 {
-                    FetchItemQueue fiq = fetchQueues.getFetchItemQueue(fit.queueID);
-                    fiq.addInProgressFetchItem(fit);
+                    fetchQueues.addInProgressFetchItem(fit);
                 }
                 else
                 {
@@ -1288,6 +1679,80 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         }
     }
 
+    /**
+     * This class processes the responses of asynchronous requests. It parses
+     * and collects the pages, and sends the requests for their redirects.
+     */
+    private class CompletionThread extends FetcherThread
+    {
+
+        public CompletionThread(Configuration conf)
+        {
+            super(conf);
+            setName("CompletionThread"); // use an informative name
+        }
+
+        @Override
+        public void run()
+        {
+            activeThreads.incrementAndGet(); // count_sent threads
+
+            try
+            {
+                while (true)
+                {
+                    Completion completion;
+                    try
+                    {
+                        completion = completions.poll(QUEUE_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // The task is being shut down.
+                        return;
+                    }
+
+                    if (completion == null)
+                    {
+                        if (dispatching.get() > 0 || inFlight.get() > 0)
+                        {
+                            continue;
+                        }
+                        else
+                        {
+                            // all done, finish this thread
+                            return;
+                        }
+                    }
+
+                    try
+                    {
+                        complete(completion);
+                    }
+                    catch (Throwable t)
+                    {
+                        // Log as failed, and keep serving the other requests.
+                        LOG.warn("Fetching of: " + completion.fit.url + " failed. Cause: " + t.toString());
+                        errors.incrementAndGet();
+                    }
+                    finally
+                    {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            }
+            finally
+            {
+                activeThreads.decrementAndGet(); // count_sent threads
+
+                if (LOG.isInfoEnabled())
+                {
+                    LOG.info("Finishing thread: " + getName() + ". Active threads: " + activeThreads);
+                }
+            }
+        }
+    }
+
     public Fetcher()
     {
         super(null);
@@ -1322,6 +1787,10 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         status.append("ActiveThreads: ").append(activeThreads).append(", ");
         status.append("Pages: ").append(pages).append(", ");
         status.append("Errors: ").append(errors).append(", ");
+        if (async)
+        {
+            status.append("InFlight: ").append(inFlight).append(", ");
+        }
         status.append("Speed: ").append(Math.round(((float) pages.get() * 10) / elapsed) / 10.0).append(" p/s # ").append(Math.round((((float) bytes.get() * 8) / 1024) / elapsed)).append(" Kbps");
 
         reporter.setStatus(status.toString());
@@ -1353,6 +1822,11 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         return conf.getBoolean("fetcher.store.content", true);
     }
 
+    public static boolean isAsync(Configuration conf)
+    {
+        return conf.getBoolean("fetcher.async", false);
+    }
+
     @Override
     public void run(RecordReader<Text, CrawlDatum> input, OutputCollector<Text, AIMEWritable> output, Reporter reporter) throws IOException
     {
@@ -1360,8 +1834,19 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         this.reporter = reporter;
         fetchQueues = new FetchItemQueues(getConf());
         int threadCount = getConf().getInt("fetcher.threads.fetch", 10);
+        async = Fetcher.isAsync(getConf());
         int buffer = Integer.MAX_VALUE;
         feeder = new QueueFeeder(input, fetchQueues, buffer);
+        RobotRulesCache robotsCache = RobotRulesCache.get(getConf());
+        RobotRulesDB.Reader robots = RobotRulesDB.Reader.open(getConf(), RobotRulesDB.getPath());
+        feeder.setRobots(robots, robotsCache);
+
+        // queues by IP need every host resolved, do it before the threads ask
+        DNSCache dns = DNSCache.get(getConf());
+        if (getConf().getBoolean("fetcher.threads.per.host.by.ip", false))
+        {
+            prefetchHosts(dns);
+        }
 
         // the value of the time limit is either -1 or the time where it should finish
         long timelimit = getConf().getLong("fetcher.timelimit.mins", -1);
@@ -1372,53 +1857,137 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
         feeder.start();
 
+        StatsAgent agent = new StatsAgent(getConf());
+        agent.init();
+
         // set non-blocking & no-robots mode for HTTP protocol plugins.
         getConf().setBoolean(Protocol.CHECK_BLOCKING, false);
         getConf().setBoolean(Protocol.CHECK_ROBOTS, false);
 
+        dispatching.set(threadCount);
         for (int i = 0; i < threadCount; i++)
         { // spawn threads
             new FetcherThread(getConf()).start();
         }
 
-        // select a timeout that avoids a task timeout
-        long timeout = getConf().getInt("mapred.task.timeout", 10 * 60 * 1000) / 2;
-        do
-        { // wait for threads to exit
-            try
+        if (async)
+        { // spawn the threads that process the asynchronous responses
+            int completionThreads = getConf().getInt("fetcher.async.completion.threads", 10);
+            for (int i = 0; i < completionThreads; i++)
             {
-                Thread.sleep(1000);
+                new CompletionThread(getConf()).start();
             }
-            catch (InterruptedException e)
+        }
+
+        // select a timeout that avoids a task timeout
+        long timeout = getConf().getInt("mapred.task.timeout", 10 * 60 * 1000) / 2;
+        try
+        {
+            do
+            { // wait for threads to exit
+                try
+                {
+                    Thread.sleep(1000);
+                }
+                catch (InterruptedException e)
+                {
+                    // Do something ...
+                }
+
+                reportStatus();
+
+                if (!feeder.isAlive() && fetchQueues.getTotalSize() < 5)
+                {
+                    fetchQueues.dump();
+                }
+
+                // check timelimit
+                if (!feeder.isAlive())
+                {
+                    int hitByTimeLimit = fetchQueues.checkTimelimit();
+                    if (hitByTimeLimit != 0)
+                    {
+                        reporter.incrCounter("FetcherStatus", "hitByTimeLimit", hitByTimeLimit);
+                    }
+                }
+
+                // some requests seem to hang, despite all intentions
+                if ((System.currentTimeMillis() - lastRequestStart.get()) > timeout)
+                {
+                    LOG.warn("Aborting with: " + activeThreads + " hung threads.");
+                    return;
+                }
+
+            } while (activeThreads.get() > 0);
+        }
+        finally
+        {
+            agent.stopAll();
+
+            // keep the robots.txt rules downloaded by this task for the next ones
+            RobotRulesDB.write((JobConf) getConf(), robotsCache.drainFetched());
+
+            if (robots != null)
             {
-                // Do something ...
+                robots.close();
             }
 
-            reportStatus();
-
-            if (!feeder.isAlive() && fetchQueues.getTotalSize() < 5)
+            if (LOG.isInfoEnabled())
             {
-                fetchQueues.dump();
+                LOG.info(dns.toString());
             }
+        }
+    }
 
-            // check timelimit
-            if (!feeder.isAlive())
+    /**
+     * Resolves the hosts of the fetch list of this task, all at once. The
+     * fetch list isn't split, so it's the whole input file.
+     */
+    private void prefetchHosts(DNSCache dns)
+    {
+        String input = getConf().get("map.input.file");
+        if (input == null)
+        {
+            return;
+        }
+
+        Set<String> hosts = new HashSet<>();
+        try
+        {
+            Path path = new Path(input);
+            SequenceFile.Reader reader = new SequenceFile.Reader(path.getFileSystem(getConf()), path, getConf());
+            try
             {
-                int hitByTimeLimit = fetchQueues.checkTimelimit();
-                if (hitByTimeLimit != 0)
+                Text url = new Text();
+                while (reader.next(url))
                 {
-                    reporter.incrCounter("FetcherStatus", "hitByTimeLimit", hitByTimeLimit);
+                    try
+                    {
+                        hosts.add(new URL(url.toString()).getHost());
+                    }
+                    catch (MalformedURLException e)
+                    {
+                        // Skipped when queued.
+                    }
                 }
             }
-
-            // some requests seem to hang, despite all intentions
-            if ((System.currentTimeMillis() - lastRequestStart.get()) > timeout)
+            finally
             {
-                LOG.warn("Aborting with: " + activeThreads + " hung threads.");
-                return;
+                reader.close();
             }
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Impossible to read the hosts of the fetch list, they'll be resolved when queued. Error: " + e.toString());
+            return;
+        }
 
-        } while (activeThreads.get() > 0);
+        long start = System.currentTimeMillis();
+        int resolved = dns.prefetch(hosts);
+        if (LOG.isInfoEnabled())
+        {
+            LOG.info("Resolved " + resolved + " of " + hosts.size() + " hosts in " + (System.currentTimeMillis() - start) + " ms.");
+        }
     }
 
     public void fetch(Path segment, int threads, boolean parsing) throws IOException
@@ -1460,7 +2029,11 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
         job.setOutputFormat(FetcherOutputFormat.class);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(AIMEWritable.class);
+        URLFilterSnapshot.publish(job);
         JobClient.runJob(job);
+
+        SegmentLocator.write(getConf(), segment);
+        RobotRulesDB.update(getConf(), RobotRulesDB.getPath(), segment);
     }
 
     public static int runProcess(String[] args, SwingWorker<?, ?> runner) throws Exception
@@ -1476,7 +2049,6 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
     @Override
     public int run(String[] args) throws Exception
     {
-        StatsAgent agent = new StatsAgent();
         Path segment = new Path(args[0]);
         int threads = getConf().getInt("fetcher.threads.fetch", 10);
         boolean prg = true;
@@ -1503,9 +2075,7 @@ public class Fetcher extends Configured implements Tool, MapRunnable<Text, Crawl
 
         try
         {
-            agent.init();
             fetch(segment, threads, prg);
-            agent.stopAll();
 
             return 0;
         }
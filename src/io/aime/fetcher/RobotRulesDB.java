@@ -0,0 +1,273 @@
+package io.aime.fetcher;
+
+import io.aime.protocol.RobotRules;
+import io.aime.protocol.RobotRulesCache;
+import io.aime.util.AIMEConstants;
+import io.aime.util.AIMEJob;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapFileOutputFormat;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.lib.HashPartitioner;
+import org.apache.log4j.Logger;
+
+/**
+ * Stores the robots.txt rules of every host fetched so far, next to the main
+ * DBase, so that fetch tasks don't download them again while they're fresh.
+ *
+ * <p>
+ * The rules are kept in a MapFile keyed by host. Fetch tasks look up the hosts
+ * of their fetch list as they read it and preload them into the
+ * {@link RobotRulesCache}, and write the rules they had to download to the
+ * segment. Once the fetch job is over those are merged into the DBase, keeping
+ * the newest rules of each host and dropping the expired ones.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class RobotRulesDB
+{
+
+    private static final Logger LOG = Logger.getLogger(RobotRulesDB.class.getName());
+    public static final String ROBOTS_DIR_NAME = "robots_fetch";
+    public static final String CURRENT_NAME = "current";
+
+    private RobotRulesDB()
+    {
+    }
+
+    public static Path getPath()
+    {
+        return new Path(AIMEConstants.ROBOTSDBASE_PATH.getStringConstant());
+    }
+
+    /**
+     * Writes the rules downloaded by a fetch task to the segment. They're
+     * written to the work directory of the task, which is moved into the
+     * segment only if the task succeeds.
+     *
+     * @param job   The job of the task.
+     * @param rules The rules by host.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(JobConf job, Map<String, RobotRules> rules) throws IOException
+    {
+        if (rules.isEmpty())
+        {
+            return;
+        }
+
+        Path work = FileOutputFormat.getWorkOutputPath(job);
+        if (work == null)
+        {
+            work = FileOutputFormat.getOutputPath(job);
+        }
+
+        Path out = new Path(new Path(work, ROBOTS_DIR_NAME), FileOutputFormat.getUniqueName(job, "part"));
+        SequenceFile.Writer writer = SequenceFile.createWriter(out.getFileSystem(job), job, out, Text.class, ObjectWritable.class);
+        int count = 0;
+
+        try
+        {
+            for (Entry<String, RobotRules> e : rules.entrySet())
+            {
+                if (e.getValue() instanceof Writable)
+                {
+                    writer.append(new Text(e.getKey()), new ObjectWritable(e.getValue()));
+                    count++;
+                }
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        if (LOG.isInfoEnabled())
+        {
+            LOG.info("Robots rules stored for: " + count + " hosts.");
+        }
+    }
+
+    /**
+     * Merges the rules downloaded while fetching a segment into the DBase.
+     *
+     * @param conf     The configuration object.
+     * @param robotsDb The robots DBase.
+     * @param segment  The segment just fetched.
+     *
+     * @throws IOException If the job fails.
+     */
+    public static void update(Configuration conf, Path robotsDb, Path segment) throws IOException
+    {
+        FileSystem fs = FileSystem.get(conf);
+        Path fetched = new Path(segment, ROBOTS_DIR_NAME);
+        Path current = new Path(robotsDb, CURRENT_NAME);
+        Path newRobotsDb = new Path(robotsDb, Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+
+        if (!fs.exists(fetched))
+        {
+            return;
+        }
+
+        JobConf job = new AIMEJob(conf);
+        job.setJobName("Robots_DBase_Updater");
+        job.setInputFormat(SequenceFileInputFormat.class);
+        job.setReducerClass(Merger.class);
+        job.setOutputFormat(MapFileOutputFormat.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(ObjectWritable.class);
+        FileInputFormat.addInputPath(job, fetched);
+        if (fs.exists(current))
+        {
+            FileInputFormat.addInputPath(job, current);
+        }
+        FileOutputFormat.setOutputPath(job, newRobotsDb);
+
+        try
+        {
+            JobClient.runJob(job);
+        }
+        catch (IOException e)
+        {
+            if (fs.exists(newRobotsDb))
+            {
+                fs.delete(newRobotsDb, true);
+            }
+
+            throw e;
+        }
+
+        Path old = new Path(robotsDb, "old");
+        if (fs.exists(current))
+        {
+            if (fs.exists(old))
+            {
+                fs.delete(old, true);
+            }
+
+            fs.rename(current, old);
+        }
+
+        fs.rename(newRobotsDb, current);
+
+        if (fs.exists(old))
+        {
+            fs.delete(old, true);
+        }
+    }
+
+    /**
+     * Keeps the newest rules of each host, unless they already expired.
+     */
+    public static class Merger extends MapReduceBase implements Reducer<Text, ObjectWritable, Text, ObjectWritable>
+    {
+
+        @Override
+        public void reduce(Text key, Iterator<ObjectWritable> values, OutputCollector<Text, ObjectWritable> output, Reporter reporter) throws IOException
+        {
+            RobotRules newest = null;
+
+            while (values.hasNext())
+            {
+                // Every value is read into a new object, so it can be kept.
+                RobotRules rules = (RobotRules) values.next().get();
+
+                if (newest == null || rules.getExpireTime() > newest.getExpireTime())
+                {
+                    newest = rules;
+                }
+            }
+
+            if (newest != null && !RobotRulesCache.isExpired(newest, System.currentTimeMillis()))
+            {
+                output.collect(key, new ObjectWritable(newest));
+            }
+        }
+    }
+
+    /**
+     * Looks up the rules of single hosts in the DBase.
+     */
+    static class Reader implements Closeable
+    {
+
+        private final Configuration conf;
+        private final MapFile.Reader[] readers;
+        private final HashPartitioner<Text, ObjectWritable> partitioner = new HashPartitioner<>();
+
+        private Reader(Configuration conf, MapFile.Reader[] readers)
+        {
+            this.conf = conf;
+            this.readers = readers;
+        }
+
+        /**
+         * Opens the DBase.
+         *
+         * @param conf     The configuration object.
+         * @param robotsDb The robots DBase.
+         *
+         * @return A reader, or null if the DBase doesn't exist yet.
+         *
+         * @throws IOException If the DBase can't be opened.
+         */
+        static Reader open(Configuration conf, Path robotsDb) throws IOException
+        {
+            Path current = new Path(robotsDb, CURRENT_NAME);
+
+            if (!current.getFileSystem(conf).exists(current))
+            {
+                return null;
+            }
+
+            return new Reader(conf, MapFileOutputFormat.getReaders(current.getFileSystem(conf), current, conf));
+        }
+
+        /**
+         * Returns the stored rules of a host, or null if there are none.
+         */
+        RobotRules get(String host) throws IOException
+        {
+            ObjectWritable value = new ObjectWritable();
+            value.setConf(conf);
+
+            if (MapFileOutputFormat.getEntry(readers, partitioner, new Text(host), value) == null)
+            {
+                return null;
+            }
+
+            return (RobotRules) value.get();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            for (MapFile.Reader reader : readers)
+            {
+                reader.close();
+            }
+        }
+    }
+}
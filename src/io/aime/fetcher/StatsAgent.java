@@ -1,41 +1,35 @@
 package io.aime.fetcher;
 
 import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
+import io.aime.brain.data.BrainCall;
 import io.aime.brain.data.MetadataFetcher;
-import io.aime.brain.xml.Handler;
+import io.aime.brain.data.MetadataFetcher.Delta;
+import io.aime.protocol.ConnectionStats;
 import io.aime.protocol.ProtocolStatus;
-import io.aime.util.AIMEConfiguration;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.hadoop.conf.Configuration;
 
 /**
  * Agent to handle the Fetcher stats, then this information will be sent to the
  * Cerebellum.
  *
+ * <p>
+ * Every fetch task runs an agent, which sends the Cerebellum what changed
+ * since its last push, so the Cerebellum can add up the stats of all the
+ * tasks. Status codes are counted on striped counters, so fetcher threads
+ * don't contend on them. A task that's killed still sends its last push on
+ * the way out, so its threads stop counting.
+ * </p>
+ *
  * @author Andreas P. Koenzen <akc at apkc.net>
- * @version 0.2
+ * @version 0.3
  */
 class StatsAgent
 {
 
-    // Status Table
-    private static AtomicInteger suc = new AtomicInteger(0); // Success
-    private static AtomicInteger fai = new AtomicInteger(0); // Failed
-    private static AtomicInteger gon = new AtomicInteger(0); // Gone
-    private static AtomicInteger mov = new AtomicInteger(0); // Moved
-    private static AtomicInteger tem = new AtomicInteger(0); // Temp Moved
-    private static AtomicInteger not = new AtomicInteger(0); // Not Found
-    private static AtomicInteger ret = new AtomicInteger(0); // Retry
-    private static AtomicInteger exc = new AtomicInteger(0); // Exception
-    private static AtomicInteger acc = new AtomicInteger(0); // Access Denied
-    private static AtomicInteger rob = new AtomicInteger(0); // Robots Denied
-    private static AtomicInteger red = new AtomicInteger(0); // Redir Exceeded
-    private static AtomicInteger mod = new AtomicInteger(0); // Not Modified
-    private static AtomicInteger wou = new AtomicInteger(0); // Would Block
-    private static AtomicInteger blo = new AtomicInteger(0); // Blocked
-    private static AtomicInteger unk = new AtomicInteger(0); // Unknown
+    // Status Table, indexed as in MetadataFetcher.Delta.
+    private static final LongAdder[] CODES = new LongAdder[Delta.CODES];
     // Stats Table
     private static AtomicLong act = new AtomicLong(0); // Active Threads
     private static AtomicLong wai = new AtomicLong(0); // Waiting Threads
@@ -45,16 +39,76 @@ class StatsAgent
     private static AtomicLong ela = new AtomicLong(0); // Elapsed
     private static AtomicLong byt = new AtomicLong(0); // Bytes
     // Misc
-    private Configuration conf = new AIMEConfiguration().create();
-    private ThreadGroup tg = new ThreadGroup("FetcherStatsAgent");
+    private final Configuration conf;
+    private final String job;
+    private final String task;
     private Thread sender;
+    // Sends the last delta if the task is killed before stopAll().
+    private Thread shutdownHook;
+    // What was sent last.
+    private final long[] sentCodes = new long[Delta.CODES];
+    private long sentPages = 0L;
+    private long sentErrors = 0L;
+    private long sentBytes = 0L;
+    private long sentReused;
+    private long sentOpened;
+    private long sentStatus = -1L;
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param conf The configuration of the fetch task.
+     */
+    StatsAgent(Configuration conf)
+    {
+        this.conf = conf;
+        this.job = conf.get("mapred.job.id", "local");
+        this.task = conf.get("mapred.task.id", "local");
+    }
 
     void init()
     {
-        this.sender = new Thread(this.tg, new Sender(), "FetcherStatsAgentSender");
+        // Counters belong to the JVM, which may run several tasks in turn.
+        for (int i = 0; i < CODES.length; i++) {
+            sentCodes[i] = CODES[i].sum();
+        }
+        Tools.setFetcherStatus(0L, 0L, 0L, 0L, 0L, 0L, 0L);
+        sentReused = ConnectionStats.getConnectionsReused();
+        sentOpened = ConnectionStats.getConnectionsOpened();
+
+        sender = new Thread(new Sender(), "FetcherStatsAgentSender");
+        sender.setDaemon(true);
+        sender.start();
 
-        // Start the group.
-        this.sender.start();
+        shutdownHook = new Thread("FetcherStatsAgentShutdown")
+        {
+            @Override
+            public void run()
+            {
+                // Don't hold the exit of the JVM if the Cerebellum is slow.
+                Thread last = new Thread("FetcherStatsAgentLast")
+                {
+                    @Override
+                    public void run()
+                    {
+                        push(true);
+                    }
+                };
+                last.setDaemon(true);
+                last.start();
+                try {
+                    last.join(5000);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
 
         if (Fetcher.LOG.isInfoEnabled()) {
             Fetcher.LOG.info("Fetcher's stats agent started!");
@@ -63,18 +117,83 @@ class StatsAgent
 
     void stopAll()
     {
+        sender.interrupt();
         try {
-            // Wait 1 minute before stoping the agent. So the latest stats can be synchronized.
-            Thread.sleep(conf.getInt("fetcher.stats.agent.stoping.wait", 60000));
+            sender.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-            this.tg.interrupt();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e) {
+            // Already shutting down, the hook sends the last delta.
+            return;
+        }
 
-            if (Fetcher.LOG.isInfoEnabled()) {
-                Fetcher.LOG.info("Fetcher's stats agent stopped!");
-            }
+        // The last push carries whatever the sender didn't.
+        push(true);
+
+        if (Fetcher.LOG.isInfoEnabled()) {
+            Fetcher.LOG.info("Fetcher's stats agent stopped!");
+        }
+    }
+
+    /**
+     * Sends the Cerebellum what changed since the last push, if anything did.
+     * If it can't be sent it's added to the next push.
+     *
+     * @param last TRUE if the task is done.
+     */
+    private synchronized void push(boolean last)
+    {
+        Delta delta = Delta.newBuild().setTask(job, task).setTime(System.currentTimeMillis()).setLast(last);
+        boolean changed = last;
+
+        long[] codes = new long[Delta.CODES];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = CODES[i].sum();
+            delta.setStatusCode(i, codes[i] - sentCodes[i]);
+            changed |= (codes[i] != sentCodes[i]);
         }
-        catch (Exception e) {
-            Fetcher.LOG.error("Error trying to stop FetcherStatsAgent's thread! Error: " + e.toString(), e);
+
+        long pages = pag.get();
+        long errors = err.get();
+        long bytes = byt.get();
+        long reused = ConnectionStats.getConnectionsReused();
+        long opened = ConnectionStats.getConnectionsOpened();
+        delta.setCounters(pages - sentPages, errors - sentErrors, bytes - sentBytes, reused - sentReused, opened - sentOpened);
+        changed |= (pages != sentPages || errors != sentErrors || bytes != sentBytes || reused != sentReused || opened != sentOpened);
+
+        // Threads and queue size change all the time, but only matter when the elapsed time changes.
+        long elapsed = ela.get();
+        delta.setStatus(act.get(), wai.get(), que.get(), elapsed);
+        changed |= (elapsed != sentStatus);
+
+        if (!changed) {
+            return;
+        }
+
+        try {
+            Brain.getClient(conf).call(BrainCall.merge(MetadataFetcher.DELTA, delta));
+        }
+        catch (RuntimeException e) {
+            Fetcher.LOG.warn("Can't send stats to Cerebellum. Error: " + e.toString());
+            return;
+        }
+
+        System.arraycopy(codes, 0, sentCodes, 0, codes.length);
+        sentPages = pages;
+        sentErrors = errors;
+        sentBytes = bytes;
+        sentReused = reused;
+        sentOpened = opened;
+        sentStatus = elapsed;
+
+        if (Fetcher.LOG.isDebugEnabled()) {
+            Fetcher.LOG.debug("Sending stats to Cerebellum ...");
         }
     }
 
@@ -88,49 +207,49 @@ class StatsAgent
         {
             switch (statusCode) {
                 case ProtocolStatus.SUCCESS:
-                    suc.incrementAndGet();
+                    CODES[Delta.SUCCESS].increment();
                     break;
                 case ProtocolStatus.FAILED:
-                    fai.incrementAndGet();
+                    CODES[Delta.FAILED].increment();
                     break;
                 case ProtocolStatus.GONE:
-                    gon.incrementAndGet();
+                    CODES[Delta.GONE].increment();
                     break;
                 case ProtocolStatus.MOVED:
-                    mov.incrementAndGet();
+                    CODES[Delta.MOVED].increment();
                     break;
                 case ProtocolStatus.TEMP_MOVED:
-                    tem.incrementAndGet();
+                    CODES[Delta.TEMP_MOVED].increment();
                     break;
                 case ProtocolStatus.NOTFOUND:
-                    not.incrementAndGet();
+                    CODES[Delta.NOT_FOUND].increment();
                     break;
                 case ProtocolStatus.RETRY:
-                    ret.incrementAndGet();
+                    CODES[Delta.RETRY].increment();
                     break;
                 case ProtocolStatus.EXCEPTION:
-                    exc.incrementAndGet();
+                    CODES[Delta.EXCEPTION].increment();
                     break;
                 case ProtocolStatus.ACCESS_DENIED:
-                    acc.incrementAndGet();
+                    CODES[Delta.ACCESS_DENIED].increment();
                     break;
                 case ProtocolStatus.ROBOTS_DENIED:
-                    rob.incrementAndGet();
+                    CODES[Delta.ROBOTS_DENIED].increment();
                     break;
                 case ProtocolStatus.REDIR_EXCEEDED:
-                    red.incrementAndGet();
+                    CODES[Delta.REDIR_EXCEEDED].increment();
                     break;
                 case ProtocolStatus.NOTMODIFIED:
-                    mod.incrementAndGet();
+                    CODES[Delta.NOT_MODIFIED].increment();
                     break;
                 case ProtocolStatus.WOULDBLOCK:
-                    wou.incrementAndGet();
+                    CODES[Delta.WOULD_BLOCK].increment();
                     break;
                 case ProtocolStatus.BLOCKED:
-                    blo.incrementAndGet();
+                    CODES[Delta.BLOCKED].increment();
                     break;
                 default:
-                    unk.incrementAndGet();
+                    CODES[Delta.UNKNOWN].increment();
                     break;
             }
         }
@@ -160,65 +279,25 @@ class StatsAgent
     }
 
     /**
-     * Executes in the background, and sends the previously gatherer stats to
-     * the Start.
+     * Executes in the background, and pushes the stats to the Cerebellum
+     * every few seconds.
      */
     class Sender implements Runnable
     {
 
-        private final Configuration CONF = new AIMEConfiguration().create();
-
         @Override
         public void run()
         {
+            long sync = conf.getInt("fetcher.stats.agent.sync", 1000);
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    Brain
-                            .getClient(CONF)
-                            .execute(Handler
-                                    .makeXMLRequest(
-                                            BrainXMLData
-                                            .newBuild()
-                                            .setJob(BrainXMLData.JOB_MERGE)
-                                            .setClazz(MetadataFetcher.class)
-                                            .setFunction("Data")
-                                            .setParam(BrainXMLData.Parameter
-                                                    .newBuild()
-                                                    .setType(MetadataFetcher.Data.class)
-                                                    .setData(MetadataFetcher.Data
-                                                            .newBuild()
-                                                            .setSuccess(suc.get())
-                                                            .setFailed(fai.get())
-                                                            .setGone(gon.get())
-                                                            .setMoved(mov.get())
-                                                            .setTempMoved(tem.get())
-                                                            .setNotFound(not.get())
-                                                            .setRetry(ret.get())
-                                                            .setException(exc.get())
-                                                            .setAccessDenied(acc.get())
-                                                            .setRobotsDenied(rob.get())
-                                                            .setRedirExceeded(red.get())
-                                                            .setNotModified(mod.get())
-                                                            .setWouldBlock(wou.get())
-                                                            .setBlocked(blo.get())
-                                                            .setUnknown(unk.get())
-                                                            .setActiveThreads(act.get())
-                                                            .setWaitingThreads(wai.get())
-                                                            .setQueueSize(que.get())
-                                                            .setPages(pag.get())
-                                                            .setErrors(err.get())
-                                                            .setElapsed(ela.get())
-                                                            .setBytes(byt.get())))));
-
-                    if (Fetcher.LOG.isDebugEnabled()) {
-                        Fetcher.LOG.debug("Sending stats to Cerebellum ...");
-                    }
-
-                    Thread.sleep(conf.getInt("fetcher.stats.agent.sync", 1000));
+                    Thread.sleep(sync);
                 }
                 catch (InterruptedException e) {
-                    // Do nothing
+                    return;
                 }
+
+                push(false);
             }
         }
     }
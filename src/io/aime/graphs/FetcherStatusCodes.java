@@ -1,9 +1,8 @@
 package io.aime.graphs;
 
 import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
+import io.aime.brain.data.BrainCall;
 import io.aime.brain.data.MetadataFetcher;
-import io.aime.brain.xml.Handler;
 import io.aime.util.AIMEConfiguration;
 import java.awt.BasicStroke;
 import java.awt.BorderLayout;
@@ -82,19 +81,16 @@ public class FetcherStatusCodes extends JPanel
         {
             super(CONF.getInt("fetcher.status.codes.graph", 1000), null);
             addActionListener((ActionEvent e) -> {
-                final MetadataFetcher.Data DATA = (MetadataFetcher.Data) Brain
+                // Only the last minutes, so the chart shows what's being fetched now.
+                final long[] CODES = (long[]) Brain
                         .getInstance()
-                        .execute(Handler
-                                .makeXMLRequest(BrainXMLData
-                                        .newBuild()
-                                        .setJob(BrainXMLData.JOB_REQUEST)
-                                        .setClazz(MetadataFetcher.Data.class)
-                                        .setFunction("Data"))).get();
+                        .call(BrainCall.request(MetadataFetcher.RECENT_STATUS_CODES))
+                        .get();
 
                 DATASET.clear();
-                DATASET.addValue(DATA.getSuccess(), "Status Code", "Success");
-                DATASET.addValue(DATA.getFailed(), "Status Code", "Failed");
-                DATASET.addValue(DATA.getTempMoved(), "Status Code", "Temporary Moved");
+                DATASET.addValue(CODES[MetadataFetcher.Delta.SUCCESS], "Status Code", "Success");
+                DATASET.addValue(CODES[MetadataFetcher.Delta.FAILED], "Status Code", "Failed");
+                DATASET.addValue(CODES[MetadataFetcher.Delta.TEMP_MOVED], "Status Code", "Temporary Moved");
             });
         }
     }
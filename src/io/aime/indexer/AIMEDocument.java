@@ -30,10 +30,27 @@ import java.util.Map.Entry;
  */
 public class AIMEDocument implements Writable, Iterable<Entry<String, AIMEField>> {
 
-    public static final byte VERSION = 2;
+    public static final byte VERSION = 3;
     private Map<String, AIMEField> fields = new HashMap<String, AIMEField>();
     private DocMetadata documentMeta = new DocMetadata();
     private float weight = 1.0F;
+    private boolean deletion = false;
+
+    /**
+     * Creates a document that doesn't hold any content, but tells the index
+     * writer to remove the document with the given unique id from the index.
+     *
+     * @param uniqueId The unique id of the document to remove.
+     *
+     * @return The deletion document.
+     */
+    public static AIMEDocument createDeletion(String uniqueId) {
+        AIMEDocument doc = new AIMEDocument();
+        doc.add(LuceneWriter.UNIQUE_ID_FIELD, uniqueId);
+        doc.deletion = true;
+
+        return doc;
+    }
 
     public void add(String name, String value) {
         fields.put(name, new AIMEField(value));
@@ -77,21 +94,27 @@ public class AIMEDocument implements Writable, Iterable<Entry<String, AIMEField>
         return documentMeta;
     }
 
+    public boolean isDeletion() {
+        return deletion;
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
         fields.clear(); // Clear all fields.
 
         // 1. Version (Byte)
-        // 2. Weight (Float)
-        // 3. DocumentMeta (Object)
-        // 4. Field Size (Int) 
-        // 5. Fields
-        //    5.1. Name of Field (String)
-        //    5.2. AIMEField (Object)
+        // 2. Deletion (Boolean) (Since version 3)
+        // 3. Weight (Float)
+        // 4. DocumentMeta (Object)
+        // 5. Field Size (Int) 
+        // 6. Fields
+        //    6.1. Name of Field (String)
+        //    6.2. AIMEField (Object)
         byte version = in.readByte();
-        if (version != VERSION) {
+        if (version != VERSION && version != 2) {
             throw new VersionMismatchException(VERSION, version);
         }
+        deletion = (version > 2) ? in.readBoolean() : false;
         weight = in.readFloat();
         documentMeta.readFields(in);
         int size = in.readInt();
@@ -106,13 +129,15 @@ public class AIMEDocument implements Writable, Iterable<Entry<String, AIMEField>
     @Override
     public void write(DataOutput out) throws IOException {
         // 1. Version (Byte)
-        // 2. Weight (Float)
-        // 3. DocumentMeta (Object)
-        // 4. Field Size (Int)
-        // 5. Fields
-        //    5.1. Name of Field (String)
-        //    5.2. AIMEField (Object)
+        // 2. Deletion (Boolean)
+        // 3. Weight (Float)
+        // 4. DocumentMeta (Object)
+        // 5. Field Size (Int)
+        // 6. Fields
+        //    6.1. Name of Field (String)
+        //    6.2. AIMEField (Object)
         out.writeByte(VERSION);
+        out.writeBoolean(deletion);
         out.writeFloat(weight);
         documentMeta.write(out);
         out.writeInt(fields.size());
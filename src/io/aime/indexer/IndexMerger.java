@@ -0,0 +1,212 @@
+package io.aime.indexer;
+
+// AIME
+import io.aime.util.AIMEJob;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+// Apache Lucene
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+// IO
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Util
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Merges the index shards written by {@link IndexerOutputFormat} into the
+ * kernel index.
+ *
+ * <p>Documents already present in the kernel index are replaced by their newer
+ * version in the shards, matching them by the "uniqueid" field. The shards are
+ * added segment by segment, which is a plain file copy for Lucene, so the cost
+ * of the merge grows with the size of the shards and not with the amount of
+ * documents they hold.</p>
+ *
+ * <p>Documents listed in the deletions file of a shard are removed from the
+ * kernel index as well.</p>
+ *
+ * @author K-Zen
+ */
+public class IndexMerger {
+
+    private static final Logger LOG = Logger.getLogger(IndexMerger.class.getName());
+    public static final String MAX_SEGMENTS = "indexer.merge.max.segments";
+
+    /**
+     * Merges all finished shards under a folder into an index.
+     *
+     * @param conf   The configuration object.
+     * @param shards The folder holding the shards, one per reducer.
+     * @param index  The index to merge into. It's created if it doesn't exist.
+     *
+     * @throws IOException If the merge fails. The current index is left
+     *                     untouched in that case.
+     */
+    public static void merge(Configuration conf, Path shards, Path index) throws IOException {
+        FileSystem fs = index.getFileSystem(conf);
+        boolean local = "file".equals(fs.getUri().getScheme());
+        Path work = new AIMEJob(conf).getLocalPath("index/merge-" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+        FileSystem localFs = FileSystem.getLocal(conf);
+        List<Path> parts = IndexMerger.getShards(fs, shards);
+
+        if (parts.isEmpty()) {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("No index shards to merge in: " + shards);
+            }
+
+            return;
+        }
+
+        // Lucene needs a local folder, so for a distributed file system all the
+        // work is done on a local copy that gets installed at the end.
+        Path localIndex = local ? index : new Path(work, "index");
+        if (!local && fs.exists(index)) {
+            fs.copyToLocalFile(index, localIndex);
+        }
+
+        try {
+            LuceneWriter writer = new LuceneWriter(new File(localIndex.toUri().getPath()), false, conf);
+            Directory[] dirs = new Directory[parts.size()];
+
+            try {
+                for (int i = 0; i < parts.size(); i++) {
+                    Path localShard = parts.get(i);
+                    if (!local) {
+                        localShard = new Path(work, "shard-" + i);
+                        fs.copyToLocalFile(parts.get(i), localShard);
+                    }
+
+                    File shardDir = new File(localShard.toUri().getPath());
+                    dirs[i] = FSDirectory.open(shardDir);
+                    IndexMerger.deleteReplaced(writer, dirs[i]);
+                    IndexMerger.deleteRemoved(writer, new File(shardDir, IndexerOutputFormat.DELETIONS_NAME));
+                }
+
+                // Deletions are applied before the shards are added, so only
+                // the old copies of the documents go away.
+                writer.getIndexWriter().addIndexes(dirs);
+            }
+            catch (IOException e) {
+                writer.getIndexWriter().rollback();
+                throw e;
+            }
+
+            writer.close(conf.getInt(MAX_SEGMENTS, -1));
+
+            if (!local) {
+                IndexMerger.install(fs, localIndex, index);
+            }
+        }
+        finally {
+            localFs.delete(work, true);
+        }
+
+        fs.delete(shards, true);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Merged " + parts.size() + " index shards into: " + index);
+        }
+    }
+
+    private static List<Path> getShards(FileSystem fs, Path shards) throws IOException {
+        List<Path> parts = new ArrayList<>();
+
+        if (!fs.exists(shards)) {
+            return parts;
+        }
+
+        for (FileStatus status : fs.listStatus(shards)) {
+            if (status.isDir() && fs.exists(new Path(status.getPath(), IndexerOutputFormat.DONE_NAME))) {
+                parts.add(status.getPath());
+            }
+        }
+
+        return parts;
+    }
+
+    private static void deleteReplaced(LuceneWriter writer, Directory shard) throws IOException {
+        IndexReader reader = IndexReader.open(shard);
+
+        try {
+            TermEnum terms = reader.terms(new Term(LuceneWriter.UNIQUE_ID_FIELD, ""));
+
+            try {
+                do {
+                    Term term = terms.term();
+                    if (term == null || !LuceneWriter.UNIQUE_ID_FIELD.equals(term.field())) {
+                        break;
+                    }
+
+                    writer.delete(term.text());
+                }
+                while (terms.next());
+            }
+            finally {
+                terms.close();
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static void deleteRemoved(LuceneWriter writer, File deletions) throws IOException {
+        if (!deletions.exists()) {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(deletions), "UTF-8"));
+
+        try {
+            String uniqueId;
+            while ((uniqueId = reader.readLine()) != null) {
+                if (!uniqueId.isEmpty()) {
+                    writer.delete(uniqueId);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static void install(FileSystem fs, Path localIndex, Path index) throws IOException {
+        Path tmp = new Path(index.getParent(), index.getName() + "-" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+        Path old = new Path(index.getParent(), index.getName() + "-old");
+
+        fs.copyFromLocalFile(localIndex, tmp);
+
+        if (fs.exists(index)) {
+            if (fs.exists(old)) {
+                fs.delete(old, true);
+            }
+
+            fs.rename(index, old);
+        }
+
+        fs.rename(tmp, index);
+
+        if (fs.exists(old)) {
+            fs.delete(old, true);
+        }
+    }
+}
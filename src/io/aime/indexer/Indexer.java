@@ -9,6 +9,9 @@ import io.aime.util.ProcessKiller;
 // Apache Hadoop
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.util.StringUtils;
@@ -44,7 +47,20 @@ public class Indexer extends Configured implements Tool {
         // Configure
         IndexerMapReduce.configureIndexer(job, this.exeType);
         // Run the job.
-        JobClient.runJob(job);
+        Path shards = FileOutputFormat.getOutputPath(job);
+        try {
+            JobClient.runJob(job);
+        }
+        catch (IOException e) {
+            FileSystem fs = shards.getFileSystem(job);
+            if (fs.exists(shards)) {
+                fs.delete(shards, true);
+            }
+
+            throw e;
+        }
+        // Merge the shards of all reducers into the kernel index.
+        IndexMerger.merge(job, shards, new Path(AIMEConstants.KERNEL_INDEX_PATH.getStringConstant()));
     }
 
     @Override
@@ -19,15 +19,19 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.MapFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapFileOutputFormat;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.lib.HashPartitioner;
 
 // I/O
 import java.io.IOException;
@@ -37,10 +41,12 @@ import org.apache.log4j.Logger;
 
 // Util
 import java.util.Iterator;
+import java.util.Random;
 
 public class IndexerMapReduce extends Configured {
 
     private static final Logger LOG = Logger.getLogger(IndexerMapReduce.class.getName());
+    public static final String INCREMENTAL = "indexer.incremental";
 
     public static class IndexerMapReduceMapper implements Mapper<Text, Writable, Text, AIMEWritable> {
 
@@ -61,10 +67,24 @@ public class IndexerMapReduce extends Configured {
     public static class IndexerMapReduceReducer implements Reducer<Text, AIMEWritable, Text, AIMEDocument> {
 
         private IndexingFilters filters;
+        private MapFile.Reader[] dbReaders;
+        private final HashPartitioner<Text, CrawlDatum> dbPartitioner = new HashPartitioner<>();
 
         @Override
         public void configure(JobConf job) {
             this.filters = new IndexingFilters(job);
+
+            // On incremental runs the main DBase isn't part of the input, so
+            // the entries of the URLs in the segment are looked up directly.
+            if (job.getBoolean(INCREMENTAL, true)) {
+                try {
+                    Path current = new Path(AIMEConstants.MAINDBASE_PATH.getStringConstant(), CrawlDB.CURRENT_NAME);
+                    this.dbReaders = MapFileOutputFormat.getReaders(current.getFileSystem(job), current, job);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Impossible to open the main DBase for lookups. Error: " + e.toString(), e);
+                }
+            }
         }
 
         @Override
@@ -111,6 +131,17 @@ public class IndexerMapReduce extends Configured {
                 }
             }
 
+            if (fetchDatum != null && dbDatum == null && this.dbReaders != null) {
+                dbDatum = (CrawlDatum) MapFileOutputFormat.getEntry(this.dbReaders, this.dbPartitioner, key, new CrawlDatum());
+            }
+
+            // Pages that are gone must leave the index.
+            if (fetchDatum != null && (fetchDatum.getStatus() == CrawlDatum.STATUS_FETCH_GONE || (dbDatum != null && dbDatum.getStatus() == CrawlDatum.STATUS_DB_GONE))) {
+                output.collect(key, AIMEDocument.createDeletion(MD5Hash.digest(key.toString()).toString()));
+
+                return;
+            }
+
             if (fetchDatum == null || dbDatum == null || parseText == null || parseData == null) {
                 return; // only have inlinks
             }
@@ -132,7 +163,7 @@ public class IndexerMapReduce extends Configured {
             doc.add("itday", "");
             doc.add("itmonth", "");
             doc.add("ityear", "");
-            doc.add("uniqueid", MD5Hash.digest(key.toString()).toString());
+            doc.add(LuceneWriter.UNIQUE_ID_FIELD, MD5Hash.digest(key.toString()).toString());
 
             final Parse parse = new ParseImplementation(parseText, parseData);
             try {
@@ -174,12 +205,27 @@ public class IndexerMapReduce extends Configured {
         public void close() throws IOException {
             this.filters.close();
             this.filters = null;
+
+            if (this.dbReaders != null) {
+                for (MapFile.Reader reader : this.dbReaders) {
+                    reader.close();
+                }
+
+                this.dbReaders = null;
+            }
         }
     }
 
     /**
      * Configures an indexing job.
      *
+     * <p>By default the job is incremental, only the URLs of the last segment
+     * are indexed and their main DBase entries are looked up through the
+     * MapFile index, so the cost of the job grows with the size of the
+     * segment and not with the size of the main DBase. Setting
+     * <code>indexer.incremental</code> to false joins the segment against the
+     * whole main DBase instead.</p>
+     *
      * @param job     Job's configuration object.
      * @param exeType The type of execution.
      */
@@ -218,7 +264,19 @@ public class IndexerMapReduce extends Configured {
         FileInputFormat.addInputPath(job, new Path(segmDBase, CrawlDatum.PARSE_DIR_NAME));
         FileInputFormat.addInputPath(job, new Path(segmDBase, ParseData.DIR_NAME));
         FileInputFormat.addInputPath(job, new Path(segmDBase, ParseText.DIR_NAME));
-        FileInputFormat.addInputPath(job, new Path(mainDBase, CrawlDB.CURRENT_NAME));
+        if (!job.getBoolean(INCREMENTAL, true)) {
+            FileInputFormat.addInputPath(job, new Path(mainDBase, CrawlDB.CURRENT_NAME));
+        }
+
+        // Every reducer writes its own index shard here, they get merged
+        // into the kernel index once the job is done.
+        FileOutputFormat.setOutputPath(job, new Path(AIMEConstants.TMP_PATH.getStringConstant(), "index-" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE))));
+
+        // Lucene options for the fields added by the reducer.
+        LuceneWriter.addFieldOptions("segment", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, job);
+        LuceneWriter.addFieldOptions("digest", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, job);
+        LuceneWriter.addFieldOptions(LuceneWriter.UNIQUE_ID_FIELD, IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, job);
+        LuceneWriter.addFieldOptions("boost", IndexingConstants.STORE_YES, IndexingConstants.INDEX_NO, job);
 
         // Configure Job
         job.setInputFormat(SequenceFileInputFormat.class);
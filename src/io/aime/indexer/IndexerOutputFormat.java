@@ -5,7 +5,9 @@ import io.aime.util.Timer;
 
 // Apache Hadoop
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordWriter;
@@ -13,32 +15,107 @@ import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.Progressable;
 
 // IO
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 // Log4j
 import org.apache.log4j.Logger;
 
+// Util
+import java.util.Random;
+
+/**
+ * Writes the documents of each reducer into its own Lucene index shard.
+ *
+ * <p>Every shard is built on the local disk of the task, buffering documents
+ * in RAM and flushing them in bulk, and is copied to the job's output folder
+ * when the task finishes. The shards are later merged into the kernel index
+ * by {@link IndexMerger}.</p>
+ *
+ * <p>Deletion documents aren't written to the shard. Their unique ids are
+ * listed in a side file of the shard, so that the merger can remove them from
+ * the kernel index.</p>
+ *
+ * @author K-Zen
+ */
 public class IndexerOutputFormat implements OutputFormat<Text, AIMEDocument> {
 
     private static final Logger LOG = Logger.getLogger(IndexerOutputFormat.class.getName());
-    private static Timer timer = new Timer();
+    public static final String DONE_NAME = "index.done";
+    public static final String DELETIONS_NAME = "index.deletions";
+    public static final String SHARD_MAX_SEGMENTS = "indexer.shard.max.segments";
 
     @Override
-    public RecordWriter<Text, AIMEDocument> getRecordWriter(FileSystem ignored, final JobConf job, String name, Progressable progress) throws IOException {
+    public RecordWriter<Text, AIMEDocument> getRecordWriter(FileSystem ignored, final JobConf job, String name, final Progressable progress) throws IOException {
+        final Path perm = FileOutputFormat.getTaskOutputPath(job, name);
+        final Path temp = job.getLocalPath("index/_" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+        final FileSystem fs = perm.getFileSystem(job);
+        final File local = new File(fs.startLocalOutput(perm, temp).toUri().getPath());
+        final LuceneWriter writer = new LuceneWriter(local, true, job);
+
+        final Timer timer = new Timer();
+        timer.starTimer();
+
         return new RecordWriter<Text, AIMEDocument>() {
+            private long docs = 0L;
+            private long deletions = 0L;
+            private Writer deleted = null;
+
             @Override
             public void close(Reporter reporter) throws IOException {
-                // Close DILI.
+                if (deleted != null) {
+                    deleted.close();
+                }
+
+                // Flush what is left in RAM and keep the shard compact, then
+                // move it to the output folder.
+                writer.close(job.getInt(SHARD_MAX_SEGMENTS, 1));
+                fs.completeLocalOutput(perm, temp);
+                fs.createNewFile(new Path(perm, DONE_NAME));
+                timer.endTimer();
+
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("Index shard " + perm.getName() + " written. Documents: " + docs + ". Deletions: " + deletions + ". Time: " + timer.computeOperationTime(Timer.Time.SECOND) + "s.");
+                }
             }
 
             @Override
             public void write(Text key, AIMEDocument doc) throws IOException {
-                // Write to DILI.
+                if (doc.isDeletion()) {
+                    // Deletions target the kernel index and not this shard, so
+                    // they travel along with it and are applied by the merger.
+                    if (deleted == null) {
+                        deleted = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(local, DELETIONS_NAME)), "UTF-8"));
+                    }
+
+                    deleted.write(doc.getFieldValue(LuceneWriter.UNIQUE_ID_FIELD));
+                    deleted.write('\n');
+                    deletions++;
+                }
+                else {
+                    writer.write(doc);
+                    docs++;
+                }
+
+                progress.progress();
             }
         };
     }
 
     @Override
     public void checkOutputSpecs(FileSystem ignored, JobConf job) throws IOException {
+        Path out = FileOutputFormat.getOutputPath(job);
+
+        if (out == null) {
+            throw new IOException("No output folder was set for the index shards.");
+        }
+
+        if (out.getFileSystem(job).exists(out)) {
+            throw new IOException("Index shards folder already exists: " + out);
+        }
     }
 }
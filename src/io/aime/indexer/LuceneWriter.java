@@ -0,0 +1,219 @@
+package io.aime.indexer;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+
+// Apache Lucene
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+
+// IO
+import java.io.File;
+import java.io.IOException;
+
+// Util
+import java.util.Map.Entry;
+
+/**
+ * Thin wrapper around a Lucene {@link IndexWriter} that knows how to turn an
+ * {@link AIMEDocument} into a Lucene {@link Document}.
+ *
+ * <p>Documents are buffered in RAM by the underlying writer and flushed to
+ * disk in bulk once the buffer fills up. The per-field storage and indexing
+ * options are read from the configuration, where the indexing filters place
+ * them through {@link #addFieldOptions(String, String, String, Configuration)}.</p>
+ *
+ * @author K-Zen
+ */
+public class LuceneWriter {
+
+    public static final String RAM_BUFFER_MB = "indexer.ram.buffer.mb";
+    public static final String MAX_BUFFERED_DOCS = "indexer.max.buffered.docs";
+    public static final String MERGE_FACTOR = "indexer.merge.factor";
+    public static final String UNIQUE_ID_FIELD = "uniqueid";
+    private final Configuration conf;
+    private final IndexWriter writer;
+
+    /**
+     * Opens a writer over a local directory.
+     *
+     * @param dir    The local directory holding the index.
+     * @param create If true any existing index in the directory is replaced,
+     *               otherwise documents are appended to it.
+     * @param conf   The configuration object.
+     *
+     * @throws IOException If the index can't be opened.
+     */
+    public LuceneWriter(File dir, boolean create, Configuration conf) throws IOException {
+        this.conf = conf;
+
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        mergePolicy.setMergeFactor(conf.getInt(MERGE_FACTOR, 10));
+
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_35, new StandardAnalyzer(Version.LUCENE_35));
+        config.setOpenMode(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setRAMBufferSizeMB(conf.getFloat(RAM_BUFFER_MB, 64.0F));
+        config.setMaxBufferedDocs(conf.getInt(MAX_BUFFERED_DOCS, IndexWriterConfig.DISABLE_AUTO_FLUSH));
+        config.setMergePolicy(mergePolicy);
+
+        this.writer = new IndexWriter(FSDirectory.open(dir), config);
+    }
+
+    /**
+     * Registers the Lucene options of a field, so that the writer knows how to
+     * store and index it.
+     *
+     * @param field The name of the field.
+     * @param store One of the IndexingConstants.STORE_* values.
+     * @param index One of the IndexingConstants.INDEX_* values.
+     * @param conf  The configuration object.
+     */
+    public static void addFieldOptions(String field, String store, String index, Configuration conf) {
+        conf.set(IndexingConstants.FIELD_STORE_PREFIX + field, store);
+        conf.set(IndexingConstants.FIELD_INDEX_PREFIX + field, index);
+    }
+
+    /**
+     * Registers the Lucene options of a field, including its term vector.
+     *
+     * @param field  The name of the field.
+     * @param store  One of the IndexingConstants.STORE_* values.
+     * @param index  One of the IndexingConstants.INDEX_* values.
+     * @param vector One of the IndexingConstants.VECTOR_* values.
+     * @param conf   The configuration object.
+     */
+    public static void addFieldOptions(String field, String store, String index, String vector, Configuration conf) {
+        LuceneWriter.addFieldOptions(field, store, index, conf);
+        conf.set(IndexingConstants.FIELD_VECTOR_PREFIX + field, vector);
+    }
+
+    /**
+     * Adds a document to the index. The weight of the document is used as the
+     * document boost, and the weight of every field as the field boost.
+     *
+     * @param doc The document to add.
+     *
+     * @throws IOException If the document can't be written.
+     */
+    public void write(AIMEDocument doc) throws IOException {
+        writer.addDocument(createLuceneDoc(doc));
+    }
+
+    /**
+     * Deletes all documents that share the given unique id.
+     *
+     * @param uniqueId The value of the "uniqueid" field.
+     *
+     * @throws IOException If the deletion can't be buffered.
+     */
+    public void delete(String uniqueId) throws IOException {
+        writer.deleteDocuments(new Term(UNIQUE_ID_FIELD, uniqueId));
+    }
+
+    /**
+     * Returns the underlying Lucene writer.
+     *
+     * @return The writer.
+     */
+    public IndexWriter getIndexWriter() {
+        return writer;
+    }
+
+    /**
+     * Flushes all buffered documents, optionally merges the index down to the
+     * given number of segments, and closes the writer.
+     *
+     * @param maxSegments The maximum number of segments to keep, or a value
+     *                    lesser than 1 to leave merging to the merge policy.
+     *
+     * @throws IOException If the index can't be committed.
+     */
+    public void close(int maxSegments) throws IOException {
+        try {
+            if (maxSegments > 0) {
+                writer.forceMerge(maxSegments);
+            }
+
+            writer.commit();
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private Document createLuceneDoc(AIMEDocument doc) {
+        Document out = new Document();
+        out.setBoost(doc.getWeight());
+
+        for (Entry<String, AIMEField> entry : doc) {
+            String name = entry.getKey();
+            AIMEField field = entry.getValue();
+            String value = field.getValue() != null ? field.getValue() : "";
+
+            Field.Store store = getStore(name);
+            Field.Index index = getIndex(name);
+            if (store == Field.Store.NO && index == Field.Index.NO) {
+                continue; // Lucene can't hold a field that is neither stored nor indexed.
+            }
+
+            Field f = new Field(name, value, store, index, index == Field.Index.NO ? Field.TermVector.NO : getVector(name));
+            if (!f.getOmitNorms()) {
+                f.setBoost(field.getWeight());
+            }
+
+            out.add(f);
+        }
+
+        return out;
+    }
+
+    private Field.Store getStore(String name) {
+        String option = conf.get(IndexingConstants.FIELD_STORE_PREFIX + name, IndexingConstants.STORE_YES);
+
+        if (IndexingConstants.STORE_NO.equals(option)) {
+            return Field.Store.NO;
+        }
+
+        // Lucene 3.x dropped compressed fields, so STORE_COMPRESS is plainly stored.
+        return Field.Store.YES;
+    }
+
+    private Field.Index getIndex(String name) {
+        String option = conf.get(IndexingConstants.FIELD_INDEX_PREFIX + name, IndexingConstants.INDEX_TOKENIZED);
+
+        switch (option) {
+            case IndexingConstants.INDEX_NO:
+                return Field.Index.NO;
+            case IndexingConstants.INDEX_NO_NORMS:
+                return Field.Index.ANALYZED_NO_NORMS;
+            case IndexingConstants.INDEX_UNTOKENIZED:
+                return Field.Index.NOT_ANALYZED;
+            default:
+                return Field.Index.ANALYZED;
+        }
+    }
+
+    private Field.TermVector getVector(String name) {
+        String option = conf.get(IndexingConstants.FIELD_VECTOR_PREFIX + name, IndexingConstants.VECTOR_NO);
+
+        switch (option) {
+            case IndexingConstants.VECTOR_POS:
+                return Field.TermVector.WITH_POSITIONS;
+            case IndexingConstants.VECTOR_OFFSET:
+                return Field.TermVector.WITH_OFFSETS;
+            case IndexingConstants.VECTOR_POS_OFFSET:
+                return Field.TermVector.WITH_POSITIONS_OFFSETS;
+            case IndexingConstants.VECTOR_YES:
+                return Field.TermVector.YES;
+            default:
+                return Field.TermVector.NO;
+        }
+    }
+}
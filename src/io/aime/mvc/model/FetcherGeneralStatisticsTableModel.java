@@ -25,6 +25,8 @@ public final class FetcherGeneralStatisticsTableModel extends AbstractTableModel
     public static final short FETCHING_SPEED_ROW_ID = 3;
     public static final short ERRORS_ROW_ID = 4;
     public static final short BANDWIDTH_ROW_ID = 5;
+    public static final short CONNECTIONS_REUSED_ROW_ID = 6;
+    public static final short CONNECTIONS_OPENED_ROW_ID = 7;
     private List<List<Object>> rows = new ArrayList<>();
     private List<String> columns = new ArrayList<>(Arrays.asList("Key", "Value"));
     private Configuration conf = new AIMEConfiguration().create();
@@ -60,6 +62,12 @@ public final class FetcherGeneralStatisticsTableModel extends AbstractTableModel
             "Bandwidth (Kbps)",
             Math.round((((float) data.getBytes() * 8) / 1024) / data.getElapsed())
         }));
+        addRow(Arrays.asList(new Object[]{
+            "Connections Reused", data.getConnectionsReused()
+        }));
+        addRow(Arrays.asList(new Object[]{
+            "Connections Opened", data.getConnectionsOpened()
+        }));
         new Timer(conf.getInt("fetcher.general.statistics.table.model.refresh", 1000), new DataListener()).start();
     }
 
@@ -156,6 +164,8 @@ public final class FetcherGeneralStatisticsTableModel extends AbstractTableModel
             updateCell(Math.round(((float) data.getPages() * 10) / data.getElapsed()) / 10.0, FETCHING_SPEED_ROW_ID, VALUE_COLUMN_ID);
             updateCell(data.getErrors(), ERRORS_ROW_ID, VALUE_COLUMN_ID);
             updateCell(Math.round((((float) data.getBytes() * 8) / 1024) / data.getElapsed()), BANDWIDTH_ROW_ID, VALUE_COLUMN_ID);
+            updateCell(data.getConnectionsReused(), CONNECTIONS_REUSED_ROW_ID, VALUE_COLUMN_ID);
+            updateCell(data.getConnectionsOpened(), CONNECTIONS_OPENED_ROW_ID, VALUE_COLUMN_ID);
         }
     }
 }
@@ -0,0 +1,320 @@
+package io.aime.net;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Net
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+// Util
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves host names for the partitioner, the Fetcher and the protocol
+ * plugins, and keeps the answers of the hosts seen by this JVM.
+ *
+ * <p>
+ * Addresses are kept for <code>dns.cache.ttl</code> milliseconds, and hosts
+ * that couldn't be resolved for <code>dns.cache.negative.ttl</code>, so they
+ * fail fast in the meantime. The cache holds at most
+ * <code>dns.cache.size</code> hosts; once it's full, the hosts added first are
+ * evicted first. The lookups are done by the {@link Resolver} named by
+ * <code>dns.resolver.class</code>, the JVM's own by default, so tests can
+ * answer with a stand-in.
+ * </p>
+ *
+ * <p>
+ * A fetch task can resolve all the hosts of its fetch list in parallel with
+ * {@link #prefetch(Collection)} before it starts, so its threads don't wait
+ * on DNS one host at a time.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public final class DNSCache {
+
+    private static final Logger LOG = Logger.getLogger(DNSCache.class.getName());
+    public static final String RESOLVER_CLASS = "dns.resolver.class";
+    public static final String MAX_SIZE = "dns.cache.size";
+    public static final String TTL = "dns.cache.ttl";
+    public static final String NEGATIVE_TTL = "dns.cache.negative.ttl";
+    public static final String PREFETCH_THREADS = "dns.prefetch.threads";
+    public static final String PREFETCH_TIMEOUT = "dns.prefetch.timeout";
+    private static DNSCache instance = null;
+    private final Resolver resolver;
+    private final int maxSize;
+    private final long ttl;
+    private final long negativeTTL;
+    private final int prefetchThreads;
+    private final long prefetchTimeout;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    // Metrics
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong lookupTime = new AtomicLong(0);
+
+    /**
+     * Looks up the address of a host.
+     */
+    public interface Resolver {
+
+        /**
+         * @param host The host name.
+         *
+         * @return The address.
+         *
+         * @throws UnknownHostException If the host can't be resolved.
+         */
+        InetAddress resolve(String host) throws UnknownHostException;
+    }
+
+    /**
+     * Resolves with the JVM.
+     */
+    public static class SystemResolver implements Resolver {
+
+        @Override
+        public InetAddress resolve(String host) throws UnknownHostException {
+            return InetAddress.getByName(host);
+        }
+    }
+
+    /**
+     * Creates a cache of its own, apart from the one shared by the JVM.
+     *
+     * @param conf     The configuration object.
+     * @param resolver What looks up the hosts.
+     */
+    public DNSCache(Configuration conf, Resolver resolver) {
+        this.resolver = resolver;
+        this.maxSize = Math.max(1, conf.getInt(MAX_SIZE, 10000));
+        this.ttl = conf.getLong(TTL, 3600000L);
+        this.negativeTTL = conf.getLong(NEGATIVE_TTL, 300000L);
+        this.prefetchThreads = Math.max(1, conf.getInt(PREFETCH_THREADS, 20));
+        this.prefetchTimeout = conf.getLong(PREFETCH_TIMEOUT, 60000L);
+    }
+
+    /**
+     * Returns the cache of this JVM, creating it if needed. It's configured
+     * by the first caller.
+     *
+     * @param conf The configuration object.
+     *
+     * @return The shared cache.
+     */
+    public static synchronized DNSCache get(Configuration conf) {
+        if (instance == null) {
+            Class<? extends Resolver> clazz = conf.getClass(RESOLVER_CLASS, SystemResolver.class, Resolver.class);
+            instance = new DNSCache(conf, ReflectionUtils.newInstance(clazz, conf));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the address of a host, looking it up if it's not cached.
+     *
+     * @param host The host name.
+     *
+     * @return The address.
+     *
+     * @throws UnknownHostException If the host can't be resolved, now or
+     *                              recently.
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        if (host == null) {
+            throw new UnknownHostException("No host.");
+        }
+
+        String key = host.toLowerCase();
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.expires > System.currentTimeMillis()) {
+            this.hits.incrementAndGet();
+            if (entry.address == null) {
+                throw new UnknownHostException(host);
+            }
+
+            return entry.address;
+        }
+
+        this.misses.incrementAndGet();
+
+        return this.lookup(key);
+    }
+
+    /**
+     * Resolves, in parallel, the hosts not cached yet. Returns when all of
+     * them are resolved, or when <code>dns.prefetch.timeout</code> runs out.
+     *
+     * @param hosts The host names.
+     *
+     * @return How many hosts were looked up.
+     */
+    public int prefetch(Collection<String> hosts) {
+        Set<String> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (String host : hosts) {
+            if (host == null) {
+                continue;
+            }
+
+            String key = host.toLowerCase();
+            Entry entry = this.entries.get(key);
+            if (entry == null || entry.expires <= now) {
+                missing.add(key);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.prefetchThreads, missing.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "DNSPrefetch");
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+        for (final String host : missing) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        DNSCache.this.lookup(host);
+                    }
+                    catch (UnknownHostException e) {
+                        // Cached as unknown.
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+
+        try {
+            if (!pool.awaitTermination(this.prefetchTimeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("DNS prefetch timed out, the rest of the hosts will be resolved when fetched.");
+                pool.shutdownNow();
+            }
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        return missing.size();
+    }
+
+    /**
+     * Forgets all hosts.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.order.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return The average time of a lookup in microseconds.
+     */
+    public long getAverageLookupTime() {
+        long count = this.lookups.get();
+
+        return (count == 0) ? 0 : this.lookupTime.get() / count / 1000L;
+    }
+
+    @Override
+    public String toString() {
+        return "DNS cache: " + this.size() + " hosts, " + this.getHits() + " hits, " + this.getMisses() + " misses, " + this.getFailures() + " failures, " + this.getAverageLookupTime() + " us/lookup";
+    }
+
+    private InetAddress lookup(String host) throws UnknownHostException {
+        long start = System.nanoTime();
+        try {
+            InetAddress address = this.resolver.resolve(host);
+            this.put(host, new Entry(address, System.currentTimeMillis() + this.ttl));
+
+            return address;
+        }
+        catch (UnknownHostException e) {
+            this.failures.incrementAndGet();
+            this.put(host, new Entry(null, System.currentTimeMillis() + this.negativeTTL));
+
+            throw e;
+        }
+        finally {
+            this.lookups.incrementAndGet();
+            this.lookupTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void put(String host, Entry entry) {
+        if (this.entries.put(host, entry) == null) {
+            this.order.add(host);
+            this.evict();
+        }
+    }
+
+    private void evict() {
+        while (this.entries.size() > this.maxSize) {
+            String host = this.order.poll();
+
+            if (host == null) {
+                return;
+            }
+
+            this.entries.remove(host);
+        }
+    }
+
+    /**
+     * An address, or null for a host that couldn't be resolved, and when it
+     * stops being valid.
+     */
+    private static class Entry {
+
+        private final InetAddress address;
+        private final long expires;
+
+        Entry(InetAddress address, long expires) {
+            this.address = address;
+            this.expires = expires;
+        }
+    }
+}
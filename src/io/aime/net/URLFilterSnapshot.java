@@ -0,0 +1,185 @@
+package io.aime.net;
+
+// AIME
+import io.aime.brain.Brain;
+import io.aime.brain.data.BrainCall;
+import io.aime.brain.data.BrainValue;
+import io.aime.brain.data.MetadataGeneral;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.mapred.JobConf;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// IO
+import java.io.IOException;
+
+// Util
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands the URL filters kept by the Brain to the tasks of a job.
+ *
+ * <p>
+ * When a job is submitted the filters are fetched from the Brain once and
+ * written to the file system, named after the hash of their contents, and the
+ * file is added to the DistributedCache of the job. Tasks read the filters
+ * from their local copy, once per JVM, and only ask the Brain for them if the
+ * job carries no snapshot or it can't be read. The Brain thus serves the
+ * filters once per job instead of once per task.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class URLFilterSnapshot {
+
+    private static final Logger LOG = Logger.getLogger(URLFilterSnapshot.class.getName());
+    /**
+     * The hash of the snapshot of the job.
+     */
+    public static final String SNAPSHOT = "urlfilter.snapshot";
+    /**
+     * Where snapshots are written.
+     */
+    public static final String SNAPSHOT_DIR = "urlfilter.snapshot.dir";
+    private static final String EXTENSION = ".filters";
+    private static final Map<String, URLFilter[]> LOADED = new HashMap<String, URLFilter[]>();
+
+    private URLFilterSnapshot() {
+    }
+
+    /**
+     * Takes a snapshot of the filters and adds it to a job.
+     *
+     * @param job The job.
+     *
+     * @throws IOException If the snapshot can't be written.
+     */
+    public static void publish(JobConf job) throws IOException {
+        URLFilter[] filters = fromBrain(job);
+        DataOutputBuffer out = new DataOutputBuffer();
+        new BrainValue(filters).write(out);
+        byte[] bytes = Arrays.copyOf(out.getData(), out.getLength());
+        String hash = MD5Hash.digest(bytes).toString();
+
+        FileSystem fs = FileSystem.get(job);
+        Path dir = new Path(job.get(SNAPSHOT_DIR, job.get("hadoop.tmp.dir") + "/filters"));
+        Path file = fs.makeQualified(new Path(dir, hash + EXTENSION));
+        // Unchanged filters keep their file, so most jobs write nothing.
+        if (!fs.exists(file)) {
+            Path tmp = new Path(dir, hash + "-" + System.nanoTime() + ".tmp");
+            FSDataOutputStream stream = fs.create(tmp);
+            try {
+                stream.write(bytes);
+            }
+            finally {
+                stream.close();
+            }
+
+            if (!fs.rename(tmp, file)) {
+                fs.delete(tmp, false);
+                if (!fs.exists(file)) {
+                    throw new IOException("Can't write URL filters snapshot: " + file);
+                }
+            }
+        }
+
+        DistributedCache.addCacheFile(file.toUri(), job);
+        job.set(SNAPSHOT, hash);
+        // Tasks running in this JVM, as with the local runner, use them as they are.
+        synchronized (LOADED) {
+            LOADED.put(hash, filters);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("URL filters snapshot: " + file);
+        }
+    }
+
+    /**
+     * Returns the filters of a job.
+     *
+     * @param conf The configuration of the job.
+     *
+     * @return The filters.
+     */
+    public static URLFilter[] get(Configuration conf) {
+        String hash = conf.get(SNAPSHOT);
+        if (hash == null) {
+            return fromBrain(conf);
+        }
+
+        synchronized (LOADED) {
+            URLFilter[] filters = LOADED.get(hash);
+            if (filters == null) {
+                filters = load(conf, hash);
+                if (filters == null) {
+                    LOG.warn("URL filters snapshot " + hash + " not found. Asking the Brain.");
+                    filters = fromBrain(conf);
+                }
+
+                LOADED.put(hash, filters);
+            }
+
+            return filters;
+        }
+    }
+
+    private static URLFilter[] load(Configuration conf, String hash) {
+        try {
+            Path[] files = DistributedCache.getLocalCacheFiles(conf);
+            if (files == null) {
+                return null;
+            }
+
+            FileSystem local = FileSystem.getLocal(conf);
+            for (Path file : files) {
+                if (!file.getName().equals(hash + EXTENSION)) {
+                    continue;
+                }
+
+                byte[] bytes = new byte[(int) local.getFileStatus(file).getLen()];
+                FSDataInputStream stream = local.open(file);
+                try {
+                    stream.readFully(bytes);
+                }
+                finally {
+                    stream.close();
+                }
+
+                if (!MD5Hash.digest(bytes).toString().equals(hash)) {
+                    LOG.warn("URL filters snapshot " + file + " is corrupt.");
+                    return null;
+                }
+
+                DataInputBuffer in = new DataInputBuffer();
+                in.reset(bytes, bytes.length);
+                BrainValue value = new BrainValue();
+                value.readFields(in);
+
+                return (URLFilter[]) value.get();
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Can't read URL filters snapshot " + hash + ". Error: " + e.toString());
+        }
+
+        return null;
+    }
+
+    private static URLFilter[] fromBrain(Configuration conf) {
+        return (URLFilter[]) Brain.getClient(conf).call(BrainCall.request(MetadataGeneral.Data.FILTERS)).get();
+    }
+}
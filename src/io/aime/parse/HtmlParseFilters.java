@@ -6,6 +6,7 @@ import io.aime.plugin.PluginRuntimeException;
 import io.aime.plugin.Extension;
 import io.aime.plugin.ExtensionPoint;
 import io.aime.protocol.Content;
+import io.aime.util.DOMVisitor;
 import io.aime.util.ObjectCache;
 
 // Apache Hadoop
@@ -14,6 +15,9 @@ import org.apache.hadoop.conf.Configuration;
 // DOM
 import org.w3c.dom.DocumentFragment;
 
+// SAX
+import org.xml.sax.ContentHandler;
+
 // Util
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -96,14 +100,87 @@ public class HtmlParseFilters {
         }
     }
 
+    /**
+     * Creates the visitors of the filters that walk the DOM tree along with
+     * the parser, for a page.
+     *
+     * @return One visitor per filter, null for the filters that don't walk it.
+     */
+    public DOMVisitor[] createVisitors(Content content) {
+        DOMVisitor[] visitors = new DOMVisitor[this.htmlParseFilters.length];
+
+        for (int i = 0; i < this.htmlParseFilters.length; i++) {
+            if (this.htmlParseFilters[i] instanceof VisitingHtmlParseFilter) {
+                visitors[i] = ((VisitingHtmlParseFilter) this.htmlParseFilters[i]).createVisitor(content);
+            }
+        }
+
+        return visitors;
+    }
+
+    /**
+     * Returns true if some filter needs the DOM tree of the pages, because it
+     * can't take what it needs from their SAX events.
+     */
+    public boolean needsDocument() {
+        for (int i = 0; i < this.htmlParseFilters.length; i++) {
+            if (!(this.htmlParseFilters[i] instanceof StreamingHtmlParseFilter)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates the handlers of the filters that take the SAX events of a page.
+     *
+     * @return One handler per filter, null for the filters that don't take
+     *         them.
+     */
+    public ContentHandler[] createHandlers(Content content) {
+        ContentHandler[] handlers = new ContentHandler[this.htmlParseFilters.length];
+
+        for (int i = 0; i < this.htmlParseFilters.length; i++) {
+            if (this.htmlParseFilters[i] instanceof StreamingHtmlParseFilter) {
+                handlers[i] = ((StreamingHtmlParseFilter) this.htmlParseFilters[i]).createHandler(content);
+            }
+        }
+
+        return handlers;
+    }
+
     /**
      * Run all defined filters.
      */
     public ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, DocumentFragment doc) {
+        return this.filter(content, parseResult, metaTags, doc, null, null);
+    }
+
+    /**
+     * Run all defined filters, handing to those that walk the DOM tree the
+     * visitors that walked it, and to those that take the SAX events the
+     * handlers that took them.
+     *
+     * @param doc      The tree, or null if only streaming filters run.
+     * @param visitors The visitors from {@link #createVisitors(Content)}, or
+     *                 null if the tree wasn't walked.
+     * @param handlers The handlers from {@link #createHandlers(Content)}, or
+     *                 null if the page wasn't streamed.
+     */
+    public ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, DocumentFragment doc, DOMVisitor[] visitors, ContentHandler[] handlers) {
         // loop on each filter
         for (int i = 0; i < this.htmlParseFilters.length; i++) {
             // call filter interface
-            parseResult = htmlParseFilters[i].filter(content, parseResult, metaTags, doc);
+            if (handlers != null && handlers[i] != null) {
+                parseResult = ((StreamingHtmlParseFilter) htmlParseFilters[i]).filter(content, parseResult, metaTags, handlers[i]);
+            }
+            else if (visitors != null && visitors[i] != null) {
+                parseResult = ((VisitingHtmlParseFilter) htmlParseFilters[i]).filter(content, parseResult, metaTags, doc, visitors[i]);
+            }
+            else {
+                parseResult = htmlParseFilters[i].filter(content, parseResult, metaTags, doc);
+            }
 
             // any failure on parse obj, return
             if (!parseResult.isSuccess()) {
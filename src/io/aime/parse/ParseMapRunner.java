@@ -0,0 +1,193 @@
+package io.aime.parse;
+
+// AIME
+import io.aime.protocol.Content;
+
+// Apache Hadoop
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapRunnable;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// IO
+import java.io.IOException;
+
+// Util
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the mapper of the parse job on several threads, so a single map task
+ * can keep all the processors of a node busy.
+ *
+ * <p>
+ * Records are read in order and handed to the threads, and what each one
+ * produces is held until all the records read before it are done. The output
+ * is thus the same, and in the same order, as with a single thread, and the
+ * output format is only ever used from the thread of the task.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class ParseMapRunner implements MapRunnable<WritableComparable<?>, Content, Text, ParseImplementation>
+{
+
+    private static final Logger LOG = Logger.getLogger(ParseMapRunner.class.getName());
+    public static final String THREADS = "parser.map.threads";
+    private ParseSegment mapper;
+    private int threads;
+
+    @Override
+    public void configure(JobConf job)
+    {
+        mapper = new ParseSegment();
+        mapper.configure(job);
+        threads = Math.max(1, job.getInt(THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override
+    public void run(RecordReader<WritableComparable<?>, Content> input, OutputCollector<Text, ParseImplementation> output, Reporter reporter) throws IOException
+    {
+        if (LOG.isInfoEnabled())
+        {
+            LOG.info("Parsing with " + threads + " threads.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "ParseMapper-" + count.getAndIncrement());
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+        // Records being parsed, oldest first. Twice the threads keeps them all
+        // busy while the oldest one is being written.
+        Deque<Future<Buffer>> pending = new ArrayDeque<>();
+        int window = 2 * threads;
+
+        try
+        {
+            while (true)
+            {
+                // The records are kept until parsed, so each needs its own objects.
+                WritableComparable<?> key = input.createKey();
+                Content value = input.createValue();
+                if (!input.next(key, value))
+                {
+                    break;
+                }
+
+                pending.add(executor.submit(new Record(key, value, reporter)));
+                if (pending.size() >= window)
+                {
+                    collect(pending.poll(), output, reporter);
+                }
+            }
+
+            while (!pending.isEmpty())
+            {
+                collect(pending.poll(), output, reporter);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            mapper.close();
+        }
+    }
+
+    private void collect(Future<Buffer> future, OutputCollector<Text, ParseImplementation> output, Reporter reporter) throws IOException
+    {
+        Buffer buffer;
+        try
+        {
+            buffer = future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing.", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Error parsing.", e.getCause());
+        }
+
+        for (int i = 0; i < buffer.keys.size(); i++)
+        {
+            output.collect(buffer.keys.get(i), buffer.values.get(i));
+        }
+
+        reporter.progress();
+    }
+
+    /**
+     * Runs the mapper on one record.
+     */
+    private class Record implements Callable<Buffer>
+    {
+
+        private final WritableComparable<?> key;
+        private final Content content;
+        private final Reporter reporter;
+
+        Record(WritableComparable<?> key, Content content, Reporter reporter)
+        {
+            this.key = key;
+            this.content = content;
+            this.reporter = reporter;
+        }
+
+        @Override
+        public Buffer call() throws IOException
+        {
+            Buffer buffer = new Buffer();
+            mapper.map(key, content, buffer, reporter);
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Holds the output of one record until it can be written.
+     */
+    private static class Buffer implements OutputCollector<Text, ParseImplementation>
+    {
+
+        final List<Text> keys = new ArrayList<>(1);
+        final List<ParseImplementation> values = new ArrayList<>(1);
+
+        @Override
+        public void collect(Text key, ParseImplementation value)
+        {
+            keys.add(key);
+            values.add(value);
+        }
+    }
+}
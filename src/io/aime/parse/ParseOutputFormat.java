@@ -1,13 +1,10 @@
 package io.aime.parse;
 
-import io.aime.brain.Brain;
-import io.aime.brain.data.BrainXMLData;
-import io.aime.brain.data.MetadataGeneral;
-import io.aime.brain.xml.Handler;
 import io.aime.crawl.CrawlDatum;
 import io.aime.fetcher.Fetcher;
 import io.aime.net.URLFilter;
 import io.aime.net.URLFilterException;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.net.URLFilters;
 import io.aime.net.URLNormalizers;
 import io.aime.util.AIMEConstants;
@@ -102,14 +99,7 @@ public class ParseOutputFormat implements OutputFormat<Text, Parse>
     @Override
     public RecordWriter<Text, Parse> getRecordWriter(FileSystem fs, JobConf job, String name, Progressable progress) throws IOException
     {
-        filters = (URLFilter[]) Brain
-                .getClient(job)
-                .execute(Handler
-                        .makeXMLRequest(BrainXMLData
-                                .newBuild()
-                                .setJob(BrainXMLData.JOB_REQUEST)
-                                .setClazz(MetadataGeneral.Data.class)
-                                .setFunction(MetadataGeneral.Data.FILTERS.getMethodName()))).get();
+        filters = URLFilterSnapshot.get(job);
         normalizers = new URLNormalizers(job, URLNormalizers.SCOPE_OUTLINK);
         final int interval = job.getInt("db.fetch.interval.default", 2592000);
         final boolean ignoreExternalLinks = job.getBoolean("db.ignore.external.links", false);
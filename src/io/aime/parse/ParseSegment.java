@@ -2,7 +2,9 @@ package io.aime.parse;
 
 import io.aime.aimemisc.digest.SignatureFactory;
 import io.aime.crawl.CrawlDatum;
+import io.aime.net.URLFilterSnapshot;
 import io.aime.protocol.Content;
+import io.aime.segment.SegmentLocator;
 import io.aime.util.AIMEConfiguration;
 import io.aime.util.AIMEConstants;
 import io.aime.util.AIMEJob;
@@ -32,11 +34,11 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
-public class ParseSegment extends Configured implements Tool, Mapper<WritableComparable, Content, Text, ParseImplementation>, Reducer<Text, Writable, Text, Writable>
+public class ParseSegment extends Configured implements Tool, Mapper<WritableComparable<?>, Content, Text, ParseImplementation>, Reducer<Text, Writable, Text, Writable>
 {
 
     private static final Logger LOG = Logger.getLogger(ParseSegment.class.getName());
-    private Text newKey = new Text();
+    private ParserRun parserRun;
 
     public ParseSegment()
     {
@@ -52,6 +54,7 @@ public class ParseSegment extends Configured implements Tool, Mapper<WritableCom
     public void configure(JobConf job)
     {
         setConf(job);
+        parserRun = new ParserRun(job);
     }
 
     @Override
@@ -60,13 +63,12 @@ public class ParseSegment extends Configured implements Tool, Mapper<WritableCom
     }
 
     @Override
-    public void map(WritableComparable key, Content content, OutputCollector<Text, ParseImplementation> output, Reporter reporter) throws IOException
+    public void map(WritableComparable<?> key, Content content, OutputCollector<Text, ParseImplementation> output, Reporter reporter) throws IOException
     {
         // convert on the fly from old UTF8 keys
         if (key instanceof UTF8)
         {
-            newKey.set(key.toString());
-            key = newKey;
+            key = new Text(key.toString());
         }
 
         int status = Integer.parseInt(content.getMetadata().get(AIMEConstants.FETCH_STATUS_KEY.getStringConstant()));
@@ -84,7 +86,7 @@ public class ParseSegment extends Configured implements Tool, Mapper<WritableCom
         ParseResult parseResult;
         try
         {
-            parseResult = new ParserRun(getConf()).getParseResult(content);
+            parseResult = parserRun.getParseResult(content);
         }
         catch (ParseException e)
         {
@@ -146,6 +148,7 @@ public class ParseSegment extends Configured implements Tool, Mapper<WritableCom
         job.set(AIMEConstants.SEGMENT_NAME_KEY.getStringConstant(), segment.getName());
         job.setInputFormat(SequenceFileInputFormat.class);
         job.setMapperClass(ParseSegment.class);
+        job.setMapRunnerClass(ParseMapRunner.class);
         job.setReducerClass(ParseSegment.class);
         job.setOutputFormat(ParseOutputFormat.class);
         job.setOutputKeyClass(Text.class);
@@ -153,8 +156,11 @@ public class ParseSegment extends Configured implements Tool, Mapper<WritableCom
         // IO paths
         FileInputFormat.addInputPath(job, new Path(segment, Content.DIR_NAME));
         FileOutputFormat.setOutputPath(job, segment);
+        URLFilterSnapshot.publish(job);
         // Run
         JobClient.runJob(job);
+        // Parsing may add URLs to the segment.
+        SegmentLocator.write(getConf(), segment);
     }
 
     public static int runProcess(String[] args, SwingWorker<?, ?> runner) throws Exception
@@ -0,0 +1,191 @@
+package io.aime.parse;
+
+// AIME
+import io.aime.protocol.Content;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Util
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of worker threads that run parsers with a time limit.
+ *
+ * <p>
+ * The time limit of a parse counts from the moment a worker picks it up, not
+ * from when it was queued. Once it's over, the parse is cancelled, which
+ * interrupts its worker. Parsers that ignore the interruption keep their
+ * worker busy, so the pool starts a replacement worker and lets the stuck one
+ * go once its parse ends.
+ * </p>
+ *
+ * <p>
+ * There is one pool per JVM, shared by all the parses of a task, and it's
+ * sized by the first of them.
+ * </p>
+ *
+ * @author K-Zen
+ */
+final class ParserPool {
+
+    private static final Logger LOG = Logger.getLogger(ParserPool.class.getName());
+    public static final String THREADS = "parser.threads";
+    private static ParserPool instance = null;
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final AtomicInteger stuck = new AtomicInteger(0);
+
+    private ParserPool(int threads) {
+        this.threads = threads;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Parser-" + count.getAndIncrement());
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Parser pool started. Threads: " + threads);
+        }
+    }
+
+    /**
+     * Returns the pool of this JVM, starting it if needed.
+     *
+     * @param conf The configuration object.
+     *
+     * @return The shared pool.
+     */
+    static synchronized ParserPool get(Configuration conf) {
+        if (instance == null) {
+            instance = new ParserPool(Math.max(1, conf.getInt(THREADS, Runtime.getRuntime().availableProcessors())));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Parses a document, waiting at most the given time once a worker starts
+     * on it.
+     *
+     * @param p          The parser to use.
+     * @param content    The document.
+     * @param maxSeconds The time limit.
+     *
+     * @return The result, or null if the parser failed or ran out of time.
+     */
+    ParseResult parse(Parser p, Content content, int maxSeconds) {
+        Task task = new Task(p, content);
+        Future<ParseResult> future = this.executor.submit(task);
+        long limit = TimeUnit.SECONDS.toMillis(maxSeconds);
+
+        try {
+            while (true) {
+                long started = task.started;
+                long wait = (started == 0) ? limit : started + limit - System.currentTimeMillis();
+
+                if (wait <= 0) {
+                    LOG.warn("Parsing limit reached for: " + content.getUrl() + " with [" + p + "].");
+                    this.cancel(task, future);
+
+                    return null;
+                }
+
+                try {
+                    return future.get(wait, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e) {
+                    // Either still queued, or out of time. Checked above.
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            this.cancel(task, future);
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            LOG.warn("Error parsing: " + content.getUrl() + " with [" + p + "]. Error: " + e.getCause());
+        }
+
+        return null;
+    }
+
+    private void cancel(Task task, Future<ParseResult> future) {
+        future.cancel(true);
+
+        // If the parse is still running its worker is stuck, so add one more
+        // until it comes back. The worker is then retired again.
+        if (task.state.compareAndSet(Task.RUNNING, Task.ABANDONED)) {
+            int count = this.stuck.incrementAndGet();
+            LOG.warn("Parser worker stuck, starting a replacement. Stuck workers: " + count);
+            this.resize(1);
+        }
+    }
+
+    private synchronized void resize(int delta) {
+        int size = this.threads + this.stuck.get();
+
+        if (delta > 0) {
+            this.executor.setMaximumPoolSize(size);
+            this.executor.setCorePoolSize(size);
+        }
+        else {
+            this.executor.setCorePoolSize(size);
+            this.executor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * A parse, which knows when a worker picked it up and whether it was
+     * given up on.
+     */
+    private class Task extends ParseCallable {
+
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+        static final int ABANDONED = 3;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        volatile long started = 0;
+
+        Task(Parser p, Content content) {
+            super(p, content);
+        }
+
+        @Override
+        public ParseResult call() throws Exception {
+            this.started = System.currentTimeMillis();
+            if (!this.state.compareAndSet(QUEUED, RUNNING)) {
+                return null;
+            }
+
+            try {
+                return super.call();
+            }
+            finally {
+                if (!this.state.compareAndSet(RUNNING, DONE)) {
+                    ParserPool.this.stuck.decrementAndGet();
+                    ParserPool.this.resize(-1);
+                    // Clear the interruption, the worker is reused.
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package io.aime.parse;
 
 // AIME
 import io.aime.protocol.Content;
+import io.aime.util.ObjectCache;
 
 // Apache Hadoop
 import org.apache.hadoop.conf.Configuration;
@@ -12,11 +13,6 @@ import org.w3c.dom.DocumentFragment;
 // Log4j
 import org.apache.log4j.Logger;
 
-// Util
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
 /**
  * A Utility class containing methods to simply perform parsing utilities such
  * as iterating through a preferred list of {@link Parser}s to obtain
@@ -33,10 +29,22 @@ public class ParserRun {
      * Parser timeout set to 30 sec by default. Set -1 to deactivate *
      */
     private int maxParseTime = 30;
+    private ParserPool pool = null;
 
     public ParserRun(Configuration conf) {
-        this.parserFactory = new ParserFactory(conf);
+        ObjectCache objectCache = ObjectCache.get(conf);
+        this.parserFactory = (ParserFactory) objectCache.getObject(ParserFactory.class.getName());
+
+        // The factory is created once per configuration, and so per task.
+        if (this.parserFactory == null) {
+            this.parserFactory = new ParserFactory(conf);
+            objectCache.setObject(ParserFactory.class.getName(), this.parserFactory);
+        }
+
         this.maxParseTime = conf.getInt("parser.timeout", 30);
+        if (this.maxParseTime != -1) {
+            this.pool = ParserPool.get(conf);
+        }
     }
 
     /**
@@ -74,13 +82,14 @@ public class ParserRun {
             }
 
             if (maxParseTime != -1) {
-                parseResult = this.runParser(parsers[i], content);
+                parseResult = this.pool.parse(parsers[i], content, maxParseTime);
             }
             else {
                 parseResult = parsers[i].getParseResult(content);
-                if (parseResult != null && !parseResult.isEmpty()) {
-                    return parseResult;
-                }
+            }
+
+            if (parseResult != null && !parseResult.isEmpty()) {
+                return parseResult;
             }
         }
 
@@ -109,38 +118,4 @@ public class ParserRun {
 
         return dom;
     }
-
-    /**
-     * This method will launch the parsing process using a new thread.
-     *
-     * @param p       The parser to be used.
-     * @param content The content/document to be parsed.
-     *
-     * @return A ParseResult object which contains all necessary info.
-     */
-    private ParseResult runParser(Parser p, Content content) {
-        ParseCallable pc = new ParseCallable(p, content);
-        FutureTask<ParseResult> task = new FutureTask<ParseResult>(pc);
-        ParseResult res = null;
-        Thread t = new Thread(task);
-        t.start();
-
-        try {
-            res = task.get(maxParseTime, TimeUnit.SECONDS);
-        }
-        catch (TimeoutException e) {
-            LOG.warn("Parsing limit reached for: " + content.getUrl() + " with [" + p + "].");
-        }
-        catch (Exception e) {
-            task.cancel(true);
-            res = null;
-            t.interrupt();
-        }
-        finally {
-            t = null;
-            pc = null;
-        }
-
-        return res;
-    }
 }
@@ -0,0 +1,36 @@
+package io.aime.parse;
+
+// AIME
+import io.aime.protocol.Content;
+
+// SAX
+import org.xml.sax.ContentHandler;
+
+/**
+ * An {@link HtmlParseFilter} that takes what it needs from the SAX events of
+ * the page, so the parser can leave its DOM tree unbuilt.
+ *
+ * <p>When the HTML parser streams pages, it asks for a handler for each page,
+ * hands it the events of the page along with its own extractor, and hands it
+ * back to
+ * {@link #filter(Content, ParseResult, HtmlMetaTags, ContentHandler)}. Filters
+ * that don't implement it make the parser build the tree for them, which costs
+ * what streaming saves. The handler gets the lexical events too if it's a
+ * {@link org.xml.sax.ext.LexicalHandler}.</p>
+ *
+ * @author K-Zen
+ */
+public interface StreamingHtmlParseFilter extends HtmlParseFilter {
+
+    /**
+     * Returns a new handler for a page. Filters are shared by threads, so the
+     * state of a page must be kept in its handler.
+     */
+    ContentHandler createHandler(Content content);
+
+    /**
+     * Adds metadata or otherwise modifies a parse of HTML content, given the
+     * handler that got the SAX events of a page.
+     */
+    ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, ContentHandler handler);
+}
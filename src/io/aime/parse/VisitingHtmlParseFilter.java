@@ -0,0 +1,36 @@
+package io.aime.parse;
+
+// AIME
+import io.aime.protocol.Content;
+import io.aime.util.DOMVisitor;
+
+// DOM
+import org.w3c.dom.DocumentFragment;
+
+/**
+ * An {@link HtmlParseFilter} that takes what it needs from the DOM tree in the
+ * parser's own walk of it, instead of walking the tree again.
+ *
+ * <p>The parser asks for a visitor for each page, walks the tree with it along
+ * with its own, and hands it back to
+ * {@link #filter(Content, ParseResult, HtmlMetaTags, DocumentFragment, DOMVisitor)}.
+ * Parsers that don't walk the tree call the plain
+ * {@link HtmlParseFilter#filter(Content, ParseResult, HtmlMetaTags, DocumentFragment)},
+ * which must walk it itself.</p>
+ *
+ * @author K-Zen
+ */
+public interface VisitingHtmlParseFilter extends HtmlParseFilter {
+
+    /**
+     * Returns a new visitor for a page. Filters are shared by threads, so the
+     * state of a page must be kept in its visitor.
+     */
+    DOMVisitor createVisitor(Content content);
+
+    /**
+     * Adds metadata or otherwise modifies a parse of HTML content, given the
+     * visitor that walked the DOM tree of a page.
+     */
+    ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, DocumentFragment doc, DOMVisitor visitor);
+}
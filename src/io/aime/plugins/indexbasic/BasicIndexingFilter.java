@@ -3,8 +3,10 @@ package io.aime.plugins.indexbasic;
 import io.aime.crawl.CrawlDatum;
 import io.aime.crawl.Inlinks;
 import io.aime.indexer.AIMEDocument;
+import io.aime.indexer.IndexingConstants;
 import io.aime.indexer.IndexingException;
 import io.aime.indexer.IndexingFilter;
+import io.aime.indexer.LuceneWriter;
 import io.aime.parse.Parse;
 import io.aime.util.AIMEConstants;
 import io.aime.util.Net;
@@ -96,16 +98,16 @@ public class BasicIndexingFilter implements IndexingFilter
     @Override
     public void addIndexBackendOptions(Configuration conf)
     {
-        // InternalTools.addFieldOptions("content", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
-        // InternalTools.addFieldOptions("contentraw", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
-        // InternalTools.addFieldOptions("contentfilter", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
-        // InternalTools.addFieldOptions("domain", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.UNTOKENIZED, conf);
-        // InternalTools.addFieldOptions("fetchtime", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.NO, conf);
-        // InternalTools.addFieldOptions("host", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
-        // InternalTools.addFieldOptions("indextime", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.NO, conf);
-        // InternalTools.addFieldOptions("site", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.UNTOKENIZED, conf);
-        // InternalTools.addFieldOptions("title", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
-        // InternalTools.addFieldOptions("url", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("content", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("contentraw", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("contentfilter", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("domain", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, conf);
+        LuceneWriter.addFieldOptions("fetchtime", IndexingConstants.STORE_YES, IndexingConstants.INDEX_NO, conf);
+        LuceneWriter.addFieldOptions("host", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("indextime", IndexingConstants.STORE_YES, IndexingConstants.INDEX_NO, conf);
+        LuceneWriter.addFieldOptions("site", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, conf);
+        LuceneWriter.addFieldOptions("title", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
+        LuceneWriter.addFieldOptions("url", IndexingConstants.STORE_YES, IndexingConstants.INDEX_TOKENIZED, conf);
     }
 
     @Override
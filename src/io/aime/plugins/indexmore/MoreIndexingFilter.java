@@ -3,8 +3,10 @@ package io.aime.plugins.indexmore;
 import io.aime.crawl.CrawlDatum;
 import io.aime.crawl.Inlinks;
 import io.aime.indexer.AIMEDocument;
+import io.aime.indexer.IndexingConstants;
 import io.aime.indexer.IndexingException;
 import io.aime.indexer.IndexingFilter;
+import io.aime.indexer.LuceneWriter;
 import io.aime.metadata.DocMetadata;
 import io.aime.net.protocols.HTTPDateFormat;
 import io.aime.net.protocols.Response;
@@ -242,7 +244,7 @@ public class MoreIndexingFilter implements IndexingFilter
     public void setConf(Configuration conf)
     {
         this.conf = conf;
-        MIME = new MimeUtil(conf);
+        MIME = MimeUtil.get(conf);
     }
 
     @Override
@@ -260,8 +262,8 @@ public class MoreIndexingFilter implements IndexingFilter
     @Override
     public void addIndexBackendOptions(Configuration conf)
     {
-        // InternalTools.addFieldOptions("lastmodified", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.UNTOKENIZED, conf);
-        // InternalTools.addFieldOptions("contentlength", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.NO, conf);
-        // InternalTools.addFieldOptions("filetype", IndexServerImplementation.STORE.YES, IndexServerImplementation.INDEX.UNTOKENIZED, conf);
+        LuceneWriter.addFieldOptions("lastmodified", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, conf);
+        LuceneWriter.addFieldOptions("contentlength", IndexingConstants.STORE_YES, IndexingConstants.INDEX_NO, conf);
+        LuceneWriter.addFieldOptions("filetype", IndexingConstants.STORE_YES, IndexingConstants.INDEX_UNTOKENIZED, conf);
     }
 }
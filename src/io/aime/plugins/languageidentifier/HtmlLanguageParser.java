@@ -5,9 +5,11 @@ import io.aime.metadata.DocMetadata;
 import io.aime.parse.HtmlMetaTags;
 import io.aime.parse.Parse;
 import io.aime.parse.ParseResult;
-import io.aime.parse.HtmlParseFilter;
+import io.aime.parse.StreamingHtmlParseFilter;
+import io.aime.parse.VisitingHtmlParseFilter;
 import io.aime.protocol.Content;
 import io.aime.util.DOMTreeWalker;
+import io.aime.util.DOMVisitor;
 
 // Apache Hadoop
 import org.apache.hadoop.conf.Configuration;
@@ -21,6 +23,11 @@ import org.w3c.dom.Node;
 // Log4j
 import org.apache.log4j.Logger;
 
+// SAX
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
 // Util
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -34,7 +41,7 @@ import java.util.Properties;
  * @author K-Zen
  */
 @SuppressWarnings("unchecked")
-public class HtmlLanguageParser implements HtmlParseFilter {
+public class HtmlLanguageParser implements VisitingHtmlParseFilter, StreamingHtmlParseFilter {
 
     private static final String KEY = HtmlLanguageParser.class.getName();
     private static final Logger LOG = Logger.getLogger(KEY);
@@ -85,6 +92,26 @@ public class HtmlLanguageParser implements HtmlParseFilter {
      */
     @Override
     public ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, DocumentFragment doc) {
+        return this.filter(content, parseResult, metaTags, doc, null);
+    }
+
+    @Override
+    public DOMVisitor createVisitor(Content content) {
+        return new LanguageParser();
+    }
+
+    @Override
+    public ContentHandler createHandler(Content content) {
+        return new LanguageParser();
+    }
+
+    @Override
+    public ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, ContentHandler handler) {
+        return this.filter(content, parseResult, metaTags, null, (LanguageParser) handler);
+    }
+
+    @Override
+    public ParseResult filter(Content content, ParseResult parseResult, HtmlMetaTags metaTags, DocumentFragment doc, DOMVisitor visitor) {
         Parse parse = parseResult.get(content.getUrl());
         String lang = HtmlLanguageParser.getLanguageFromMetadata(parse.getData().getParseMeta());
 
@@ -95,7 +122,7 @@ public class HtmlLanguageParser implements HtmlParseFilter {
         }
 
         // Trying to find the document's language
-        LanguageParser parser = new LanguageParser(doc);
+        LanguageParser parser = (visitor != null) ? (LanguageParser) visitor : new LanguageParser(doc);
         lang = parser.getLanguage();
 
         if (lang != null) {
@@ -129,88 +156,115 @@ public class HtmlLanguageParser implements HtmlParseFilter {
         return parseMD.get("lang");
     }
 
-    static class LanguageParser {
+    static class LanguageParser extends DefaultHandler implements DOMVisitor {
 
         private String dublinCore = null;
         private String htmlAttribute = null;
         private String httpEquiv = null;
-        private String language = null;
+
+        LanguageParser() {
+        }
 
         LanguageParser(Node node) {
-            this.parse(node);
+            DOMTreeWalker.walk(node, this);
+        }
 
+        String getLanguage() {
             if (htmlAttribute != null) {
-                language = htmlAttribute;
+                return htmlAttribute;
             }
             else if (dublinCore != null) {
-                language = dublinCore;
+                return dublinCore;
             }
             else {
-                language = httpEquiv;
+                return httpEquiv;
             }
         }
 
-        String getLanguage() {
-            return language;
-        }
-
-        void parse(Node node) {
-            DOMTreeWalker walker = new DOMTreeWalker(node);
-
-            while (walker.hasNext()) {
-                Node currentNode = walker.nextNode();
-                String nodeName = currentNode.getNodeName();
-                short nodeType = currentNode.getNodeType();
-                String lang = null;
+        @Override
+        public boolean visit(Node currentNode) {
+            String nodeName = currentNode.getNodeName();
+            short nodeType = currentNode.getNodeType();
 
-                if (nodeType == Node.ELEMENT_NODE) {
-                    // Check for the lang HTML attribute
-                    if (htmlAttribute == null) {
-                        htmlAttribute = LanguageParser.parseLanguage(((Element) currentNode).getAttribute("lang"));
-                    }
+            if (nodeType == Node.ELEMENT_NODE) {
+                // Check for the lang HTML attribute
+                if (htmlAttribute == null) {
+                    htmlAttribute = LanguageParser.parseLanguage(((Element) currentNode).getAttribute("lang"));
+                }
 
-                    // Check for Meta
-                    if ("meta".equalsIgnoreCase(nodeName)) {
-                        NamedNodeMap attrs = currentNode.getAttributes();
+                // Check for Meta
+                if ("meta".equalsIgnoreCase(nodeName)) {
+                    NamedNodeMap attrs = currentNode.getAttributes();
 
-                        // Check for the dc.language Meta
-                        if (dublinCore == null) {
-                            for (int i = 0; i < attrs.getLength(); i++) {
-                                Node attrnode = attrs.item(i);
+                    // Check for the dc.language Meta
+                    if (dublinCore == null) {
+                        for (int i = 0; i < attrs.getLength(); i++) {
+                            Node attrnode = attrs.item(i);
 
-                                if ("name".equalsIgnoreCase(attrnode.getNodeName())) {
-                                    if ("dc.language".equalsIgnoreCase(attrnode.getNodeValue())) {
-                                        Node valueattr = attrs.getNamedItem("content");
+                            if ("name".equalsIgnoreCase(attrnode.getNodeName())) {
+                                if ("dc.language".equalsIgnoreCase(attrnode.getNodeValue())) {
+                                    Node valueattr = attrs.getNamedItem("content");
 
-                                        if (valueattr != null) {
-                                            dublinCore = LanguageParser.parseLanguage(valueattr.getNodeValue());
-                                        }
+                                    if (valueattr != null) {
+                                        dublinCore = LanguageParser.parseLanguage(valueattr.getNodeValue());
                                     }
                                 }
                             }
                         }
+                    }
 
-                        // Check for the http-equiv content-language
-                        if (httpEquiv == null) {
-                            for (int i = 0; i < attrs.getLength(); i++) {
-                                Node attrnode = attrs.item(i);
+                    // Check for the http-equiv content-language
+                    if (httpEquiv == null) {
+                        for (int i = 0; i < attrs.getLength(); i++) {
+                            Node attrnode = attrs.item(i);
 
-                                if ("http-equiv".equalsIgnoreCase(attrnode.getNodeName())) {
-                                    if ("content-language".equals(attrnode.getNodeValue().toLowerCase())) {
-                                        Node valueattr = attrs.getNamedItem("content");
+                            if ("http-equiv".equalsIgnoreCase(attrnode.getNodeName())) {
+                                if ("content-language".equals(attrnode.getNodeValue().toLowerCase())) {
+                                    Node valueattr = attrs.getNamedItem("content");
 
-                                        if (valueattr != null) {
-                                            httpEquiv = LanguageParser.parseLanguage(valueattr.getNodeValue());
-                                        }
+                                    if (valueattr != null) {
+                                        httpEquiv = LanguageParser.parseLanguage(valueattr.getNodeValue());
                                     }
                                 }
                             }
                         }
                     }
                 }
+            }
 
-                if ((dublinCore != null) && (htmlAttribute != null) && (httpEquiv != null)) {
-                    return;
+            return true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return (dublinCore != null) && (htmlAttribute != null) && (httpEquiv != null);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            if (this.isDone()) {
+                return;
+            }
+
+            // Check for the lang HTML attribute
+            if (htmlAttribute == null) {
+                htmlAttribute = LanguageParser.parseLanguage(atts.getValue("lang"));
+            }
+
+            // Check for Meta
+            if ("meta".equalsIgnoreCase(qName)) {
+                for (int i = 0; i < atts.getLength(); i++) {
+                    String attrName = atts.getQName(i);
+
+                    // Check for the dc.language Meta
+                    if (dublinCore == null && "name".equalsIgnoreCase(attrName) && "dc.language".equalsIgnoreCase(atts.getValue(i)) && atts.getValue("content") != null) {
+                        dublinCore = LanguageParser.parseLanguage(atts.getValue("content"));
+                    }
+
+                    // Check for the http-equiv content-language
+                    if (httpEquiv == null && "http-equiv".equalsIgnoreCase(attrName) && "content-language".equals(atts.getValue(i).toLowerCase()) && atts.getValue("content") != null) {
+                        httpEquiv = LanguageParser.parseLanguage(atts.getValue("content"));
+                    }
                 }
             }
         }
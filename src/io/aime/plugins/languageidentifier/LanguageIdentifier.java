@@ -17,8 +17,8 @@ import org.apache.log4j.Logger;
 // Util
 import java.util.List;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Enumeration;
 import java.util.Map;
@@ -26,6 +26,15 @@ import java.util.Map;
 /**
  * Identify the language of a content, based on statistical analysis.
  *
+ * <p>
+ * The ngrams of all the language profiles are kept in one table, which gives
+ * each of them a row of a dense matrix with its frequency in every language.
+ * The ngrams of a content are counted on a table of primitives, and its most
+ * frequent ones add up the rows of the languages. The matrix is never changed
+ * once loaded, and each thread counts on tables of its own, so the same
+ * identifier can be used by many threads at once.
+ * </p>
+ *
  * @see <a href="http://www.w3.org/WAI/ER/IG/ert/iso639.htm">ISO 639 Language
  * Codes</a>
  *
@@ -37,18 +46,39 @@ public class LanguageIdentifier {
 
     private final static int DEFAULT_ANALYSIS_LENGTH = 0; // 0 means full content
     private static final Logger LOG = Logger.getLogger(LanguageIdentifier.class.getName());
+    /**
+     * The number of the most frequent ngrams of a content that are scored.
+     */
+    private static final int MAX_SCORED = 1000;
+    private static final char SEPARATOR = '_';
     /**
      * The maximum amount of data to analyze
      */
     private int analyzeLength = DEFAULT_ANALYSIS_LENGTH;
+    private int minLength;
+    private int maxLength;
+    /**
+     * The languages, in the order of the columns of the matrix.
+     */
+    private String[] languages = new String[0];
     /**
-     * A global index of ngrams of all supported languages
+     * The row of each ngram of all supported languages.
      */
-    private HashMap<CharSequence, NGramEntry[]> ngramsIdx = new HashMap<CharSequence, NGramEntry[]>();
+    private NGramTable rows = new NGramTable(16);
     /**
-     * The NGramProfile used for identification
+     * The frequency of each ngram in each language, row by row. 0 if the
+     * ngram isn't in the profile of the language.
      */
-    private NGramProfile suspect = null;
+    private float[] matrix = new float[0];
+    /**
+     * The counting tables of each thread.
+     */
+    private final ThreadLocal<Suspect> suspects = new ThreadLocal<Suspect>() {
+        @Override
+        protected Suspect initialValue() {
+            return new Suspect(LanguageIdentifier.this.languages.length);
+        }
+    };
 
     public LanguageIdentifier(Configuration conf) {
         // Gets ngram sizes to take into account from the Nutch Config
@@ -60,6 +90,8 @@ public class LanguageIdentifier {
         maxLength = Math.max(maxLength, NGramProfile.ABSOLUTE_MIN_NGRAM_LENGTH);
         minLength = Math.max(minLength, NGramProfile.ABSOLUTE_MIN_NGRAM_LENGTH);
         minLength = Math.min(minLength, maxLength);
+        this.minLength = minLength;
+        this.maxLength = maxLength;
 
         // Gets the value of the maximum size of data to analyze
         this.analyzeLength = conf.getInt("lang.analyze.max.length", DEFAULT_ANALYSIS_LENGTH);
@@ -68,7 +100,9 @@ public class LanguageIdentifier {
         try {
             p.load(this.getClass().getResourceAsStream("/langmappings.properties"));
             Enumeration alllanguages = p.keys();
-            HashMap<NGramEntry, List<NGramEntry>> tmpIdx = new HashMap<NGramEntry, List<NGramEntry>>();
+            List<String> names = new ArrayList<String>();
+            List<List<NGramEntry>> profiles = new ArrayList<List<NGramEntry>>();
+            NGramTable index = new NGramTable(4000);
 
             while (alllanguages.hasMoreElements()) {
                 String lang = (String) (alllanguages.nextElement());
@@ -82,18 +116,14 @@ public class LanguageIdentifier {
                         List<NGramEntry> ngrams = profile.getSorted();
 
                         for (int i = 0; i < ngrams.size(); i++) {
-                            NGramEntry entry = ngrams.get(i);
-                            List<NGramEntry> registered = tmpIdx.get(entry);
-
-                            if (registered == null) {
-                                registered = new ArrayList<NGramEntry>();
-                                tmpIdx.put(entry, registered);
+                            long key = NGramTable.pack(ngrams.get(i).getSeq());
+                            if (index.get(key) < 0) {
+                                index.add(key, index.size());
                             }
-
-                            registered.add(entry);
-                            entry.setProfile(profile);
                         }
 
+                        names.add(lang);
+                        profiles.add(ngrams);
                         is.close();
                     }
                     catch (IOException e) {
@@ -102,20 +132,17 @@ public class LanguageIdentifier {
                 }
             }
 
-            // transform all ngrams lists to arrays for performances
-            Iterator<NGramEntry> keys = tmpIdx.keySet().iterator();
-            while (keys.hasNext()) {
-                NGramEntry entry = keys.next();
-                List<NGramEntry> l = tmpIdx.get(entry);
-
-                if (l != null) {
-                    NGramEntry[] array = l.toArray(new NGramEntry[l.size()]);
-                    this.ngramsIdx.put(entry.getSeq(), array);
+            // lay the frequencies out row by row
+            float[] frequencies = new float[index.size() * names.size()];
+            for (int l = 0; l < profiles.size(); l++) {
+                for (NGramEntry entry : profiles.get(l)) {
+                    frequencies[index.get(NGramTable.pack(entry.getSeq())) * names.size() + l] = entry.getFrequency();
                 }
             }
 
-            // Create the suspect profile
-            this.suspect = new NGramProfile("suspect", minLength, maxLength);
+            this.languages = names.toArray(new String[names.size()]);
+            this.rows = index;
+            this.matrix = frequencies;
         }
         catch (Exception e) {
             LOG.fatal("Error accessing language plugin files. Error: " + e.toString(), e);
@@ -133,7 +160,7 @@ public class LanguageIdentifier {
      * specified content.
      */
     public String identify(String content) {
-        return this.identify(new StringBuilder(content));
+        return this.identify((CharSequence) content);
     }
 
     /**
@@ -147,41 +174,58 @@ public class LanguageIdentifier {
      * specified content.
      */
     public String identify(StringBuilder content) {
-        StringBuilder text = content;
-        if ((analyzeLength > 0) && (content.length() > analyzeLength)) {
-            text = new StringBuilder().append(content);
-            text.setLength(analyzeLength);
+        return this.identify((CharSequence) content);
+    }
+
+    /**
+     * Identify language of a content.
+     *
+     * @param content is the content to analyze.
+     *
+     * @return The 2 letter
+     * <a href="http://www.w3.org/WAI/ER/IG/ert/iso639.htm">ISO 639 language
+     * code</a> (en, fi, sv, ...) of the language that best matches the
+     * specified content, or an empty string if none does.
+     */
+    public String identify(CharSequence content) {
+        int length = content.length();
+        if ((analyzeLength > 0) && (length > analyzeLength)) {
+            length = analyzeLength;
         }
 
-        this.suspect.analyze(text);
-        Iterator<NGramEntry> iter = this.suspect.getSorted().iterator();
-        float topscore = Float.MIN_VALUE;
-        String lang = "";
-        HashMap<NGramProfile, Float> scores = new HashMap<NGramProfile, Float>();
-        NGramEntry searched = null;
-
-        while (iter.hasNext()) {
-            searched = iter.next();
-            NGramEntry[] ngrams = ngramsIdx.get(searched.getSeq());
-
-            if (ngrams != null) {
-                for (int j = 0; j < ngrams.length; j++) {
-                    NGramProfile profile = ngrams[j].getProfile();
-                    Float pScore = scores.get(profile);
-                    if (pScore == null) {
-                        pScore = new Float(0);
-                    }
-                    float plScore = pScore.floatValue();
-                    plScore += ngrams[j].getFrequency() + searched.getFrequency();
-                    scores.put(profile, new Float(plScore));
-                    if (plScore > topscore) {
-                        topscore = plScore;
-                        lang = profile.getName();
-                    }
+        Suspect suspect = this.suspects.get();
+        suspect.analyze(content, length, this.minLength, this.maxLength);
+        int[] scored = suspect.select(MAX_SCORED);
+
+        // add up the rows of the ngrams the content has
+        float[] scores = suspect.scores;
+        Arrays.fill(scores, 0.0f);
+        int columns = this.languages.length;
+        for (int i = 0; i < suspect.selected; i++) {
+            int row = this.rows.get(suspect.counts.keyAt(scored[i]));
+            if (row < 0) {
+                continue;
+            }
+
+            float frequency = suspect.frequencies[scored[i]];
+            int offset = row * columns;
+            for (int l = 0; l < columns; l++) {
+                float f = this.matrix[offset + l];
+                if (f > 0.0f) {
+                    scores[l] += f + frequency;
                 }
             }
         }
 
+        String lang = "";
+        float topscore = Float.MIN_VALUE;
+        for (int l = 0; l < columns; l++) {
+            if (scores[l] > topscore) {
+                topscore = scores[l];
+                lang = this.languages[l];
+            }
+        }
+
         return lang;
     }
 
@@ -282,4 +326,135 @@ public class LanguageIdentifier {
 
         return "N/A";
     }
+
+    /**
+     * The ngrams of a content, counted on tables reused from one content to
+     * the next. Belongs to one thread.
+     */
+    private static class Suspect {
+
+        private final NGramTable counts = new NGramTable(4000);
+        private final int[] totals = new int[NGramProfile.ABSOLUTE_MAX_NGRAM_LENGTH + 1];
+        private final float[] scores;
+        private float[] frequencies = new float[4000];
+        private int[] order = new int[4000];
+        private int selected = 0;
+
+        Suspect(int languages) {
+            this.scores = new float[languages];
+        }
+
+        /**
+         * Counts the ngrams of the words of a content. Words are lower case
+         * letters between separators.
+         */
+        void analyze(CharSequence text, int length, int minLength, int maxLength) {
+            this.counts.clear();
+            Arrays.fill(this.totals, 0);
+
+            long window = SEPARATOR; // the last chars of the word, packed
+            int word = 1; // chars in the word, with the separator
+            for (int i = 0; i < length; i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+
+                if (Character.isLetter(c)) {
+                    window = (window << 16) | c;
+                    this.add(window, ++word, minLength, maxLength);
+                }
+                else if (word > 1) { // found word boundary, we have a word!
+                    window = (window << 16) | SEPARATOR;
+                    this.add(window, ++word, minLength, maxLength);
+                    window = SEPARATOR;
+                    word = 1;
+                }
+            }
+
+            if (word > 1) { // we have a word!
+                window = (window << 16) | SEPARATOR;
+                this.add(window, ++word, minLength, maxLength);
+            }
+        }
+
+        /**
+         * Returns the slots of the most frequent ngrams, sorted by 1.
+         * frequency 2. sequence, with their frequencies.
+         */
+        int[] select(int max) {
+            int size = this.counts.size();
+            if (this.order.length < size) {
+                this.order = new int[size];
+                this.frequencies = new float[size];
+            }
+
+            for (int i = 0; i < size; i++) {
+                long key = this.counts.keyAt(i);
+                this.frequencies[i] = (float) this.counts.valueAt(i) / (float) this.totals[NGramTable.length(key)];
+                this.order[i] = i;
+            }
+
+            // only which ones make it matters, not their order
+            this.selected = Math.min(size, max);
+            if (size > max) {
+                this.partition(0, size - 1, max);
+            }
+
+            return this.order;
+        }
+
+        /**
+         * Adds the ngrams that end at the last char of the word.
+         */
+        private void add(long window, int word, int minLength, int maxLength) {
+            int max = Math.min(maxLength, word);
+            for (int n = minLength; n <= max; n++) {
+                long key = (n == 4) ? window : window & ((1L << (16 * n)) - 1);
+                if (key == SEPARATOR) {
+                    continue;
+                }
+
+                this.counts.add(key, 1);
+                this.totals[n]++;
+            }
+        }
+
+        /**
+         * Moves the first k slots, by 1. frequency 2. sequence, in front.
+         */
+        private void partition(int from, int to, int k) {
+            while (from < to) {
+                int pivot = this.order[(from + to) >>> 1];
+                int i = from;
+                int j = to;
+                while (i <= j) {
+                    while (this.before(this.order[i], pivot)) {
+                        i++;
+                    }
+                    while (this.before(pivot, this.order[j])) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int t = this.order[i];
+                        this.order[i++] = this.order[j];
+                        this.order[j--] = t;
+                    }
+                }
+
+                if (k <= j) {
+                    to = j;
+                }
+                else if (k > i) {
+                    from = i;
+                }
+                else {
+                    return;
+                }
+            }
+        }
+
+        private boolean before(int a, int b) {
+            int diff = Float.compare(this.frequencies[b], this.frequencies[a]);
+
+            return (diff != 0) ? diff < 0 : NGramTable.compare(this.counts.keyAt(a), this.counts.keyAt(b)) < 0;
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package io.aime.plugins.languageidentifier;
+
+// Util
+import java.util.Arrays;
+
+/**
+ * An open addressing table of ngrams, packed into longs, to ints.
+ *
+ * <p>
+ * A ngram of up to 4 chars is packed 16 bits per char, the last char in the
+ * lowest bits. Ngrams never have a char 0, so ngrams of different lengths get
+ * different keys, and 0 marks a free slot. The table remembers which slots it
+ * used, so it can be cleared and walked in the time of its size instead of
+ * its capacity.
+ * </p>
+ *
+ * @author K-Zen
+ */
+final class NGramTable {
+
+    private long[] keys;
+    private int[] values;
+    private int[] used;
+    private int size = 0;
+    private int mask;
+
+    NGramTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.used = new int[capacity / 2];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value of a ngram, or -1 if it's not in the table.
+     */
+    int get(long key) {
+        int slot = this.find(key);
+
+        return (this.keys[slot] == key) ? this.values[slot] : -1;
+    }
+
+    /**
+     * Adds to the value of a ngram, starting from 0.
+     *
+     * @return The new value.
+     */
+    int add(long key, int delta) {
+        int slot = this.find(key);
+        if (this.keys[slot] == 0L) {
+            if (this.size == this.used.length) {
+                this.grow();
+                slot = this.find(key);
+            }
+
+            this.keys[slot] = key;
+            this.values[slot] = 0;
+            this.used[this.size++] = slot;
+        }
+
+        return this.values[slot] += delta;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the ngram in the i-th slot used, in the order they were added.
+     */
+    long keyAt(int i) {
+        return this.keys[this.used[i]];
+    }
+
+    /**
+     * Returns the value in the i-th slot used, in the order they were added.
+     */
+    int valueAt(int i) {
+        return this.values[this.used[i]];
+    }
+
+    void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.keys[this.used[i]] = 0L;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Packs a sequence of chars into a key.
+     */
+    static long pack(CharSequence seq) {
+        long key = 0L;
+        for (int i = 0; i < seq.length(); i++) {
+            key = (key << 16) | seq.charAt(i);
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns the number of chars of a key.
+     */
+    static int length(long key) {
+        return (64 - Long.numberOfLeadingZeros(key) + 15) >>> 4;
+    }
+
+    /**
+     * Compares two keys as their ngrams compare as strings.
+     */
+    static int compare(long key1, long key2) {
+        // Left aligned, the shorter of a prefix and its ngram comes first.
+        long left1 = key1 << (16 * (4 - NGramTable.length(key1)));
+        long left2 = key2 << (16 * (4 - NGramTable.length(key2)));
+
+        return Long.compare(left1 + Long.MIN_VALUE, left2 + Long.MIN_VALUE);
+    }
+
+    private int find(long key) {
+        int slot = NGramTable.hash(key) & this.mask;
+        while (this.keys[slot] != 0L && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        int[] oldUsed = this.used;
+        int oldSize = this.size;
+
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2];
+        this.used = Arrays.copyOf(oldUsed, oldKeys.length);
+        this.mask = this.keys.length - 1;
+        this.size = 0;
+        for (int i = 0; i < oldSize; i++) {
+            int slot = this.find(oldKeys[oldUsed[i]]);
+            this.keys[slot] = oldKeys[oldUsed[i]];
+            this.values[slot] = oldValues[oldUsed[i]];
+            this.used[this.size++] = slot;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+}
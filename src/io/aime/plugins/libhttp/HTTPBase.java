@@ -2,6 +2,7 @@ package io.aime.plugins.libhttp;
 
 // AIME
 import io.aime.crawl.CrawlDatum;
+import io.aime.net.DNSCache;
 import io.aime.net.protocols.Response;
 import io.aime.protocol.Content;
 import io.aime.protocol.Protocol;
@@ -24,6 +25,7 @@ import org.apache.log4j.Logger;
 
 // Net
 import java.net.InetAddress;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
 
@@ -202,80 +204,96 @@ public abstract class HTTPBase implements Protocol {
                 }
             }
 
-            int code = response.getCode();
-            byte[] content = response.getContent();
-            Content c = new Content(u.toString(), u.toString(), (content == null ? EMPTY_CONTENT : content), response.getHeader("Content-Type"), response.getHeaders(), this.conf);
-            if (code == 200) { // got a good response
-                return new ProtocolOutput(c); // return it
-            }
-            else if (code == 410) { // page is gone
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, "Http: " + code + " url=" + url));
-            }
-            else if (code >= 300 && code < 400) { // handle redirect
-                String location = response.getHeader("Location");
+            return this.toProtocolOutput(u, response);
+        }
+        catch (Throwable e) {
+            log.error("Impossible to fetch the page: " + urlString + ". Error: " + e.toString(), e);
 
-                // some broken servers, such as MS IIS, use lowercase header name...
-                if (location == null) {
-                    location = response.getHeader("location");
-                }
-                if (location == null) {
-                    location = "";
-                }
+            return new ProtocolOutput(null, new ProtocolStatus(e));
+        }
+    }
 
-                u = new URL(u, location);
-                int protocolStatusCode;
-
-                switch (code) {
-                    case 300: // multiple choices, preferred value in Location
-                        protocolStatusCode = ProtocolStatus.MOVED;
-                        break;
-                    case 301: // moved permanently
-                    case 305: // use proxy (Location is URL of proxy)
-                        protocolStatusCode = ProtocolStatus.MOVED;
-                        break;
-                    case 302: // found (temporarily moved)
-                    case 303: // see other (redirect after POST)
-                    case 307: // temporary redirect
-                        protocolStatusCode = ProtocolStatus.TEMP_MOVED;
-                        break;
-                    case 304: // not modified
-                        protocolStatusCode = ProtocolStatus.NOTMODIFIED;
-                        break;
-                    default:
-                        protocolStatusCode = ProtocolStatus.MOVED;
-                }
+    /**
+     * Turns a response into the output handed to the fetcher, mapping the
+     * HTTP status code to a protocol status.
+     *
+     * @param u        The URL that was requested.
+     * @param response The response of the server.
+     *
+     * @return The protocol output.
+     *
+     * @throws MalformedURLException If the redirect location is not a valid
+     *                               URL.
+     */
+    protected ProtocolOutput toProtocolOutput(URL u, Response response) throws MalformedURLException {
+        int code = response.getCode();
+        byte[] content = response.getContent();
+        Content c = new Content(u.toString(), u.toString(), (content == null ? EMPTY_CONTENT : content), response.getHeader("Content-Type"), response.getHeaders(), this.conf);
+        if (code == 200) { // got a good response
+            return new ProtocolOutput(c); // return it
+        }
+        else if (code == 410) { // page is gone
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, "Http: " + code + " url=" + u));
+        }
+        else if (code >= 300 && code < 400) { // handle redirect
+            String location = response.getHeader("Location");
 
-                // handle this in the higher layer.
-                return new ProtocolOutput(c, new ProtocolStatus(protocolStatusCode, u));
+            // some broken servers, such as MS IIS, use lowercase header name...
+            if (location == null) {
+                location = response.getHeader("location");
             }
-            else if (code == 400) { // bad request, mark as GONE
-                if (log.isDebugEnabled()) {
-                    log.debug("400 Bad Request: " + u);
-                }
-
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, u));
+            if (location == null) {
+                location = "";
             }
-            else if (code == 401) { // requires authorization, but no valid auth provided.
-                if (log.isDebugEnabled()) {
-                    log.debug("401 Authentication Required: " + u);
-                }
 
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.ACCESS_DENIED, "Authentication required: " + urlString));
-            }
-            else if (code == 404) {
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.NOTFOUND, u));
-            }
-            else if (code == 410) { // permanently GONE
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, u));
+            u = new URL(u, location);
+            int protocolStatusCode;
+
+            switch (code) {
+                case 300: // multiple choices, preferred value in Location
+                    protocolStatusCode = ProtocolStatus.MOVED;
+                    break;
+                case 301: // moved permanently
+                case 305: // use proxy (Location is URL of proxy)
+                    protocolStatusCode = ProtocolStatus.MOVED;
+                    break;
+                case 302: // found (temporarily moved)
+                case 303: // see other (redirect after POST)
+                case 307: // temporary redirect
+                    protocolStatusCode = ProtocolStatus.TEMP_MOVED;
+                    break;
+                case 304: // not modified
+                    protocolStatusCode = ProtocolStatus.NOTMODIFIED;
+                    break;
+                default:
+                    protocolStatusCode = ProtocolStatus.MOVED;
             }
-            else {
-                return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.EXCEPTION, "Http code=" + code + ", url=" + u));
+
+            // handle this in the higher layer.
+            return new ProtocolOutput(c, new ProtocolStatus(protocolStatusCode, u));
+        }
+        else if (code == 400) { // bad request, mark as GONE
+            if (log.isDebugEnabled()) {
+                log.debug("400 Bad Request: " + u);
             }
+
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, u));
         }
-        catch (Throwable e) {
-            log.error("Impossible to fetch the page: " + urlString + ". Error: " + e.toString(), e);
+        else if (code == 401) { // requires authorization, but no valid auth provided.
+            if (log.isDebugEnabled()) {
+                log.debug("401 Authentication Required: " + u);
+            }
 
-            return new ProtocolOutput(null, new ProtocolStatus(e));
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.ACCESS_DENIED, "Authentication required: " + u));
+        }
+        else if (code == 404) {
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.NOTFOUND, u));
+        }
+        else if (code == 410) { // permanently GONE
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.GONE, u));
+        }
+        else {
+            return new ProtocolOutput(c, new ProtocolStatus(ProtocolStatus.EXCEPTION, "Http code=" + code + ", url=" + u));
         }
     }
 
@@ -333,7 +351,7 @@ public abstract class HTTPBase implements Protocol {
 
         if (byIP) {
             try {
-                InetAddress addr = InetAddress.getByName(url.getHost());
+                InetAddress addr = DNSCache.get(conf).resolve(url.getHost());
                 host = addr.getHostAddress();
             }
             catch (UnknownHostException e) {
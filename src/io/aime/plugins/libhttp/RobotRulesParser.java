@@ -5,13 +5,18 @@ import io.aime.crawl.CrawlDatum;
 import io.aime.net.protocols.Response;
 import io.aime.protocol.ProtocolException;
 import io.aime.protocol.RobotRules;
+import io.aime.protocol.RobotRulesCache;
 
 // Apache Hadoop
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 // IO
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 // Log4j
@@ -45,12 +50,14 @@ public final class RobotRulesParser implements Configurable {
 
     private static final String KEY = RobotRulesParser.class.getName();
     private static final Logger LOG = Logger.getLogger(KEY);
-    private static final HashMap<String, RobotRuleSet> CACHE = new HashMap<String, RobotRuleSet>();
+    public static final String CACHE_TTL = "http.robots.cache.ttl";
     private static final String CHARACTER_ENCODING = "UTF-8";
     private static final int NO_PRECEDENCE = Integer.MAX_VALUE;
     private static final RobotRuleSet EMPTY_RULES = new RobotRuleSet();
     private static RobotRuleSet FORBID_ALL_RULES = getForbidAllRules();
     private boolean allowForbidden = false;
+    private long ttl;
+    private RobotRulesCache cache;
     private Configuration conf;
     private Map<String, Integer> robotNames;
 
@@ -65,6 +72,8 @@ public final class RobotRulesParser implements Configurable {
     public void setConf(Configuration conf) {
         this.conf = conf;
         this.allowForbidden = conf.getBoolean("http.robots.403.allow", false);
+        this.ttl = conf.getLong(CACHE_TTL, 86400000L);
+        this.cache = RobotRulesCache.get(conf);
 
         StringTokenizer tok = new StringTokenizer(conf.get("http.robots.agents"), ",");
         List<String> agents = new ArrayList<String>();
@@ -84,15 +93,18 @@ public final class RobotRulesParser implements Configurable {
     /**
      * This class holds the rules which were parsed from a robots.txt file, and
      * can test paths against those rules.
+     *
+     * <p>Once parsed, a rule set can be shared by many threads.</p>
      */
-    public static class RobotRuleSet implements RobotRules {
+    public static class RobotRuleSet implements RobotRules, Writable {
 
         List<RobotsEntry> tmpEntries = new ArrayList<RobotsEntry>();
         RobotsEntry[] entries = null;
+        volatile RobotsMatcher matcher = null;
         long expireTime;
         long crawlDelay = -1;
 
-        private class RobotsEntry {
+        class RobotsEntry {
 
             String prefix;
             boolean allowed;
@@ -112,6 +124,7 @@ public final class RobotRulesParser implements Configurable {
                 }
 
                 this.entries = null;
+                this.matcher = null;
             }
 
             this.tmpEntries.add(new RobotsEntry(prefix, allow));
@@ -121,6 +134,7 @@ public final class RobotRulesParser implements Configurable {
             if (this.tmpEntries == null) {
                 this.tmpEntries = new ArrayList<RobotsEntry>();
                 this.entries = null;
+                this.matcher = null;
             }
             else {
                 this.tmpEntries.clear();
@@ -171,43 +185,98 @@ public final class RobotRulesParser implements Configurable {
          * given path, or TRUE otherwise.
          */
         public boolean isAllowed(String path) {
-            try {
-                path = URLDecoder.decode(path, CHARACTER_ENCODING);
+            // Most paths have nothing to decode, so don't copy them.
+            if (path.indexOf('%') >= 0 || path.indexOf('+') >= 0) {
+                try {
+                    path = URLDecoder.decode(path, CHARACTER_ENCODING);
+                }
+                catch (Exception e) {
+                    // just ignore it- we can still try to match 
+                    // path prefixes
+                }
             }
-            catch (Exception e) {
-                // just ignore it- we can still try to match 
-                // path prefixes
+
+            return this.getMatcher().isAllowed(path);
+        }
+
+        /**
+         * Returns the compiled rules, compiling them the first time.
+         */
+        RobotsMatcher getMatcher() {
+            RobotsMatcher current = this.matcher;
+
+            if (current == null) {
+                synchronized (this) {
+                    if (this.entries == null) {
+                        this.entries = this.tmpEntries.toArray(new RobotsEntry[this.tmpEntries.size()]);
+                        this.tmpEntries = null;
+                    }
+
+                    if (this.matcher == null) {
+                        String[] prefixes = new String[this.entries.length];
+                        boolean[] allowed = new boolean[this.entries.length];
+                        for (int i = 0; i < this.entries.length; i++) {
+                            prefixes[i] = this.entries[i].prefix;
+                            allowed[i] = this.entries[i].allowed;
+                        }
+
+                        this.matcher = new RobotsMatcher(prefixes, allowed);
+                    }
+
+                    current = this.matcher;
+                }
             }
 
-            if (this.entries == null) {
-                this.entries = new RobotsEntry[this.tmpEntries.size()];
-                this.entries = this.tmpEntries.toArray(this.entries);
-                this.tmpEntries = null;
+            return current;
+        }
+
+        /**
+         * Returns the rules as an array, in file order.
+         */
+        RobotsEntry[] getEntries() {
+            this.getMatcher();
+
+            return this.entries;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            RobotsEntry[] current = this.getEntries();
+
+            out.writeLong(this.expireTime);
+            out.writeLong(this.crawlDelay);
+            WritableUtils.writeVInt(out, current.length);
+            for (RobotsEntry entry : current) {
+                Text.writeString(out, entry.prefix);
+                out.writeBoolean(entry.allowed);
             }
+        }
 
-            int pos = 0;
-            int end = this.entries.length;
-            while (pos < end) {
-                if (path.startsWith(this.entries[pos].prefix)) {
-                    return this.entries[pos].allowed;
-                }
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            this.expireTime = in.readLong();
+            this.crawlDelay = in.readLong();
 
-                pos++;
+            RobotsEntry[] read = new RobotsEntry[WritableUtils.readVInt(in)];
+            for (int i = 0; i < read.length; i++) {
+                read[i] = new RobotsEntry(Text.readString(in), in.readBoolean());
             }
 
-            return true;
+            this.tmpEntries = null;
+            this.entries = read;
+            this.matcher = null;
         }
 
         @Override
         public String toString() {
-            this.isAllowed("x");  // force String[] representation
+            RobotsEntry[] current = this.getEntries();
             StringBuilder buf = new StringBuilder();
-            for (int i = 0; i < this.entries.length; i++) {
-                if (this.entries[i].allowed) {
-                    buf.append("Allow: ").append(this.entries[i].prefix).append(System.getProperty("line.separator"));
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].allowed) {
+                    buf.append("Allow: ").append(current[i].prefix).append(System.getProperty("line.separator"));
                 }
                 else {
-                    buf.append("Disallow: ").append(this.entries[i].prefix).append(System.getProperty("line.separator"));
+                    buf.append("Disallow: ").append(current[i].prefix).append(System.getProperty("line.separator"));
                 }
             }
 
@@ -412,7 +481,8 @@ public final class RobotRulesParser implements Configurable {
 
     private RobotRuleSet getRobotRulesSet(HTTPBase http, URL url) {
         String host = url.getHost().toLowerCase(); // normalize to lower case
-        RobotRuleSet robotRules = RobotRulesParser.CACHE.get(host);
+        RobotRules cached = this.cache.get(host);
+        RobotRuleSet robotRules = (cached instanceof RobotRuleSet) ? (RobotRuleSet) cached : null;
         boolean cacheRule = true;
 
         if (robotRules == null) { // cache miss
@@ -468,11 +538,12 @@ public final class RobotRulesParser implements Configurable {
             }
 
             if (cacheRule) {
-                RobotRulesParser.CACHE.put(host, robotRules); // cache rules for host
+                robotRules = this.expiring(robotRules);
+                this.cache.put(host, robotRules); // cache rules for host
 
-                if (redir != null && !redir.getHost().equals(host)) {
+                if (redir != null && !redir.getHost().equalsIgnoreCase(host)) {
                     // cache also for the redirected host
-                    RobotRulesParser.CACHE.put(redir.getHost(), robotRules);
+                    this.cache.put(redir.getHost().toLowerCase(), robotRules);
                 }
             }
         }
@@ -480,6 +551,25 @@ public final class RobotRulesParser implements Configurable {
         return robotRules;
     }
 
+    /**
+     * Returns rules that expire after the configured time. The shared empty
+     * and forbid-all rules are never changed, a copy is made instead.
+     */
+    private RobotRuleSet expiring(RobotRuleSet robotRules) {
+        RobotRuleSet rules = robotRules;
+
+        if (rules == RobotRulesParser.EMPTY_RULES) {
+            rules = new RobotRuleSet();
+        }
+        else if (rules == RobotRulesParser.FORBID_ALL_RULES) {
+            rules = RobotRulesParser.getForbidAllRules();
+        }
+
+        rules.setExpireTime((this.ttl > 0) ? System.currentTimeMillis() + this.ttl : 0);
+
+        return rules;
+    }
+
     public boolean isAllowed(HTTPBase http, URL url) throws ProtocolException, IOException {
         String path = url.getPath(); // check rules
         if ((path == null) || "".equals(path)) {
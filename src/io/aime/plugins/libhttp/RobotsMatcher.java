@@ -0,0 +1,226 @@
+package io.aime.plugins.libhttp;
+
+// Util
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches paths against the Allow/Disallow rules of a robots.txt file.
+ *
+ * <p>The rules are compiled once into a prefix trie, so a path is matched in a
+ * single pass over its characters, no matter how many rules there are, and
+ * without allocating anything. As before, the first rule of the file that
+ * matches the path decides.</p>
+ *
+ * <p>A <code>*</code> in a rule matches any sequence of characters and a
+ * <code>$</code> at its end anchors it to the end of the path. Rules with
+ * wildcards are hung from the trie node of the text before their first
+ * <code>*</code>, and only tried on the paths that reach that node.</p>
+ *
+ * @author K-Zen
+ */
+final class RobotsMatcher {
+
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final int[] NO_CANDIDATES = new int[0];
+    // Trie, one slot per node. The root is node 0.
+    private final char[][] labels;
+    private final int[][] children;
+    private final int[] rules;
+    private final int[][] candidates;
+    // Rules, by position in the file.
+    private final boolean[] allowed;
+    private final String[] patterns;
+    private final boolean[] anchored;
+
+    /**
+     * Compiles a list of rules.
+     *
+     * @param prefixes The path of each rule, in file order.
+     * @param allowed  TRUE for the Allow rules.
+     */
+    RobotsMatcher(String[] prefixes, boolean[] allowed) {
+        this.allowed = allowed.clone();
+        this.patterns = new String[prefixes.length];
+        this.anchored = new boolean[prefixes.length];
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node());
+
+        for (int r = 0; r < prefixes.length; r++) {
+            String prefix = prefixes[r];
+            int star = prefix.indexOf('*');
+            boolean wildcard = star >= 0 || prefix.endsWith("$");
+
+            if (wildcard) {
+                this.anchored[r] = prefix.endsWith("$");
+                this.patterns[r] = this.anchored[r] ? prefix.substring(0, prefix.length() - 1) : prefix;
+                if (star < 0) {
+                    star = this.patterns[r].length();
+                }
+            }
+            else {
+                star = prefix.length();
+            }
+
+            int node = 0;
+            for (int i = 0; i < star; i++) {
+                node = nodes.get(node).child(prefix.charAt(i), nodes);
+            }
+
+            if (wildcard) {
+                nodes.get(node).candidates.add(r);
+            }
+            else {
+                // Only the first of two identical rules can ever match.
+                nodes.get(node).rule = Math.min(nodes.get(node).rule, r);
+            }
+        }
+
+        this.labels = new char[nodes.size()][];
+        this.children = new int[nodes.size()][];
+        this.rules = new int[nodes.size()];
+        this.candidates = new int[nodes.size()][];
+        for (int n = 0; n < nodes.size(); n++) {
+            Node node = nodes.get(n);
+            char[] nodeLabels = node.labels.toString().toCharArray();
+            int[] nodeChildren = new int[nodeLabels.length];
+
+            // Sort the children by label, so they can be binary searched.
+            for (int i = 0; i < nodeLabels.length; i++) {
+                char label = nodeLabels[i];
+                int child = node.children.get(i);
+                int j = i;
+
+                while (j > 0 && nodeLabels[j - 1] > label) {
+                    nodeLabels[j] = nodeLabels[j - 1];
+                    nodeChildren[j] = nodeChildren[j - 1];
+                    j--;
+                }
+
+                nodeLabels[j] = label;
+                nodeChildren[j] = child;
+            }
+
+            this.labels[n] = nodeLabels;
+            this.children[n] = nodeChildren;
+            this.rules[n] = node.rule;
+
+            // Rules were added in file order, so these stay sorted.
+            this.candidates[n] = node.candidates.isEmpty() ? NO_CANDIDATES : new int[node.candidates.size()];
+            for (int i = 0; i < node.candidates.size(); i++) {
+                this.candidates[n][i] = node.candidates.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns FALSE if the first rule matching the path is a Disallow rule, or
+     * TRUE otherwise.
+     *
+     * @param path The decoded path.
+     *
+     * @return TRUE if the path may be fetched.
+     */
+    boolean isAllowed(String path) {
+        int best = this.match(0, path, 0, this.rules[0]);
+        int node = 0;
+
+        for (int i = 0, length = path.length(); i < length; i++) {
+            int next = Arrays.binarySearch(this.labels[node], path.charAt(i));
+            if (next < 0) {
+                break;
+            }
+
+            node = this.children[node][next];
+            if (this.rules[node] < best) {
+                best = this.rules[node];
+            }
+
+            best = this.match(node, path, i + 1, best);
+        }
+
+        return (best == NONE) ? true : this.allowed[best];
+    }
+
+    /**
+     * Tries the wildcard rules of a node that come before the best rule found
+     * so far, and returns the new best rule.
+     */
+    private int match(int node, String path, int offset, int best) {
+        for (int rule : this.candidates[node]) {
+            if (rule >= best) {
+                break;
+            }
+
+            if (RobotsMatcher.matches(this.patterns[rule], offset, this.anchored[rule], path, offset)) {
+                return rule;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Matches a wildcard rule against the start of a path, or against the
+     * whole path if the rule is anchored. Both are matched from the given
+     * positions on.
+     */
+    static boolean matches(String pattern, int p, boolean anchored, String path, int i) {
+        int star = -1;
+        int mark = 0;
+        int plen = pattern.length();
+
+        while (i < path.length()) {
+            if (p < plen && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = i;
+            }
+            else if (p < plen && pattern.charAt(p) == path.charAt(i)) {
+                p++;
+                i++;
+            }
+            else if (p == plen && !anchored) {
+                return true;
+            }
+            else if (star >= 0) {
+                p = star + 1;
+                i = ++mark;
+            }
+            else {
+                return false;
+            }
+        }
+
+        while (p < plen && pattern.charAt(p) == '*') {
+            p++;
+        }
+
+        return p == plen;
+    }
+
+    /**
+     * A trie node while the rules are being compiled.
+     */
+    private static class Node {
+
+        StringBuilder labels = new StringBuilder();
+        List<Integer> children = new ArrayList<>();
+        List<Integer> candidates = new ArrayList<>();
+        int rule = NONE;
+
+        int child(char c, List<Node> nodes) {
+            int i = this.labels.indexOf(String.valueOf(c));
+            if (i >= 0) {
+                return this.children.get(i);
+            }
+
+            nodes.add(new Node());
+            this.labels.append(c);
+            this.children.add(nodes.size() - 1);
+
+            return nodes.size() - 1;
+        }
+    }
+}
@@ -17,9 +17,12 @@ import io.aime.util.AIMEConstants;
 import io.aime.util.DOMBuilder;
 import io.aime.util.DOMContentUtils;
 import io.aime.util.DOMTreeEcho;
+import io.aime.util.DOMTreeWalker;
+import io.aime.util.DOMVisitor;
 import io.aime.util.EncodingDetector;
 import io.aime.util.GeneralUtilities;
 import io.aime.util.HtmlMetaProcessor;
+import io.aime.util.HtmlStreamExtractor;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -27,6 +30,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -36,6 +40,7 @@ import org.apache.html.dom.HTMLDocumentImpl;
 import org.apache.log4j.Logger;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.DocumentFragment;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -55,6 +60,12 @@ public class HtmlParser implements Parser
     private HtmlParseFilters htmlParseFilters;
     private String cachingPolicy;
     private String defaultCharEncoding;
+    private boolean echoTree;
+    private boolean stream;
+    private boolean streamBlocks;
+    private boolean streamDocument;
+    private int streamTextLimit;
+    private int streamOutlinksLimit;
 
     @Override
     public void setConf(Configuration conf)
@@ -64,6 +75,12 @@ public class HtmlParser implements Parser
         this.defaultCharEncoding = this.getConf().get("parser.character.encoding.default", "windows-1252");
         this.utils = new DOMContentUtils(conf);
         this.cachingPolicy = this.getConf().get("parser.caching.forbidden.policy", AIMEConstants.CACHING_FORBIDDEN_CONTENT.getStringConstant());
+        this.echoTree = this.getConf().getBoolean("parser.html.echo.tree", false);
+        this.stream = this.getConf().getBoolean("parser.html.stream", false);
+        this.streamBlocks = this.getConf().getBoolean("parser.html.stream.blocks", false);
+        this.streamDocument = this.streamBlocks || this.htmlParseFilters.needsDocument();
+        this.streamTextLimit = this.getConf().getInt("parser.html.stream.text.limit", 1048576);
+        this.streamOutlinksLimit = this.getConf().getInt("parser.html.stream.outlinks.limit", 10000);
     }
 
     @Override
@@ -145,6 +162,8 @@ public class HtmlParser implements Parser
         Outlink[] outlinks = new Outlink[0];
         DocMetadata metadata = new DocMetadata();
         DocumentFragment root;
+        HtmlStreamExtractor extractor = null;
+        ContentHandler[] filterHandlers = null;
 
         try
         {
@@ -160,8 +179,25 @@ public class HtmlParser implements Parser
             // Convert into an input stream.
             InputSource input = new InputSource(new ByteArrayInputStream(contentInOctets));
             input.setEncoding(encoding);
-            // Parse the page and convert to DOM.
-            root = this.parse(input);
+            if (this.stream)
+            {
+                // Extract while parsing, and build the DOM only if it's needed.
+                extractor = new HtmlStreamExtractor(this.utils, metaTags, base, this.streamTextLimit, this.streamOutlinksLimit);
+                filterHandlers = this.htmlParseFilters.createHandlers(content);
+                for (ContentHandler handler : filterHandlers)
+                {
+                    if (handler != null)
+                    {
+                        extractor.addHandler(handler);
+                    }
+                }
+                root = this.parseStream(input, extractor, this.streamDocument);
+            }
+            else
+            {
+                // Parse the page and convert to DOM.
+                root = this.parse(input);
+            }
         }
         catch (IOException | DOMException | SAXException e)
         {
@@ -174,8 +210,43 @@ public class HtmlParser implements Parser
             return new ParseStatus(e).getEmptyParseResult(content.getUrl(), getConf());
         }
 
-        // Get META directives.
-        HtmlMetaProcessor.getMetaTags(metaTags, root, base);
+        String pageText;
+        String pageTitle;
+        URL baseTag;
+        DOMContentUtils.OutlinkVisitor outlinkVisitor = null;
+        DOMVisitor[] filterVisitors = null;
+
+        if (extractor != null)
+        {
+            pageText = extractor.getText();
+            pageTitle = extractor.getTitle();
+            baseTag = extractor.getBase();
+        }
+        else
+        {
+            // Walk the DOM once, collecting META directives, text, title, base,
+            // outlinks and whatever the filters need.
+            HtmlMetaProcessor.Visitor metaVisitor = new HtmlMetaProcessor.Visitor(metaTags, base);
+            DOMContentUtils.TextVisitor textVisitor = new DOMContentUtils.TextVisitor(false);
+            DOMContentUtils.TitleVisitor titleVisitor = new DOMContentUtils.TitleVisitor();
+            DOMContentUtils.BaseVisitor baseVisitor = new DOMContentUtils.BaseVisitor();
+            outlinkVisitor = this.utils.createOutlinkVisitor();
+            filterVisitors = this.htmlParseFilters.createVisitors(content);
+            List<DOMVisitor> visitors = new ArrayList<>(5 + filterVisitors.length);
+            visitors.addAll(Arrays.asList(metaVisitor, textVisitor, titleVisitor, baseVisitor, outlinkVisitor));
+            for (DOMVisitor visitor : filterVisitors)
+            {
+                if (visitor != null)
+                {
+                    visitors.add(visitor);
+                }
+            }
+            DOMTreeWalker.walk(root, visitors.toArray(new DOMVisitor[visitors.size()]));
+
+            pageText = textVisitor.getText();
+            pageTitle = titleVisitor.getTitle();
+            baseTag = baseVisitor.getBase();
+        }
 
         if (LOG.isDebugEnabled())
         {
@@ -185,27 +256,43 @@ public class HtmlParser implements Parser
         // Check META directives.
         if (!metaTags.getNoIndex())
         { // Is allowed to index.
-            text = this.utils.getText(root);
-            title = this.utils.getTitle(root);
+            text = pageText;
+            title = pageTitle;
         }
 
         // Print the DOM Tree.
-        DOMTreeEcho printDOMTree = new DOMTreeEcho();
-        printDOMTree.computeTree(root);
-        printDOMTree.printTree();
+        if (root != null && this.echoTree && DOMTreeEcho.isEnabled())
+        {
+            DOMTreeEcho printDOMTree = new DOMTreeEcho();
+            printDOMTree.computeTree(root);
+            printDOMTree.printTree();
+        }
 
-        // Detect blocks.
-        WebContentBlockDetection wcbd = new WebContentBlockDetection();
-        List<Block> contentBlocksTmp = wcbd.detectBlocks(title, root, this.getConf());
-        contentBlocks = contentBlocksTmp.toArray(new Block[contentBlocksTmp.size()]);
+        // Detect blocks, which needs the DOM.
+        if (root != null && (extractor == null || this.streamBlocks))
+        {
+            WebContentBlockDetection wcbd = new WebContentBlockDetection();
+            List<Block> contentBlocksTmp = wcbd.detectBlocks(title, root, this.getConf());
+            contentBlocks = contentBlocksTmp.toArray(new Block[contentBlocksTmp.size()]);
+        }
+        else
+        {
+            contentBlocks = new Block[0];
+        }
 
         // Check to see if it's allowed to follow links.
         if (!metaTags.getNoFollow())
         {
             ArrayList<Outlink> l = new ArrayList<>();
-            URL baseTag = this.utils.getBase(root);
 
-            this.utils.getOutlinks(baseTag != null ? baseTag : base, l, root);
+            if (extractor != null)
+            {
+                extractor.getOutlinks(baseTag != null ? baseTag : base, l);
+            }
+            else
+            {
+                outlinkVisitor.getOutlinks(baseTag != null ? baseTag : base, l);
+            }
             outlinks = l.toArray(new Outlink[l.size()]);
         }
 
@@ -224,7 +311,7 @@ public class HtmlParser implements Parser
         ParseResult parseResult = ParseResult.createParseResult(content.getUrl(), new ParseImplementation(text, parseData));
 
         // Run filters.
-        ParseResult filteredParse = this.htmlParseFilters.filter(content, parseResult, metaTags, root);
+        ParseResult filteredParse = this.htmlParseFilters.filter(content, parseResult, metaTags, root, filterVisitors, filterHandlers);
 
         if (metaTags.getNoCache())
         { // Don't cache.
@@ -302,13 +389,47 @@ public class HtmlParser implements Parser
         DocumentFragment frag = doc.createDocumentFragment();
         DOMBuilder builder = new DOMBuilder(doc, frag);
 
+        this.createReader(builder).parse(input);
+
+        return frag;
+    }
+
+    /**
+     * Parse the HTML document using the TagSoup parser, streaming its events
+     * into an extractor.
+     *
+     * @param input         The document's content.
+     * @param extractor     The extractor.
+     * @param buildDocument Build the DOM from the same events too.
+     *
+     * @return The parsed document, or null if it wasn't built.
+     *
+     * @throws Exception A generic exception.
+     */
+    private DocumentFragment parseStream(InputSource input, HtmlStreamExtractor extractor, boolean buildDocument) throws Exception
+    {
+        DocumentFragment frag = null;
+
+        if (buildDocument)
+        {
+            HTMLDocumentImpl doc = new HTMLDocumentImpl();
+            frag = doc.createDocumentFragment();
+            extractor.addHandler(new DOMBuilder(doc, frag));
+        }
+
+        this.createReader(extractor).parse(input);
+
+        return frag;
+    }
+
+    private org.ccil.cowan.tagsoup.Parser createReader(ContentHandler handler) throws Exception
+    {
         org.ccil.cowan.tagsoup.Parser reader = new org.ccil.cowan.tagsoup.Parser();
-        reader.setContentHandler(builder);
+        reader.setContentHandler(handler);
         reader.setFeature(org.ccil.cowan.tagsoup.Parser.ignoreBogonsFeature, true);
         reader.setFeature(org.ccil.cowan.tagsoup.Parser.bogonsEmptyFeature, false);
-        reader.setProperty("http://xml.org/sax/properties/lexical-handler", builder);
-        reader.parse(input);
+        reader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
 
-        return frag;
+        return reader;
     }
 }
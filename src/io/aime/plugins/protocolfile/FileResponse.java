@@ -83,7 +83,7 @@ public class FileResponse {
         this.base = uri.toString();
         this.file = file;
         this.conf = conf;
-        this.MIME = new MimeUtil(conf);
+        this.MIME = MimeUtil.get(conf);
 
         if (!"file".equals(uri.getScheme())) {
             throw new FileException("Not a file url: " + uri);
@@ -4,7 +4,6 @@ package io.aime.plugins.protocolhttpclient;
 import org.apache.commons.httpclient.ConnectTimeoutException;
 import org.apache.commons.httpclient.HttpClientError;
 import org.apache.commons.httpclient.params.HttpConnectionParams;
-import org.apache.commons.httpclient.protocol.ControllerThreadSocketFactory;
 import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
 
 // IO
@@ -15,7 +14,9 @@ import org.apache.log4j.Logger;
 
 // Net
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
@@ -61,11 +62,8 @@ public class DummySSLProtocolSocketFactory implements SecureProtocolSocketFactor
      * given time limit.
      *
      * <p>
-     * To circumvent the limitations of older JREs that do not support connect
-     * timeout a controller thread is executed. The controller thread attempts
-     * to create a new socket within the given limit of time. If socket
-     * constructor does not return until the timeout expires, the controller
-     * terminates and throws an {@link ConnectTimeoutException}
+     * The socket is connected with a timeout on the calling thread, so no
+     * controller thread is started for each new connection.
      * </p>
      *
      * @param host         the host name/IP
@@ -92,8 +90,18 @@ public class DummySSLProtocolSocketFactory implements SecureProtocolSocketFactor
             return this.createSocket(host, port, localAddress, localPort);
         }
         else {
-            // To be eventually deprecated when migrated to Java 1.4 or above
-            return ControllerThreadSocketFactory.createSocket(this, host, port, localAddress, localPort, timeout);
+            Socket socket = this.getSSLContext().getSocketFactory().createSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+            }
+            catch (SocketTimeoutException e) {
+                socket.close();
+                throw new ConnectTimeoutException("Connect to " + host + ":" + port + " timed out.");
+            }
+
+            return socket;
         }
     }
 
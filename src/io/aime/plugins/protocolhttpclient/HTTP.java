@@ -10,11 +10,11 @@ import io.aime.plugins.libhttp.HTTPBase;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NTCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 
 // Apache Hadoop
 import org.apache.hadoop.conf.Configuration;
@@ -58,8 +58,9 @@ import javax.xml.parsers.ParserConfigurationException;
 public class HTTP extends HTTPBase {
 
     private static final Logger LOG = Logger.getLogger(HTTP.class.getName());
-    private static MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
-    private static HttpClient client = new HttpClient(connectionManager);
+    private static final PooledConnectionManager connectionManager = new PooledConnectionManager();
+    private static final HttpClient client = new HttpClient(connectionManager);
+    private static IdleConnectionTimeoutThread idleConnectionEvictor = null;
     private static String defaultUsername;
     private static String defaultPassword;
     private static String defaultRealm;
@@ -74,11 +75,12 @@ public class HTTP extends HTTPBase {
     private String proxyRealm;
 
     /**
-     * Returns the configured HTTP client.
+     * Returns the configured HTTP client. The client is thread safe and shared
+     * by all fetching threads.
      *
      * @return HTTP client
      */
-    static synchronized HttpClient getClient() {
+    static HttpClient getClient() {
         return client;
     }
 
@@ -139,22 +141,20 @@ public class HTTP extends HTTPBase {
      * Configures the HTTP client
      */
     private void configureClient() {
-        // Set up an HTTPS socket factory that accepts self-signed certs.
-        Protocol https = new Protocol("https", new DummySSLProtocolSocketFactory(), 443);
-        Protocol.registerProtocol("https", https);
+        HTTP.registerHTTPS();
         HttpConnectionManagerParams params = HTTP.connectionManager.getParams();
         params.setConnectionTimeout(this.timeout);
         params.setSoTimeout(this.timeout);
         params.setSendBufferSize(HTTP.BUFFER_SIZE);
         params.setReceiveBufferSize(HTTP.BUFFER_SIZE);
-        params.setMaxTotalConnections(this.maxThreadsTotal);
 
-        if (this.maxThreadsTotal > this.maxThreadsPerHost) {
-            params.setDefaultMaxConnectionsPerHost(this.maxThreadsPerHost);
-        }
-        else {
-            params.setDefaultMaxConnectionsPerHost(this.maxThreadsTotal);
-        }
+        // One pool per host, as large as the number of threads allowed to hit
+        // a host at once. Idle connections of other hosts are kept around up
+        // to the total limit, so a host seen again skips the handshakes.
+        int maxTotal = Math.max(this.maxThreadsTotal, HTTP.conf.getInt("http.pool.max.connections", this.maxThreadsTotal));
+        params.setMaxTotalConnections(maxTotal);
+        params.setDefaultMaxConnectionsPerHost(Math.min(this.maxThreadsPerHost, maxTotal));
+        HTTP.startIdleConnectionEvictor(HTTP.conf.getLong("http.pool.idle.timeout", 30000L));
 
         // executeMethod(HttpMethod) seems to ignore the connection timeout on the connection manager.
         // set it explicitly on the HttpClient.
@@ -167,6 +167,12 @@ public class HTTP extends HTTPBase {
         headers.add(new Header("Accept-Charset", "utf-8,ISO-8859-1;q=0.7,*;q=0.7"));
         headers.add(new Header("Accept", "text/html,application/xml;q=0.9,application/xhtml+xml,text/xml;q=0.9,text/plain;q=0.8,image/png,*/*;q=0.5"));
         headers.add(new Header("Accept-Encoding", "x-gzip, gzip, deflate"));
+
+        if (!this.useHttp11) {
+            // HTTP/1.0 servers close the connection after each response unless asked not to.
+            headers.add(new Header("Connection", "keep-alive"));
+        }
+
         hostConf.getParams().setParameter("http.default-headers", headers);
 
         // HTTP proxy server details
@@ -181,6 +187,38 @@ public class HTTP extends HTTPBase {
         }
     }
 
+    /**
+     * Sets up an HTTPS socket factory that accepts self-signed certs. It's
+     * registered only once, so all connections share the same SSL context and
+     * can resume TLS sessions.
+     */
+    private static synchronized void registerHTTPS() {
+        if (Protocol.getProtocol("https").getSocketFactory() instanceof DummySSLProtocolSocketFactory) {
+            return;
+        }
+
+        Protocol.registerProtocol("https", new Protocol("https", new DummySSLProtocolSocketFactory(), 443));
+    }
+
+    /**
+     * Starts the thread that closes the pooled connections left idle for too
+     * long, before servers drop them on their side.
+     *
+     * @param idleTimeout The time in milliseconds a connection may stay idle.
+     */
+    private static synchronized void startIdleConnectionEvictor(long idleTimeout) {
+        if (HTTP.idleConnectionEvictor != null || idleTimeout <= 0) {
+            return;
+        }
+
+        HTTP.idleConnectionEvictor = new IdleConnectionTimeoutThread();
+        HTTP.idleConnectionEvictor.setName("HTTPIdleConnectionEvictor");
+        HTTP.idleConnectionEvictor.setConnectionTimeout(idleTimeout);
+        HTTP.idleConnectionEvictor.setTimeoutInterval(Math.max(1000L, idleTimeout / 2));
+        HTTP.idleConnectionEvictor.addConnectionManager(HTTP.connectionManager);
+        HTTP.idleConnectionEvictor.start();
+    }
+
     /**
      * Reads authentication configuration file (defined as 'http.auth.file' in
      * AIME configuration file) and sets the credentials for the configured
@@ -115,6 +115,7 @@ public class HTTPResponse implements Response {
             // always read content. Sometimes content is useful to find a cause
             // for error.
             InputStream in = get.getResponseBodyAsStream();
+            boolean drained = false;
             try {
                 byte[] buffer = new byte[HTTPBase.BUFFER_SIZE];
                 int bufferFilled = 0;
@@ -126,6 +127,7 @@ public class HTTPResponse implements Response {
                     out.write(buffer, 0, bufferFilled);
                 }
 
+                drained = (bufferFilled == -1);
                 content = out.toByteArray();
             }
             catch (Exception e) {
@@ -135,11 +137,16 @@ public class HTTPResponse implements Response {
                 // for codes other than 200 OK, we are fine with empty content
             }
             finally {
-                if (in != null) {
+                if (drained) {
+                    // The whole body was read, so the connection goes back to
+                    // the pool for the next request to this host.
                     in.close();
                 }
-
-                get.abort();
+                else {
+                    // Don't read the rest of a truncated body just to keep the
+                    // connection, drop it instead.
+                    get.abort();
+                }
             }
 
             StringBuilder fetchTrace = null;
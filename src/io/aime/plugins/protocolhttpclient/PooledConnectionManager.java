@@ -0,0 +1,33 @@
+package io.aime.plugins.protocolhttpclient;
+
+// AIME
+import io.aime.protocol.ConnectionStats;
+
+// Apache Commons
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+/**
+ * Connection manager that keeps a pool of connections per host and counts how
+ * many requests reuse an open connection and how many have to open a new one.
+ *
+ * @author K-Zen
+ */
+class PooledConnectionManager extends MultiThreadedHttpConnectionManager {
+
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) throws ConnectionPoolTimeoutException {
+        HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+
+        if (connection.isOpen()) {
+            ConnectionStats.connectionReused();
+        }
+        else {
+            ConnectionStats.connectionOpened();
+        }
+
+        return connection;
+    }
+}
@@ -0,0 +1,344 @@
+package io.aime.plugins.protocolnio;
+
+// AIME
+import io.aime.metadata.DocMetadata;
+import io.aime.metadata.SpellCheckedMetadata;
+import io.aime.net.protocols.Response;
+
+// IO
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+// Net
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+// NIO
+import java.nio.ByteBuffer;
+
+/**
+ * A single HTTP request and the incremental parser of its response.
+ *
+ * <p>
+ * The response is fed in whatever pieces the network hands over, so the
+ * parser keeps its state between calls. Bodies are delimited by the
+ * Content-Length header, by chunked transfer encoding or by the end of the
+ * connection, and are cut at the content limit of the plugin, in which case
+ * the rest of the response is never read.
+ * </p>
+ *
+ * @author K-Zen
+ */
+class HTTPExchange {
+
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+    private static final int STATE_STATUS_LINE = 0;
+    private static final int STATE_HEADERS = 1;
+    private static final int STATE_BODY = 2;
+    private static final int STATE_CHUNK_SIZE = 3;
+    private static final int STATE_CHUNK_DATA = 4;
+    private static final int STATE_CHUNK_END = 5;
+    private static final int STATE_TRAILER = 6;
+    private static final int STATE_DONE = 7;
+    private final URL url;
+    private final InetSocketAddress address;
+    private final ByteBuffer request;
+    private final int maxContent;
+    private final int timeout;
+    private final Listener listener;
+    private final StringBuilder line = new StringBuilder();
+    private final DocMetadata headers = new SpellCheckedMetadata();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int state = STATE_STATUS_LINE;
+    private int code = -1;
+    private long remaining = -1L;
+    private String lastHeader = null;
+    private long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Receives the outcome of an exchange.
+     */
+    interface Listener {
+
+        void completed(HTTPExchange exchange);
+
+        void failed(HTTPExchange exchange, Throwable cause);
+    }
+
+    /**
+     * Creates a new exchange.
+     *
+     * @param url        The URL requested.
+     * @param address    The resolved address to connect to, either the server
+     *                   or the proxy.
+     * @param request    The raw request, ready to be written.
+     * @param maxContent The content limit, or a negative value for none.
+     * @param timeout    The time in milliseconds the exchange may go without
+     *                   any network activity.
+     * @param listener   Receives the outcome.
+     */
+    HTTPExchange(URL url, InetSocketAddress address, ByteBuffer request, int maxContent, int timeout, Listener listener) {
+        this.url = url;
+        this.address = address;
+        this.request = request;
+        this.maxContent = maxContent;
+        this.timeout = timeout;
+        this.listener = listener;
+    }
+
+    URL getUrl() {
+        return url;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    ByteBuffer getRequest() {
+        return request;
+    }
+
+    int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Records network activity on the exchange.
+     */
+    void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Tells if the exchange went without network activity for longer than its
+     * timeout, like a socket read timeout would.
+     *
+     * @param now The current time.
+     *
+     * @return True if the exchange has timed out.
+     */
+    boolean isExpired(long now) {
+        return now - lastActivity > timeout;
+    }
+
+    Listener getListener() {
+        return listener;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    DocMetadata getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    /**
+     * Parses the next piece of the response. The buffer must be backed by an
+     * array.
+     *
+     * @param in The bytes read, between its position and its limit.
+     *
+     * @return True if the response is complete and the connection can be
+     *         closed.
+     *
+     * @throws IOException If the response is malformed.
+     */
+    boolean consume(ByteBuffer in) throws IOException {
+        while (in.hasRemaining() && state != STATE_DONE) {
+            if (state == STATE_BODY || state == STATE_CHUNK_DATA) {
+                readBody(in);
+            }
+            else {
+                readLine(in);
+            }
+        }
+
+        return state == STATE_DONE;
+    }
+
+    /**
+     * Signals that the server closed the connection.
+     *
+     * @throws IOException If the connection was closed before the headers of
+     *                     the response were read.
+     */
+    void finish() throws IOException {
+        if (state == STATE_STATUS_LINE || state == STATE_HEADERS) {
+            throw new IOException("Connection closed before the response headers were read: " + url);
+        }
+
+        // A body cut short is kept as it is, like the blocking client does.
+        state = STATE_DONE;
+    }
+
+    private void readBody(ByteBuffer in) {
+        int n = in.remaining();
+        if (remaining >= 0 && remaining < n) {
+            n = (int) remaining;
+        }
+
+        boolean truncated = false;
+        if (maxContent >= 0 && body.size() + n >= maxContent) {
+            n = maxContent - body.size();
+            truncated = true;
+        }
+
+        body.write(in.array(), in.arrayOffset() + in.position(), n);
+        in.position(in.position() + n);
+
+        if (remaining >= 0) {
+            remaining -= n;
+        }
+
+        if (truncated) {
+            state = STATE_DONE;
+        }
+        else if (remaining == 0) {
+            state = (state == STATE_CHUNK_DATA) ? STATE_CHUNK_END : STATE_DONE;
+        }
+    }
+
+    private void readLine(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            char c = (char) (in.get() & 0xFF);
+
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+
+                String text = line.toString();
+                line.setLength(0);
+                processLine(text);
+
+                return;
+            }
+
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Response line too long: " + url);
+            }
+
+            line.append(c);
+        }
+    }
+
+    private void processLine(String text) throws IOException {
+        switch (state) {
+            case STATE_STATUS_LINE:
+                if (text.isEmpty()) {
+                    return; // Tolerate blank lines before the status line.
+                }
+
+                code = parseStatusLine(text);
+                state = STATE_HEADERS;
+                break;
+            case STATE_HEADERS:
+                if (text.isEmpty()) {
+                    if (code >= 100 && code < 200) {
+                        state = STATE_STATUS_LINE; // Interim response, the real one follows.
+                        headers.clear();
+                    }
+                    else {
+                        startBody();
+                    }
+                }
+                else if ((text.charAt(0) == ' ' || text.charAt(0) == '\t') && lastHeader != null) {
+                    headers.set(lastHeader, headers.get(lastHeader) + " " + text.trim()); // Folded header.
+                }
+                else {
+                    int colon = text.indexOf(':');
+                    if (colon > 0) {
+                        lastHeader = text.substring(0, colon).trim();
+                        headers.set(lastHeader, text.substring(colon + 1).trim());
+                    }
+                }
+                break;
+            case STATE_CHUNK_SIZE:
+                String size = text.trim();
+                int ext = size.indexOf(';');
+                if (ext >= 0) {
+                    size = size.substring(0, ext).trim();
+                }
+
+                try {
+                    remaining = Long.parseLong(size, 16);
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + size + ". URL: " + url);
+                }
+
+                state = (remaining == 0) ? STATE_TRAILER : STATE_CHUNK_DATA;
+                break;
+            case STATE_CHUNK_END:
+                state = STATE_CHUNK_SIZE;
+                break;
+            case STATE_TRAILER:
+                if (text.isEmpty()) {
+                    state = STATE_DONE;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startBody() throws IOException {
+        if (code == 204 || code == 304) {
+            state = STATE_DONE;
+
+            return;
+        }
+
+        String encoding = headers.get("Transfer-Encoding");
+        if (encoding != null && encoding.toLowerCase().contains("chunked")) {
+            state = STATE_CHUNK_SIZE;
+
+            return;
+        }
+
+        String length = headers.get(Response.CONTENT_LENGTH);
+        if (length != null) {
+            try {
+                remaining = Long.parseLong(length.trim());
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("Content length incorrect: " + length);
+            }
+        }
+
+        state = (remaining == 0 || (maxContent == 0)) ? STATE_DONE : STATE_BODY;
+    }
+
+    private int parseStatusLine(String text) throws IOException {
+        if (!text.startsWith("HTTP/")) {
+            throw new IOException("Invalid status line: " + text + ". URL: " + url);
+        }
+
+        int start = text.indexOf(' ');
+        if (start < 0) {
+            throw new IOException("Invalid status line: " + text + ". URL: " + url);
+        }
+
+        while (start < text.length() && text.charAt(start) == ' ') {
+            start++;
+        }
+
+        int end = start;
+        while (end < text.length() && Character.isDigit(text.charAt(end))) {
+            end++;
+        }
+
+        try {
+            return Integer.parseInt(text.substring(start, end));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid status line: " + text + ". URL: " + url);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package io.aime.plugins.protocolnio;
+
+// AIME
+import io.aime.crawl.CrawlDatum;
+import io.aime.net.DNSCache;
+import io.aime.net.protocols.HTTPDateFormat;
+import io.aime.net.protocols.Response;
+import io.aime.plugins.libhttp.HTTPBase;
+import io.aime.protocol.AsyncProtocol;
+import io.aime.protocol.ProtocolException;
+import io.aime.protocol.ProtocolOutput;
+import io.aime.protocol.ProtocolStatus;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+// IO
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Net
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.UnknownHostException;
+
+// NIO
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Security
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+// SSL
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+// Util
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Protocol plugin that fetches HTTP pages over non-blocking sockets.
+ *
+ * <p>
+ * Plain HTTP requests are run by a {@link NIOHTTPClient} shared by the whole
+ * JVM, so a handful of selector threads keep many connections in flight and
+ * the Fetcher threads are free as soon as a request is sent. HTTPS requests
+ * are made with a blocking socket on the calling thread, since the selectors
+ * don't speak TLS.
+ * </p>
+ *
+ * <p>
+ * Redirects are never followed, the caller handles them. Authentication and
+ * cookies are not supported, use the protocol-httpclient plugin if they're
+ * needed.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class NIOHTTP extends HTTPBase implements AsyncProtocol {
+
+    private static final Logger LOG = Logger.getLogger(NIOHTTP.class.getName());
+    private static final String CRLF = "\r\n";
+    private static final String ACCEPT = "text/html,application/xml;q=0.9,application/xhtml+xml,text/xml;q=0.9,text/plain;q=0.8,image/png,*/*;q=0.5";
+    private static final String ACCEPT_CHARSET = "utf-8,ISO-8859-1;q=0.7,*;q=0.7";
+    private static final String ACCEPT_ENCODING = "x-gzip, gzip, deflate";
+    private static SSLSocketFactory sslFactory = null;
+    private NIOHTTPClient client;
+
+    /**
+     * Constructs this plugin.
+     */
+    public NIOHTTP() {
+        super(LOG);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        super.setConf(conf);
+
+        try {
+            this.client = NIOHTTPClient.get(conf);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Impossible to start the NIO HTTP client. Error: " + e.toString(), e);
+        }
+    }
+
+    @Override
+    public void getProtocolOutput(Text url, CrawlDatum datum, final Callback callback) {
+        final URL u;
+
+        try {
+            u = new URL(url.toString());
+
+            if ("https".equals(u.getProtocol())) {
+                callback.completed(this.getProtocolOutput(url, datum));
+
+                return;
+            }
+
+            this.client.execute(this.createExchange(u, datum, new HTTPExchange.Listener() {
+                @Override
+                public void completed(HTTPExchange exchange) {
+                    ProtocolOutput output;
+
+                    try {
+                        output = NIOHTTP.this.toProtocolOutput(u, new NIOHTTPResponse(NIOHTTP.this, exchange));
+                    }
+                    catch (Throwable e) {
+                        LOG.error("Impossible to fetch the page: " + u + ". Error: " + e.toString(), e);
+                        output = new ProtocolOutput(null, new ProtocolStatus(e));
+                    }
+
+                    callback.completed(output);
+                }
+
+                @Override
+                public void failed(HTTPExchange exchange, Throwable cause) {
+                    LOG.error("Impossible to fetch the page: " + u + ". Error: " + cause.toString());
+                    callback.completed(new ProtocolOutput(null, new ProtocolStatus(cause)));
+                }
+            }));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.completed(new ProtocolOutput(null, new ProtocolStatus(e)));
+        }
+        catch (Throwable e) {
+            LOG.error("Impossible to fetch the page: " + url + ". Error: " + e.toString(), e);
+            callback.completed(new ProtocolOutput(null, new ProtocolStatus(e)));
+        }
+    }
+
+    /**
+     * Fetches a URL and waits for the response. Redirects are never followed.
+     *
+     * @param url             URL to be fetched
+     * @param datum           Crawl data
+     * @param followRedirects Ignored.
+     *
+     * @return HTTP response
+     *
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Override
+    protected Response getResponse(URL url, CrawlDatum datum, boolean followRedirects) throws ProtocolException, IOException {
+        if ("https".equals(url.getProtocol())) {
+            return new NIOHTTPResponse(this, this.fetchSecure(url, datum));
+        }
+
+        Waiter waiter = new Waiter();
+        HTTPExchange exchange = this.createExchange(url, datum, waiter);
+
+        try {
+            this.client.execute(exchange);
+            waiter.latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching: " + url);
+        }
+
+        if (waiter.cause != null) {
+            throw (waiter.cause instanceof IOException) ? (IOException) waiter.cause : new IOException(waiter.cause);
+        }
+
+        return new NIOHTTPResponse(this, exchange);
+    }
+
+    private HTTPExchange createExchange(URL url, CrawlDatum datum, HTTPExchange.Listener listener) throws UnknownHostException {
+        boolean secure = "https".equals(url.getProtocol());
+        int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+
+        // DNS is resolved here, through the cache shared with the other HTTP
+        // plugins, so the selectors never block on it.
+        InetAddress host = DNSCache.get(this.getConf()).resolve(this.useProxy ? this.proxyHost : url.getHost());
+        InetSocketAddress address = new InetSocketAddress(host, this.useProxy ? this.proxyPort : port);
+
+        return new HTTPExchange(url, address, this.createRequest(url, datum, this.useProxy && !secure), this.maxContent, this.timeout, listener);
+    }
+
+    private ByteBuffer createRequest(URL url, CrawlDatum datum, boolean absolute) {
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        StringBuilder request = new StringBuilder(512);
+
+        request.append("GET ").append(absolute ? url.getProtocol() + "://" + this.getHostHeader(url) + path : path).append(this.useHttp11 ? " HTTP/1.1" : " HTTP/1.0").append(CRLF);
+        request.append("Host: ").append(this.getHostHeader(url)).append(CRLF);
+        request.append("User-Agent: ").append(this.userAgent).append(CRLF);
+        request.append("Accept-Language: ").append(this.acceptLanguage).append(CRLF);
+        request.append("Accept-Charset: ").append(ACCEPT_CHARSET).append(CRLF);
+        request.append("Accept: ").append(ACCEPT).append(CRLF);
+        request.append("Accept-Encoding: ").append(ACCEPT_ENCODING).append(CRLF);
+
+        if (datum.getModifiedTime() > 0) {
+            request.append("If-Modified-Since: ").append(HTTPDateFormat.toString(datum.getModifiedTime())).append(CRLF);
+        }
+
+        request.append("Connection: close").append(CRLF);
+        request.append(CRLF);
+
+        return ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String getHostHeader(URL url) {
+        if (url.getPort() == -1 || url.getPort() == url.getDefaultPort()) {
+            return url.getHost();
+        }
+
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    /**
+     * Runs an HTTPS exchange with a blocking socket, tunneling through the
+     * proxy if there is one.
+     */
+    private HTTPExchange fetchSecure(URL url, CrawlDatum datum) throws IOException {
+        HTTPExchange exchange = this.createExchange(url, datum, null);
+        int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+        Socket socket = new Socket();
+
+        try {
+            socket.setSoTimeout(this.timeout);
+            socket.connect(exchange.getAddress(), this.timeout);
+
+            if (this.useProxy) {
+                String connect = "CONNECT " + url.getHost() + ":" + port + " HTTP/1.0" + CRLF + "Host: " + url.getHost() + ":" + port + CRLF + CRLF;
+                HTTPExchange tunnel = new HTTPExchange(url, exchange.getAddress(), ByteBuffer.wrap(connect.getBytes(StandardCharsets.ISO_8859_1)), 0, this.timeout, null);
+                NIOHTTP.run(socket, tunnel);
+
+                if (tunnel.getCode() != 200) {
+                    throw new IOException("Proxy refused the tunnel to: " + url.getHost() + ":" + port + ". Code: " + tunnel.getCode());
+                }
+            }
+
+            socket = NIOHTTP.getSSLFactory().createSocket(socket, url.getHost(), port, true);
+            NIOHTTP.run(socket, exchange);
+        }
+        finally {
+            socket.close();
+        }
+
+        return exchange;
+    }
+
+    private static void run(Socket socket, HTTPExchange exchange) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        ByteBuffer request = exchange.getRequest();
+        out.write(request.array(), request.arrayOffset() + request.position(), request.remaining());
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(HTTPBase.BUFFER_SIZE);
+        while (true) {
+            int read = in.read(buffer.array());
+            if (read < 0) {
+                exchange.finish();
+
+                return;
+            }
+
+            buffer.clear();
+            buffer.limit(read);
+            if (exchange.consume(buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a socket factory that accepts self-signed certificates, like the
+     * protocol-httpclient plugin does.
+     */
+    private static synchronized SSLSocketFactory getSSLFactory() throws IOException {
+        if (sslFactory == null) {
+            try {
+                SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, new TrustManager[]{new X509TrustManager() {
+                    @Override
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    @Override
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    @Override
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[0];
+                    }
+                }}, new SecureRandom());
+                sslFactory = context.getSocketFactory();
+            }
+            catch (GeneralSecurityException e) {
+                throw new IOException("Impossible to create the SSL context. Error: " + e.toString(), e);
+            }
+        }
+
+        return sslFactory;
+    }
+
+    /**
+     * Lets a thread wait for an exchange to finish.
+     */
+    private static class Waiter implements HTTPExchange.Listener {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Throwable cause = null;
+
+        @Override
+        public void completed(HTTPExchange exchange) {
+            latch.countDown();
+        }
+
+        @Override
+        public void failed(HTTPExchange exchange, Throwable cause) {
+            this.cause = cause;
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package io.aime.plugins.protocolnio;
+
+// AIME
+import io.aime.plugins.libhttp.HTTPBase;
+import io.aime.protocol.ConnectionStats;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+
+// IO
+import java.io.IOException;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Net
+import java.net.SocketTimeoutException;
+
+// NIO
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+// Util
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs HTTP exchanges over non-blocking sockets.
+ *
+ * <p>
+ * A few selector threads drive every connection in flight: they connect,
+ * write the request and feed the response to its {@link HTTPExchange} as
+ * bytes arrive. Finished exchanges are handed to a small pool of threads that
+ * notify the listeners, so slow listeners never hold the selectors.
+ * </p>
+ *
+ * <p>
+ * The number of exchanges in flight is capped. Once the cap is reached,
+ * submitting a new exchange blocks until another one finishes, which pushes
+ * back on the callers instead of piling up connections.
+ * </p>
+ *
+ * <p>
+ * There is one client per JVM, shared by all instances of the plugin, and
+ * it's configured by the first of them.
+ * </p>
+ *
+ * @author K-Zen
+ */
+class NIOHTTPClient {
+
+    private static final Logger LOG = Logger.getLogger(NIOHTTPClient.class.getName());
+    public static final String SELECTORS = "http.nio.selectors";
+    public static final String MAX_CONNECTIONS = "http.nio.max.connections";
+    public static final String COMPLETION_THREADS = "http.nio.completion.threads";
+    private static final long SELECT_TIMEOUT = 250;
+    private static NIOHTTPClient instance = null;
+    private final IOLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private final Semaphore slots;
+    private final ExecutorService completions;
+
+    private NIOHTTPClient(int selectors, int maxConnections, int completionThreads) throws IOException {
+        this.slots = new Semaphore(maxConnections);
+        this.completions = Executors.newFixedThreadPool(completionThreads, new DaemonThreadFactory("NIOHTTPCompletion"));
+        this.loops = new IOLoop[selectors];
+
+        for (int i = 0; i < selectors; i++) {
+            this.loops[i] = new IOLoop(i);
+            this.loops[i].start();
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("NIO HTTP client started. Selectors: " + selectors + ", Max. connections: " + maxConnections + ", Completion threads: " + completionThreads);
+        }
+    }
+
+    /**
+     * Returns the client of this JVM, starting it if needed.
+     *
+     * @param conf The configuration object.
+     *
+     * @return The shared client.
+     *
+     * @throws IOException If the selectors can't be opened.
+     */
+    static synchronized NIOHTTPClient get(Configuration conf) throws IOException {
+        if (instance == null) {
+            instance = new NIOHTTPClient(
+                    Math.max(1, conf.getInt(SELECTORS, 2)),
+                    Math.max(1, conf.getInt(MAX_CONNECTIONS, 1024)),
+                    Math.max(1, conf.getInt(COMPLETION_THREADS, 4)));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Starts an exchange. Blocks while the maximum number of exchanges are in
+     * flight.
+     *
+     * @param exchange The exchange to run.
+     *
+     * @throws InterruptedException If interrupted while waiting for a free
+     *                              connection.
+     */
+    void execute(HTTPExchange exchange) throws InterruptedException {
+        slots.acquire();
+        loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length].submit(exchange);
+    }
+
+    private void complete(final HTTPExchange exchange, final Throwable cause) {
+        slots.release();
+        completions.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (cause == null) {
+                        exchange.getListener().completed(exchange);
+                    }
+                    else {
+                        exchange.getListener().failed(exchange, cause);
+                    }
+                }
+                catch (Throwable t) {
+                    LOG.error("Error notifying the end of the request for: " + exchange.getUrl() + ". Error: " + t.toString(), t);
+                }
+            }
+        });
+    }
+
+    private static void close(SelectableChannel channel) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // Nothing left to do with it.
+        }
+    }
+
+    /**
+     * Drives the connections assigned to one selector.
+     */
+    private class IOLoop extends Thread {
+
+        private final Selector selector;
+        private final Queue<HTTPExchange> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(HTTPBase.BUFFER_SIZE);
+        private long lastExpiration = System.currentTimeMillis();
+
+        IOLoop(int id) throws IOException {
+            this.selector = Selector.open();
+            setDaemon(true);
+            setName("NIOHTTPSelector-" + id);
+        }
+
+        void submit(HTTPExchange exchange) {
+            pending.add(exchange);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(SELECT_TIMEOUT);
+                    register();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (key.isValid()) {
+                            handle(key);
+                        }
+                    }
+
+                    expire();
+                }
+                catch (Throwable t) {
+                    LOG.error("Error in NIO HTTP selector: " + getName() + ". Error: " + t.toString(), t);
+                }
+            }
+        }
+
+        private void register() {
+            HTTPExchange exchange;
+
+            while ((exchange = pending.poll()) != null) {
+                SocketChannel channel = null;
+
+                try {
+                    channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    channel.socket().setReceiveBufferSize(HTTPBase.BUFFER_SIZE);
+                    exchange.touch();
+                    ConnectionStats.connectionOpened();
+
+                    if (channel.connect(exchange.getAddress())) {
+                        channel.register(selector, SelectionKey.OP_WRITE, exchange);
+                    }
+                    else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+                    }
+                }
+                catch (IOException e) {
+                    NIOHTTPClient.close(channel);
+                    complete(exchange, e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            HTTPExchange exchange = (HTTPExchange) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+
+            try {
+                if (key.isConnectable()) {
+                    if (channel.finishConnect()) {
+                        exchange.touch();
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+                else if (key.isWritable()) {
+                    if (channel.write(exchange.getRequest()) > 0) {
+                        exchange.touch();
+                    }
+
+                    if (!exchange.getRequest().hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                else if (key.isReadable()) {
+                    buffer.clear();
+                    int read = channel.read(buffer);
+
+                    if (read < 0) {
+                        exchange.finish();
+                        done(key, exchange, null);
+                    }
+                    else if (read > 0) {
+                        exchange.touch();
+                        buffer.flip();
+
+                        if (exchange.consume(buffer)) {
+                            done(key, exchange, null);
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                done(key, exchange, e);
+            }
+        }
+
+        private void expire() {
+            long now = System.currentTimeMillis();
+            if (now - lastExpiration < SELECT_TIMEOUT) {
+                return;
+            }
+
+            lastExpiration = now;
+            for (SelectionKey key : selector.keys()) {
+                HTTPExchange exchange = (HTTPExchange) key.attachment();
+
+                if (key.isValid() && exchange.isExpired(now)) {
+                    done(key, exchange, new SocketTimeoutException("No activity for " + exchange.getTimeout() + "ms. URL: " + exchange.getUrl()));
+                }
+            }
+        }
+
+        private void done(SelectionKey key, HTTPExchange exchange, Throwable cause) {
+            key.cancel();
+            NIOHTTPClient.close(key.channel());
+            complete(exchange, cause);
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+            t.setDaemon(true);
+
+            return t;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.aime.plugins.protocolnio;
+
+// AIME
+import io.aime.metadata.DocMetadata;
+import io.aime.net.protocols.Response;
+
+// IO
+import java.io.IOException;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Net
+import java.net.URL;
+
+/**
+ * An HTTP response read by {@link NIOHTTPClient}.
+ *
+ * @author K-Zen
+ */
+public class NIOHTTPResponse implements Response {
+
+    private static final Logger LOG = Logger.getLogger(NIOHTTPResponse.class.getName());
+    private URL url;
+    private byte[] content;
+    private int code;
+    private DocMetadata headers;
+
+    /**
+     * Builds the response of a finished exchange, expanding compressed
+     * content.
+     *
+     * @param http     The plugin that made the request.
+     * @param exchange The finished exchange.
+     *
+     * @throws IOException If the content can't be expanded.
+     */
+    NIOHTTPResponse(NIOHTTP http, HTTPExchange exchange) throws IOException {
+        this.url = exchange.getUrl();
+        this.code = exchange.getCode();
+        this.headers = exchange.getHeaders();
+        this.content = exchange.getBody();
+
+        StringBuilder fetchTrace = new StringBuilder("URL: " + url + "; Status Code: " + code + "; Bytes received: " + content.length);
+
+        if (this.getHeader(Response.CONTENT_LENGTH) != null) {
+            fetchTrace.append("; Content-Length: ").append(this.getHeader(Response.CONTENT_LENGTH));
+        }
+
+        if (this.getHeader(Response.LOCATION) != null) {
+            fetchTrace.append("; Location: ").append(this.getHeader(Response.LOCATION));
+        }
+
+        // Extract gzip, x-gzip and deflate content
+        String contentEncoding = headers.get(Response.CONTENT_ENCODING);
+        if (contentEncoding != null && content.length > 0) {
+            fetchTrace.append("; Content-Encoding: ").append(contentEncoding);
+
+            if ("gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding)) {
+                content = http.processGzipEncoded(content, url);
+                fetchTrace.append("; extracted to [").append(content.length).append("] bytes.");
+            }
+            else if ("deflate".equals(contentEncoding)) {
+                content = http.processDeflateEncoded(content, url);
+                fetchTrace.append("; extracted to [").append(content.length).append("] bytes.");
+            }
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(fetchTrace.toString());
+        }
+    }
+
+    @Override
+    public URL getUrl() {
+        return this.url;
+    }
+
+    @Override
+    public int getCode() {
+        return this.code;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+
+    @Override
+    public DocMetadata getHeaders() {
+        return this.headers;
+    }
+
+    @Override
+    public byte[] getContent() {
+        return this.content;
+    }
+}
@@ -67,7 +67,7 @@ public class SambaResponse {
         this.base = url.toString();
         this.file = file;
         this.conf = conf;
-        this.MIME = new MimeUtil(conf);
+        this.MIME = MimeUtil.get(conf);
 
         if (!"smb".equals(url.getProtocol())) {
             throw new SambaException("Not a samba url: " + url);
@@ -12,6 +12,7 @@ public class RegexRule {
 
     private boolean sign; // TRUE is accept rule, FALSE deny rule.
     private String pattern; // Regex pattern.
+    private transient Pattern compiled = null; // Compiled on first use.
 
     /**
      * Constructs a new regular expression rule.
@@ -43,7 +44,13 @@ public class RegexRule {
      * @return TRUE, if a match is found, FALSE otherwise.
      */
     boolean match(String url) {
-        return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(url).find();
+        Pattern p = compiled;
+        if (p == null) {
+            // Patterns are immutable, compiling one twice does no harm.
+            p = compiled = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+        }
+
+        return p.matcher(url).find();
     }
 
     public String getPattern() {
@@ -0,0 +1,394 @@
+package io.aime.plugins.urlfilterregex;
+
+// Util
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides on a URL with all the rules of a {@link RegexURLFilter} at once.
+ *
+ * <p>Most rules contain some literal text that a URL must contain for the rule
+ * to match, like the host name of a site rule. That text is taken from every
+ * rule and compiled into a single Aho-Corasick automaton, so one pass over the
+ * URL finds the few rules that may match it. Only those, and the rules with no
+ * literal text, are run as regular expressions.</p>
+ *
+ * <p>Within the URL rules and within the site rules the last matching rule
+ * decides, so the rules are tried backwards and the first match ends the
+ * search. The site rules are not tried at all if the URL rules reject the
+ * URL.</p>
+ *
+ * @author K-Zen
+ */
+final class RegexRuleMatcher {
+
+    // All rules, URL rules first.
+    private final RegexRule[] rules;
+    private final int siteStart;
+    private final boolean[] always;
+    // Automaton, one slot per node. The root is node 0.
+    private final char[][] labels;
+    private final int[][] children;
+    private final int[] fail;
+    private final int[] dictionary;
+    private final int[][] outputs;
+
+    /**
+     * Compiles the rules.
+     *
+     * @param urlRules  The URL rules, in order.
+     * @param siteRules The site rules, in order.
+     */
+    RegexRuleMatcher(RegexRule[] urlRules, RegexRule[] siteRules) {
+        this.rules = new RegexRule[urlRules.length + siteRules.length];
+        System.arraycopy(urlRules, 0, this.rules, 0, urlRules.length);
+        System.arraycopy(siteRules, 0, this.rules, urlRules.length, siteRules.length);
+        this.siteStart = urlRules.length;
+        this.always = new boolean[this.rules.length];
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node());
+        for (int r = 0; r < this.rules.length; r++) {
+            String literal = RegexRuleMatcher.literal(this.rules[r].getPattern());
+
+            if (literal.isEmpty()) {
+                this.always[r] = true;
+                continue;
+            }
+
+            int node = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                node = nodes.get(node).child(literal.charAt(i), nodes);
+            }
+
+            nodes.get(node).outputs.add(r);
+        }
+
+        int size = nodes.size();
+        this.labels = new char[size][];
+        this.children = new int[size][];
+        this.outputs = new int[size][];
+        for (int n = 0; n < size; n++) {
+            Node node = nodes.get(n);
+            char[] nodeLabels = node.labels.toString().toCharArray();
+            int[] nodeChildren = new int[nodeLabels.length];
+
+            // Sort the children by label, so they can be binary searched.
+            for (int i = 0; i < nodeLabels.length; i++) {
+                char label = nodeLabels[i];
+                int child = node.children.get(i);
+                int j = i;
+
+                while (j > 0 && nodeLabels[j - 1] > label) {
+                    nodeLabels[j] = nodeLabels[j - 1];
+                    nodeChildren[j] = nodeChildren[j - 1];
+                    j--;
+                }
+
+                nodeLabels[j] = label;
+                nodeChildren[j] = child;
+            }
+
+            this.labels[n] = nodeLabels;
+            this.children[n] = nodeChildren;
+            this.outputs[n] = new int[node.outputs.size()];
+            for (int i = 0; i < node.outputs.size(); i++) {
+                this.outputs[n][i] = node.outputs.get(i);
+            }
+        }
+
+        // Failure links, breadth first. The dictionary link of a node points
+        // to the nearest node on its failure chain that ends some literal.
+        this.fail = new int[size];
+        this.dictionary = new int[size];
+        this.dictionary[0] = -1;
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int child : this.children[0]) {
+            this.dictionary[child] = -1;
+            queue[tail++] = child;
+        }
+
+        while (head < tail) {
+            int node = queue[head++];
+
+            for (int i = 0; i < this.labels[node].length; i++) {
+                char c = this.labels[node][i];
+                int child = this.children[node][i];
+                int f = this.fail[node];
+                int g;
+
+                while ((g = this.next(f, c)) < 0 && f != 0) {
+                    f = this.fail[f];
+                }
+
+                this.fail[child] = (g < 0) ? 0 : g;
+                this.dictionary[child] = (this.outputs[this.fail[child]].length > 0) ? this.fail[child] : this.dictionary[this.fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Returns TRUE if the URL rules accept the URL and the site rules accept
+     * its site.
+     *
+     * @param url The URL.
+     *
+     * @return TRUE if the URL passes.
+     */
+    boolean accept(String url) {
+        long[] candidates = new long[(this.rules.length + 63) >>> 6];
+        this.scan(url, candidates);
+
+        // The policy of the URL rules is allow-deny, of the site rules deny-allow.
+        return this.decide(url, candidates, 0, this.siteStart, true) && this.decide(url, candidates, this.siteStart, this.rules.length, false);
+    }
+
+    private boolean decide(String url, long[] candidates, int from, int to, boolean fallback) {
+        for (int r = to - 1; r >= from; r--) {
+            if ((this.always[r] || (candidates[r >>> 6] & (1L << r)) != 0) && this.rules[r].match(url)) {
+                return this.rules[r].accept();
+            }
+        }
+
+        return fallback;
+    }
+
+    /**
+     * Marks the rules whose literal text appears in the URL.
+     */
+    private void scan(String url, long[] candidates) {
+        int state = 0;
+
+        for (int i = 0, length = url.length(); i < length; i++) {
+            // The rules ignore case, as the literals do.
+            char c = Character.toLowerCase(url.charAt(i));
+            int g;
+
+            while ((g = this.next(state, c)) < 0 && state != 0) {
+                state = this.fail[state];
+            }
+
+            state = (g < 0) ? 0 : g;
+            for (int s = (this.outputs[state].length > 0) ? state : this.dictionary[state]; s > 0; s = this.dictionary[s]) {
+                for (int r : this.outputs[s]) {
+                    candidates[r >>> 6] |= 1L << r;
+                }
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        int i = Arrays.binarySearch(this.labels[node], c);
+
+        return (i < 0) ? -1 : this.children[node][i];
+    }
+
+    /**
+     * Returns the longest run of literal text that every match of the regular
+     * expression must contain, in lower case, or an empty string if there's
+     * none that can be found safely. Groups and character classes are
+     * skipped, and a character followed by a quantifier that allows zero
+     * repetitions is left out.
+     *
+     * @param regex The regular expression.
+     *
+     * @return The literal text or an empty string.
+     */
+    static String literal(String regex) {
+        StringBuilder run = new StringBuilder();
+        String best = "";
+        int depth = 0;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                if (++i >= regex.length()) {
+                    return "";
+                }
+
+                char escaped = regex.charAt(i);
+                if (escaped == 'Q') {
+                    // Quoted text isn't worth the trouble.
+                    return "";
+                }
+
+                if (depth > 0) {
+                    continue;
+                }
+
+                if (Character.isDigit(escaped) || "xuckpPN".indexOf(escaped) >= 0) {
+                    // A character code, a control character, a property or
+                    // a back reference, whose arguments aren't literal text.
+                    return "";
+                }
+
+                if (Character.isLetter(escaped)) {
+                    // A class, a back reference or a boundary.
+                    best = RegexRuleMatcher.longest(best, run);
+                }
+                else {
+                    run.append(escaped);
+                }
+
+                continue;
+            }
+
+            if (c == '[') {
+                i = RegexRuleMatcher.skipClass(regex, i);
+                if (i < 0) {
+                    return "";
+                }
+
+                if (depth == 0) {
+                    best = RegexRuleMatcher.longest(best, run);
+                }
+
+                continue;
+            }
+
+            if (depth > 0) {
+                if (c == '(') {
+                    depth++;
+                }
+                else if (c == ')') {
+                    depth--;
+                }
+
+                continue;
+            }
+
+            switch (c) {
+                case '|':
+                    // Any of the alternatives may match.
+                    return "";
+                case '(':
+                    if (regex.startsWith("(?", i) && i + 2 < regex.length() && ":=!<>".indexOf(regex.charAt(i + 2)) < 0) {
+                        // Inline flags change how the rest is matched.
+                        return "";
+                    }
+
+                    depth++;
+                    best = RegexRuleMatcher.longest(best, run);
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    // The last character may not be there at all.
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+
+                    best = RegexRuleMatcher.longest(best, run);
+                    if (c == '{') {
+                        i = regex.indexOf('}', i);
+                        if (i < 0) {
+                            return "";
+                        }
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                case ')':
+                    best = RegexRuleMatcher.longest(best, run);
+                    break;
+                default:
+                    run.append(c);
+            }
+        }
+
+        if (depth > 0) {
+            return "";
+        }
+
+        char[] literal = RegexRuleMatcher.longest(best, run).toCharArray();
+        for (int i = 0; i < literal.length; i++) {
+            literal[i] = Character.toLowerCase(literal[i]);
+        }
+
+        return new String(literal);
+    }
+
+    /**
+     * Returns the longer of the best literal so far and the current run, and
+     * starts a new run.
+     */
+    private static String longest(String best, StringBuilder run) {
+        if (run.length() > best.length()) {
+            best = run.toString();
+        }
+
+        run.setLength(0);
+
+        return best;
+    }
+
+    /**
+     * Returns the position of the bracket that closes the character class
+     * opened at the given position, or -1 if it's never closed.
+     */
+    private static int skipClass(String regex, int open) {
+        int depth = 0;
+        int i = open;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+
+            if (c == '[') {
+                depth++;
+                i++;
+                // A bracket right after the opening one, or after its
+                // negation, is part of the class.
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+
+            if (c == ']' && --depth == 0) {
+                return i;
+            }
+
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * A node of the automaton while the rules are being compiled.
+     */
+    private static class Node {
+
+        StringBuilder labels = new StringBuilder();
+        List<Integer> children = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+
+        int child(char c, List<Node> nodes) {
+            int i = this.labels.indexOf(String.valueOf(c));
+            if (i >= 0) {
+                return this.children.get(i);
+            }
+
+            nodes.add(new Node());
+            this.labels.append(c);
+            this.children.add(nodes.size() - 1);
+
+            return nodes.size() - 1;
+        }
+    }
+}
@@ -29,6 +29,7 @@ public class RegexURLFilter implements URLFilter
     private RegexRule[] urlRule = new RegexRule[0];
     private RegexRule[] seedSiteRule = new RegexRule[0];
     private RegexRule[] siteRule = new RegexRule[0];
+    private volatile RegexRuleMatcher matcher = null; // Compiled from the rules on first use.
 
     @Override
     public RegexURLFilter init()
@@ -36,6 +37,7 @@ public class RegexURLFilter implements URLFilter
         RegexRuleHandler handler = new RegexRuleHandler();
         defaultURLRule = handler.createDefaultRules(new AIMEConfiguration().create(), RegexRuleHandler.DEFAULT_URL_RULE);
         seedSiteRule = handler.createDefaultRules(new AIMEConfiguration().create(), RegexRuleHandler.SEED_SITE_RULE);
+        matcher = null;
 
         return this;
     }
@@ -44,39 +46,32 @@ public class RegexURLFilter implements URLFilter
     public String filter(String url)
     {
         // This filter is AND'ed. That means that only if both filter are allowed
-        // this URL can pass.
-        boolean acceptURL = true;
-        boolean acceptSite = false;
-
-        // The policy here is allow-deny.
-        for (RegexRule r : getDefaultURLRule()) {
-            if (r.match(url)) {
-                acceptURL = r.accept();
-            }
-        }
+        // this URL can pass. In each group of rules the last one matching wins.
+        return getMatcher().accept(url) ? url : null;
+    }
 
-        // The policy here is deny-allow.
-        for (RegexRule r : getSeedSiteRule()) {
-            if (r.match(url)) {
-                acceptSite = r.accept();
-            }
+    /**
+     * Returns the rules compiled into a single matcher, compiling them if they
+     * changed since the last time.
+     */
+    RegexRuleMatcher getMatcher()
+    {
+        RegexRuleMatcher m = matcher;
+        if (m == null) {
+            RegexRule[] urlRules = concat(defaultURLRule, urlRule);
+            RegexRule[] siteRules = concat(seedSiteRule, siteRule);
+            matcher = m = new RegexRuleMatcher(urlRules, siteRules);
         }
 
-        // The policy here is allow-deny.
-        for (RegexRule r : getURLRule()) {
-            if (r.match(url)) {
-                acceptURL = r.accept();
-            }
-        }
+        return m;
+    }
 
-        // The policy here is deny-allow.
-        for (RegexRule r : getSiteRule()) {
-            if (r.match(url)) {
-                acceptSite = r.accept();
-            }
-        }
+    private static RegexRule[] concat(RegexRule[] first, RegexRule[] second)
+    {
+        RegexRule[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
 
-        return (acceptURL && acceptSite) ? url : null;
+        return all;
     }
 
     @Override
@@ -123,6 +118,7 @@ public class RegexURLFilter implements URLFilter
                                             .newBuild()
                                             .setType(RegexRule[].class)
                                             .setData(urlRule = ruleList.toArray(new RegexRule[0])))));
+            matcher = null;
 
             return true;
         }
@@ -156,6 +152,7 @@ public class RegexURLFilter implements URLFilter
                                             .newBuild()
                                             .setType(RegexRule[].class)
                                             .setData(siteRule = ruleList.toArray(new RegexRule[0])))));
+            matcher = null;
 
             return true;
         }
@@ -189,6 +186,7 @@ public class RegexURLFilter implements URLFilter
                                             .newBuild()
                                             .setType(RegexRule[].class)
                                             .setData(urlRule = ruleList.toArray(new RegexRule[0])))));
+            matcher = null;
 
             return true;
         }
@@ -222,6 +220,7 @@ public class RegexURLFilter implements URLFilter
                                             .newBuild()
                                             .setType(RegexRule[].class)
                                             .setData(siteRule = ruleList.toArray(new RegexRule[0])))));
+            matcher = null;
 
             return true;
         }
@@ -313,6 +312,8 @@ public class RegexURLFilter implements URLFilter
         for (int k = 0; k < siteRule.length; k++) {
             siteRule[k] = new RegexRule(in.readBoolean(), in.readUTF());
         }
+
+        matcher = null;
     }
 
     public static RegexURLFilter read(DataInput in) throws IOException
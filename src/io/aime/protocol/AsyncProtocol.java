@@ -0,0 +1,52 @@
+package io.aime.protocol;
+
+// AIME
+import io.aime.crawl.CrawlDatum;
+
+// Apache Hadoop
+import org.apache.hadoop.io.Text;
+
+/**
+ * A {@link Protocol} that can fetch without holding the calling thread for
+ * the length of the request.
+ *
+ * <p>
+ * Requests are handed over to the plugin and the calling thread returns right
+ * away, so a few threads can keep many requests in flight. The outcome is
+ * delivered through a {@link Callback}, from a thread owned by the plugin.
+ * Politeness and robot rules aren't enforced by asynchronous requests, the
+ * caller must take care of them.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public interface AsyncProtocol extends Protocol {
+
+    /**
+     * Starts fetching a fetchlist entry. The call may block for a while if the
+     * plugin has reached its limit of requests in flight, but never for the
+     * length of the request.
+     *
+     * @param url      The URL to fetch.
+     * @param datum    The crawl datum of the URL.
+     * @param callback Receives the outcome. Errors are delivered as a
+     *                 {@link ProtocolOutput} with the matching status, so it's
+     *                 always called exactly once.
+     */
+    void getProtocolOutput(Text url, CrawlDatum datum, Callback callback);
+
+    /**
+     * Receives the outcome of an asynchronous request.
+     */
+    interface Callback {
+
+        /**
+         * Called once the request has finished, successfully or not.
+         * Implementations should return quickly, since the thread calling
+         * them serves other requests as well.
+         *
+         * @param output The outcome of the request.
+         */
+        void completed(ProtocolOutput output);
+    }
+}
@@ -0,0 +1,46 @@
+package io.aime.protocol;
+
+// Util
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how protocol plugins get their connections, so that the Fetcher can
+ * report how often a pooled connection is reused instead of opening a new one.
+ *
+ * <p>
+ * The counters are shared by the whole JVM and only grow.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public final class ConnectionStats {
+
+    private static final AtomicLong REUSED = new AtomicLong(0L);
+    private static final AtomicLong OPENED = new AtomicLong(0L);
+
+    private ConnectionStats() {
+    }
+
+    /**
+     * Records a request sent over a connection that was already open.
+     */
+    public static void connectionReused() {
+        REUSED.incrementAndGet();
+    }
+
+    /**
+     * Records a request that had to open a new connection, paying for the TCP
+     * and TLS handshakes.
+     */
+    public static void connectionOpened() {
+        OPENED.incrementAndGet();
+    }
+
+    public static long getConnectionsReused() {
+        return REUSED.get();
+    }
+
+    public static long getConnectionsOpened() {
+        return OPENED.get();
+    }
+}
@@ -45,7 +45,6 @@ public final class Content implements Writable, Configurable {
     private byte[] content = new byte[0];
     private String contentType = new String();
     private DocMetadata metadata = new DocMetadata();
-    private MimeUtil mimeTypes = new MimeUtil();
 
     @Override
     public final void setConf(Configuration conf) {
@@ -87,8 +86,7 @@ public final class Content implements Writable, Configurable {
         this.base = base;
         this.content = content;
         this.metadata = metadata;
-        this.mimeTypes = new MimeUtil(conf);
-        this.contentType = this.getContentType(contentType, url, content);
+        this.contentType = this.getContentType(contentType, url, content, conf);
     }
 
     private final void readFieldsCompressed(DataInput in) throws IOException {
@@ -256,7 +254,6 @@ public final class Content implements Writable, Configurable {
         hash = 61 * hash + Arrays.hashCode(this.content);
         hash = 61 * hash + (this.contentType != null ? this.contentType.hashCode() : 0);
         hash = 61 * hash + (this.metadata != null ? this.metadata.hashCode() : 0);
-        hash = 61 * hash + (this.mimeTypes != null ? this.mimeTypes.hashCode() : 0);
 
         return hash;
     }
@@ -279,7 +276,7 @@ public final class Content implements Writable, Configurable {
 
     }
 
-    private String getContentType(String typeName, String url, byte[] data) {
-        return this.mimeTypes.autoResolveContentType(typeName, url, data);
+    private String getContentType(String typeName, String url, byte[] data, Configuration conf) {
+        return MimeUtil.get(conf).autoResolveContentType(typeName, url, data);
     }
 }
@@ -0,0 +1,169 @@
+package io.aime.protocol;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+
+// Util
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the robots.txt rules of the hosts seen by this JVM, so that protocol
+ * plugins download them only once per host.
+ *
+ * <p>
+ * The cache holds at most a fixed number of hosts. Once it's full, the hosts
+ * used least recently are evicted first. Rules are also dropped once their expire
+ * time passes, so a host's robots.txt is downloaded again after a while.
+ * Rules with an expire time of 0 or less never expire.
+ * </p>
+ *
+ * <p>
+ * Rules that a plugin had to download are also kept aside until the Fetcher
+ * collects them, so that it can store them for the next fetch tasks.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public final class RobotRulesCache {
+
+    public static final String MAX_SIZE = "http.robots.cache.size";
+    private static RobotRulesCache instance = null;
+    private final int maxSize;
+    // In access order, guarded by itself.
+    private final LinkedHashMap<String, RobotRules> rules = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<String, RobotRules> fetched = new ConcurrentHashMap<>();
+
+    private RobotRulesCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache of this JVM, creating it if needed. It's sized by the
+     * first caller.
+     *
+     * @param conf The configuration object.
+     *
+     * @return The shared cache.
+     */
+    public static synchronized RobotRulesCache get(Configuration conf) {
+        if (instance == null) {
+            instance = new RobotRulesCache(Math.max(1, conf.getInt(MAX_SIZE, 10000)));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns TRUE if the rules are stale at the given time.
+     *
+     * @param rules The rules to check.
+     * @param now   The current time.
+     *
+     * @return TRUE if the rules expired.
+     */
+    public static boolean isExpired(RobotRules rules, long now) {
+        return rules.getExpireTime() > 0 && rules.getExpireTime() <= now;
+    }
+
+    /**
+     * Returns the rules of a host, or null if they're not cached or expired.
+     *
+     * @param host The host name, in lower case.
+     *
+     * @return The rules or null.
+     */
+    public RobotRules get(String host) {
+        synchronized (this.rules) {
+            RobotRules cached = this.rules.get(host);
+
+            if (cached != null && RobotRulesCache.isExpired(cached, System.currentTimeMillis())) {
+                this.rules.remove(host);
+
+                return null;
+            }
+
+            return cached;
+        }
+    }
+
+    /**
+     * Caches the rules just downloaded for a host.
+     *
+     * @param host  The host name, in lower case.
+     * @param rules The rules.
+     */
+    public void put(String host, RobotRules rules) {
+        this.add(host, rules);
+        this.fetched.put(host, rules);
+    }
+
+    /**
+     * Caches rules read from storage. Expired rules, and hosts already cached,
+     * are ignored.
+     *
+     * @param host  The host name, in lower case.
+     * @param rules The rules.
+     */
+    public void preload(String host, RobotRules rules) {
+        if (RobotRulesCache.isExpired(rules, System.currentTimeMillis())) {
+            return;
+        }
+
+        synchronized (this.rules) {
+            if (!this.rules.containsKey(host)) {
+                this.rules.put(host, rules);
+                this.evict();
+            }
+        }
+    }
+
+    /**
+     * Returns the rules downloaded since the last call, and forgets them.
+     *
+     * @return The rules by host.
+     */
+    public Map<String, RobotRules> drainFetched() {
+        Map<String, RobotRules> drained = new HashMap<>();
+
+        for (String host : this.fetched.keySet()) {
+            RobotRules removed = this.fetched.remove(host);
+
+            if (removed != null) {
+                drained.put(host, removed);
+            }
+        }
+
+        return drained;
+    }
+
+    public int size() {
+        synchronized (this.rules) {
+            return this.rules.size();
+        }
+    }
+
+    private void add(String host, RobotRules rules) {
+        synchronized (this.rules) {
+            this.rules.put(host, rules);
+            this.evict();
+        }
+    }
+
+    /**
+     * Drops the least recently used hosts over the size. Called holding the
+     * lock of the rules.
+     */
+    private void evict() {
+        Iterator<String> hosts = this.rules.keySet().iterator();
+
+        while (this.rules.size() > this.maxSize && hosts.hasNext()) {
+            hosts.next();
+            hosts.remove();
+        }
+    }
+}
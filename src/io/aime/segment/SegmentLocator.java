@@ -0,0 +1,493 @@
+package io.aime.segment;
+
+import io.aime.crawl.CrawlDatum;
+import io.aime.parse.ParseData;
+import io.aime.util.AIMEConstants;
+import io.aime.util.HadoopFSUtil;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.log4j.Logger;
+
+/**
+ * Tells which segments, and which of their directories, may hold a URL, so a
+ * lookup opens and scans only those.
+ *
+ * <p>
+ * Each segment keeps a Bloom filter of the URLs of each of its crawl_generate,
+ * crawl_fetch, parse_data and crawl_parse directories, written by the
+ * Generator, the Fetcher and the parser as they finish with it, along with the
+ * modification times of the directories they were read from. The filters of
+ * crawl_parse also hold the URLs a segment only has as outlinks.
+ * </p>
+ *
+ * <p>
+ * A segment whose filters are missing, or older than its directories, has
+ * them written on its first lookup, unless a job is still writing to it, in
+ * which case it may hold any URL. There is one locator per JVM, and it keeps
+ * the filters it has read until their files change.
+ * </p>
+ *
+ * @author K-Zen
+ */
+public class SegmentLocator
+{
+
+    private static final Logger LOG = Logger.getLogger(SegmentLocator.class.getName());
+    public static final String FILE_NAME = "urls.bloom";
+    // Filters written before there was one per directory start with their
+    // number of directories, newer ones with this, negated.
+    private static final int VERSION = 2;
+    // The directories whose keys are all the URLs of a segment.
+    private static final String[] SOURCES = new String[]
+    {
+        CrawlDatum.GENERATE_DIR_NAME, CrawlDatum.FETCH_DIR_NAME, ParseData.DIR_NAME, CrawlDatum.PARSE_DIR_NAME
+    };
+    private static SegmentLocator instance = null;
+    private final Configuration conf;
+    private final Map<Path, Filter> filters = new HashMap<>();
+
+    private SegmentLocator(Configuration conf)
+    {
+        this.conf = conf;
+    }
+
+    /**
+     * Returns the locator of this JVM, creating it if needed.
+     *
+     * @param conf Configuration's object.
+     *
+     * @return The shared locator.
+     */
+    public static synchronized SegmentLocator get(Configuration conf)
+    {
+        if (instance == null)
+        {
+            instance = new SegmentLocator(conf);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Writes the filters of a segment, over what it has so far. A segment
+     * without them is looked in for every URL, so failures are only logged.
+     *
+     * @param conf    Configuration's object.
+     * @param segment The segment.
+     */
+    public static void write(Configuration conf, Path segment)
+    {
+        try
+        {
+            FileSystem fs = segment.getFileSystem(conf);
+            List<String> names = new ArrayList<>();
+            List<Long> times = new ArrayList<>();
+            List<BloomFilter> blooms = new ArrayList<>();
+            long total = 0;
+
+            for (String name : SOURCES)
+            {
+                Path dir = new Path(segment, name);
+                if (!fs.exists(dir))
+                {
+                    continue;
+                }
+
+                long time = fs.getFileStatus(dir).getModificationTime();
+                List<Path> parts = SegmentLocator.getParts(fs, dir);
+
+                // Counted first, so the filter is sized for about 1% of false
+                // positives.
+                long count = 0;
+                for (Path part : parts)
+                {
+                    count += SegmentLocator.scan(fs, part, conf, null);
+                }
+
+                int bits = (int) Math.min(Integer.MAX_VALUE, Math.max(64, count * 10));
+                BloomFilter bloom = new BloomFilter(bits, 7, Hash.MURMUR_HASH);
+                for (Path part : parts)
+                {
+                    SegmentLocator.scan(fs, part, conf, bloom);
+                }
+
+                names.add(name);
+                times.add(time);
+                blooms.add(bloom);
+                total += count;
+            }
+
+            // Written aside and moved in, so it's never read half written.
+            Path tmp = new Path(segment, FILE_NAME + "." + UUID.randomUUID() + ".tmp");
+            FSDataOutputStream out = fs.create(tmp, true);
+            try
+            {
+                out.writeInt(-VERSION);
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++)
+                {
+                    Text.writeString(out, names.get(i));
+                    out.writeLong(times.get(i));
+                    blooms.get(i).write(out);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            Path file = new Path(segment, FILE_NAME);
+            fs.delete(file, false);
+            if (!fs.rename(tmp, file))
+            {
+                fs.delete(tmp, false);
+                throw new IOException("Can't rename " + tmp + " to " + file);
+            }
+
+            if (LOG.isInfoEnabled())
+            {
+                LOG.info("Segment filter: " + file + " (" + total + " keys)");
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Error writing the filter of segment: " + segment + ". Error: " + e.toString());
+        }
+    }
+
+    /**
+     * Returns the segments that may hold a URL.
+     *
+     * @param url The URL.
+     *
+     * @return The segments, in the order they're listed.
+     *
+     * @throws IOException If the segments can't be listed.
+     */
+    public Path[] locate(Text url) throws IOException
+    {
+        FileSystem fs = FileSystem.get(this.conf);
+        FileStatus[] segments = fs.listStatus(new Path(AIMEConstants.SEGMENTDBASE_PATH.getStringConstant()), HadoopFSUtil.getPassDirectoriesFilter(fs));
+        if (segments == null)
+        {
+            return new Path[0];
+        }
+
+        List<Path> candidates = new ArrayList<>();
+        Set<Path> listed = new HashSet<>();
+        Key key = SegmentLocator.key(url);
+
+        for (FileStatus segment : segments)
+        {
+            listed.add(segment.getPath());
+
+            Filter filter = this.getFilter(fs, segment.getPath());
+            if (filter == null && !SegmentLocator.isBeingWritten(fs, segment.getPath()))
+            {
+                // Older segments, and the ones a job failed to write them
+                // for, are scanned once here instead of on every lookup.
+                SegmentLocator.write(this.conf, segment.getPath());
+                filter = this.getFilter(fs, segment.getPath());
+            }
+
+            if (filter == null || filter.mayHold(key))
+            {
+                candidates.add(segment.getPath());
+            }
+        }
+
+        // Forget the segments that are gone.
+        synchronized (this.filters)
+        {
+            this.filters.keySet().retainAll(listed);
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Segments that may hold " + url + ": " + candidates.size() + " of " + segments.length);
+        }
+
+        return candidates.toArray(new Path[candidates.size()]);
+    }
+
+    /**
+     * Tells if a directory of a segment may hold a URL. Directories without a
+     * current filter may hold any URL.
+     *
+     * @param segment The segment.
+     * @param name    The name of the directory.
+     * @param url     The URL.
+     *
+     * @return FALSE only if the directory surely doesn't hold the URL.
+     */
+    public boolean mayHold(Path segment, String name, Text url)
+    {
+        Filter filter;
+        synchronized (this.filters)
+        {
+            filter = this.filters.get(segment);
+        }
+
+        if (filter == null)
+        {
+            return true;
+        }
+
+        BloomFilter bloom = filter.blooms.get(name);
+
+        return bloom == null || bloom.membershipTest(SegmentLocator.key(url));
+    }
+
+    /**
+     * Returns the filter of a segment, or null if it has none that's current.
+     */
+    private Filter getFilter(FileSystem fs, Path segment) throws IOException
+    {
+        FileStatus status;
+        try
+        {
+            status = fs.getFileStatus(new Path(segment, FILE_NAME));
+        }
+        catch (FileNotFoundException e)
+        {
+            return null;
+        }
+
+        Filter filter;
+        synchronized (this.filters)
+        {
+            filter = this.filters.get(segment);
+        }
+
+        if (filter == null || filter.time != status.getModificationTime())
+        {
+            try
+            {
+                filter = Filter.read(fs, status);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Error reading the filter of segment: " + segment + ". Error: " + e.toString());
+                filter = null;
+            }
+
+            synchronized (this.filters)
+            {
+                if (filter != null)
+                {
+                    this.filters.put(segment, filter);
+                }
+                else
+                {
+                    this.filters.remove(segment);
+                }
+            }
+        }
+
+        if (filter != null && !filter.isCurrent(fs, segment))
+        {
+            synchronized (this.filters)
+            {
+                this.filters.remove(segment);
+            }
+
+            return null;
+        }
+
+        return filter;
+    }
+
+    /**
+     * Tells if a job is still writing to a segment.
+     */
+    private static boolean isBeingWritten(FileSystem fs, Path segment) throws IOException
+    {
+        for (String name : SOURCES)
+        {
+            if (fs.exists(new Path(new Path(segment, name), "_temporary")))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the files of the parts of a directory, data files for MapFiles.
+     */
+    private static List<Path> getParts(FileSystem fs, Path dir) throws IOException
+    {
+        List<Path> parts = new ArrayList<>();
+
+        for (FileStatus part : fs.listStatus(dir))
+        {
+            if (!part.getPath().getName().startsWith("part-"))
+            {
+                continue;
+            }
+
+            parts.add(part.isDir() ? new Path(part.getPath(), MapFile.DATA_FILE_NAME) : part.getPath());
+        }
+
+        return parts;
+    }
+
+    /**
+     * Reads the keys of a part, adding them to a filter if there's one.
+     *
+     * @return The number of keys.
+     */
+    private static long scan(FileSystem fs, Path part, Configuration conf, BloomFilter bloom) throws IOException
+    {
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, part, conf);
+        long count = 0;
+
+        try
+        {
+            // Old segments have UTF8 keys.
+            Writable key = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+            Text url = (key instanceof Text) ? (Text) key : new Text();
+
+            while (reader.next(key))
+            {
+                if (bloom != null)
+                {
+                    if (url != key)
+                    {
+                        url.set(key.toString());
+                    }
+                    bloom.add(SegmentLocator.key(url));
+                }
+                count++;
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return count;
+    }
+
+    private static Key key(Text url)
+    {
+        return new Key(Arrays.copyOf(url.getBytes(), url.getLength()));
+    }
+
+    private static class Filter
+    {
+
+        private final long time;
+        private final Map<String, Long> sources;
+        private final Map<String, BloomFilter> blooms;
+
+        private Filter(long time, Map<String, Long> sources, Map<String, BloomFilter> blooms)
+        {
+            this.time = time;
+            this.sources = sources;
+            this.blooms = blooms;
+        }
+
+        /**
+         * Reads a filter, or returns null if it was written in an older
+         * format.
+         */
+        private static Filter read(FileSystem fs, FileStatus status) throws IOException
+        {
+            FSDataInputStream in = fs.open(status.getPath());
+            try
+            {
+                if (in.readInt() != -VERSION)
+                {
+                    return null;
+                }
+
+                int count = in.readInt();
+                Map<String, Long> sources = new HashMap<>();
+                Map<String, BloomFilter> blooms = new HashMap<>();
+                for (int i = 0; i < count; i++)
+                {
+                    String name = Text.readString(in);
+                    sources.put(name, in.readLong());
+
+                    BloomFilter bloom = new BloomFilter();
+                    bloom.readFields(in);
+                    blooms.put(name, bloom);
+                }
+
+                return new Filter(status.getModificationTime(), sources, blooms);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        /**
+         * Tells if any of the directories may hold a key.
+         */
+        private boolean mayHold(Key key)
+        {
+            for (BloomFilter bloom : this.blooms.values())
+            {
+                if (bloom.membershipTest(key))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Tells if the directories of a segment are the ones the filter was
+         * written from.
+         */
+        private boolean isCurrent(FileSystem fs, Path segment) throws IOException
+        {
+            for (String name : SOURCES)
+            {
+                Long written = this.sources.get(name);
+                long time;
+                try
+                {
+                    time = fs.getFileStatus(new Path(segment, name)).getModificationTime();
+                }
+                catch (FileNotFoundException e)
+                {
+                    time = -1L;
+                }
+
+                if (written == null ? time != -1L : written != time)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
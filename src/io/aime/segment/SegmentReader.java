@@ -20,10 +20,13 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
@@ -302,9 +305,14 @@ public class SegmentReader extends Configured implements Reducer<Text, AIMEWrita
     }
 
     /**
-     * This method iterates through all the available segments looking for the
-     * specified URL/Key/Document and returns all information contained for that
-     * specific record.
+     * This method looks for the specified URL/Key/Document in the segments
+     * that may hold it, as told by their filters, and returns all information
+     * contained for that specific record.
+     *
+     * <p>
+     * The segments are looked in on the threads of a shared pool, which also
+     * keeps the readers of their MapFiles open for the next lookups.
+     * </p>
      *
      * @param key  The key of the document.
      * @param conf The configuration file.
@@ -315,20 +323,23 @@ public class SegmentReader extends Configured implements Reducer<Text, AIMEWrita
      */
     public Text get(final Text key, final Configuration conf) throws IOException
     {
-        final Map<String, List<Writable>> results = new LinkedHashMap<String, List<Writable>>();
-        List<Path> segments = new ArrayList<Path>();
+        final SegmentReaderPool pool = SegmentReaderPool.get(conf);
+        List<Future<Map<String, List<Writable>>>> lookups = new ArrayList<Future<Map<String, List<Writable>>>>();
 
         /*
-         * List the segments.
+         * Look in the segments that may hold the key, all at once.
          */
-        this.fs = FileSystem.get(conf);
-        FileStatus[] fstats = this.fs.listStatus(new Path(AIMEConstants.SEGMENTDBASE_PATH.getStringConstant()), HadoopFSUtil.getPassDirectoriesFilter(this.fs));
-
-        /*
-         * Get all the segment paths.
-         */
-        Path[] files = HadoopFSUtil.getPaths(fstats);
-        segments.addAll(Arrays.asList(files));
+        for (final Path dir : SegmentLocator.get(conf).locate(key))
+        {
+            lookups.add(pool.submit(new Callable<Map<String, List<Writable>>>()
+            {
+                @Override
+                public Map<String, List<Writable>> call()
+                {
+                    return SegmentReader.this.getRecords(pool, dir, key, conf);
+                }
+            }));
+        }
 
         StringBuilder res = new StringBuilder();
         res.append("<html>");
@@ -339,201 +350,155 @@ public class SegmentReader extends Configured implements Reducer<Text, AIMEWrita
         res.append("<div id=\"container\">");
         res.append("<table>");
 
-        for (int i = 0; i < segments.size(); i++)
+        for (Future<Map<String, List<Writable>>> lookup : lookups)
         {
-            ArrayList<Thread> threads = new ArrayList<Thread>();
-            final Path dir = segments.get(i);
+            Map<String, List<Writable>> results;
+            try
+            {
+                results = lookup.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while looking up: " + key, e);
+            }
+            catch (ExecutionException e)
+            {
+                LOG.warn(e.getCause().getMessage(), e.getCause());
+                continue;
+            }
 
-            threads.add(new Thread()
+            for (int j = 0; j < keys.length; j++)
             {
-                @Override
-                public void run()
+                List<Writable> resData = results.get(keys[j][0]);
+
+                if (resData != null && resData.size() > 0)
                 {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getMapRecords(new Path(dir, Content.DIR_NAME), key, conf);
-                        results.put("co", res);
-                    }
-                    catch (Exception e)
+                    for (int k = 0; k < resData.size(); k++)
                     {
-                        LOG.warn(e.getMessage(), e);
+                        res.append("<tr>");
+                        res.append("<th align=\"center\">").append(keys[j][1]).append("</td>");
+                        res.append("<td align=\"left\">").append(StringEscapeUtils.escapeXml(resData.get(k).toString()).replaceAll("\n", "<br/>")).append("</td>");
+                        res.append("</tr>");
                     }
                 }
-            });
-            threads.add(new Thread()
+            }
+        }
+
+        res.append("</table>");
+        res.append("</div>");
+        res.append("</body>");
+        res.append("</html>");
+
+        return new Text(res.toString());
+    }
+
+    /**
+     * Returns the records of a key in a segment, by the kind of data they are.
+     */
+    private Map<String, List<Writable>> getRecords(SegmentReaderPool pool, Path dir, Text key, Configuration conf)
+    {
+        Map<String, List<Writable>> results = new HashMap<String, List<Writable>>();
+        String[][] dirs = new String[][]
+        {
             {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getMapRecords(new Path(dir, CrawlDatum.FETCH_DIR_NAME), key, conf);
-                        results.put("fe", res);
-                    }
-                    catch (Exception e)
-                    {
-                        LOG.warn(e.getMessage(), e);
-                    }
-                }
-            });
-            threads.add(new Thread()
+                "co", Content.DIR_NAME
+            },
             {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getSeqRecords(new Path(dir, CrawlDatum.GENERATE_DIR_NAME), key, conf);
-                        results.put("ge", res);
-                    }
-                    catch (Exception e)
-                    {
-                        LOG.warn(e.getMessage(), e);
-                    }
-                }
-            });
-            threads.add(new Thread()
+                "fe", CrawlDatum.FETCH_DIR_NAME
+            },
             {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getSeqRecords(new Path(dir, CrawlDatum.PARSE_DIR_NAME), key, conf);
-                        results.put("pa", res);
-                    }
-                    catch (Exception e)
-                    {
-                        LOG.warn(e.getMessage(), e);
-                    }
-                }
-            });
-            threads.add(new Thread()
+                "ge", CrawlDatum.GENERATE_DIR_NAME
+            },
             {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getMapRecords(new Path(dir, ParseData.DIR_NAME), key, conf);
-                        results.put("pd", res);
-                    }
-                    catch (Exception e)
-                    {
-                        LOG.warn(e.getMessage(), e);
-                    }
-                }
-            });
-            threads.add(new Thread()
+                "pa", CrawlDatum.PARSE_DIR_NAME
+            },
             {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        List<Writable> res = SegmentReader.this.getMapRecords(new Path(dir, ParseText.DIR_NAME), key, conf);
-                        results.put("pt", res);
-                    }
-                    catch (Exception e)
-                    {
-                        LOG.warn(e.getMessage(), e);
-                    }
-                }
-            });
-
-            Iterator<Thread> it = threads.iterator();
-            while (it.hasNext())
+                "pd", ParseData.DIR_NAME
+            },
             {
-                it.next().start();
+                "pt", ParseText.DIR_NAME
             }
+        };
+
+        SegmentLocator locator = SegmentLocator.get(conf);
+
+        for (String[] d : dirs)
+        {
+            Path data = new Path(dir, d[1]);
 
-            int cnt;
-            do
+            try
             {
-                cnt = 0;
-                try
-                {
-                    Thread.sleep(5000);
-                }
-                catch (Exception e)
+                if (!data.getFileSystem(conf).exists(data))
                 {
+                    continue;
                 }
 
-                it = threads.iterator();
-                while (it.hasNext())
+                // Directories whose filter doesn't hold the key aren't read,
+                // which spares most of the scans of the unsorted ones.
+                if (!locator.mayHold(dir, d[1], key))
                 {
-                    if (it.next().isAlive())
-                    {
-                        cnt++;
-                    }
+                    continue;
                 }
 
-                if ((cnt > 0) && (true))
+                // crawl_generate and crawl_parse aren't sorted.
+                if (d[1].equals(CrawlDatum.GENERATE_DIR_NAME) || d[1].equals(CrawlDatum.PARSE_DIR_NAME))
                 {
-                    if (LOG.isDebugEnabled())
-                    {
-                        LOG.debug("[" + cnt + "]: to search.");
-                    }
+                    results.put(d[0], this.getSeqRecords(data, key, conf));
                 }
-            } while (cnt > 0);
-
-            for (int j = 0; j < keys.length; j++)
-            {
-                List<Writable> resData = results.get(keys[j][0]);
-
-                if (resData != null && resData.size() > 0)
+                else
                 {
-                    for (int k = 0; k < resData.size(); k++)
-                    {
-                        res.append("<tr>");
-                        res.append("<th align=\"center\">").append(keys[j][1]).append("</td>");
-                        res.append("<td align=\"left\">").append(StringEscapeUtils.escapeXml(resData.get(k).toString()).replaceAll("\n", "<br/>")).append("</td>");
-                        res.append("</tr>");
-                    }
+                    results.put(d[0], this.getMapRecords(pool, data, key));
                 }
             }
-
-            /*
-             * Interrupt all threads.
-             */
-            it = threads.iterator();
-            while (it.hasNext())
+            catch (Exception e)
             {
-                it.next().interrupt();
+                LOG.warn(e.getMessage(), e);
             }
         }
 
-        res.append("</table>");
-        res.append("</div>");
-        res.append("</body>");
-        res.append("</html>");
-
-        return new Text(res.toString());
+        return results;
     }
 
-    private List<Writable> getMapRecords(Path dir, Text key, Configuration conf) throws Exception
+    private List<Writable> getMapRecords(SegmentReaderPool pool, Path dir, Text key) throws Exception
     {
-        MapFile.Reader[] readers = MapFileOutputFormat.getReaders(fs, dir, conf);
+        SegmentReaderPool.Readers lease = pool.take(dir);
+        MapFile.Reader[] readers = lease.readers;
         ArrayList<Writable> res = new ArrayList<Writable>();
-        Class keyClass = readers[0].getKeyClass();
-        Class valueClass = readers[0].getValueClass();
+        boolean ok = false;
 
-        if (!keyClass.getName().equals("org.apache.hadoop.io.Text"))
+        try
         {
-            throw new IOException("Incompatible key: " + keyClass.getName());
-        }
+            Class keyClass = readers[0].getKeyClass();
+            Class valueClass = readers[0].getValueClass();
 
-        Writable value = (Writable) valueClass.newInstance();
+            if (!keyClass.getName().equals("org.apache.hadoop.io.Text"))
+            {
+                throw new IOException("Incompatible key: " + keyClass.getName());
+            }
 
-        // we don't know the partitioning schema
-        for (int i = 0; i < readers.length; i++)
-        {
-            if (readers[i].get(key, value) != null)
+            // we don't know the partitioning schema
+            for (int i = 0; i < readers.length; i++)
             {
-                res.add(value);
+                Writable value = (Writable) valueClass.newInstance();
+                if (readers[i].get(key, value) != null)
+                {
+                    res.add(value);
+                }
             }
 
-            readers[i].close();
+            ok = true;
+        }
+        finally
+        {
+            if (ok)
+            {
+                pool.release(dir, lease);
+            }
+            else
+            {
+                pool.discard(lease);
+            }
         }
 
         return res;
@@ -546,25 +511,34 @@ public class SegmentReader extends Configured implements Reducer<Text, AIMEWrita
         Class keyClass = readers[0].getKeyClass();
         Class valueClass = readers[0].getValueClass();
 
-        if (!keyClass.getName().equals("org.apache.hadoop.io.Text"))
+        try
         {
-            throw new IOException("Incompatible key: " + keyClass.getName());
-        }
+            if (!keyClass.getName().equals("org.apache.hadoop.io.Text"))
+            {
+                throw new IOException("Incompatible key: " + keyClass.getName());
+            }
 
-        Writable aKey = (Writable) keyClass.newInstance();
-        Writable value = (Writable) valueClass.newInstance();
+            Writable aKey = (Writable) keyClass.newInstance();
+            Writable value = (Writable) valueClass.newInstance();
 
-        for (int i = 0; i < readers.length; i++)
-        {
-            while (readers[i].next(aKey, value))
+            for (int i = 0; i < readers.length; i++)
             {
-                if (aKey.equals(key))
+                while (readers[i].next(aKey, value))
                 {
-                    res.add(value);
+                    if (aKey.equals(key))
+                    {
+                        res.add(value);
+                        value = (Writable) valueClass.newInstance();
+                    }
                 }
             }
-
-            readers[i].close();
+        }
+        finally
+        {
+            for (int i = 0; i < readers.length; i++)
+            {
+                readers[i].close();
+            }
         }
 
         return res;
@@ -0,0 +1,190 @@
+package io.aime.segment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.mapred.MapFileOutputFormat;
+import org.apache.log4j.Logger;
+
+/**
+ * The threads and the open MapFile readers that segment lookups share.
+ *
+ * <p>
+ * A lookup takes the readers of a directory for itself and gives them back
+ * when it's done, so they're never used by two threads at once. The pool keeps
+ * the readers of at most <code>segment.reader.pool.size</code> directories
+ * open, closing the least recently used ones, and lookups run on at most
+ * <code>segment.reader.threads</code> threads.
+ * </p>
+ *
+ * <p>
+ * There is one pool per JVM, and it's sized by the first of its users.
+ * </p>
+ *
+ * @author K-Zen
+ */
+final class SegmentReaderPool
+{
+
+    private static final Logger LOG = Logger.getLogger(SegmentReaderPool.class.getName());
+    private static SegmentReaderPool instance = null;
+    private final Configuration conf;
+    private final int size;
+    private final ExecutorService executor;
+    // The idle readers, least recently used first.
+    private final LinkedHashMap<Path, Readers> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    private SegmentReaderPool(Configuration conf)
+    {
+        this.conf = conf;
+        this.size = Math.max(0, conf.getInt("segment.reader.pool.size", 32));
+        this.executor = Executors.newFixedThreadPool(Math.max(1, conf.getInt("segment.reader.threads", 4)), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "SegmentReader-" + count.getAndIncrement());
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns the pool of this JVM, starting it if needed.
+     *
+     * @param conf Configuration's object.
+     *
+     * @return The shared pool.
+     */
+    static synchronized SegmentReaderPool get(Configuration conf)
+    {
+        if (instance == null)
+        {
+            instance = new SegmentReaderPool(conf);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Runs a lookup on one of the pool's threads.
+     */
+    <T> Future<T> submit(Callable<T> lookup)
+    {
+        return this.executor.submit(lookup);
+    }
+
+    /**
+     * Takes the readers of a MapFile directory, opening them if there are none
+     * idle, or if the directory changed since they were.
+     *
+     * @param dir The directory.
+     *
+     * @return The readers, which must be given back or discarded.
+     *
+     * @throws IOException If the readers can't be opened.
+     */
+    Readers take(Path dir) throws IOException
+    {
+        FileSystem fs = dir.getFileSystem(this.conf);
+        long time = fs.getFileStatus(dir).getModificationTime();
+        Readers readers;
+
+        synchronized (this.idle)
+        {
+            readers = this.idle.remove(dir);
+        }
+
+        if (readers != null)
+        {
+            if (readers.time == time)
+            {
+                return readers;
+            }
+
+            this.discard(readers);
+        }
+
+        return new Readers(time, MapFileOutputFormat.getReaders(fs, dir, this.conf));
+    }
+
+    /**
+     * Gives back the readers of a directory, for the next lookup in it.
+     */
+    void release(Path dir, Readers readers)
+    {
+        List<Readers> evicted = new ArrayList<>();
+
+        synchronized (this.idle)
+        {
+            Readers old = this.idle.put(dir, readers);
+            if (old != null)
+            {
+                evicted.add(old);
+            }
+
+            Iterator<Map.Entry<Path, Readers>> it = this.idle.entrySet().iterator();
+            while (this.idle.size() > this.size && it.hasNext())
+            {
+                evicted.add(it.next().getValue());
+                it.remove();
+            }
+        }
+
+        for (Readers r : evicted)
+        {
+            this.discard(r);
+        }
+    }
+
+    /**
+     * Closes readers that can't be given back.
+     */
+    void discard(Readers readers)
+    {
+        for (MapFile.Reader reader : readers.readers)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Error closing segment reader. Error: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * The readers of the parts of a directory.
+     */
+    static class Readers
+    {
+
+        private final long time;
+        final MapFile.Reader[] readers;
+
+        private Readers(long time, MapFile.Reader[] readers)
+        {
+            this.time = time;
+            this.readers = readers;
+        }
+    }
+}
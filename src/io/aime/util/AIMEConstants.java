@@ -13,6 +13,7 @@ public enum AIMEConstants
     AIME_KERNEL_INDEX_DIR_NAME("index"),
     AIME_CRAWLDB_DIR_NAME("webdb"),
     AIME_SEGMENTS_DIR_NAME("segments"),
+    AIME_ROBOTSDB_DIR_NAME("robotsdb"),
     KERNEL_SEGMENTS_COMPRESSED_FILE_NAME("LastSegment.zip"),
     DEFAULT_JOB_PATH("/AIME"),
     DEFAULT_JOB_NAME(DEFAULT_JOB_PATH.getStringConstant() + "/" + "AIMEJob"),
@@ -21,6 +22,7 @@ public enum AIMEConstants
     KERNEL_SEGMENTS_PATH("/AIME/kernel/" + AIME_SEGMENTS_DIR_NAME.getStringConstant()),
     KERNEL_SEGMENTS_COMPRESSED_FILE_PATH(KERNEL_SEGMENTS_PATH.getStringConstant() + "/" + KERNEL_SEGMENTS_COMPRESSED_FILE_NAME.getStringConstant()),
     MAINDBASE_PATH(DEFAULT_JOB_PATH.getStringConstant() + "/" + "AIMEJob/" + AIME_CRAWLDB_DIR_NAME.getStringConstant()),
+    ROBOTSDBASE_PATH(DEFAULT_JOB_PATH.getStringConstant() + "/" + "AIMEJob/" + AIME_ROBOTSDB_DIR_NAME.getStringConstant()),
     SEGMENTDBASE_PATH(DEFAULT_JOB_PATH.getStringConstant() + "/" + "AIMEJob/" + AIME_SEGMENTS_DIR_NAME.getStringConstant()),
     LOGS_PATH("/AIME/logs"),
     TMP_PATH("/AIME/tmp"),
@@ -75,6 +77,13 @@ public enum AIMEConstants
     METADATA_GENERAL_FILENAME("0002.aime"),
     METADATA_FETCHER_FILENAME("0003.aime"),
     METADATA_CONSOLE_FILENAME("0004.aime"),
+    METADATA_CHECKPOINT_FILENAME("checkpoint.aime"),
+    METADATA_JOURNAL_FILENAME("journal.aime"),
+    METADATA_CHECKPOINT_INTERVAL(60000L), // Milliseconds between checkpoints of the metadata.
+    METADATA_JOURNAL_MAX_RECORDS(100000), // Records in the journal that force a checkpoint.
+    METADATA_FETCHER_HISTORY_PERIOD(10000L), // Milliseconds of each period in the history of the Fetcher's status codes.
+    METADATA_FETCHER_HISTORY_SIZE(30), // Periods kept in the history of the Fetcher's status codes.
+    METADATA_FETCHER_TASK_EXPIRY(60000L), // Milliseconds without stats after which the threads and queue of a fetch task no longer count.
     // AIME Internals Misc
     ORIGINAL_CHAR_ENCODING("OriginalCharEncoding"),
     CHAR_ENCODING_FOR_CONVERSION("CharEncodingForConversion"),
@@ -19,6 +19,7 @@ import java.net.MalformedURLException;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * A collection of methods for extracting data from DOM trees.
@@ -89,118 +90,341 @@ public class DOMContentUtils {
     }
 
     public String getText(Node node, boolean abortOnNestedAnchors) {
-        return this.getTextHelper(node, abortOnNestedAnchors, 0);
+        TextVisitor visitor = new TextVisitor(abortOnNestedAnchors);
+        DOMTreeWalker.walk(node, visitor);
+
+        return visitor.getText();
     }
 
     public String getText(Node node) {
         return this.getText(node, false);
     }
 
-    private String getTextHelper(Node node, boolean abortOnNestedAnchors, int anchorDepth) {
-        StringBuilder buffer = new StringBuilder();
-        DOMTreeWalker walker = new DOMTreeWalker(node);
+    public String getTitle(Node node) {
+        TitleVisitor visitor = new TitleVisitor();
+        DOMTreeWalker.walk(node, visitor);
 
-        while (walker.hasNext()) {
-            Node currentNode = walker.nextNode();
-            String nodeName = currentNode.getNodeName();
-            short nodeType = currentNode.getNodeType();
+        return visitor.getTitle();
+    }
 
-            if ("script".equalsIgnoreCase(nodeName)) {
-                walker.skipChildren();
-            }
+    /**
+     * If Node contains a BASE tag then it's HREF is returned.
+     */
+    public URL getBase(Node node) {
+        BaseVisitor visitor = new BaseVisitor();
+        DOMTreeWalker.walk(node, visitor);
 
-            if ("style".equalsIgnoreCase(nodeName)) {
-                walker.skipChildren();
-            }
+        return visitor.getBase();
+    }
+
+    /**
+     * Returns a visitor that collects the outlinks of a tree, with the link
+     * tags of this configuration.
+     */
+    public OutlinkVisitor createOutlinkVisitor() {
+        return new OutlinkVisitor(this.linkParams);
+    }
+
+    /**
+     * Collects the text of a tree, leaving out scripts, styles and comments.
+     * Each text node is added with its whitespace collapsed to one space.
+     */
+    public static class TextVisitor implements DOMVisitor {
+
+        private final StringBuilder buffer = new StringBuilder();
+        private final boolean abortOnNestedAnchors;
+        private int anchorDepth = 0;
+        private boolean done = false;
+
+        /**
+         * @param abortOnNestedAnchors Stop at the second anchor.
+         */
+        public TextVisitor(boolean abortOnNestedAnchors) {
+            this.abortOnNestedAnchors = abortOnNestedAnchors;
+        }
 
-            if (abortOnNestedAnchors && "a".equalsIgnoreCase(nodeName)) {
-                anchorDepth++;
-                if (anchorDepth > 1) {
-                    break;
+        @Override
+        public boolean visit(Node node) {
+            String nodeName = node.getNodeName();
+            short nodeType = node.getNodeType();
+
+            if (this.abortOnNestedAnchors && "a".equalsIgnoreCase(nodeName)) {
+                this.anchorDepth++;
+                if (this.anchorDepth > 1) {
+                    this.done = true;
+
+                    return false;
                 }
             }
 
-            if (nodeType == Node.COMMENT_NODE) {
-                walker.skipChildren();
+            if (nodeType == Node.TEXT_NODE) {
+                DOMContentUtils.appendCollapsed(this.buffer, node.getNodeValue());
             }
 
-            if (nodeType == Node.TEXT_NODE) {
-                String text = currentNode.getNodeValue();
-                text = text.replaceAll("\\s+", " "); // Replace all double spaces with a single space.
-                text = text.trim(); // Trim text.
-
-                if (text.length() > 0) {
-                    // Append a single space if there is already text in the buffer.
-                    if (buffer.length() > 0) {
-                        buffer.append(' ');
-                    }
+            return !("script".equalsIgnoreCase(nodeName) || "style".equalsIgnoreCase(nodeName) || nodeType == Node.COMMENT_NODE);
+        }
 
-                    buffer.append(text);
-                }
+        @Override
+        public boolean isDone() {
+            return this.done;
+        }
+
+        public String getText() {
+            return this.buffer.toString();
+        }
+    }
+
+    /**
+     * Finds the text of the first TITLE tag before BODY.
+     */
+    public static class TitleVisitor implements DOMVisitor {
+
+        private String title = "";
+        private boolean done = false;
+
+        @Override
+        public boolean visit(Node node) {
+            String nodeName = node.getNodeName();
+
+            if ("body".equalsIgnoreCase(nodeName)) { // stop after HEAD
+                this.done = true;
+
+                return false;
+            }
+
+            if (node.getNodeType() == Node.ELEMENT_NODE && "title".equalsIgnoreCase(nodeName)) {
+                TextVisitor text = new TextVisitor(false);
+                DOMTreeWalker.walk(node, text);
+                this.title = text.getText();
+                this.done = true;
+
+                return false;
             }
+
+            return true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.done;
         }
 
-        return buffer.toString().trim();
+        public String getTitle() {
+            return this.title;
+        }
     }
 
-    public String getTitle(Node node) {
-        DOMTreeWalker walker = new DOMTreeWalker(node);
+    /**
+     * Finds the HREF of the first BASE tag before BODY.
+     */
+    public static class BaseVisitor implements DOMVisitor {
 
-        while (walker.hasNext()) {
-            Node currentNode = walker.nextNode();
-            String nodeName = currentNode.getNodeName();
-            short nodeType = currentNode.getNodeType();
+        private URL base = null;
+        private boolean done = false;
 
+        @Override
+        public boolean visit(Node node) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                return true;
+            }
+
+            String nodeName = node.getNodeName();
             if ("body".equalsIgnoreCase(nodeName)) { // stop after HEAD
-                return "";
+                this.done = true;
+
+                return false;
             }
 
-            if (nodeType == Node.ELEMENT_NODE) {
-                if ("title".equalsIgnoreCase(nodeName)) {
-                    return this.getText(currentNode);
+            if ("base".equalsIgnoreCase(nodeName)) {
+                NamedNodeMap attrs = node.getAttributes();
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node attr = attrs.item(i);
+                    if ("href".equalsIgnoreCase(attr.getNodeName())) {
+                        try {
+                            this.base = new URL(attr.getNodeValue());
+                            this.done = true;
+
+                            return false;
+                        }
+                        catch (MalformedURLException e) {
+                        }
+                    }
                 }
             }
+
+            return true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.done;
         }
 
-        return "";
+        /**
+         * @return The base URL, or null if there's none.
+         */
+        public URL getBase() {
+            return this.base;
+        }
     }
 
     /**
-     * If Node contains a BASE tag then it's HREF is returned.
+     * Collects the targets and anchors of the links of a tree. They are
+     * resolved once the tree is walked, so the base URL can be found in the
+     * same walk.
      */
-    public URL getBase(Node node) {
-        DOMTreeWalker walker = new DOMTreeWalker(node);
-        while (walker.hasNext()) {
-            Node currentNode = walker.nextNode();
-            String nodeName = currentNode.getNodeName();
-            short nodeType = currentNode.getNodeType();
-
-            // is this node a BASE tag?
-            if (nodeType == Node.ELEMENT_NODE) {
-                if ("body".equalsIgnoreCase(nodeName)) { // stop after HEAD
-                    return null;
-                }
+    public static class OutlinkVisitor implements DOMVisitor {
 
-                if ("base".equalsIgnoreCase(nodeName)) {
-                    NamedNodeMap attrs = currentNode.getAttributes();
-                    for (int i = 0; i < attrs.getLength(); i++) {
-                        Node attr = attrs.item(i);
-                        if ("href".equalsIgnoreCase(attr.getNodeName())) {
-                            try {
-                                return new URL(attr.getNodeValue());
-                            }
-                            catch (MalformedURLException e) {
-                            }
-                        }
+        private final HashMap<String, LinkParams> linkParams;
+        private final ArrayList<String> targets = new ArrayList<String>();
+        private final ArrayList<String> anchors = new ArrayList<String>();
+
+        OutlinkVisitor(HashMap<String, LinkParams> linkParams) {
+            this.linkParams = linkParams;
+        }
+
+        @Override
+        public boolean visit(Node node) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                return true;
+            }
+
+            LinkParams params = this.linkParams.get(node.getNodeName().toLowerCase());
+            if (params == null) {
+                return true;
+            }
+
+            NodeList children = node.getChildNodes();
+            int childLen = (children != null) ? children.getLength() : 0;
+            if (!DOMContentUtils.shouldThrowAwayLink(node, children, childLen, params)) {
+                NamedNodeMap attrs = node.getAttributes();
+                String target = null;
+                boolean noFollow = false;
+                boolean post = false;
+
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node attr = attrs.item(i);
+                    String attrName = attr.getNodeName();
+                    if (params.attrName.equalsIgnoreCase(attrName)) {
+                        target = attr.getNodeValue();
                     }
+                    else if ("rel".equalsIgnoreCase(attrName) && "nofollow".equalsIgnoreCase(attr.getNodeValue())) {
+                        noFollow = true;
+                    }
+                    else if ("method".equalsIgnoreCase(attrName) && "post".equalsIgnoreCase(attr.getNodeValue())) {
+                        post = true;
+                    }
+                }
+
+                if (target != null && !noFollow && !post) {
+                    TextVisitor text = new TextVisitor(true);
+                    DOMTreeWalker.walk(node, text);
+                    this.targets.add(target);
+                    this.anchors.add(text.getText());
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        /**
+         * Adds the links collected to a list, relative to a base URL.
+         *
+         * @param base     The base URL.
+         * @param outlinks The list.
+         */
+        public void getOutlinks(URL base, ArrayList<Outlink> outlinks) {
+            DOMContentUtils.resolveOutlinks(base, this.targets, this.anchors, outlinks);
+        }
+    }
+
+    /**
+     * Returns the link tag of an element, or null if its links aren't taken.
+     *
+     * @param elName The lower case name of the element.
+     */
+    LinkParams getLinkParams(String elName) {
+        return this.linkParams.get(elName);
+    }
+
+    /**
+     * Adds links to a list, relative to a base URL.
+     *
+     * @param base     The base URL.
+     * @param targets  The targets of the links. Null ones are left out.
+     * @param anchors  Their anchors.
+     * @param outlinks The list.
+     */
+    static void resolveOutlinks(URL base, List<String> targets, List<String> anchors, ArrayList<Outlink> outlinks) {
+        boolean embeddedParams = base.toString().indexOf(';') > 0;
+
+        for (int i = 0; i < targets.size(); i++) {
+            String target = targets.get(i);
+            if (target == null) {
+                continue;
+            }
+
+            try {
+                URL url = embeddedParams ? DOMContentUtils.fixEmbeddedParams(base, target) : new URL(base, target);
+
+                // Find out if the URL is a file or web page.
+                if (url.getProtocol().equals("file")) {
+                    outlinks.add(new Outlink(target, anchors.get(i)));
                 }
+                else {
+                    outlinks.add(new Outlink(url.toString(), anchors.get(i)));
+                }
+            }
+            catch (MalformedURLException e) {
+                // Do nothing.
             }
         }
+    }
 
-        return null;
+    /**
+     * Appends a text to a buffer as <code>text.replaceAll("\\s+", " ").trim()</code>
+     * would, after a space if the buffer isn't empty, without the regex.
+     */
+    private static void appendCollapsed(StringBuilder buffer, String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (start == end) {
+            return;
+        }
+
+        if (buffer.length() > 0) {
+            buffer.append(' ');
+        }
+
+        boolean space = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                if (!space) {
+                    buffer.append(' ');
+                    space = true;
+                }
+            }
+            else {
+                buffer.append(c);
+                space = false;
+            }
+        }
     }
 
-    private boolean hasOnlyWhiteSpace(Node node) {
+    private static boolean hasOnlyWhiteSpace(Node node) {
         String val = node.getNodeValue();
 
         for (int i = 0; i < val.length(); i++) {
@@ -212,7 +436,7 @@ public class DOMContentUtils {
         return true;
     }
 
-    private boolean shouldThrowAwayLink(Node node, NodeList children, int childLen, LinkParams params) {
+    private static boolean shouldThrowAwayLink(Node node, NodeList children, int childLen, LinkParams params) {
         if (childLen == 0) {
             // this has no inner structure 
             if (params.childLen == 0) {
@@ -271,7 +495,7 @@ public class DOMContentUtils {
      *
      * @throws MalformedURLException If the url is not a well formed URL.
      */
-    private URL fixEmbeddedParams(URL base, String target) throws MalformedURLException {
+    private static URL fixEmbeddedParams(URL base, String target) throws MalformedURLException {
         // the target contains params information or the base doesn't then no
         // conversion necessary, return regular URL
         if (target.indexOf(';') >= 0 || base.toString().indexOf(';') == -1) {
@@ -309,64 +533,8 @@ public class DOMContentUtils {
      * is a common DOM-fixup artifact, at least with nekohtml).</p>
      */
     public void getOutlinks(URL base, ArrayList<Outlink> outlinks, Node node) {
-        DOMTreeWalker walker = new DOMTreeWalker(node);
-        while (walker.hasNext()) {
-            Node currentNode = walker.nextNode();
-            String nodeName = currentNode.getNodeName();
-            short nodeType = currentNode.getNodeType();
-            NodeList children = currentNode.getChildNodes();
-            int childLen = (children != null) ? children.getLength() : 0;
-
-            if (nodeType == Node.ELEMENT_NODE) {
-                nodeName = nodeName.toLowerCase();
-                LinkParams params = this.linkParams.get(nodeName);
-
-                if (params != null) {
-                    if (!shouldThrowAwayLink(currentNode, children, childLen, params)) {
-                        String linkText = this.getText(currentNode, true);
-                        NamedNodeMap attrs = currentNode.getAttributes();
-                        String target = null;
-                        boolean noFollow = false;
-                        boolean post = false;
-
-                        for (int i = 0; i < attrs.getLength(); i++) {
-                            Node attr = attrs.item(i);
-                            String attrName = attr.getNodeName();
-                            if (params.attrName.equalsIgnoreCase(attrName)) {
-                                target = attr.getNodeValue();
-                            }
-                            else if ("rel".equalsIgnoreCase(attrName) && "nofollow".equalsIgnoreCase(attr.getNodeValue())) {
-                                noFollow = true;
-                            }
-                            else if ("method".equalsIgnoreCase(attrName) && "post".equalsIgnoreCase(attr.getNodeValue())) {
-                                post = true;
-                            }
-                        }
-
-                        if (target != null && !noFollow && !post) {
-                            try {
-                                URL url = (base.toString().indexOf(';') > 0) ? fixEmbeddedParams(base, target) : new URL(base, target);
-
-                                // Find out if the URL is a file or web page.
-                                if (url.getProtocol().equals("file")) {
-                                    outlinks.add(new Outlink(target, linkText.trim()));
-                                }
-                                else {
-                                    outlinks.add(new Outlink(url.toString(), linkText.trim()));
-                                }
-                            }
-                            catch (MalformedURLException e) {
-                                // Do nothing.
-                            }
-                        }
-                    }
-
-                    // this should not have any children, skip them
-                    if (params.childLen == 0) {
-                        continue;
-                    }
-                }
-            }
-        }
+        OutlinkVisitor visitor = this.createOutlinkVisitor();
+        DOMTreeWalker.walk(node, visitor);
+        visitor.getOutlinks(base, outlinks);
     }
 }
@@ -180,6 +180,16 @@ public class DOMTreeEcho {
         indent--;
     }
 
+    /**
+     * Returns true if printed trees would be logged, so they aren't computed
+     * for nothing.
+     *
+     * @return TRUE if debug output is enabled, FALSE otherwise.
+     */
+    public static boolean isEnabled() {
+        return LOG.isDebugEnabled();
+    }
+
     public void printTree() {
         LOG.debug(this.buffer.toString());
     }
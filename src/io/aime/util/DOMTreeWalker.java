@@ -5,6 +5,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 // Util
+import java.util.Arrays;
 import java.util.Stack;
 
 /**
@@ -95,4 +96,73 @@ public class DOMTreeWalker {
     public boolean hasNext() {
         return (this.nodes.size() > 0);
     }
+
+    /**
+     * Walks a tree once, in document order, handing each node to all the
+     * visitors that still want it.
+     *
+     * <p>A visitor that skips the children of a node gets no nodes again until
+     * the walk leaves that node, and the children are skipped altogether when
+     * none of the visitors wants them. The walk stops when all the visitors
+     * are done.</p>
+     *
+     * @param rootNode The root node. The head of the tree.
+     * @param visitors The visitors.
+     */
+    public static void walk(Node rootNode, DOMVisitor... visitors) {
+        // The depth of the node whose children each visitor skips.
+        int[] skipping = new int[visitors.length];
+        Arrays.fill(skipping, Integer.MAX_VALUE);
+
+        Node node = rootNode;
+        int depth = 0;
+        while (true) {
+            boolean descend = false;
+            for (int i = 0; i < visitors.length; i++) {
+                if (skipping[i] < depth || visitors[i].isDone()) {
+                    continue;
+                }
+
+                skipping[i] = Integer.MAX_VALUE;
+                if (visitors[i].visit(node)) {
+                    descend = true;
+                }
+                else {
+                    skipping[i] = depth;
+                }
+            }
+
+            if (DOMTreeWalker.allDone(visitors)) {
+                return;
+            }
+
+            Node child = descend ? node.getFirstChild() : null;
+            if (child != null) {
+                node = child;
+                depth++;
+                continue;
+            }
+
+            while (node != rootNode && node.getNextSibling() == null) {
+                node = node.getParentNode();
+                depth--;
+            }
+
+            if (node == rootNode) {
+                return;
+            }
+
+            node = node.getNextSibling();
+        }
+    }
+
+    private static boolean allDone(DOMVisitor[] visitors) {
+        for (DOMVisitor visitor : visitors) {
+            if (!visitor.isDone()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 }
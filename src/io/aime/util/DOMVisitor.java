@@ -0,0 +1,33 @@
+package io.aime.util;
+
+// DOM
+import org.w3c.dom.Node;
+
+/**
+ * Collects something from the nodes of a DOM tree while it's walked by
+ * {@link DOMTreeWalker#walk(Node, DOMVisitor...)}.
+ *
+ * <p>Several visitors share one walk of the tree, each of them skipping the
+ * children it doesn't care about, so a page is walked once however many things
+ * are taken from it.</p>
+ *
+ * @author K-Zen
+ */
+public interface DOMVisitor {
+
+    /**
+     * Visits a node, in document order.
+     *
+     * @param node The node.
+     *
+     * @return TRUE to visit its children too, FALSE to skip them.
+     */
+    boolean visit(Node node);
+
+    /**
+     * Returns true once the visitor needs no more nodes.
+     *
+     * @return TRUE if it's done, FALSE otherwise.
+     */
+    boolean isDone();
+}
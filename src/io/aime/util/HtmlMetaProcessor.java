@@ -6,7 +6,6 @@ import io.aime.parse.HtmlMetaTags;
 // DOM
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 // Net
 import java.net.URL;
@@ -32,22 +31,50 @@ public class HtmlMetaProcessor {
      * META tags found under the given node.
      */
     public static final void getMetaTags(HtmlMetaTags metaTags, Node node, URL currURL) {
-        metaTags.reset();
-        HtmlMetaProcessor.getMetaTagsHelper(metaTags, node, currURL);
+        DOMTreeWalker.walk(node, new Visitor(metaTags, currURL));
     }
 
-    private static final void getMetaTagsHelper(HtmlMetaTags metaTags, Node node, URL currURL) {
+    /**
+     * Sets the indicators in robotsMeta as the nodes of a tree are visited.
+     */
+    public static class Visitor implements DOMVisitor {
+
+        private final HtmlMetaTags metaTags;
+        private final URL currURL;
+
+        /**
+         * @param metaTags The indicators, which are reset.
+         * @param currURL  The URL of the page.
+         */
+        public Visitor(HtmlMetaTags metaTags, URL currURL) {
+            metaTags.reset();
+            this.metaTags = metaTags;
+            this.currURL = currURL;
+        }
+
+        @Override
+        public boolean visit(Node node) {
+            return HtmlMetaProcessor.processNode(this.metaTags, node, this.currURL);
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+    }
+
+    private static boolean processNode(HtmlMetaTags metaTags, Node node, URL currURL) {
         if (node.getNodeType() == Node.ELEMENT_NODE) {
             if ("body".equalsIgnoreCase(node.getNodeName())) {
                 // META tags should not be under body
-                return;
+                return false;
             }
 
             if ("meta".equalsIgnoreCase(node.getNodeName())) {
                 NamedNodeMap attrs = node.getAttributes();
-                Node nameNode = null;
-                Node equivNode = null;
-                Node contentNode = null;
+                String name = null;
+                String equiv = null;
+                String content = null;
 
                 // Retrieves name, http-equiv and content attribues
                 for (int i = 0; i < attrs.getLength(); i++) {
@@ -55,169 +82,185 @@ public class HtmlMetaProcessor {
                     String attrName = attr.getNodeName().toLowerCase();
 
                     if (attrName.equals("name")) {
-                        nameNode = attr;
+                        name = attr.getNodeValue();
                     }
                     else if (attrName.equals("http-equiv")) {
-                        equivNode = attr;
+                        equiv = attr.getNodeValue();
                     }
                     else if (attrName.equals("content")) {
-                        contentNode = attr;
+                        content = attr.getNodeValue();
                     }
                 }
 
-                if (nameNode != null) {
-                    if (contentNode != null) {
-                        String name = nameNode.getNodeValue().toLowerCase();
-                        metaTags.getGeneralTags().setProperty(name, contentNode.getNodeValue());
+                HtmlMetaProcessor.processMeta(metaTags, name, equiv, content, currURL);
+            }
+            else if ("base".equalsIgnoreCase(node.getNodeName())) {
+                Node hrefNode = node.getAttributes().getNamedItem("href");
 
-                        if ("robots".equals(name)) {
-                            if (contentNode != null) {
-                                String directives = contentNode.getNodeValue().toLowerCase();
-                                int index = directives.indexOf("none");
+                if (hrefNode != null) {
+                    HtmlMetaProcessor.processBase(metaTags, hrefNode.getNodeValue(), currURL);
+                }
+            }
+        }
 
-                                if (index >= 0) {
-                                    metaTags.setNoIndex();
-                                    metaTags.setNoFollow();
-                                }
+        return true;
+    }
 
-                                index = directives.indexOf("all");
-                                if (index >= 0) {
-                                    // do nothing...
-                                }
+    /**
+     * Sets the indicators for a META tag.
+     *
+     * @param metaTags    The indicators.
+     * @param nameAttr    Its name attribute, or null.
+     * @param equivAttr   Its http-equiv attribute, or null.
+     * @param contentAttr Its content attribute, or null.
+     * @param currURL     The URL of the page.
+     */
+    static void processMeta(HtmlMetaTags metaTags, String nameAttr, String equivAttr, String contentAttr, URL currURL) {
+        if (nameAttr != null) {
+            if (contentAttr != null) {
+                String name = nameAttr.toLowerCase();
+                metaTags.getGeneralTags().setProperty(name, contentAttr);
 
-                                index = directives.indexOf("noindex");
-                                if (index >= 0) {
-                                    metaTags.setNoIndex();
-                                }
+                if ("robots".equals(name)) {
+                    if (contentAttr != null) {
+                        String directives = contentAttr.toLowerCase();
+                        int index = directives.indexOf("none");
 
-                                index = directives.indexOf("nofollow");
-                                if (index >= 0) {
-                                    metaTags.setNoFollow();
-                                }
+                        if (index >= 0) {
+                            metaTags.setNoIndex();
+                            metaTags.setNoFollow();
+                        }
 
-                                index = directives.indexOf("noarchive");
-                                if (index >= 0) {
-                                    metaTags.setNoCache();
-                                }
-                            }
-                        } // end if (name == robots)
+                        index = directives.indexOf("all");
+                        if (index >= 0) {
+                            // do nothing...
+                        }
+
+                        index = directives.indexOf("noindex");
+                        if (index >= 0) {
+                            metaTags.setNoIndex();
+                        }
+
+                        index = directives.indexOf("nofollow");
+                        if (index >= 0) {
+                            metaTags.setNoFollow();
+                        }
+
+                        index = directives.indexOf("noarchive");
+                        if (index >= 0) {
+                            metaTags.setNoCache();
+                        }
+                    }
+                } // end if (name == robots)
+            }
+        }
+
+        if (equivAttr != null) {
+            if (contentAttr != null) {
+                String name = equivAttr.toLowerCase();
+                String content = contentAttr;
+                metaTags.getHttpEquivTags().setProperty(name, content);
+
+                if ("pragma".equals(name)) {
+                    content = content.toLowerCase();
+                    int index = content.indexOf("no-cache");
+
+                    if (index >= 0) {
+                        metaTags.setNoCache();
                     }
                 }
+                else if ("refresh".equals(name)) {
+                    int idx = content.indexOf(';');
+                    String time = null;
 
-                if (equivNode != null) {
-                    if (contentNode != null) {
-                        String name = equivNode.getNodeValue().toLowerCase();
-                        String content = contentNode.getNodeValue();
-                        metaTags.getHttpEquivTags().setProperty(name, content);
+                    if (idx == -1) { // just the refresh time
+                        time = content;
+                    }
+                    else {
+                        time = content.substring(0, idx);
+                    }
 
-                        if ("pragma".equals(name)) {
-                            content = content.toLowerCase();
-                            int index = content.indexOf("no-cache");
+                    try {
+                        metaTags.setRefreshTime(Integer.parseInt(time));
+                        // skip this if we couldn't parse the time
+                        metaTags.setRefresh(true);
+                    }
+                    catch (Exception e) {
+                        // Hacer algo.
+                    }
 
-                            if (index >= 0) {
-                                metaTags.setNoCache();
-                            }
+                    URL refreshUrl = null;
+                    if (metaTags.getRefresh() && idx != -1) { // set the URL
+                        idx = content.toLowerCase().indexOf("url=");
+
+                        if (idx == -1) { // assume a mis-formatted entry with just the url
+                            idx = content.indexOf(';') + 1;
+                        }
+                        else {
+                            idx += 4;
                         }
-                        else if ("refresh".equals(name)) {
-                            int idx = content.indexOf(';');
-                            String time = null;
 
-                            if (idx == -1) { // just the refresh time
-                                time = content;
-                            }
-                            else {
-                                time = content.substring(0, idx);
-                            }
+                        if (idx != -1) {
+                            String url = content.substring(idx);
 
                             try {
-                                metaTags.setRefreshTime(Integer.parseInt(time));
-                                // skip this if we couldn't parse the time
-                                metaTags.setRefresh(true);
+                                refreshUrl = new URL(url);
                             }
                             catch (Exception e) {
-                                // Hacer algo.
-                            }
-
-                            URL refreshUrl = null;
-                            if (metaTags.getRefresh() && idx != -1) { // set the URL
-                                idx = content.toLowerCase().indexOf("url=");
-
-                                if (idx == -1) { // assume a mis-formatted entry with just the url
-                                    idx = content.indexOf(';') + 1;
-                                }
-                                else {
-                                    idx += 4;
-                                }
-
-                                if (idx != -1) {
-                                    String url = content.substring(idx);
-
-                                    try {
-                                        refreshUrl = new URL(url);
-                                    }
-                                    catch (Exception e) {
-                                        // XXX according to the spec, this has to be an absolute
-                                        // XXX url. However, many websites use relative URLs and
-                                        // XXX expect browsers to handle that.
-                                        // XXX Unfortunately, in some cases this may create a
-                                        // XXX infinitely recursive paths (a crawler trap)...
-                                        // if (!url.startsWith("/")) url = "/" + url;
-                                        try {
-                                            refreshUrl = new URL(currURL, url);
-                                        }
-                                        catch (Exception e1) {
-                                            refreshUrl = null;
-                                        }
-                                    }
+                                // XXX according to the spec, this has to be an absolute
+                                // XXX url. However, many websites use relative URLs and
+                                // XXX expect browsers to handle that.
+                                // XXX Unfortunately, in some cases this may create a
+                                // XXX infinitely recursive paths (a crawler trap)...
+                                // if (!url.startsWith("/")) url = "/" + url;
+                                try {
+                                    refreshUrl = new URL(currURL, url);
                                 }
-                            }
-
-                            if (metaTags.getRefresh()) {
-                                if (refreshUrl == null) {
-                                    // apparently only refresh time was present. set the URL
-                                    // to the same URL.
-                                    refreshUrl = currURL;
+                                catch (Exception e1) {
+                                    refreshUrl = null;
                                 }
-
-                                metaTags.setRefreshHref(refreshUrl);
                             }
                         }
                     }
-                }
-            }
-            else if ("base".equalsIgnoreCase(node.getNodeName())) {
-                NamedNodeMap attrs = node.getAttributes();
-                Node hrefNode = attrs.getNamedItem("href");
-
-                if (hrefNode != null) {
-                    String urlString = hrefNode.getNodeValue();
-                    URL url = null;
 
-                    try {
-                        if (currURL == null) {
-                            url = new URL(urlString);
-                        }
-                        else {
-                            url = new URL(currURL, urlString);
+                    if (metaTags.getRefresh()) {
+                        if (refreshUrl == null) {
+                            // apparently only refresh time was present. set the URL
+                            // to the same URL.
+                            refreshUrl = currURL;
                         }
-                    }
-                    catch (Exception e) {
-                        // Hacer algo.
-                    }
 
-                    if (url != null) {
-                        metaTags.setBaseHref(url);
+                        metaTags.setRefreshHref(refreshUrl);
                     }
                 }
             }
         }
+    }
+
+    /**
+     * Sets the base of the page from a BASE tag.
+     *
+     * @param metaTags The indicators.
+     * @param href     Its href attribute.
+     * @param currURL  The URL of the page.
+     */
+    static void processBase(HtmlMetaTags metaTags, String href, URL currURL) {
+        URL url = null;
 
-        NodeList children = node.getChildNodes();
-        if (children != null) {
-            int len = children.getLength();
-            for (int i = 0; i < len; i++) {
-                HtmlMetaProcessor.getMetaTagsHelper(metaTags, children.item(i), currURL);
+        try {
+            if (currURL == null) {
+                url = new URL(href);
+            }
+            else {
+                url = new URL(currURL, href);
             }
         }
+        catch (Exception e) {
+            // Hacer algo.
+        }
+
+        if (url != null) {
+            metaTags.setBaseHref(url);
+        }
     }
 }
@@ -0,0 +1,637 @@
+package io.aime.util;
+
+// AIME
+import io.aime.parse.HtmlMetaTags;
+import io.aime.parse.Outlink;
+
+// Net
+import java.net.MalformedURLException;
+import java.net.URL;
+
+// SAX
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+// Util
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Takes the META directives, text, title, base and outlinks of an HTML page
+ * straight from the SAX events of its parser, without building its DOM tree.
+ *
+ * <p>It gives the same results as {@link HtmlMetaProcessor} and
+ * {@link DOMContentUtils} would on the tree that {@link DOMBuilder} builds from
+ * the same events, except that the text, the title and each anchor keep at
+ * most <code>maxText</code> chars, and at most <code>maxOutlinks</code> links
+ * are kept. The events can be handed on to other handlers, a
+ * {@link DOMBuilder} among them when the tree is needed after all.</p>
+ *
+ * @author K-Zen
+ */
+public class HtmlStreamExtractor implements ContentHandler, LexicalHandler {
+
+    private final DOMContentUtils utils;
+    private final HtmlMetaTags metaTags;
+    private final URL currURL;
+    private final int maxText;
+    private final int maxOutlinks;
+    private final List<ContentHandler> handlers = new ArrayList<ContentHandler>();
+    private final List<LexicalHandler> lexicalHandlers = new ArrayList<LexicalHandler>();
+    // Where the parser is.
+    private int depth = 0;
+    private int bodies = 0;
+    private int scripts = 0;
+    private boolean inCData = false;
+    private boolean textOpen = false;
+    private Child textChild = null;
+    // What's collected.
+    private final TextBuffer text;
+    private TextBuffer title = null;
+    private int titleDepth = -1;
+    private int titleScripts = 0;
+    private boolean titleDone = false;
+    private URL base = null;
+    private boolean baseDone = false;
+    private final Deque<Link> links = new ArrayDeque<Link>();
+    private final ArrayList<String> targets = new ArrayList<String>();
+    private final ArrayList<String> anchors = new ArrayList<String>();
+    private int thrownAway = 0;
+
+    /**
+     * @param utils       The link tags to take outlinks from.
+     * @param metaTags    The indicators, which are reset.
+     * @param currURL     The URL of the page.
+     * @param maxText     The most chars of text, title and each anchor, or -1
+     *                    for no limit.
+     * @param maxOutlinks The most outlinks, or -1 for no limit.
+     */
+    public HtmlStreamExtractor(DOMContentUtils utils, HtmlMetaTags metaTags, URL currURL, int maxText, int maxOutlinks) {
+        metaTags.reset();
+        this.utils = utils;
+        this.metaTags = metaTags;
+        this.currURL = currURL;
+        this.maxText = (maxText < 0) ? Integer.MAX_VALUE : maxText;
+        this.maxOutlinks = (maxOutlinks < 0) ? Integer.MAX_VALUE : maxOutlinks;
+        this.text = new TextBuffer(this.maxText);
+    }
+
+    /**
+     * Hands the events on to another handler too, and to its lexical events if
+     * it takes them.
+     *
+     * @param handler The handler.
+     */
+    public void addHandler(ContentHandler handler) {
+        this.handlers.add(handler);
+        if (handler instanceof LexicalHandler) {
+            this.lexicalHandlers.add((LexicalHandler) handler);
+        }
+    }
+
+    public String getText() {
+        return this.text.toString();
+    }
+
+    public String getTitle() {
+        return (this.title != null) ? this.title.toString() : "";
+    }
+
+    /**
+     * @return The HREF of the first BASE tag, or null if there's none.
+     */
+    public URL getBase() {
+        return this.base;
+    }
+
+    /**
+     * Adds the links collected to a list, relative to a base URL.
+     *
+     * @param base     The base URL.
+     * @param outlinks The list.
+     */
+    public void getOutlinks(URL base, ArrayList<Outlink> outlinks) {
+        DOMContentUtils.resolveOutlinks(base, this.targets, this.anchors, outlinks);
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        for (ContentHandler handler : this.handlers) {
+            handler.setDocumentLocator(locator);
+        }
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        for (ContentHandler handler : this.handlers) {
+            handler.startDocument();
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        this.closeText();
+        for (ContentHandler handler : this.handlers) {
+            handler.endDocument();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        for (ContentHandler handler : this.handlers) {
+            handler.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        for (ContentHandler handler : this.handlers) {
+            handler.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        this.closeText();
+        this.addChild(Child.ELEMENT, qName);
+        this.depth++;
+
+        // Anchors end at a nested anchor.
+        boolean anchor = "a".equalsIgnoreCase(qName);
+        if (anchor) {
+            for (Link link : this.links) {
+                if (this.scripts == link.scripts && ++link.anchorDepth > 1) {
+                    link.aborted = true;
+                }
+            }
+        }
+
+        if ("body".equalsIgnoreCase(qName)) {
+            this.bodies++;
+            this.baseDone = true;
+            if (this.titleDepth < 0) {
+                this.titleDone = true;
+            }
+        }
+        else if (this.bodies == 0) {
+            // META tags should not be under body
+            if ("meta".equalsIgnoreCase(qName)) {
+                String name = null;
+                String equiv = null;
+                String content = null;
+
+                for (int i = 0; i < atts.getLength(); i++) {
+                    String attrName = atts.getQName(i).toLowerCase();
+
+                    if (attrName.equals("name")) {
+                        name = atts.getValue(i);
+                    }
+                    else if (attrName.equals("http-equiv")) {
+                        equiv = atts.getValue(i);
+                    }
+                    else if (attrName.equals("content")) {
+                        content = atts.getValue(i);
+                    }
+                }
+
+                HtmlMetaProcessor.processMeta(this.metaTags, name, equiv, content, this.currURL);
+            }
+            else if ("base".equalsIgnoreCase(qName)) {
+                String href = this.getAttribute(atts, "href");
+
+                if (href != null) {
+                    HtmlMetaProcessor.processBase(this.metaTags, href, this.currURL);
+                }
+
+                if (!this.baseDone) {
+                    this.startBase(atts);
+                }
+            }
+            else if (!this.titleDone && this.titleDepth < 0 && "title".equalsIgnoreCase(qName)) {
+                this.title = new TextBuffer(this.maxText);
+                this.titleDepth = this.depth;
+                this.titleScripts = this.scripts;
+            }
+        }
+
+        DOMContentUtils.LinkParams params = this.utils.getLinkParams(qName.toLowerCase());
+        if (params != null) {
+            this.startLink(params, atts, anchor);
+        }
+
+        if ("script".equalsIgnoreCase(qName) || "style".equalsIgnoreCase(qName)) {
+            this.scripts++;
+        }
+
+        for (ContentHandler handler : this.handlers) {
+            handler.startElement(uri, localName, qName, atts);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        this.closeText();
+
+        if ("script".equalsIgnoreCase(qName) || "style".equalsIgnoreCase(qName)) {
+            this.scripts--;
+        }
+
+        Link link = this.links.peek();
+        if (link != null && link.depth == this.depth) {
+            this.links.pop();
+            if (link.throwAway()) {
+                this.targets.set(link.slot, null);
+                this.thrownAway++;
+            }
+            else {
+                this.anchors.set(link.slot, link.anchor.toString());
+            }
+        }
+
+        if (this.titleDepth == this.depth) {
+            this.titleDepth = -1;
+            this.titleDone = true;
+        }
+
+        if ("body".equalsIgnoreCase(qName)) {
+            this.bodies--;
+        }
+
+        this.depth--;
+
+        for (ContentHandler handler : this.handlers) {
+            handler.endElement(uri, localName, qName);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (!this.inCData) {
+            this.collect(ch, start, length);
+        }
+
+        for (ContentHandler handler : this.handlers) {
+            handler.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        // Always a node of its own.
+        this.closeText();
+        this.collect(ch, start, length);
+        for (ContentHandler handler : this.handlers) {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        this.closeText();
+        this.addChild(Child.OTHER, null);
+        for (ContentHandler handler : this.handlers) {
+            handler.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        for (ContentHandler handler : this.handlers) {
+            handler.skippedEntity(name);
+        }
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.startDTD(name, publicId, systemId);
+        }
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.endDTD();
+        }
+    }
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.startEntity(name);
+        }
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.endEntity(name);
+        }
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        this.closeText();
+        this.addChild(Child.OTHER, null);
+        this.inCData = true;
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        this.closeText();
+        this.inCData = false;
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.endCDATA();
+        }
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        // Tagsoup sometimes submits invalid values here, which DOMBuilder
+        // leaves out.
+        if (ch != null && start >= 0 && length >= 0 && length < (ch.length - start)) {
+            this.closeText();
+            this.addChild(Child.OTHER, null);
+        }
+
+        for (LexicalHandler handler : this.lexicalHandlers) {
+            handler.comment(ch, start, length);
+        }
+    }
+
+    private void startBase(Attributes atts) {
+        for (int i = 0; i < atts.getLength(); i++) {
+            if ("href".equalsIgnoreCase(atts.getQName(i))) {
+                try {
+                    this.base = new URL(atts.getValue(i));
+                    this.baseDone = true;
+
+                    return;
+                }
+                catch (MalformedURLException e) {
+                }
+            }
+        }
+    }
+
+    private void startLink(DOMContentUtils.LinkParams params, Attributes atts, boolean anchor) {
+        String target = null;
+        boolean noFollow = false;
+        boolean post = false;
+
+        for (int i = 0; i < atts.getLength(); i++) {
+            String attrName = atts.getQName(i);
+            if (params.attrName.equalsIgnoreCase(attrName)) {
+                target = atts.getValue(i);
+            }
+            else if ("rel".equalsIgnoreCase(attrName) && "nofollow".equalsIgnoreCase(atts.getValue(i))) {
+                noFollow = true;
+            }
+            else if ("method".equalsIgnoreCase(attrName) && "post".equalsIgnoreCase(atts.getValue(i))) {
+                post = true;
+            }
+        }
+
+        if (target == null || noFollow || post || this.targets.size() - this.thrownAway >= this.maxOutlinks) {
+            return;
+        }
+
+        // The link keeps its place, until its children tell whether it's
+        // thrown away.
+        Link link = new Link(params, this.depth, this.targets.size(), this.scripts, anchor ? 1 : 0, new TextBuffer(this.maxText));
+        this.targets.add(target);
+        this.anchors.add(null);
+        this.links.push(link);
+    }
+
+    private String getAttribute(Attributes atts, String name) {
+        for (int i = 0; i < atts.getLength(); i++) {
+            if (name.equals(atts.getQName(i))) {
+                return atts.getValue(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds a node to the children of the link it's in, if it's right under
+     * one.
+     *
+     * @return The child, or null if it's not under a link.
+     */
+    private Child addChild(int type, String name) {
+        Link link = this.links.peek();
+        if (link == null || link.depth != this.depth) {
+            return null;
+        }
+
+        Child child = new Child(type, name);
+        if (link.childLen < link.children.length) {
+            link.children[link.childLen] = child;
+        }
+        link.childLen++;
+
+        return child;
+    }
+
+    /**
+     * Adds chars to the current text node.
+     */
+    private void collect(char[] ch, int start, int length) {
+        if (!this.textOpen) {
+            this.textOpen = true;
+            this.textChild = this.addChild(Child.TEXT, null);
+        }
+
+        if (this.textChild != null && this.textChild.whitespace) {
+            for (int i = start; i < start + length; i++) {
+                if (!Character.isWhitespace(ch[i])) {
+                    this.textChild.whitespace = false;
+                    break;
+                }
+            }
+        }
+
+        if (this.scripts == 0) {
+            this.text.append(ch, start, length);
+        }
+
+        if (this.titleDepth >= 0 && this.scripts == this.titleScripts) {
+            this.title.append(ch, start, length);
+        }
+
+        for (Link link : this.links) {
+            if (!link.aborted && this.scripts == link.scripts) {
+                link.anchor.append(ch, start, length);
+            }
+        }
+    }
+
+    /**
+     * Ends the current text node.
+     */
+    private void closeText() {
+        if (!this.textOpen) {
+            return;
+        }
+
+        this.textOpen = false;
+        this.textChild = null;
+        this.text.endNode();
+        if (this.title != null) {
+            this.title.endNode();
+        }
+
+        for (Link link : this.links) {
+            link.anchor.endNode();
+        }
+    }
+
+    /**
+     * A child of a link, as much as it takes to tell if the link is thrown
+     * away.
+     */
+    private static class Child {
+
+        static final int ELEMENT = 0;
+        static final int TEXT = 1;
+        static final int OTHER = 2;
+        final int type;
+        final String name;
+        boolean whitespace = true;
+
+        Child(int type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        boolean isElement(String elName) {
+            return this.type == ELEMENT && elName.equalsIgnoreCase(this.name);
+        }
+
+        boolean isWhitespace() {
+            return this.type == TEXT && this.whitespace;
+        }
+    }
+
+    /**
+     * A link whose element is still open.
+     */
+    private static class Link {
+
+        final DOMContentUtils.LinkParams params;
+        final int depth;
+        final int slot;
+        final int scripts;
+        int anchorDepth;
+        boolean aborted = false;
+        final TextBuffer anchor;
+        final Child[] children = new Child[3];
+        int childLen = 0;
+
+        Link(DOMContentUtils.LinkParams params, int depth, int slot, int scripts, int anchorDepth, TextBuffer anchor) {
+            this.params = params;
+            this.depth = depth;
+            this.slot = slot;
+            this.scripts = scripts;
+            this.anchorDepth = anchorDepth;
+            this.anchor = anchor;
+        }
+
+        /**
+         * Links without inner structure are thrown away, as are links which
+         * contain only single nested links and empty text nodes, as in
+         * {@link DOMContentUtils}.
+         */
+        boolean throwAway() {
+            String elName = this.params.elName;
+            Child[] c = this.children;
+
+            switch (this.childLen) {
+                case 0:
+                    return this.params.childLen != 0;
+                case 1:
+                    return c[0].isElement(elName);
+                case 2:
+                    return (c[0].isElement(elName) && c[1].isWhitespace()) || (c[1].isElement(elName) && c[0].isWhitespace());
+                case 3:
+                    return c[1].isElement(elName) && c[0].isWhitespace() && c[2].isWhitespace();
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Collects text as {@link DOMContentUtils.TextVisitor} does, one text
+     * node at a time, without keeping more than a limit of chars.
+     */
+    private static class TextBuffer {
+
+        private final StringBuilder buffer = new StringBuilder();
+        private final int max;
+        // The blanks since the last char of the node, collapsed.
+        private final StringBuilder gap = new StringBuilder();
+        private boolean gapSpace = false;
+        private boolean nodeStarted = false;
+
+        TextBuffer(int max) {
+            this.max = max;
+        }
+
+        void append(char[] ch, int start, int length) {
+            for (int i = start; i < start + length && this.buffer.length() < this.max; i++) {
+                char c = ch[i];
+                if (c > ' ') {
+                    if (!this.nodeStarted) {
+                        // Leading blanks are trimmed.
+                        if (this.buffer.length() > 0) {
+                            this.buffer.append(' ');
+                        }
+                        this.nodeStarted = true;
+                    }
+                    else {
+                        this.buffer.append(this.gap);
+                    }
+
+                    this.gap.setLength(0);
+                    this.gapSpace = false;
+                    this.buffer.append(c);
+                }
+                else if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+                    if (!this.gapSpace) {
+                        this.gap.append(' ');
+                        this.gapSpace = true;
+                    }
+                }
+                else if (this.gap.length() < this.max) {
+                    this.gap.append(c);
+                    this.gapSpace = false;
+                }
+            }
+        }
+
+        /**
+         * Ends a text node. Its trailing blanks are trimmed.
+         */
+        void endNode() {
+            this.gap.setLength(0);
+            this.gapSpace = false;
+            this.nodeStarted = false;
+        }
+
+        @Override
+        public String toString() {
+            return (this.buffer.length() > this.max) ? this.buffer.substring(0, this.max) : this.buffer.toString();
+        }
+    }
+}
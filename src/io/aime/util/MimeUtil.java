@@ -21,7 +21,9 @@ import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
 
 // Util
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -40,9 +42,20 @@ public final class MimeUtil {
     private static final Logger LOG = Logger.getLogger(MimeUtil.class.getName());
     private static final String SEPARATOR = ";";
     private static Map<String, String> mimeTypeMap = new HashMap<String, String>(1);
+    private static MimeUtil instance = null;
     private MimeTypes mimeTypes;
     private Tika tika;
     private boolean mimeMagic;
+    private int magicLength = Integer.MAX_VALUE;
+    private int cacheSize = 0;
+    // The types resolved without magic, by header type and URL type, least
+    // recently used first.
+    private final LinkedHashMap<String, String> resolved = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return this.size() > cacheSize;
+        }
+    };
 
     static {
         BufferedReader reader = null;
@@ -87,6 +100,27 @@ public final class MimeUtil {
 
         this.mimeTypes = mimeTypez;
         this.mimeMagic = conf.getBoolean("mime.type.magic", true);
+        this.magicLength = conf.getInt("mime.type.magic.length", 16384);
+        if (this.magicLength < 0) {
+            this.magicLength = Integer.MAX_VALUE;
+        }
+        this.cacheSize = conf.getInt("mime.type.cache.size", 1000);
+    }
+
+    /**
+     * Returns the detector of this JVM, creating it if needed. It's configured
+     * by the first caller, and it's safe to share between threads.
+     *
+     * @param conf The configuration object.
+     *
+     * @return The shared detector.
+     */
+    public static synchronized MimeUtil get(Configuration conf) {
+        if (instance == null) {
+            instance = new MimeUtil(conf);
+        }
+
+        return instance;
     }
 
     /**
@@ -153,6 +187,11 @@ public final class MimeUtil {
      * then mime type magic resolution is used to try and obtain a
      * better-than-the-default approximation of the {@link MimeType}.</p>
      *
+     * <p>Magic only looks at the first <code>mime.type.magic.length</code>
+     * bytes, and it's skipped when the type named by the header is the one the
+     * URL tells. Those types are cached by header and URL type, keeping the
+     * <code>mime.type.cache.size</code> most recently used ones.</p>
+     *
      * @param typeName The original mime type, returned from a
      *                 {@link ProtocolOutput}.
      * @param url      The given
@@ -167,6 +206,18 @@ public final class MimeUtil {
         String magicType = null;
         MimeType type = null;
         String cleanedMimeType = null;
+        String urlType = this.getURLType(url);
+        String key = null;
+
+        if (typeName != null && urlType != null) {
+            key = MimeUtil.cleanMimeType(typeName).trim().toLowerCase() + " " + urlType;
+            synchronized (this.resolved) {
+                retType = this.resolved.get(key);
+            }
+            if (retType != null) {
+                return retType;
+            }
+        }
 
         try {
             cleanedMimeType = MimeUtil.cleanMimeType(typeName) != null ? this.mimeTypes.forName(MimeUtil.cleanMimeType(typeName)).getName() : null;
@@ -192,12 +243,22 @@ public final class MimeUtil {
 
         retType = type.getName();
 
+        // if the header and the URL tell the same type, there's nothing for the
+        // magic to settle
+        if (key != null && retType.equals(cleanedMimeType) && !retType.equals(MimeTypes.OCTET_STREAM) && retType.equals(urlType)) {
+            synchronized (this.resolved) {
+                this.resolved.put(key, retType);
+            }
+
+            return retType;
+        }
+
         // if magic is enabled use mime magic to guess if the mime type returned
         // from the magic guess is different than the one that's already set so far
         // if it is, and it's not the default mime type, then go with the mime type
         // returned by the magic
         if (this.mimeMagic) {
-            magicType = tika.detect(data);
+            magicType = tika.detect((data != null && data.length > this.magicLength) ? Arrays.copyOf(data, this.magicLength) : data);
 
             // Deprecated in Tika 1.0 See https://issues.apache.org/jira/browse/NUTCH-1230
             // MimeType magicType = this.mimeTypes.getMimeType(data);
@@ -222,6 +283,12 @@ public final class MimeUtil {
         return retType;
     }
 
+    private String getURLType(String url) {
+        MimeType type = (url != null) ? this.mimeTypes.getMimeType(url) : null;
+
+        return (type != null) ? type.getName() : null;
+    }
+
     /**
      * Facade interface to Tika's underlying
      * {@link MimeTypes#getMimeType(String)} method.
@@ -7,20 +7,26 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.log4j.Logger;
 
 // Util
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.WeakHashMap;
 
+/**
+ * Objects shared by everything that uses the same configuration, like plugin
+ * instances. It's safe to use from several threads.
+ */
 public class ObjectCache {
 
     private static final Logger LOG = Logger.getLogger(ObjectCache.class.getName());
     private static final WeakHashMap<Configuration, ObjectCache> CACHE = new WeakHashMap<Configuration, ObjectCache>();
-    private final HashMap<String, Object> objectMap;
+    private final Map<String, Object> objectMap;
 
     private ObjectCache() {
-        this.objectMap = new HashMap<String, Object>();
+        this.objectMap = Collections.synchronizedMap(new HashMap<String, Object>());
     }
 
-    public static ObjectCache get(Configuration conf) {
+    public static synchronized ObjectCache get(Configuration conf) {
         ObjectCache objectCache = ObjectCache.CACHE.get(conf);
 
         if (objectCache == null) {
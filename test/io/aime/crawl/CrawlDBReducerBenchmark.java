@@ -0,0 +1,220 @@
+package io.aime.crawl;
+
+// AIME
+import io.aime.util.AIMEConfiguration;
+
+// IO
+import java.io.IOException;
+
+// Management
+import java.lang.management.ManagementFactory;
+
+// Util
+import java.util.Iterator;
+import java.util.Random;
+
+// Hadoop
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Measures how long it takes the DBase update to merge the values of a URL,
+ * and how much memory it allocates doing it, for URLs with a few values and
+ * for popular URLs with thousands of links.
+ *
+ * <p>
+ * Each group has an entry of the DBase, a fetch, a signature and the parse
+ * metadata, and links for the rest, all with metadata. The values are read
+ * into the same object one after the other, as Hadoop does. Pass the sizes of
+ * the groups as arguments, or nothing to use 1, 10 and 10000. Run it with the
+ * classpath of the project:
+ * </p>
+ *
+ * <pre>java io.aime.crawl.CrawlDBReducerBenchmark [size ...]</pre>
+ *
+ * @author K-Zen
+ */
+public class CrawlDBReducerBenchmark
+{
+
+    private static final int VALUES = 200000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException
+    {
+        int[] sizes = new int[]
+        {
+            1, 10, 10000
+        };
+        if (args.length > 0)
+        {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        CrawlDBReducer reducer = new CrawlDBReducer();
+        reducer.configure(new JobConf(new AIMEConfiguration().create()));
+        Counter output = new Counter();
+        Text key = new Text("http://www.example.com/page.html");
+
+        for (int size : sizes)
+        {
+            byte[][] group = CrawlDBReducerBenchmark.group(size, new Random(size));
+            int keys = Math.max(1, VALUES / size);
+
+            long time = 0;
+            long allocated = 0;
+            for (int round = 0; round < ROUNDS; round++)
+            {
+                long bytes = CrawlDBReducerBenchmark.allocated();
+                long start = System.nanoTime();
+                for (int k = 0; k < keys; k++)
+                {
+                    reducer.reduce(key, new Values(group), output, Reporter.NULL);
+                }
+                long end = System.nanoTime();
+
+                // The first half of the rounds only warm up the JIT.
+                if (round >= ROUNDS / 2)
+                {
+                    time += end - start;
+                    allocated += CrawlDBReducerBenchmark.allocated() - bytes;
+                }
+            }
+
+            long merged = (long) keys * (ROUNDS - ROUNDS / 2);
+            System.out.println(size + " values per key, " + keys + " keys per round, " + output.collected + " collected");
+            System.out.println(String.format("  time:      %10.1f ns/key   %8.1f ns/value", (double) time / merged, (double) time / (merged * size)));
+            System.out.println(String.format("  allocated: %10.1f B/key    %8.1f B/value", (double) allocated / merged, (double) allocated / (merged * size)));
+        }
+    }
+
+    /**
+     * Bytes allocated so far by this thread, or 0 if the JVM can't tell.
+     */
+    private static long allocated()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0L;
+    }
+
+    /**
+     * Makes the serialized values of a URL.
+     */
+    private static byte[][] group(int size, Random random) throws IOException
+    {
+        byte[][] group = new byte[size][];
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < size; i++)
+        {
+            CrawlDatum datum;
+            switch (i)
+            {
+                case 0:
+                    datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 86400, 1.0f);
+                    datum.setFetchTime(now - 86400000L);
+                    datum.setSignature(random.nextLong());
+                    break;
+                case 1:
+                    datum = new CrawlDatum(CrawlDatum.STATUS_FETCH_SUCCESS, 86400, 1.0f);
+                    datum.setFetchTime(now);
+                    break;
+                case 2:
+                    datum = new CrawlDatum(CrawlDatum.STATUS_SIGNATURE, 0);
+                    datum.setSignature(random.nextLong());
+                    break;
+                case 3:
+                    datum = new CrawlDatum(CrawlDatum.STATUS_PARSE_META, 0);
+                    datum.getMetadata().put(new Text("lang"), new Text("es"));
+                    break;
+                default:
+                    datum = new CrawlDatum(CrawlDatum.STATUS_LINKED, 86400, random.nextFloat());
+                    datum.setFetchTime(now);
+                    break;
+            }
+            datum.getMetadata().put(new Text("anchor"), new Text("link-" + random.nextInt(1000)));
+            datum.getMetadata().put(new Text("weight"), new FloatWritable(random.nextFloat()));
+            datum.getMetadata().put(new Text("seen"), new LongWritable(now));
+
+            DataOutputBuffer out = new DataOutputBuffer();
+            datum.write(out);
+            group[i] = new byte[out.getLength()];
+            System.arraycopy(out.getData(), 0, group[i], 0, out.getLength());
+        }
+
+        return group;
+    }
+
+    /**
+     * Reads the values of a group into the same object, as Hadoop does.
+     */
+    private static class Values implements Iterator<CrawlDatum>
+    {
+
+        private static final CrawlDatum DATUM = new CrawlDatum();
+        private static final DataInputBuffer IN = new DataInputBuffer();
+        private final byte[][] group;
+        private int next = 0;
+
+        Values(byte[][] group)
+        {
+            this.group = group;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < group.length;
+        }
+
+        @Override
+        public CrawlDatum next()
+        {
+            try
+            {
+                IN.reset(group[next], group[next].length);
+                next++;
+                DATUM.readFields(IN);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            return DATUM;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Counter implements OutputCollector<Text, CrawlDatum>
+    {
+
+        private long collected = 0;
+
+        @Override
+        public void collect(Text key, CrawlDatum value)
+        {
+            collected++;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.aime.plugins.languageidentifier;
+
+// AIME
+import io.aime.plugins.languageidentifier.NGramProfile.NGramEntry;
+
+// Apache Hadoop
+import org.apache.hadoop.conf.Configuration;
+
+// IO
+import java.io.IOException;
+import java.io.InputStream;
+
+// Util
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many pages per second the language identifier takes, on one
+ * thread and on as many threads as there are cores, comparing it with the old
+ * identifier, which analyzed each page into a profile of objects.
+ *
+ * <p>Pages are made of sentences of a few languages. The language profiles
+ * and the langmappings.properties file have to be in the classpath, along
+ * with the classes of the project:</p>
+ *
+ * <pre>java io.aime.plugins.languageidentifier.LanguageIdentifierBenchmark [pages] [chars per page] [min ngram] [max ngram]</pre>
+ *
+ * @author K-Zen
+ */
+public class LanguageIdentifierBenchmark {
+
+    private static final String[][] SENTENCES = {
+        {"en", "The committee will meet again next week to discuss the results of the survey and the changes that the members have proposed for the new year."},
+        {"es", "El gobierno anunció ayer que las obras de la nueva carretera comenzarán el próximo mes y que se espera terminarlas antes del invierno."},
+        {"de", "Die Stadt hat beschlossen, den alten Bahnhof zu renovieren, damit die Reisenden im nächsten Sommer bequemer warten können."},
+        {"fr", "Les habitants du quartier se sont réunis pour demander à la mairie de construire une nouvelle école près de la rivière."},
+        {"it", "Il museo della città resterà chiuso per tutto il mese di agosto a causa dei lavori di restauro delle sale principali."},
+        {"pt", "Os pesquisadores da universidade descobriram uma nova espécie de planta nas montanhas do norte do país durante a expedição."},
+        {"nl", "De gemeente wil volgend jaar meer fietspaden aanleggen omdat steeds meer mensen met de fiets naar hun werk gaan."}
+    };
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int pages = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int chars = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        int min = (args.length > 2) ? Integer.parseInt(args[2]) : NGramProfile.DEFAULT_MIN_NGRAM_LENGTH;
+        int max = (args.length > 3) ? Integer.parseInt(args[3]) : NGramProfile.DEFAULT_MAX_NGRAM_LENGTH;
+        Configuration conf = new Configuration();
+        conf.setInt("lang.ngram.min.length", min);
+        conf.setInt("lang.ngram.max.length", max);
+
+        Random random = new Random(1);
+        final String[] texts = new String[pages];
+        String[] expected = new String[pages];
+        for (int i = 0; i < pages; i++) {
+            String[] sentence = SENTENCES[random.nextInt(SENTENCES.length)];
+            StringBuilder text = new StringBuilder();
+            while (text.length() < chars) {
+                // Mostly one language, with some quotes of others.
+                text.append((random.nextInt(10) == 0) ? SENTENCES[random.nextInt(SENTENCES.length)][1] : sentence[1]).append(' ');
+            }
+            texts[i] = text.toString();
+            expected[i] = sentence[0];
+        }
+
+        final LanguageIdentifier identifier = new LanguageIdentifier(conf);
+        final Legacy legacy = new Legacy(min, max);
+
+        int wrong = 0;
+        int differ = 0;
+        for (int i = 0; i < pages; i++) {
+            String lang = identifier.identify(texts[i]);
+            wrong += lang.equals(expected[i]) ? 0 : 1;
+            differ += lang.equals(legacy.identify(texts[i])) ? 0 : 1;
+        }
+        System.out.println(pages + " pages of " + chars + " chars, " + wrong + " identified wrong, " + differ + " identified differently than before");
+
+        long time = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String text : texts) {
+                legacy.identify(text);
+            }
+            // The first half of the rounds only warm up the JIT.
+            time += (round >= ROUNDS / 2) ? System.nanoTime() - start : 0;
+        }
+        System.out.println(String.format("  old, 1 thread:  %10.1f pages/s", (double) pages * (ROUNDS - ROUNDS / 2) * 1e9 / time));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : (cores > 1) ? new int[]{1, cores} : new int[]{1}) {
+            double rate = LanguageIdentifierBenchmark.run(identifier, texts, threads);
+            System.out.println(String.format("  new, %d threads: %10.1f pages/s, %10.1f pages/s per thread", threads, rate, rate / threads));
+        }
+    }
+
+    /**
+     * Identifies the pages on some threads at once, each one starting at a
+     * different page.
+     *
+     * @return The pages identified per second.
+     */
+    private static double run(final LanguageIdentifier identifier, final String[] texts, int threads) throws InterruptedException {
+        final AtomicLong time = new AtomicLong(0);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int first = t * texts.length / threads;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        long start = System.nanoTime();
+                        for (int i = 0; i < texts.length; i++) {
+                            identifier.identify(texts[(first + i) % texts.length]);
+                        }
+                        if (round >= ROUNDS / 2) {
+                            time.addAndGet(System.nanoTime() - start);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Average time of a thread, for all the pages each one identified.
+        double seconds = time.get() / 1e9 / threads;
+
+        return (double) texts.length * (ROUNDS - ROUNDS / 2) * threads / seconds;
+    }
+
+    /**
+     * The identifier as it was: a profile of the page, sorted, looked up in
+     * an index of the profiles of the languages.
+     */
+    private static class Legacy {
+
+        private final Map<CharSequence, NGramEntry[]> index = new HashMap<CharSequence, NGramEntry[]>();
+        private final NGramProfile suspect;
+
+        Legacy(int min, int max) throws IOException {
+            Properties p = new Properties();
+            p.load(this.getClass().getResourceAsStream("/langmappings.properties"));
+            Map<CharSequence, List<NGramEntry>> entries = new HashMap<CharSequence, List<NGramEntry>>();
+
+            Enumeration<Object> languages = p.keys();
+            while (languages.hasMoreElements()) {
+                String lang = (String) languages.nextElement();
+                InputStream is = this.getClass().getClassLoader().getResourceAsStream("io/aime/plugins/languageidentifier/lang/" + lang + "." + NGramProfile.FILE_EXTENSION);
+                if (is == null) {
+                    continue;
+                }
+
+                NGramProfile profile = new NGramProfile(lang, min, max);
+                profile.load(is);
+                is.close();
+                for (NGramEntry entry : profile.getSorted()) {
+                    List<NGramEntry> list = entries.get(entry.getSeq());
+                    if (list == null) {
+                        list = new ArrayList<NGramEntry>();
+                        entries.put(entry.getSeq(), list);
+                    }
+                    list.add(entry);
+                    entry.setProfile(profile);
+                }
+            }
+
+            for (Map.Entry<CharSequence, List<NGramEntry>> e : entries.entrySet()) {
+                this.index.put(e.getKey(), e.getValue().toArray(new NGramEntry[e.getValue().size()]));
+            }
+            this.suspect = new NGramProfile("suspect", min, max);
+        }
+
+        String identify(String content) {
+            this.suspect.analyze(new StringBuilder(content));
+            float topscore = Float.MIN_VALUE;
+            String lang = "";
+            Map<NGramProfile, Float> scores = new HashMap<NGramProfile, Float>();
+
+            for (NGramEntry searched : this.suspect.getSorted()) {
+                NGramEntry[] ngrams = this.index.get(searched.getSeq());
+                if (ngrams == null) {
+                    continue;
+                }
+
+                for (NGramEntry ngram : ngrams) {
+                    Float score = scores.get(ngram.getProfile());
+                    float plScore = ((score == null) ? 0.0f : score) + ngram.getFrequency() + searched.getFrequency();
+                    scores.put(ngram.getProfile(), plScore);
+                    if (plScore > topscore) {
+                        topscore = plScore;
+                        lang = ngram.getProfile().getName();
+                    }
+                }
+            }
+
+            return lang;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.aime.plugins.libhttp;
+
+// AIME
+import io.aime.plugins.libhttp.RobotRulesParser.RobotRuleSet;
+
+// IO
+import java.io.IOException;
+
+// Net
+import java.net.URLDecoder;
+
+// NIO
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Util
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long it takes to check a path against the rules of a
+ * robots.txt file, comparing the compiled matcher with the old linear scan.
+ *
+ * <p>Pass the robots.txt files to test as arguments, or nothing to use the
+ * built-in samples, which are shaped like the files of a large wiki and of a
+ * news site. Run it with the classpath of the project:</p>
+ *
+ * <pre>java io.aime.plugins.libhttp.RobotRulesBenchmark [robots.txt ...]</pre>
+ *
+ * @author K-Zen
+ */
+public class RobotRulesBenchmark {
+
+    private static final int PATHS = 10000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> files = new ArrayList<>();
+
+        if (args.length == 0) {
+            names.add("wiki (sample)");
+            files.add(RobotRulesBenchmark.wiki().getBytes(StandardCharsets.UTF_8));
+            names.add("news (sample)");
+            files.add(RobotRulesBenchmark.news().getBytes(StandardCharsets.UTF_8));
+        }
+        else {
+            for (String arg : args) {
+                names.add(arg);
+                files.add(Files.readAllBytes(Paths.get(arg)));
+            }
+        }
+
+        RobotRulesParser parser = new RobotRulesParser(new String[]{"aimebot", "*"});
+        for (int f = 0; f < files.size(); f++) {
+            RobotRuleSet rules = parser.parseRules(files.get(f));
+            RobotRuleSet.RobotsEntry[] entries = rules.getEntries();
+            String[] paths = RobotRulesBenchmark.paths(entries, new Random(f));
+
+            int differ = 0;
+            for (String path : paths) {
+                differ += (RobotRulesBenchmark.linear(entries, path) != rules.isAllowed(path)) ? 1 : 0;
+            }
+
+            long linear = 0;
+            long compiled = 0;
+            int allowed = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (String path : paths) {
+                    allowed += RobotRulesBenchmark.linear(entries, path) ? 1 : 0;
+                }
+                long middle = System.nanoTime();
+                for (String path : paths) {
+                    allowed += rules.isAllowed(path) ? 1 : 0;
+                }
+                long end = System.nanoTime();
+
+                // The first half of the rounds only warm up the JIT.
+                if (round >= ROUNDS / 2) {
+                    linear += middle - start;
+                    compiled += end - middle;
+                }
+            }
+
+            long checks = (long) PATHS * (ROUNDS - ROUNDS / 2);
+            // Only rules with wildcards should make them differ.
+            System.out.println(names.get(f) + ": " + entries.length + " rules, " + (allowed / (2 * ROUNDS)) + " of " + PATHS + " paths allowed, " + differ + " decided differently");
+            System.out.println(String.format("  linear:   %8.1f ns/path", (double) linear / checks));
+            System.out.println(String.format("  compiled: %8.1f ns/path", (double) compiled / checks));
+        }
+    }
+
+    /**
+     * The matching done before the rules were compiled: decode the path and
+     * try each rule in order.
+     */
+    private static boolean linear(RobotRuleSet.RobotsEntry[] entries, String path) {
+        try {
+            path = URLDecoder.decode(path, "UTF-8");
+        }
+        catch (Exception e) {
+            // Match it as it is.
+        }
+
+        for (RobotRuleSet.RobotsEntry entry : entries) {
+            if (path.startsWith(entry.prefix)) {
+                return entry.allowed;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes paths that look like the ones of the site: half of them extend
+     * one of its rules, the rest are ordinary pages.
+     */
+    private static String[] paths(RobotRuleSet.RobotsEntry[] entries, Random random) {
+        String[] paths = new String[PATHS];
+
+        for (int i = 0; i < PATHS; i++) {
+            if (entries.length > 0 && random.nextBoolean()) {
+                String prefix = entries[random.nextInt(entries.length)].prefix.replace("*", "x").replace("$", "");
+                paths[i] = prefix + "page-" + random.nextInt(1000) + ".html";
+            }
+            else {
+                paths[i] = "/section-" + random.nextInt(50) + "/2013/" + random.nextInt(12) + "/article-" + random.nextInt(100000) + ".html";
+            }
+        }
+
+        return paths;
+    }
+
+    private static String wiki() {
+        StringBuilder robots = new StringBuilder();
+        String[] bots = {"MJ12bot", "Mediapartners-Google*", "IsraBot", "Orthogaffe", "UbiCrawler", "DOC", "Zao", "sitecheck.internetseer.com", "Zealbot", "MSIECrawler", "SiteSnagger", "WebStripper", "WebCopier", "Fetch", "Offline Explorer", "Teleport", "TeleportPro", "WebZIP", "linko", "HTTrack", "Microsoft.URL.Control", "Xenu", "larbin", "libwww", "ZyBORG", "Download Ninja", "wget", "grub-client", "k2spider", "NPBot", "WebReaper"};
+        for (String bot : bots) {
+            robots.append("User-agent: ").append(bot).append("\nDisallow: /\n\n");
+        }
+
+        robots.append("User-agent: *\n");
+        robots.append("Allow: /w/api.php?action=mobileview&\n");
+        robots.append("Allow: /w/load.php?\n");
+        robots.append("Disallow: /w/\n");
+        robots.append("Disallow: /api/\n");
+        robots.append("Disallow: /trap/\n");
+        robots.append("Disallow: /wiki/Special:\n");
+        robots.append("Disallow: /wiki/Spezial:\n");
+        robots.append("Disallow: /wiki/Spesial:\n");
+        robots.append("Disallow: /wiki/Special%3A\n");
+        robots.append("Disallow: /wiki/Spezial%3A\n");
+        String[] namespaces = {"Wikipedia", "Wikipedia_talk", "User", "User_talk", "Talk", "Template_talk", "Category_talk", "Portal_talk", "Help_talk", "File_talk"};
+        String[] pages = {"Articles_for_deletion", "Votes_for_deletion", "Pages_for_deletion", "Miscellany_for_deletion", "Copyright_problems", "Protected_titles", "Requests_for_arbitration", "Requests_for_comment", "Requests_for_adminship", "Long_term_abuse", "Administrators'_noticeboard", "Sockpuppet_investigations", "Deletion_review", "Categories_for_discussion", "Templates_for_discussion", "Suspected_sock_puppets", "Checkuser", "Arbitration", "Mediation_Committee", "Neutral_point_of_view_noticeboard"};
+        for (String namespace : namespaces) {
+            for (String page : pages) {
+                robots.append("Disallow: /wiki/").append(namespace).append(":").append(page).append("/\n");
+                robots.append("Disallow: /wiki/").append(namespace).append("%3A").append(page).append("/\n");
+            }
+        }
+
+        return robots.toString();
+    }
+
+    private static String news() {
+        StringBuilder robots = new StringBuilder();
+        robots.append("User-agent: *\n");
+        robots.append("Disallow: /*?sessionid=\n");
+        robots.append("Disallow: /*/print/\n");
+        robots.append("Disallow: /*.pdf$\n");
+        robots.append("Disallow: /search\n");
+        robots.append("Disallow: /cgi-bin/\n");
+        robots.append("Disallow: /ads/\n");
+        robots.append("Disallow: /account/\n");
+        robots.append("Disallow: /login\n");
+        robots.append("Disallow: /logout\n");
+        robots.append("Disallow: /comments/\n");
+        robots.append("Disallow: /preview/\n");
+        robots.append("Disallow: /tag/*/feed\n");
+        for (int i = 0; i < 50; i++) {
+            robots.append("Disallow: /section-").append(i).append("/archive/\n");
+            robots.append("Allow: /section-").append(i).append("/archive/index.html$\n");
+        }
+        robots.append("Crawl-delay: 1\n");
+
+        return robots.toString();
+    }
+}
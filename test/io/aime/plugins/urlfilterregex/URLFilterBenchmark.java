@@ -0,0 +1,223 @@
+package io.aime.plugins.urlfilterregex;
+
+// Apache Hadoop
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+// IO
+import java.io.IOException;
+
+// Util
+import java.util.Random;
+
+/**
+ * Measures how fast {@link RegexURLFilter} decides on URLs when it holds many
+ * site rules, like a crawl with thousands of seeds, comparing the compiled
+ * matcher with trying every rule in turn.
+ *
+ * <p>Trying every rule is so slow with this many rules that it's only timed on
+ * the first URLs, which are also used to check that both give the same
+ * answers. Both are also checked on rules with escapes whose arguments aren't
+ * literal text. Run it with the classpath of the project:</p>
+ *
+ * <pre>java io.aime.plugins.urlfilterregex.URLFilterBenchmark [rules] [urls]</pre>
+ *
+ * @author K-Zen
+ */
+public class URLFilterBenchmark {
+
+    private static final int SEQUENTIAL_URLS = 2000;
+    private static final String[] ESCAPE_RULES = {
+        "-\\x41dmin/",
+        "-\\x{41}rchive/",
+        "-/\\u00e9t\\u00e9/",
+        "-/\\0101bout/",
+        "-\\cIx",
+        "-/(?<d>\\w+)/\\k<d>/",
+        "-/\\p{L}{2}-\\d+\\.php$",
+        "-/\\P{L}\\P{L}/docs/",
+        "-/(news)/\\1/"
+    };
+    private static final String[] ESCAPE_URLS = {
+        "http://www.example.com/Admin/index.html",
+        "http://www.example.com/archive/2003/",
+        "http://www.example.com/\u00e9t\u00e9/photos.html",
+        "http://www.example.com/About/",
+        "http://www.example.com/a\tx",
+        "http://www.example.com/blog/blog/page.html",
+        "http://www.example.com/ab-12.php",
+        "http://www.example.com/42/docs/",
+        "http://www.example.com/news/news/",
+        "http://www.example.com/news/page-1.html"
+    };
+
+    public static void main(String[] args) throws IOException {
+        int rules = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int urls = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+        Random random = new Random(1);
+
+        URLFilterBenchmark.checkEscapes();
+
+        long start = System.nanoTime();
+        RegexURLFilter filter = URLFilterBenchmark.createFilter(rules, random);
+        RegexRuleMatcher matcher = filter.getMatcher();
+        System.out.println(String.format("Compiled %d rules in %.1f ms", rules, (System.nanoTime() - start) / 1e6));
+
+        String[] sample = new String[urls];
+        for (int i = 0; i < urls; i++) {
+            sample[i] = URLFilterBenchmark.url(rules, random);
+        }
+
+        // Trying every rule, as the filter used to.
+        int sequentialUrls = Math.min(urls, SEQUENTIAL_URLS);
+        int differ = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < sequentialUrls; i++) {
+            differ += (URLFilterBenchmark.sequential(filter, sample[i]) != matcher.accept(sample[i])) ? 1 : 0;
+        }
+        double sequential = (System.nanoTime() - start) / 1e3 / sequentialUrls;
+
+        // Warm up, then time the compiled matcher alone.
+        int accepted = 0;
+        for (int round = 0; round < 2; round++) {
+            accepted = 0;
+            start = System.nanoTime();
+            for (String url : sample) {
+                accepted += (filter.filter(url) != null) ? 1 : 0;
+            }
+        }
+        double compiled = (System.nanoTime() - start) / 1e3 / urls;
+
+        System.out.println(String.format("%d of %d URLs accepted, %d of %d decided differently", accepted, urls, differ, sequentialUrls));
+        System.out.println(String.format("  sequential: %10.2f us/URL", sequential));
+        System.out.println(String.format("  compiled:   %10.2f us/URL", compiled));
+    }
+
+    /**
+     * Checks that the compiled matcher decides as trying every rule does on
+     * rules with escapes of character codes, properties and back references.
+     */
+    private static void checkEscapes() throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        out.writeInt(0);
+        out.writeInt(ESCAPE_RULES.length);
+        for (String rule : ESCAPE_RULES) {
+            out.writeBoolean(rule.charAt(0) == '+');
+            out.writeUTF(rule.substring(1));
+        }
+        out.writeInt(1);
+        out.writeBoolean(true);
+        out.writeUTF("^https?://");
+        out.writeInt(0);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        RegexURLFilter filter = RegexURLFilter.read(in);
+        RegexRuleMatcher matcher = filter.getMatcher();
+
+        int differ = 0;
+        for (String url : ESCAPE_URLS) {
+            if (URLFilterBenchmark.sequential(filter, url) != matcher.accept(url)) {
+                System.out.println("  decided differently: " + url);
+                differ++;
+            }
+        }
+
+        System.out.println(String.format("Escape rules: %d of %d URLs decided differently", differ, ESCAPE_URLS.length));
+    }
+
+    private static boolean sequential(RegexURLFilter filter, String url) {
+        boolean acceptURL = true;
+        boolean acceptSite = false;
+
+        for (RegexRule r : filter.getDefaultURLRule()) {
+            if (r.match(url)) {
+                acceptURL = r.accept();
+            }
+        }
+
+        for (RegexRule r : filter.getSeedSiteRule()) {
+            if (r.match(url)) {
+                acceptSite = r.accept();
+            }
+        }
+
+        for (RegexRule r : filter.getURLRule()) {
+            if (r.match(url)) {
+                acceptURL = r.accept();
+            }
+        }
+
+        for (RegexRule r : filter.getSiteRule()) {
+            if (r.match(url)) {
+                acceptSite = r.accept();
+            }
+        }
+
+        return acceptURL && acceptSite;
+    }
+
+    /**
+     * Builds a filter with the default URL rules, a seed rule per site, a few
+     * hundred URL rules and some site rules denying parts of the sites.
+     */
+    private static RegexURLFilter createFilter(int count, Random random) throws IOException {
+        String[] defaults = {
+            "-^(ftp|mailto):",
+            "-\\.(ico|gif|jpg|jpeg|png|bmp|tiff|eps)$",
+            "-\\.(gz|rar|sit|tar|tgz|zip)$",
+            "-\\.(css|wmf|mpg|rpm|mov|exe|js)$",
+            "-[?*!@=]",
+            "-/([^/]+)/\\1/"
+        };
+        int urlRules = count / 20;
+        int siteRules = count / 10;
+        int seedRules = count - urlRules - siteRules - defaults.length;
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        out.writeInt(defaults.length);
+        for (String rule : defaults) {
+            out.writeBoolean(rule.charAt(0) == '+');
+            out.writeUTF(rule.substring(1));
+        }
+
+        out.writeInt(urlRules);
+        for (int i = 0; i < urlRules; i++) {
+            out.writeBoolean(false);
+            out.writeUTF("/archive/" + (2000 + i) + "/");
+        }
+
+        out.writeInt(seedRules);
+        for (int i = 0; i < seedRules; i++) {
+            out.writeBoolean(true);
+            out.writeUTF("^https?://(www\\.)?site" + i + "\\.example\\.com/");
+        }
+
+        out.writeInt(siteRules);
+        for (int i = 0; i < siteRules; i++) {
+            out.writeBoolean(false);
+            out.writeUTF("^https?://(www\\.)?site" + random.nextInt(Math.max(1, seedRules)) + "\\.example\\.com/(private|admin)/");
+        }
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+
+        return RegexURLFilter.read(in);
+    }
+
+    private static String url(int count, Random random) {
+        String[] extensions = {".html", ".html", ".html", ".php", ".jpg", ".pdf"};
+        String[] sections = {"news", "blog", "private", "archive/2003", "docs", "admin"};
+        StringBuilder url = new StringBuilder(96);
+
+        url.append(random.nextBoolean() ? "http://www." : "https://");
+        url.append("site").append(random.nextInt(count + count / 5)).append(".example.com/");
+        url.append(sections[random.nextInt(sections.length)]).append('/');
+        url.append("page-").append(random.nextInt(100000)).append(extensions[random.nextInt(extensions.length)]);
+        if (random.nextInt(10) == 0) {
+            url.append("?id=").append(random.nextInt(1000));
+        }
+
+        return url.toString();
+    }
+}